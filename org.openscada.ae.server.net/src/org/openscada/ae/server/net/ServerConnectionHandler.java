@@ -62,6 +62,7 @@ import org.openscada.net.base.data.Message;
 import org.openscada.net.base.data.StringValue;
 import org.openscada.net.base.data.Value;
 import org.openscada.net.base.data.VoidValue;
+import org.openscada.net.mina.WritePriority;
 import org.openscada.net.utils.MessageCreator;
 import org.openscada.sec.callback.PropertiesCredentialsCallback;
 import org.openscada.utils.concurrent.FutureListener;
@@ -107,6 +108,15 @@ public class ServerConnectionHandler extends AbstractServerConnectionHandler imp
 
         this.service = service;
 
+        setWritePriority ( Messages.CC_EVENT_POOL_DATA, WritePriority.DATA );
+        setWritePriority ( Messages.CC_EVENT_POOL_STATUS, WritePriority.DATA );
+        setWritePriority ( Messages.CC_CONDITIONS_DATA, WritePriority.DATA );
+        setWritePriority ( Messages.CC_CONDITIONS_STATUS, WritePriority.DATA );
+        setWritePriority ( Messages.CC_BROWSER_UPDATE, WritePriority.DATA );
+        // query data and state share one lane, so the state never overtakes the data
+        setWritePriority ( Messages.CC_QUERY_DATA, WritePriority.BULK );
+        setWritePriority ( Messages.CC_QUERY_STATUS_CHANGED, WritePriority.BULK );
+
         this.messenger.setHandler ( MessageHelper.CC_CREATE_SESSION, new MessageListener () {
 
             @Override
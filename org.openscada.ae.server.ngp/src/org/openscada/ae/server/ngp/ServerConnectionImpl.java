@@ -64,6 +64,7 @@ import org.openscada.core.data.ErrorInformation;
 import org.openscada.core.data.Response;
 import org.openscada.core.data.SubscriptionState;
 import org.openscada.core.server.ngp.ServiceServerConnection;
+import org.openscada.net.mina.WritePriority;
 import org.openscada.sec.callback.CallbackHandler;
 import org.openscada.utils.ExceptionHelper;
 import org.openscada.utils.concurrent.FutureListener;
@@ -134,22 +135,22 @@ public class ServerConnectionImpl extends ServiceServerConnection<Session, Servi
 
     protected void handleEventDataChange ( final String eventPoolId, final List<Event> addedEvents )
     {
-        sendMessage ( new EventPoolDataUpdate ( eventPoolId, convert ( addedEvents ) ) );
+        sendMessage ( new EventPoolDataUpdate ( eventPoolId, convert ( addedEvents ) ), WritePriority.DATA );
     }
 
     protected void handleMonitorDataChanged ( final String monitorPoolId, final List<MonitorStatusInformation> addedOrUpdated, final Set<String> removed, final boolean full )
     {
-        sendMessage ( new MonitorPoolDataUpdate ( monitorPoolId, addedOrUpdated, removed, full ) );
+        sendMessage ( new MonitorPoolDataUpdate ( monitorPoolId, addedOrUpdated, removed, full ), WritePriority.DATA );
     }
 
     protected void handleEventStatusChange ( final String eventPoolId, final SubscriptionState state )
     {
-        sendMessage ( new EventPoolStatusUpdate ( eventPoolId, state ) );
+        sendMessage ( new EventPoolStatusUpdate ( eventPoolId, state ), WritePriority.DATA );
     }
 
     protected void handleMonitorStatusChange ( final String monitorPoolId, final SubscriptionState state )
     {
-        sendMessage ( new MonitorPoolStatusUpdate ( monitorPoolId, state ) );
+        sendMessage ( new MonitorPoolStatusUpdate ( monitorPoolId, state ), WritePriority.DATA );
     }
 
     @Override
@@ -328,7 +329,7 @@ public class ServerConnectionImpl extends ServiceServerConnection<Session, Servi
             return;
         }
 
-        sendMessage ( new UpdateQueryData ( query.getQueryId (), convert ( events ) ) );
+        sendMessage ( new UpdateQueryData ( query.getQueryId (), convert ( events ) ), WritePriority.BULK );
     }
 
     public synchronized void sendQueryState ( final QueryImpl queryImpl, final QueryState state, final Throwable error )
@@ -339,7 +340,7 @@ public class ServerConnectionImpl extends ServiceServerConnection<Session, Servi
             return;
         }
 
-        sendMessage ( new UpdateQueryState ( query.getQueryId (), state, new ErrorInformation ( null, error == null ? null : error.getMessage (), ExceptionHelper.formatted ( error ) ) ) );
+        sendMessage ( new UpdateQueryState ( query.getQueryId (), state, new ErrorInformation ( null, error == null ? null : error.getMessage (), ExceptionHelper.formatted ( error ) ) ), WritePriority.BULK );
     }
 
     private List<EventInformation> convert ( final List<Event> events )
@@ -366,7 +367,7 @@ public class ServerConnectionImpl extends ServiceServerConnection<Session, Servi
             return;
         }
 
-        sendMessage ( new BrowseData ( addedOrUpdated, removed, full ) );
+        sendMessage ( new BrowseData ( addedOrUpdated, removed, full ), WritePriority.DATA );
     }
 
 }
@@ -30,9 +30,6 @@ import java.util.Properties;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
 
 import org.apache.mina.core.future.ConnectFuture;
 import org.apache.mina.core.future.IoFutureListener;
@@ -54,10 +51,10 @@ import org.openscada.net.base.PingService;
 import org.openscada.net.base.data.Message;
 import org.openscada.net.mina.IoSessionSender;
 import org.openscada.net.mina.Messenger;
+import org.openscada.net.mina.SharedConnectorResources;
 import org.openscada.net.mina.SocketImpl;
 import org.openscada.sec.callback.CallbackFactory;
 import org.openscada.sec.callback.CallbackHandler;
-import org.openscada.utils.concurrent.NamedThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -109,10 +106,11 @@ public abstract class ConnectionBase implements Connection, IoHandler, Statistic
         super ();
         this.connectionInformation = connectionInformation;
 
-        // the lookup executor has at max one thread and kills this if idle for one minute
-        this.lookupExecutor = new ThreadPoolExecutor ( 0, 1, 1, TimeUnit.MINUTES, new LinkedBlockingQueue<Runnable> (), new NamedThreadFactory ( "ConnectionBaseExecutor/" + connectionInformation.toMaskedString () ) );
+        // the lookup executor is shared by all connections and kills idle threads after one minute
+        this.lookupExecutor = SharedConnectorResources.getLookupExecutor ();
 
         this.messenger = new Messenger ( getMessageTimeout (), this.statistics );
+        this.messenger.setIdleDriven ( isIdleKeepAlive () );
 
         this.pingService = new PingService ( this.messenger );
 
@@ -594,7 +592,7 @@ public abstract class ConnectionBase implements Connection, IoHandler, Statistic
     {
         final SocketImpl socketImpl = SocketImpl.fromName ( getSocketImpl () );
 
-        final IoConnector connector = socketImpl.createConnector ();
+        final IoConnector connector = isSharedConnector () ? socketImpl.createSharedConnector () : socketImpl.createConnector ();
 
         connector.setHandler ( this );
 
@@ -603,6 +601,46 @@ public abstract class ConnectionBase implements Connection, IoHandler, Statistic
         return connector;
     }
 
+    /**
+     * Check if the connector should use the I/O processors shared by all
+     * connections
+     * <p>
+     * Can be set by the connection property <code>sharedConnector</code>,
+     * defaults to the system property
+     * <code>org.openscada.core.client.net.sharedConnector</code>, which
+     * defaults to <code>true</code>.
+     * </p>
+     */
+    private boolean isSharedConnector ()
+    {
+        final String value = this.connectionInformation.getProperties ().get ( "sharedConnector" );
+        if ( value != null )
+        {
+            return Boolean.parseBoolean ( value );
+        }
+        return Boolean.parseBoolean ( System.getProperty ( "org.openscada.core.client.net.sharedConnector", "true" ) );
+    }
+
+    /**
+     * Check if the session timeout is checked on idle events of the session
+     * instead of a timeout job per connection
+     * <p>
+     * Can be set by the connection property <code>idleKeepAlive</code>,
+     * defaults to the system property
+     * <code>org.openscada.core.client.net.idleKeepAlive</code>, which
+     * defaults to <code>true</code>.
+     * </p>
+     */
+    private boolean isIdleKeepAlive ()
+    {
+        final String value = this.connectionInformation.getProperties ().get ( "idleKeepAlive" );
+        if ( value != null )
+        {
+            return Boolean.parseBoolean ( value );
+        }
+        return Boolean.parseBoolean ( System.getProperty ( "org.openscada.core.client.net.idleKeepAlive", "true" ) );
+    }
+
     /**
      * Cancel an open connection ... for debug purposes only
      */
@@ -709,7 +747,16 @@ public abstract class ConnectionBase implements Connection, IoHandler, Statistic
     {
         logger.info ( "Session created: {}", session );
 
-        session.getConfig ().setReaderIdleTime ( getPingPeriod () / 1000 );
+        if ( isIdleKeepAlive () )
+        {
+            // the idle event drives the session timeout check, so never disable it
+            session.getConfig ().setReaderIdleTime ( Math.max ( 1, getPingPeriod () / 1000 ) );
+        }
+        else
+        {
+            // a ping period below one second disables the idle event
+            session.getConfig ().setReaderIdleTime ( getPingPeriod () / 1000 );
+        }
 
         final IoSessionConfig config = session.getConfig ();
         if ( config instanceof SocketSessionConfig )
@@ -741,8 +788,21 @@ public abstract class ConnectionBase implements Connection, IoHandler, Statistic
     {
         logger.debug ( "Session idle: {} - {}", status, session );
 
-        if ( session != this.session )
+        if ( session != this.session || status != IdleStatus.READER_IDLE )
+        {
+            return;
+        }
+
+        // any received message counts as sign of life, so we only get here if nothing was received for a ping period
+        if ( !this.messenger.sessionIdle () )
+        {
+            // timed out and closed
+            return;
+        }
+
+        if ( getPingPeriod () <= 0 )
         {
+            // only checking the session timeout, pings are disabled
             return;
         }
 
@@ -815,7 +875,6 @@ public abstract class ConnectionBase implements Connection, IoHandler, Statistic
     protected void finalize () throws Throwable
     {
         logger.info ( "Finalized" );
-        this.lookupExecutor.shutdown ();
         super.finalize ();
     }
 
@@ -840,7 +899,6 @@ public abstract class ConnectionBase implements Connection, IoHandler, Statistic
     public void dispose ()
     {
         disconnect ( null );
-        this.lookupExecutor.shutdown ();
         this.connector.dispose ();
     }
 
@@ -117,6 +117,8 @@ public abstract class SessionConnectionBase extends ConnectionBase
             props.put ( ConnectionInformation.PROP_USER, username );
         }
 
+        customizeSessionProperties ( props );
+
         this.messenger.sendMessage ( MessageHelper.createSession ( props ), new MessageStateListener () {
 
             @Override
@@ -134,6 +136,19 @@ public abstract class SessionConnectionBase extends ConnectionBase
 
     }
 
+    /**
+     * Customize the properties sent with the session request
+     * <p>
+     * The properties already contain the properties of the connection
+     * information. The default implementation does nothing.
+     * </p>
+     * 
+     * @since 1.1
+     */
+    protected void customizeSessionProperties ( final Properties properties )
+    {
+    }
+
     protected void processSessionReply ( final Message message )
     {
         logger.debug ( "Got session reply!" ); //$NON-NLS-1$
@@ -20,8 +20,8 @@
 
 package org.openscada.core.client.ngp;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.openscada.core.info.StatisticsImpl;
 import org.openscada.sec.callback.CallbackHandler;
@@ -30,7 +30,7 @@ public class CallbackHandlerManager
 {
     private static final Object STAT_REGISTERED_CALLBACK_HANDLERS = new Object ();
 
-    private final Map<Long, CallbackHandler> map = new HashMap<Long, CallbackHandler> ();
+    private final Map<Long, CallbackHandler> map = new ConcurrentHashMap<Long, CallbackHandler> ();
 
     private final StatisticsImpl statistics;
 
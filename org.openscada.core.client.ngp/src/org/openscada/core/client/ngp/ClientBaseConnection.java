@@ -26,9 +26,13 @@ import java.net.InetSocketAddress;
 import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.net.ssl.SSLSession;
 
+import org.apache.mina.core.filterchain.IoFilterChain;
+import org.apache.mina.core.filterchain.IoFilterChainBuilder;
 import org.apache.mina.core.future.ConnectFuture;
 import org.apache.mina.core.future.IoFutureListener;
 import org.apache.mina.core.session.IoSession;
@@ -40,6 +44,8 @@ import org.openscada.core.client.ConnectionState;
 import org.openscada.core.client.ConnectionStateListener;
 import org.openscada.core.client.NoConnectionException;
 import org.openscada.core.client.PrivilegeListener;
+import org.openscada.net.mina.SharedConnectorResources;
+import org.openscada.net.mina.WriteCoalescingFilter;
 import org.openscada.protocol.ngp.common.BaseConnection;
 import org.openscada.protocol.ngp.common.FilterChainBuilder;
 import org.openscada.protocol.ngp.common.ProtocolConfigurationFactory;
@@ -78,7 +84,7 @@ public abstract class ClientBaseConnection extends BaseConnection implements Con
 
     private ConnectFuture connectFuture;
 
-    private IoSession session;
+    private volatile IoSession session;
 
     private final StateNotifier stateNotifier;
 
@@ -98,6 +104,15 @@ public abstract class ClientBaseConnection extends BaseConnection implements Con
 
     private volatile boolean disposed;
 
+    private final InboundLanes inboundLanes = new InboundLanes ();
+
+    /**
+     * Held for reading while a lane handles a message, and for writing while
+     * the session is dropped, so that no message of a closed session is
+     * handled after the connection got closed
+     */
+    private final ReadWriteLock inboundLock = new ReentrantReadWriteLock ();
+
     public ClientBaseConnection ( final ProtocolConfigurationFactory protocolConfigurationFactory, final ConnectionInformation connectionInformation ) throws Exception
     {
         super ( connectionInformation );
@@ -106,12 +121,36 @@ public abstract class ClientBaseConnection extends BaseConnection implements Con
 
         this.handler = new ClientConnectionHandler ( this, protocolConfigurationFactory.createConfiguration ( true ) );
 
-        this.connector = new NioSocketConnector ();
+        if ( Boolean.parseBoolean ( System.getProperty ( "org.openscada.core.client.ngp.sharedConnector", "true" ) ) )
+        {
+            // use the I/O processors shared by all connections
+            this.connector = new NioSocketConnector ( SharedConnectorResources.getNioProcessor () );
+        }
+        else
+        {
+            this.connector = new NioSocketConnector ();
+        }
 
         this.chainBuilder = new FilterChainBuilder ( true );
         this.chainBuilder.setLoggerName ( ClientBaseConnection.class.getName () + ".protocol" );
 
-        this.connector.setFilterChainBuilder ( this.chainBuilder );
+        if ( WriteCoalescingFilter.isEnabled () )
+        {
+            final WriteCoalescingFilter coalescingFilter = new WriteCoalescingFilter ();
+            this.connector.setFilterChainBuilder ( new IoFilterChainBuilder () {
+
+                @Override
+                public void buildFilterChain ( final IoFilterChain chain ) throws Exception
+                {
+                    ClientBaseConnection.this.chainBuilder.buildFilterChain ( chain );
+                    WriteCoalescingFilter.install ( chain, coalescingFilter );
+                }
+            } );
+        }
+        else
+        {
+            this.connector.setFilterChainBuilder ( this.chainBuilder );
+        }
         this.connector.setHandler ( this.handler );
 
         this.statistics.setLabel ( STATS_CURRENT_STATE, "Numeric connection state" );
@@ -323,9 +362,18 @@ public abstract class ClientBaseConnection extends BaseConnection implements Con
 
         if ( this.session != null )
         {
-            this.session.close ( true );
-            this.session.removeAttribute ( StatisticsFilter.STATS_KEY );
-            this.session = null;
+            // wait for the lanes to finish the messages they are currently handling
+            this.inboundLock.writeLock ().lock ();
+            try
+            {
+                this.session.close ( true );
+                this.session.removeAttribute ( StatisticsFilter.STATS_KEY );
+                this.session = null;
+            }
+            finally
+            {
+                this.inboundLock.writeLock ().unlock ();
+            }
         }
         setState ( ConnectionState.CLOSED, error );
         onConnectionClosed ();
@@ -408,7 +456,8 @@ public abstract class ClientBaseConnection extends BaseConnection implements Con
     {
         setState ( ConnectionState.LOOKUP, null );
 
-        this.executor.execute ( new Runnable () {
+        // lookups may block, so they must not block the executor of the connection
+        SharedConnectorResources.getLookupExecutor ().execute ( new Runnable () {
             @Override
             public void run ()
             {
@@ -541,7 +590,7 @@ public abstract class ClientBaseConnection extends BaseConnection implements Con
         switchState ( ConnectionState.CONNECTED, null );
     }
 
-    public synchronized void messageReceived ( final IoSession session, final Object message )
+    public void messageReceived ( final IoSession session, final Object message )
     {
         logger.trace ( "Received message: {}", message );
 
@@ -551,14 +600,92 @@ public abstract class ClientBaseConnection extends BaseConnection implements Con
             return;
         }
         this.statistics.changeCurrentValue ( STATS_MESSAGES_RECEIVED, 1 );
-        handleMessage ( message );
+
+        final Object lane = getMessageLane ( message );
+        if ( lane == null )
+        {
+            synchronized ( this )
+            {
+                if ( this.session != session )
+                {
+                    logger.debug ( "Session got closed while waiting for the connection lock" );
+                    return;
+                }
+                handleMessage ( message );
+            }
+        }
+        else
+        {
+            this.inboundLanes.execute ( lane, new Runnable () {
+
+                @Override
+                public void run ()
+                {
+                    handleLaneMessage ( session, message );
+                }
+            } );
+        }
+    }
+
+    private void handleLaneMessage ( final IoSession session, final Object message )
+    {
+        this.inboundLock.readLock ().lock ();
+        try
+        {
+            if ( this.session != session )
+            {
+                logger.debug ( "Dropping message of closed session: {}", message );
+                return;
+            }
+            handleMessage ( message );
+        }
+        finally
+        {
+            this.inboundLock.readLock ().unlock ();
+        }
+    }
+
+    /**
+     * Get the processing lane of an inbound message
+     * <p>
+     * Messages which are assigned to the same lane are handled one after the
+     * other, in the order they were received, but outside of the IO thread and
+     * without holding the connection lock. Messages of different lanes are
+     * handled concurrently. The lane key is compared using
+     * {@link Object#equals(Object)} and the number of different keys must be
+     * small, since lanes are kept for the lifetime of the connection.
+     * </p>
+     * <p>
+     * The default implementation returns <code>null</code> for all messages,
+     * which handles the message in the IO thread while holding the connection
+     * lock. This must be used for all messages that change the state of the
+     * connection.
+     * </p>
+     * <p>
+     * Closing the connection waits until the lanes finished handling their
+     * current messages, and messages of the closed session are dropped
+     * afterwards. So handling a message of a lane must not acquire the
+     * connection lock.
+     * </p>
+     * 
+     * @param message
+     *            the received message
+     * @return the lane key or <code>null</code>
+     * @since 1.1
+     */
+    protected Object getMessageLane ( final Object message )
+    {
+        return null;
     }
 
     /**
      * Handle a message that came in by the current session.
      * <p>
-     * Note that the method is called while holding the lock the connection
-     * itself.
+     * If {@link #getMessageLane(Object)} returned <code>null</code> for the
+     * message, the method is called while holding the lock of the connection
+     * itself. Otherwise it is called from the lane of the message without
+     * holding the connection lock, but the connection does not close while
+     * the method runs.
      * </p>
      * 
      * @param message
@@ -629,6 +756,15 @@ public abstract class ClientBaseConnection extends BaseConnection implements Con
         }
     }
 
+    /**
+     * @return the current session, may be <code>null</code>
+     * @since 1.1
+     */
+    protected IoSession getSession ()
+    {
+        return this.session;
+    }
+
     public SSLSession getSslSession ()
     {
         final IoSession session = this.session;
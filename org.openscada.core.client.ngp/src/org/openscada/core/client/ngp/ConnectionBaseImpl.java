@@ -45,6 +45,7 @@ import org.openscada.core.data.message.SessionAccepted;
 import org.openscada.core.data.message.SessionPrivilegesChanged;
 import org.openscada.core.data.message.SessionRejected;
 import org.openscada.core.ngp.Features;
+import org.openscada.core.ngp.FrameCompressionFilter;
 import org.openscada.core.ngp.MessageSender;
 import org.openscada.core.ngp.ResponseManager;
 import org.openscada.protocol.ngp.common.ProtocolConfigurationFactory;
@@ -63,6 +64,13 @@ public class ConnectionBaseImpl extends ClientBaseConnection
 
     private final static Logger logger = LoggerFactory.getLogger ( ConnectionBaseImpl.class );
 
+    /**
+     * The lane handling responses to requests
+     * 
+     * @since 1.1
+     */
+    protected static final Object LANE_RESPONSES = new Object ();
+
     private final ResponseManager responseManager;
 
     private final MessageSender messageSender = new MessageSender () {
@@ -80,10 +88,12 @@ public class ConnectionBaseImpl extends ClientBaseConnection
 
     private final OpenCallbacksManager callbackManager;
 
+    private boolean frameCompressionRequested;
+
     public ConnectionBaseImpl ( final ProtocolConfigurationFactory protocolConfigurationFactory, final ConnectionInformation connectionInformation ) throws Exception
     {
         super ( protocolConfigurationFactory, connectionInformation );
-        this.responseManager = new ResponseManager ( this.statistics, this.messageSender, this.executor );
+        this.responseManager = new ResponseManager ( this.statistics, this.messageSender, this.executor, this.executor, Long.getLong ( "org.openscada.core.client.ngp.requestTimeout", 0 ) );
         this.callbackHandlerManager = new CallbackHandlerManager ( this.statistics );
         this.callbackManager = new OpenCallbacksManager ( this, this.statistics, this.executor );
         this.callbackFactory = new DefaultCallbackFactory ();
@@ -119,9 +129,34 @@ public class ConnectionBaseImpl extends ClientBaseConnection
         result.put ( Features.FEATURE_SESSION_PRIVILEGES, "true" ); //$NON-NLS-1$
         result.put ( Features.FEATURE_CALLBACKS, "true" ); //$NON-NLS-1$
 
+        this.frameCompressionRequested = isFrameCompression () && FrameCompressionFilter.isSupported ( getSession () );
+        if ( this.frameCompressionRequested )
+        {
+            result.put ( Features.FEATURE_FRAME_COMPRESSION, FrameCompressionFilter.getFeatureValue () );
+        }
+
         return result;
     }
 
+    /**
+     * Check if frame compression should be requested
+     * <p>
+     * Can be set by the connection property <code>frameCompression</code>,
+     * defaults to the system property
+     * <code>org.openscada.core.client.ngp.frameCompression</code>, which
+     * defaults to <code>false</code>.
+     * </p>
+     */
+    private boolean isFrameCompression ()
+    {
+        final String value = this.connectionInformation.getProperties ().get ( "frameCompression" ); //$NON-NLS-1$
+        if ( value != null )
+        {
+            return Boolean.parseBoolean ( value );
+        }
+        return Boolean.getBoolean ( "org.openscada.core.client.ngp.frameCompression" ); //$NON-NLS-1$
+    }
+
     @Override
     protected void onConnectionClosed ()
     {
@@ -134,7 +169,17 @@ public class ConnectionBaseImpl extends ClientBaseConnection
     }
 
     @Override
-    protected synchronized void handleMessage ( final Object message )
+    protected Object getMessageLane ( final Object message )
+    {
+        if ( message instanceof ResponseMessage )
+        {
+            return LANE_RESPONSES;
+        }
+        return super.getMessageLane ( message );
+    }
+
+    @Override
+    protected void handleMessage ( final Object message )
     {
         if ( message instanceof SessionAccepted )
         {
@@ -254,6 +299,13 @@ public class ConnectionBaseImpl extends ClientBaseConnection
     {
         final Map<String, String> properties = message.getProperties ();
 
+        if ( this.frameCompressionRequested && FrameCompressionFilter.getFeatureValue ().equals ( properties.get ( Features.FEATURE_FRAME_COMPRESSION ) ) )
+        {
+            // the server holds back all messages until we activate
+            logger.info ( "Activating frame compression" ); //$NON-NLS-1$
+            FrameCompressionFilter.install ( getSession () ).activate ( getSession () );
+        }
+
         setSessionProperties ( properties );
         switchState ( ConnectionState.BOUND, null );
     }
@@ -288,7 +340,7 @@ public class ConnectionBaseImpl extends ClientBaseConnection
         return this.responseManager.nextRequest ();
     }
 
-    protected synchronized NotifyFuture<ResponseMessage> sendRequestMessage ( final RequestMessage requestMessage )
+    protected NotifyFuture<ResponseMessage> sendRequestMessage ( final RequestMessage requestMessage )
     {
         return this.responseManager.sendRequestMessage ( requestMessage );
     }
@@ -0,0 +1,180 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+
+package org.openscada.core.client.ngp;
+
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.openscada.utils.concurrent.NamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Ordered processing lanes for inbound messages of one connection
+ * <p>
+ * Each lane processes its tasks one after the other, in the order they were
+ * submitted. Different lanes run concurrently on a thread pool which is
+ * shared by all connections. The set of lane keys used by a connection must
+ * be small and bounded since lanes are never removed.
+ * </p>
+ * <p>
+ * A task which fails does not affect the following tasks of its lane. If the
+ * executor rejects a lane, the tasks of the lane are processed by the thread
+ * which submitted them.
+ * </p>
+ */
+class InboundLanes
+{
+    private final static Logger logger = LoggerFactory.getLogger ( InboundLanes.class );
+
+    private static ExecutorService sharedExecutor;
+
+    private final ConcurrentMap<Object, Lane> lanes = new ConcurrentHashMap<Object, Lane> ();
+
+    private final ExecutorService executor;
+
+    public InboundLanes ()
+    {
+        this ( getSharedExecutor () );
+    }
+
+    public InboundLanes ( final ExecutorService executor )
+    {
+        this.executor = executor;
+    }
+
+    private static synchronized ExecutorService getSharedExecutor ()
+    {
+        if ( sharedExecutor == null )
+        {
+            final int threads = Integer.getInteger ( "org.openscada.core.client.ngp.inboundThreads", Runtime.getRuntime ().availableProcessors () );
+            sharedExecutor = Executors.newFixedThreadPool ( Math.max ( 1, threads ), new NamedThreadFactory ( "NGPClientInbound", true ) );
+        }
+        return sharedExecutor;
+    }
+
+    public void execute ( final Object key, final Runnable task )
+    {
+        Lane lane = this.lanes.get ( key );
+        if ( lane == null )
+        {
+            final Lane newLane = new Lane ();
+            lane = this.lanes.putIfAbsent ( key, newLane );
+            if ( lane == null )
+            {
+                lane = newLane;
+            }
+        }
+        lane.offer ( task );
+    }
+
+    private class Lane implements Runnable
+    {
+        private final Queue<Runnable> tasks = new LinkedList<Runnable> ();
+
+        private boolean scheduled;
+
+        public void offer ( final Runnable task )
+        {
+            synchronized ( this )
+            {
+                this.tasks.add ( task );
+                if ( this.scheduled )
+                {
+                    return;
+                }
+                this.scheduled = true;
+            }
+
+            schedule ();
+        }
+
+        private void schedule ()
+        {
+            try
+            {
+                InboundLanes.this.executor.execute ( this );
+            }
+            catch ( final RuntimeException e )
+            {
+                logger.warn ( "Failed to schedule lane. Processing synchronously.", e );
+                while ( processNext () )
+                {
+                    // process until the lane is empty
+                }
+            }
+        }
+
+        @Override
+        public void run ()
+        {
+            if ( processNext () )
+            {
+                // re-schedule instead of looping so that busy lanes do not starve the others
+                schedule ();
+            }
+        }
+
+        /**
+         * Process the next task of the lane
+         * 
+         * @return <code>true</code> if the lane has more tasks,
+         *         <code>false</code> if the lane is no longer scheduled
+         */
+        private boolean processNext ()
+        {
+            final Runnable task;
+            synchronized ( this )
+            {
+                task = this.tasks.poll ();
+                if ( task == null )
+                {
+                    this.scheduled = false;
+                    return false;
+                }
+            }
+
+            try
+            {
+                task.run ();
+            }
+            catch ( final RuntimeException e )
+            {
+                logger.warn ( "Failed to process inbound message", e );
+            }
+
+            synchronized ( this )
+            {
+                if ( this.tasks.isEmpty () )
+                {
+                    this.scheduled = false;
+                    return false;
+                }
+                return true;
+            }
+        }
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+
+package org.openscada.core.client.ngp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class InboundLanesTest
+{
+    private ExecutorService executor;
+
+    @Before
+    public void setup ()
+    {
+        this.executor = Executors.newFixedThreadPool ( 4 );
+    }
+
+    @After
+    public void cleanup ()
+    {
+        this.executor.shutdownNow ();
+    }
+
+    private static Runnable add ( final List<Integer> list, final int value, final CountDownLatch done )
+    {
+        return new Runnable () {
+
+            @Override
+            public void run ()
+            {
+                list.add ( value );
+                done.countDown ();
+            }
+        };
+    }
+
+    private static void assertOrdered ( final List<Integer> list, final int size )
+    {
+        Assert.assertEquals ( size, list.size () );
+        for ( int i = 0; i < size; i++ )
+        {
+            Assert.assertEquals ( Integer.valueOf ( i ), list.get ( i ) );
+        }
+    }
+
+    @Test
+    public void testOrderPerLane () throws Exception
+    {
+        final InboundLanes lanes = new InboundLanes ( this.executor );
+
+        final int count = 10000;
+        final CountDownLatch done = new CountDownLatch ( 3 * count );
+
+        final List<Integer> a = Collections.synchronizedList ( new ArrayList<Integer> () );
+        final List<Integer> b = Collections.synchronizedList ( new ArrayList<Integer> () );
+        final List<Integer> c = Collections.synchronizedList ( new ArrayList<Integer> () );
+
+        for ( int i = 0; i < count; i++ )
+        {
+            lanes.execute ( "a", add ( a, i, done ) );
+            lanes.execute ( "b", add ( b, i, done ) );
+            lanes.execute ( "c", add ( c, i, done ) );
+        }
+
+        Assert.assertTrue ( done.await ( 10, TimeUnit.SECONDS ) );
+
+        assertOrdered ( a, count );
+        assertOrdered ( b, count );
+        assertOrdered ( c, count );
+    }
+
+    @Test
+    public void testLanesRunConcurrently () throws Exception
+    {
+        final InboundLanes lanes = new InboundLanes ( this.executor );
+
+        final CountDownLatch blocked = new CountDownLatch ( 1 );
+        final CountDownLatch release = new CountDownLatch ( 1 );
+        final CountDownLatch otherLane = new CountDownLatch ( 1 );
+        final CountDownLatch sameLane = new CountDownLatch ( 1 );
+
+        lanes.execute ( "a", new Runnable () {
+
+            @Override
+            public void run ()
+            {
+                blocked.countDown ();
+                try
+                {
+                    release.await ();
+                }
+                catch ( final InterruptedException e )
+                {
+                    Thread.currentThread ().interrupt ();
+                }
+            }
+        } );
+        lanes.execute ( "a", new Runnable () {
+
+            @Override
+            public void run ()
+            {
+                sameLane.countDown ();
+            }
+        } );
+
+        Assert.assertTrue ( blocked.await ( 10, TimeUnit.SECONDS ) );
+
+        lanes.execute ( "b", new Runnable () {
+
+            @Override
+            public void run ()
+            {
+                otherLane.countDown ();
+            }
+        } );
+
+        // the other lane is not blocked, the same lane is
+        Assert.assertTrue ( otherLane.await ( 10, TimeUnit.SECONDS ) );
+        Assert.assertEquals ( 1, sameLane.getCount () );
+
+        release.countDown ();
+        Assert.assertTrue ( sameLane.await ( 10, TimeUnit.SECONDS ) );
+    }
+
+    @Test
+    public void testRejected () throws Exception
+    {
+        this.executor.shutdown ();
+
+        final InboundLanes lanes = new InboundLanes ( this.executor );
+
+        final Thread thread = Thread.currentThread ();
+        final List<Integer> list = new ArrayList<Integer> ();
+        final CountDownLatch done = new CountDownLatch ( 100 );
+
+        for ( int i = 0; i < 100; i++ )
+        {
+            final int value = i;
+            lanes.execute ( "a", new Runnable () {
+
+                @Override
+                public void run ()
+                {
+                    Assert.assertSame ( thread, Thread.currentThread () );
+                    list.add ( value );
+                    done.countDown ();
+                }
+            } );
+        }
+
+        // processed synchronously, in order
+        Assert.assertEquals ( 0, done.getCount () );
+        assertOrdered ( list, 100 );
+    }
+
+    @Test
+    public void testFailingTask () throws Exception
+    {
+        final InboundLanes lanes = new InboundLanes ( this.executor );
+
+        final AtomicInteger count = new AtomicInteger ();
+        final CountDownLatch done = new CountDownLatch ( 10 );
+
+        for ( int i = 0; i < 10; i++ )
+        {
+            final int value = i;
+            lanes.execute ( "a", new Runnable () {
+
+                @Override
+                public void run ()
+                {
+                    done.countDown ();
+                    if ( value % 2 == 0 )
+                    {
+                        throw new IllegalStateException ( "Failing task: " + value );
+                    }
+                    count.incrementAndGet ();
+                }
+            } );
+        }
+
+        Assert.assertTrue ( done.await ( 10, TimeUnit.SECONDS ) );
+
+        // the lane continues after a failure and can still be used
+        final CountDownLatch next = new CountDownLatch ( 1 );
+        lanes.execute ( "a", new Runnable () {
+
+            @Override
+            public void run ()
+            {
+                next.countDown ();
+            }
+        } );
+        Assert.assertTrue ( next.await ( 10, TimeUnit.SECONDS ) );
+        Assert.assertEquals ( 5, count.get () );
+    }
+}
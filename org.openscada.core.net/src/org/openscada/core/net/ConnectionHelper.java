@@ -45,6 +45,7 @@ import org.apache.mina.filter.ssl.SslFilter;
 import org.openscada.core.ConnectionInformation;
 import org.openscada.net.mina.GMPPProtocolDecoder;
 import org.openscada.net.mina.GMPPProtocolEncoder;
+import org.openscada.net.mina.WriteCoalescingFilter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -152,6 +153,13 @@ public class ConnectionHelper
             filterChainBuilder.addLast ( "logging", new LoggingFilter () );
         }
 
+        // coalesce small messages into fewer writes
+        final String coalesceWrites = connectionInformation.getProperties ().get ( "coalesceWrites" );
+        if ( coalesceWrites != null ? Boolean.parseBoolean ( coalesceWrites ) : WriteCoalescingFilter.isEnabled () )
+        {
+            filterChainBuilder.addLast ( WriteCoalescingFilter.FILTER_NAME, new WriteCoalescingFilter () );
+        }
+
         // add the main codec
         filterChainBuilder.addLast ( "codec", new ProtocolCodecFilter ( new GMPPProtocolEncoder (), new GMPPProtocolDecoder () ) );
     }
@@ -25,4 +25,11 @@ public interface Features
     public static final String FEATURE_SESSION_PRIVILEGES = "feature.core.session.privileges";
 
     public static final String FEATURE_CALLBACKS = "feature.core.callbacks";
+
+    /**
+     * Compression of the message frames, see {@link FrameCompressionFilter}
+     * 
+     * @since 1.1
+     */
+    public static final String FEATURE_FRAME_COMPRESSION = "feature.core.frameCompression";
 }
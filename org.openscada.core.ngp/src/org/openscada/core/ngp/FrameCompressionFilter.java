@@ -0,0 +1,664 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+
+package org.openscada.core.ngp;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.zip.Adler32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.filterchain.IoFilterChain;
+import org.apache.mina.core.filterchain.IoFilterChain.Entry;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.core.write.DefaultWriteRequest;
+import org.apache.mina.core.write.WriteRequest;
+import org.apache.mina.filter.codec.ProtocolCodecFilter;
+import org.apache.mina.filter.util.WriteRequestFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compresses the frames of a NGP connection
+ * <p>
+ * The filter is placed directly below the protocol codec and wraps each
+ * encoded message into a frame. Messages larger than the threshold are
+ * compressed using deflate with a preset dictionary of common item and
+ * attribute names. Smaller messages, and messages that do not get smaller,
+ * are sent as they are.
+ * </p>
+ * <p>
+ * Compression is negotiated using {@link Features#FEATURE_FRAME_COMPRESSION}
+ * during session creation:
+ * </p>
+ * <ol>
+ * <li>The client requests the feature in the <code>CreateSession</code>
+ * message. The value is {@link #getFeatureValue()}, which identifies the
+ * dictionary and the maximum frame size.</li>
+ * <li>If the server agrees, it installs the filter, sends the
+ * <code>SessionAccepted</code> message unframed, including the feature, and
+ * holds back all further messages.</li>
+ * <li>The client installs the filter and sends an activation frame.</li>
+ * <li>When the server receives the activation frame, it sends the held back
+ * messages and everything after them in frames.</li>
+ * </ol>
+ * <p>
+ * No data may be in transit between the two peers while the filter is
+ * installed. The session handshake guarantees this, since neither side sends
+ * anything between the <code>SessionAccepted</code> message and the
+ * activation.
+ * </p>
+ * <p>
+ * A frame carries at most 4 MiB by default, compressed or not.
+ * Larger messages are split into several frames, which the codec of the peer
+ * joins again. Frames exceeding the limit are rejected by the receiver, so
+ * the limit is part of the feature value and both peers must agree on it.
+ * </p>
+ * 
+ * @since 1.1
+ */
+public class FrameCompressionFilter extends WriteRequestFilter
+{
+    private final static Logger logger = LoggerFactory.getLogger ( FrameCompressionFilter.class );
+
+    private static final String FILTER_NAME = "frameCompression";
+
+    private static final byte TYPE_RAW = 0;
+
+    private static final byte TYPE_DEFLATE = 1;
+
+    private static final byte TYPE_ACTIVATE = 2;
+
+    private static final int HEADER_SIZE = 5;
+
+    /**
+     * The size of the uncompressed length in front of the deflated data
+     */
+    private static final int SIZE_FIELD = 4;
+
+    /**
+     * Deflate can't compress better than about 1032:1, a frame claiming more
+     * is malformed
+     */
+    private static final int MAX_DEFLATE_RATIO = 1032;
+
+    /**
+     * The largest frame accepted, compressed or uncompressed
+     * <p>
+     * Frames are either a batch of coalesced writes (a few KiB) or a single
+     * large message, like the snapshot of a bulk subscription. Both stay well
+     * below this.
+     * </p>
+     */
+    private static final int MAX_FRAME_SIZE = Integer.getInteger ( "org.openscada.core.ngp.frameCompression.maxFrameSize", 4 * 1024 * 1024 );
+
+    /**
+     * The initial size of the buffer holding a partial frame, it grows as
+     * more data arrives
+     */
+    private static final int INITIAL_BUFFER_SIZE = 1024;
+
+    private static final int THRESHOLD = Integer.getInteger ( "org.openscada.core.ngp.frameCompression.threshold", 256 );
+
+    private static final int LEVEL = Integer.getInteger ( "org.openscada.core.ngp.frameCompression.level", Deflater.DEFAULT_COMPRESSION );
+
+    /**
+     * Common names, the most common ones at the end since deflate prefers
+     * close matches
+     */
+    private static final String DEFAULT_DICTIONARY = "org.openscada.da.master.common.block.note.user.timestamp" //
+            + "master.value.manual.reason.user.timestamp.original.value" //
+            + "ae.sum.alarm.ackRequired.ae.sum.alarm.unsafe.ae.sum.alarm.active" //
+            + "sum.ackRequired.sum.manual.sum.blocked.sum.unsafe" //
+            + "error.alarm.manual.blocked.warning.value.original" //
+            + "sumError.sumAlarm.sumManual.sumWarning" //
+            + "timestamp.sum.error.sum.alarm.sum.manual.sum.warning.sum.error.count.sum.alarm.count" //
+            + "connection.error.timestamp.value";
+
+    private static final byte[] DICTIONARY = makeDictionary ();
+
+    private static final String FEATURE_VALUE = makeFeatureValue ( DICTIONARY, MAX_FRAME_SIZE );
+
+    private static final int STATE_PLAIN = 0;
+
+    private static final int STATE_HOLDING = 1;
+
+    private static final int STATE_ACTIVE = 2;
+
+    private int outboundState = STATE_PLAIN;
+
+    private final List<WriteRequest> heldWrites = new LinkedList<WriteRequest> ();
+
+    private NextFilter nextFilter;
+
+    private volatile WriteRequest activationRequest;
+
+    private IoBuffer received;
+
+    private final Deflater deflater = new Deflater ( LEVEL );
+
+    private final Inflater inflater = new Inflater ();
+
+    private boolean disposed;
+
+    private long rawBytes;
+
+    private long wireBytes;
+
+    /**
+     * Get the value of the feature, which identifies the compression method,
+     * the dictionary and the maximum frame size
+     * <p>
+     * Additional names, like common item id prefixes, can be added to the
+     * dictionary using the system property
+     * <code>org.openscada.core.ngp.frameCompression.dictionary</code>. Both
+     * peers have to use the same dictionary, otherwise compression is not
+     * negotiated. The same applies to the maximum frame size, set by the
+     * system property
+     * <code>org.openscada.core.ngp.frameCompression.maxFrameSize</code>.
+     * </p>
+     * 
+     * @return the feature value
+     */
+    public static String getFeatureValue ()
+    {
+        return FEATURE_VALUE;
+    }
+
+    private static byte[] makeDictionary ()
+    {
+        final String additional = System.getProperty ( "org.openscada.core.ngp.frameCompression.dictionary", "" );
+        // the last 32k are used by deflate
+        final byte[] data = ( additional + DEFAULT_DICTIONARY ).getBytes ( Charset.forName ( "UTF-8" ) );
+        if ( data.length <= 32 * 1024 )
+        {
+            return data;
+        }
+        final byte[] result = new byte[32 * 1024];
+        System.arraycopy ( data, data.length - result.length, result, 0, result.length );
+        return result;
+    }
+
+    private static String makeFeatureValue ( final byte[] dictionary, final int maxFrameSize )
+    {
+        final Adler32 adler = new Adler32 ();
+        adler.update ( dictionary );
+        return "deflate/" + Long.toHexString ( adler.getValue () ) + "/" + maxFrameSize;
+    }
+
+    /**
+     * Check if the filter can be installed into the filter chain of the
+     * session
+     * 
+     * @param session
+     *            the session to check
+     * @return <code>true</code> if the chain has a protocol codec
+     */
+    public static boolean isSupported ( final IoSession session )
+    {
+        return session != null && findCodec ( session.getFilterChain () ) != null;
+    }
+
+    private static Entry findCodec ( final IoFilterChain chain )
+    {
+        for ( final Entry entry : chain.getAll () )
+        {
+            if ( entry.getFilter () instanceof ProtocolCodecFilter )
+            {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Install the filter below the codec of the session
+     * <p>
+     * Received data is expected to be framed right after this call. Sent data
+     * is passed on unframed until {@link #hold()} or {@link #activate()} is
+     * called.
+     * </p>
+     * 
+     * @param session
+     *            the session to install the filter to
+     * @return the new filter or <code>null</code> if the chain has no codec
+     */
+    public static FrameCompressionFilter install ( final IoSession session )
+    {
+        final Entry codec = findCodec ( session.getFilterChain () );
+        if ( codec == null )
+        {
+            logger.warn ( "Unable to find protocol codec in chain of {}", session );
+            return null;
+        }
+
+        final FrameCompressionFilter filter = new FrameCompressionFilter ();
+        session.getFilterChain ().addBefore ( codec.getName (), FILTER_NAME, filter );
+        return filter;
+    }
+
+    /**
+     * Hold back all following messages until the peer activates the
+     * compression
+     * <p>
+     * Used by the server after the <code>SessionAccepted</code> message was
+     * sent.
+     * </p>
+     */
+    public synchronized void hold ()
+    {
+        if ( this.outboundState == STATE_PLAIN )
+        {
+            this.outboundState = STATE_HOLDING;
+        }
+    }
+
+    /**
+     * Frame all following messages and tell the peer to do the same
+     * <p>
+     * Used by the client after receiving the <code>SessionAccepted</code>
+     * message. The caller must make sure that no other thread writes to the
+     * session at the same time.
+     * </p>
+     * 
+     * @param session
+     *            the session of the filter
+     */
+    public void activate ( final IoSession session )
+    {
+        final IoBuffer frame = IoBuffer.allocate ( HEADER_SIZE );
+        frame.put ( TYPE_ACTIVATE );
+        frame.putInt ( 0 );
+        frame.flip ();
+
+        synchronized ( this )
+        {
+            this.outboundState = STATE_ACTIVE;
+            this.activationRequest = new DefaultWriteRequest ( frame );
+            this.nextFilter.filterWrite ( session, this.activationRequest );
+        }
+    }
+
+    @Override
+    public synchronized void onPostAdd ( final IoFilterChain parent, final String name, final NextFilter nextFilter ) throws Exception
+    {
+        this.nextFilter = nextFilter;
+    }
+
+    @Override
+    public void onPostRemove ( final IoFilterChain parent, final String name, final NextFilter nextFilter ) throws Exception
+    {
+        dispose ();
+    }
+
+    @Override
+    public void sessionClosed ( final NextFilter nextFilter, final IoSession session ) throws Exception
+    {
+        dispose ();
+        nextFilter.sessionClosed ( session );
+    }
+
+    private void dispose ()
+    {
+        final List<WriteRequest> held;
+
+        synchronized ( this )
+        {
+            if ( this.disposed )
+            {
+                return;
+            }
+            this.disposed = true;
+
+            if ( this.rawBytes > 0 )
+            {
+                logger.debug ( "Frame compression - raw: {} bytes, wire: {} bytes", this.rawBytes, this.wireBytes );
+            }
+
+            held = new ArrayList<WriteRequest> ( this.heldWrites );
+            this.heldWrites.clear ();
+            this.deflater.end ();
+            this.inflater.end ();
+        }
+
+        // nobody will activate them any more
+        for ( final WriteRequest writeRequest : held )
+        {
+            writeRequest.getFuture ().setException ( new IllegalStateException ( "Frame compression was disposed before it got activated" ) );
+        }
+    }
+
+    @Override
+    public void filterWrite ( final NextFilter nextFilter, final IoSession session, final WriteRequest writeRequest ) throws Exception
+    {
+        synchronized ( this )
+        {
+            if ( this.outboundState == STATE_HOLDING && !this.disposed )
+            {
+                this.heldWrites.add ( writeRequest );
+                return;
+            }
+            super.filterWrite ( nextFilter, session, writeRequest );
+        }
+    }
+
+    @Override
+    protected Object doFilterWrite ( final NextFilter nextFilter, final IoSession session, final WriteRequest writeRequest ) throws Exception
+    {
+        final Object message = writeRequest.getMessage ();
+
+        if ( this.outboundState != STATE_ACTIVE || ! ( message instanceof IoBuffer ) )
+        {
+            return null;
+        }
+
+        final IoBuffer data = (IoBuffer)message;
+        if ( !data.hasRemaining () )
+        {
+            // the codec marks the end of a message with an empty buffer
+            return null;
+        }
+
+        if ( this.disposed )
+        {
+            // the session was closed while the write was on its way down, the deflater is gone
+            throw new IllegalStateException ( "Frame compression was disposed, session is closed" );
+        }
+
+        return encode ( data );
+    }
+
+    @Override
+    public void messageSent ( final NextFilter nextFilter, final IoSession session, final WriteRequest writeRequest ) throws Exception
+    {
+        if ( writeRequest == this.activationRequest )
+        {
+            // our own request, nobody above us is waiting for it
+            return;
+        }
+        super.messageSent ( nextFilter, session, writeRequest );
+    }
+
+    /**
+     * Encode the data into frames, splitting it up if it exceeds the maximum
+     * frame size
+     */
+    private IoBuffer encode ( final IoBuffer data )
+    {
+        if ( data.remaining () <= MAX_FRAME_SIZE )
+        {
+            return encodeFrame ( data );
+        }
+
+        final IoBuffer result = IoBuffer.allocate ( data.remaining () + HEADER_SIZE * ( data.remaining () / MAX_FRAME_SIZE + 1 ) ).setAutoExpand ( true );
+        final IoBuffer rest = data.duplicate ();
+        while ( rest.hasRemaining () )
+        {
+            // compressed frames never exceed their uncompressed size
+            result.put ( encodeFrame ( rest.getSlice ( Math.min ( MAX_FRAME_SIZE, rest.remaining () ) ) ) );
+        }
+        result.flip ();
+        return result;
+    }
+
+    private IoBuffer encodeFrame ( final IoBuffer data )
+    {
+        final int size = data.remaining ();
+        this.rawBytes += size;
+
+        if ( size >= THRESHOLD && size > HEADER_SIZE + SIZE_FIELD )
+        {
+            final byte[] input = new byte[size];
+            data.mark ();
+            data.get ( input );
+            data.reset ();
+
+            final byte[] output = deflate ( input );
+            if ( output != null )
+            {
+                final IoBuffer frame = IoBuffer.allocate ( HEADER_SIZE + SIZE_FIELD + output.length );
+                frame.put ( TYPE_DEFLATE );
+                frame.putInt ( SIZE_FIELD + output.length );
+                frame.putInt ( size );
+                frame.put ( output );
+                frame.flip ();
+                this.wireBytes += frame.remaining ();
+                return frame;
+            }
+        }
+
+        final IoBuffer frame = IoBuffer.allocate ( HEADER_SIZE + size );
+        frame.put ( TYPE_RAW );
+        frame.putInt ( size );
+        frame.put ( data.duplicate () );
+        frame.flip ();
+        this.wireBytes += frame.remaining ();
+        return frame;
+    }
+
+    /**
+     * Deflate the data
+     * 
+     * @return the compressed data or <code>null</code> if the data did not get
+     *         smaller
+     */
+    private byte[] deflate ( final byte[] input )
+    {
+        this.deflater.reset ();
+        this.deflater.setDictionary ( DICTIONARY );
+        this.deflater.setInput ( input );
+        this.deflater.finish ();
+
+        // no need to compress if it does not save anything
+        final byte[] output = new byte[input.length - SIZE_FIELD];
+        int len = 0;
+        while ( !this.deflater.finished () )
+        {
+            if ( len == output.length )
+            {
+                return null;
+            }
+            len += this.deflater.deflate ( output, len, output.length - len );
+        }
+
+        final byte[] result = new byte[len];
+        System.arraycopy ( output, 0, result, 0, len );
+        return result;
+    }
+
+    @Override
+    public void messageReceived ( final NextFilter nextFilter, final IoSession session, final Object message ) throws Exception
+    {
+        if ( ! ( message instanceof IoBuffer ) )
+        {
+            nextFilter.messageReceived ( session, message );
+            return;
+        }
+
+        final IoBuffer data = (IoBuffer)message;
+
+        final IoBuffer buffer;
+        if ( this.received == null )
+        {
+            buffer = data;
+        }
+        else
+        {
+            this.received.put ( data );
+            this.received.flip ();
+            buffer = this.received;
+        }
+
+        while ( buffer.remaining () >= HEADER_SIZE )
+        {
+            final int start = buffer.position ();
+            final byte type = buffer.get ( start );
+            final int len = buffer.getInt ( start + 1 );
+
+            // check the header before waiting for (and buffering) the payload
+            checkHeader ( type, len );
+
+            if ( buffer.remaining () < HEADER_SIZE + len )
+            {
+                break;
+            }
+
+            buffer.position ( start + HEADER_SIZE );
+            final IoBuffer payload = buffer.getSlice ( len );
+
+            switch ( type )
+            {
+                case TYPE_RAW:
+                    nextFilter.messageReceived ( session, payload );
+                    break;
+                case TYPE_DEFLATE:
+                    nextFilter.messageReceived ( session, inflate ( payload ) );
+                    break;
+                case TYPE_ACTIVATE:
+                    handleActivate ( nextFilter, session );
+                    break;
+            }
+        }
+
+        // keep the rest for the next call
+        if ( !buffer.hasRemaining () )
+        {
+            this.received = null;
+        }
+        else if ( buffer == this.received )
+        {
+            buffer.compact ();
+        }
+        else
+        {
+            // don't trust the announced length, grow only with the data actually received
+            this.received = IoBuffer.allocate ( Math.max ( INITIAL_BUFFER_SIZE, buffer.remaining () ) ).setAutoExpand ( true );
+            this.received.put ( buffer );
+        }
+    }
+
+    /**
+     * Check a frame header
+     * <p>
+     * This is done as soon as the header is received, so that a malformed or
+     * oversized frame is rejected before its payload gets buffered.
+     * </p>
+     * 
+     * @throws IllegalStateException
+     *             if the header is invalid
+     */
+    private static void checkHeader ( final byte type, final int len )
+    {
+        if ( len < 0 || len > MAX_FRAME_SIZE )
+        {
+            throw new IllegalStateException ( String.format ( "Invalid frame length: %s", len ) );
+        }
+
+        switch ( type )
+        {
+            case TYPE_RAW:
+                break;
+            case TYPE_DEFLATE:
+                if ( len <= SIZE_FIELD )
+                {
+                    throw new IllegalStateException ( String.format ( "Invalid compressed frame length: %s", len ) );
+                }
+                break;
+            case TYPE_ACTIVATE:
+                if ( len != 0 )
+                {
+                    throw new IllegalStateException ( String.format ( "Invalid activation frame length: %s", len ) );
+                }
+                break;
+            default:
+                throw new IllegalStateException ( String.format ( "Invalid frame type: %s", type ) );
+        }
+    }
+
+    private IoBuffer inflate ( final IoBuffer payload ) throws DataFormatException
+    {
+        final int size = payload.getInt ();
+        // check before allocating the output, a small frame must not be able to claim a huge buffer
+        if ( size < 0 || size > MAX_FRAME_SIZE || size > (long)payload.remaining () * MAX_DEFLATE_RATIO )
+        {
+            throw new IllegalStateException ( String.format ( "Invalid uncompressed frame length: %s (compressed: %s)", size, payload.remaining () ) );
+        }
+
+        final byte[] input = new byte[payload.remaining ()];
+        payload.get ( input );
+
+        final byte[] output = new byte[size];
+
+        this.inflater.reset ();
+        this.inflater.setInput ( input );
+
+        int len = 0;
+        while ( len < size && !this.inflater.finished () )
+        {
+            final int n = this.inflater.inflate ( output, len, size - len );
+            if ( n == 0 )
+            {
+                if ( this.inflater.needsDictionary () )
+                {
+                    this.inflater.setDictionary ( DICTIONARY );
+                }
+                else if ( this.inflater.needsInput () )
+                {
+                    throw new DataFormatException ( "Truncated frame" );
+                }
+            }
+            len += n;
+        }
+
+        if ( len != size )
+        {
+            throw new DataFormatException ( String.format ( "Frame size mismatch - expected: %s, actual: %s", size, len ) );
+        }
+
+        return IoBuffer.wrap ( output );
+    }
+
+    private void handleActivate ( final NextFilter nextFilter, final IoSession session ) throws Exception
+    {
+        logger.debug ( "Peer activated frame compression" );
+
+        synchronized ( this )
+        {
+            if ( this.outboundState == STATE_ACTIVE )
+            {
+                return;
+            }
+
+            this.outboundState = STATE_ACTIVE;
+
+            for ( final WriteRequest writeRequest : this.heldWrites )
+            {
+                super.filterWrite ( nextFilter, session, writeRequest );
+            }
+            this.heldWrites.clear ();
+        }
+    }
+}
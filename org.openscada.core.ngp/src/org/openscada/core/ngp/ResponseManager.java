@@ -20,9 +20,13 @@
 
 package org.openscada.core.ngp;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.openscada.core.OperationException;
@@ -34,43 +38,152 @@ import org.openscada.utils.concurrent.ExecutorFuture;
 import org.openscada.utils.concurrent.InstantErrorFuture;
 import org.openscada.utils.concurrent.NotifyFuture;
 
+/**
+ * Correlates responses with open requests
+ * <p>
+ * The manager is thread safe and does not lock. A request is completed
+ * exactly once, by whoever removes it from the request map first (the
+ * response, the timeout, the disconnect or a failure to send the request).
+ * The timeout of a request is cancelled once the request is completed.
+ * </p>
+ */
 public class ResponseManager
 {
+    private static class OpenRequest
+    {
+        private final ExecutorFuture<ResponseMessage> future;
+
+        private ScheduledFuture<?> timeoutFuture;
+
+        private boolean completed;
+
+        public OpenRequest ( final ExecutorFuture<ResponseMessage> future )
+        {
+            this.future = future;
+        }
+
+        public ExecutorFuture<ResponseMessage> getFuture ()
+        {
+            return this.future;
+        }
+
+        public synchronized void setTimeoutFuture ( final ScheduledFuture<?> timeoutFuture )
+        {
+            if ( this.completed )
+            {
+                // the request was completed before the timeout was set
+                timeoutFuture.cancel ( false );
+            }
+            else
+            {
+                this.timeoutFuture = timeoutFuture;
+            }
+        }
+
+        /**
+         * Mark the request completed and cancel its timeout
+         */
+        public synchronized void completed ()
+        {
+            this.completed = true;
+            if ( this.timeoutFuture != null )
+            {
+                this.timeoutFuture.cancel ( false );
+                this.timeoutFuture = null;
+            }
+        }
+    }
 
     private static final Object STATS_OPEN_REQUESTS = new Object ();
 
-    private final Map<Long, ExecutorFuture<ResponseMessage>> requestMap = new HashMap<Long, ExecutorFuture<ResponseMessage>> ();
+    private final ConcurrentMap<Long, OpenRequest> requestMap = new ConcurrentHashMap<Long, OpenRequest> ();
+
+    private final AtomicLong openRequests = new AtomicLong ();
 
     private final StatisticsImpl statistics;
 
-    private boolean connected;
+    private volatile boolean connected;
 
     private final MessageSender messageSender;
 
     private final Executor executor;
 
+    private final ScheduledExecutorService timeoutExecutor;
+
+    private final long timeout;
+
     private final AtomicLong sequenceNumber = new AtomicLong ();
 
     public ResponseManager ( final StatisticsImpl statistics, final MessageSender messageSender, final Executor executor )
+    {
+        this ( statistics, messageSender, executor, null, 0 );
+    }
+
+    /**
+     * Create a new response manager with request timeouts
+     * 
+     * @param timeoutExecutor
+     *            the executor used to time out requests, may be
+     *            <code>null</code> if no timeout is used
+     * @param timeout
+     *            the time in milliseconds after which an open request is
+     *            failed, <code>0</code> or less for no timeout
+     * @since 1.1
+     */
+    public ResponseManager ( final StatisticsImpl statistics, final MessageSender messageSender, final Executor executor, final ScheduledExecutorService timeoutExecutor, final long timeout )
     {
         this.statistics = statistics;
         this.messageSender = messageSender;
         this.executor = executor;
+        this.timeoutExecutor = timeoutExecutor;
+        this.timeout = timeoutExecutor != null ? timeout : 0;
 
         this.statistics.setLabel ( STATS_OPEN_REQUESTS, "Open requests" ); //$NON-NLS-1$
     }
 
+    /**
+     * Remove the request from the map if it is still mapped to the provided
+     * request
+     * 
+     * @return <code>true</code> if the caller owns the request now
+     */
+    private boolean removeRequest ( final Long requestId, final OpenRequest request )
+    {
+        if ( this.requestMap.remove ( requestId, request ) )
+        {
+            removed ( request );
+            return true;
+        }
+        return false;
+    }
+
+    private void removed ( final OpenRequest request )
+    {
+        request.completed ();
+        this.statistics.setCurrentValue ( STATS_OPEN_REQUESTS, this.openRequests.decrementAndGet () ); // update info
+    }
+
     public void handleResponse ( final ResponseMessage message )
     {
-        final ExecutorFuture<ResponseMessage> request = this.requestMap.remove ( message.getResponse ().getRequest ().getRequestId () );
+        final Long requestId = message.getResponse ().getRequest ().getRequestId ();
+        final OpenRequest request = this.requestMap.remove ( requestId );
 
         if ( request != null )
         {
-            this.statistics.setCurrentValue ( STATS_OPEN_REQUESTS, this.requestMap.size () ); // update info
-            request.asyncSetResult ( message );
+            removed ( request );
+            request.getFuture ().asyncSetResult ( message );
         }
     }
 
+    /**
+     * @return the number of requests waiting for a response
+     * @since 1.1
+     */
+    public int getOpenRequestCount ()
+    {
+        return this.requestMap.size ();
+    }
+
     public void connected ()
     {
         this.connected = true;
@@ -80,11 +193,13 @@ public class ResponseManager
     {
         this.connected = false;
         // all operations got cancelled
-        for ( final ExecutorFuture<ResponseMessage> request : this.requestMap.values () )
+        for ( final Map.Entry<Long, OpenRequest> entry : this.requestMap.entrySet () )
         {
-            request.asyncSetError ( new OperationException ( "Operation was cancelled" ) );
+            if ( removeRequest ( entry.getKey (), entry.getValue () ) )
+            {
+                entry.getValue ().getFuture ().asyncSetError ( new OperationException ( "Operation was cancelled" ) );
+            }
         }
-        this.requestMap.clear ();
     }
 
     public NotifyFuture<ResponseMessage> sendRequestMessage ( final RequestMessage requestMessage )
@@ -100,12 +215,41 @@ public class ResponseManager
             return new InstantErrorFuture<ResponseMessage> ( new IllegalStateException ( "Connection is not conected" ) );
         }
 
-        this.messageSender.sendMessage ( requestMessage );
-
-        final long requestId = request.getRequestId ();
+        final Long requestId = request.getRequestId ();
         final ExecutorFuture<ResponseMessage> result = new ExecutorFuture<ResponseMessage> ( this.executor );
-        this.requestMap.put ( requestId, result );
-        this.statistics.setCurrentValue ( STATS_OPEN_REQUESTS, this.requestMap.size () ); // update info
+        final OpenRequest openRequest = new OpenRequest ( result );
+
+        // register before sending, the response might be faster than we are
+        this.requestMap.put ( requestId, openRequest );
+        this.statistics.setCurrentValue ( STATS_OPEN_REQUESTS, this.openRequests.incrementAndGet () ); // update info
+
+        if ( this.timeout > 0 )
+        {
+            openRequest.setTimeoutFuture ( this.timeoutExecutor.schedule ( new Runnable () {
+
+                @Override
+                public void run ()
+                {
+                    if ( removeRequest ( requestId, openRequest ) )
+                    {
+                        result.asyncSetError ( new OperationException ( String.format ( "Operation timed out after %s ms", ResponseManager.this.timeout ) ) );
+                    }
+                }
+            }, this.timeout, TimeUnit.MILLISECONDS ) );
+        }
+
+        try
+        {
+            this.messageSender.sendMessage ( requestMessage );
+        }
+        catch ( final RuntimeException e )
+        {
+            // no response will ever come
+            if ( removeRequest ( requestId, openRequest ) )
+            {
+                result.asyncSetError ( e );
+            }
+        }
 
         return result;
     }
@@ -0,0 +1,414 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+
+package org.openscada.core.ngp;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.filterchain.IoFilter.NextFilter;
+import org.apache.mina.core.future.DefaultWriteFuture;
+import org.apache.mina.core.write.DefaultWriteRequest;
+import org.apache.mina.core.write.WriteRequest;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FrameCompressionFilterTest
+{
+    private static final int MAX_FRAME_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * Records what a filter passes on to the next filter
+     */
+    private static class Recorder implements InvocationHandler
+    {
+        private final List<Object> received = new ArrayList<Object> ();
+
+        private final List<WriteRequest> written = new ArrayList<WriteRequest> ();
+
+        private final List<WriteRequest> sent = new ArrayList<WriteRequest> ();
+
+        private final NextFilter nextFilter = (NextFilter)Proxy.newProxyInstance ( NextFilter.class.getClassLoader (), new Class<?>[] { NextFilter.class }, this );
+
+        @Override
+        public Object invoke ( final Object proxy, final Method method, final Object[] args ) throws Throwable
+        {
+            if ( "messageReceived".equals ( method.getName () ) )
+            {
+                this.received.add ( args[1] );
+            }
+            else if ( "filterWrite".equals ( method.getName () ) )
+            {
+                this.written.add ( (WriteRequest)args[1] );
+            }
+            else if ( "messageSent".equals ( method.getName () ) )
+            {
+                this.sent.add ( (WriteRequest)args[1] );
+            }
+            return null;
+        }
+
+        /**
+         * @return everything written, consumes the written requests
+         */
+        public byte[] takeWritten ()
+        {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream ();
+            for ( final WriteRequest request : this.written )
+            {
+                append ( out, (IoBuffer)request.getMessage () );
+            }
+            this.written.clear ();
+            return out.toByteArray ();
+        }
+
+        /**
+         * @return everything received, consumes the received messages
+         */
+        public byte[] takeReceived ()
+        {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream ();
+            for ( final Object message : this.received )
+            {
+                append ( out, (IoBuffer)message );
+            }
+            this.received.clear ();
+            return out.toByteArray ();
+        }
+
+        private static void append ( final ByteArrayOutputStream out, final IoBuffer buffer )
+        {
+            final byte[] data = new byte[buffer.remaining ()];
+            buffer.duplicate ().get ( data );
+            out.write ( data, 0, data.length );
+        }
+    }
+
+    private FrameCompressionFilter sender;
+
+    private Recorder senderNext;
+
+    private FrameCompressionFilter receiver;
+
+    private Recorder receiverNext;
+
+    @Before
+    public void setup () throws Exception
+    {
+        this.sender = new FrameCompressionFilter ();
+        this.senderNext = new Recorder ();
+        this.sender.onPostAdd ( null, "frameCompression", this.senderNext.nextFilter );
+
+        this.receiver = new FrameCompressionFilter ();
+        this.receiverNext = new Recorder ();
+        this.receiver.onPostAdd ( null, "frameCompression", this.receiverNext.nextFilter );
+    }
+
+    private void write ( final FrameCompressionFilter filter, final Recorder next, final byte[] data ) throws Exception
+    {
+        filter.filterWrite ( next.nextFilter, null, new DefaultWriteRequest ( IoBuffer.wrap ( data ) ) );
+    }
+
+    private void receive ( final FrameCompressionFilter filter, final Recorder next, final byte[] data ) throws Exception
+    {
+        filter.messageReceived ( next.nextFilter, null, IoBuffer.wrap ( data ) );
+    }
+
+    /**
+     * Activate the sender and pass the activation frame to the receiver
+     */
+    private void activate () throws Exception
+    {
+        this.sender.activate ( null );
+        final byte[] activation = this.senderNext.takeWritten ();
+        Assert.assertTrue ( Arrays.equals ( new byte[] { 2, 0, 0, 0, 0 }, activation ) );
+
+        receive ( this.receiver, this.receiverNext, activation );
+        Assert.assertTrue ( this.receiverNext.received.isEmpty () );
+    }
+
+    private static byte[] text ( final int size )
+    {
+        final byte[] pattern = "value.timestamp.error.alarm.sum.manual.".getBytes ();
+        final byte[] result = new byte[size];
+        for ( int i = 0; i < size; i++ )
+        {
+            result[i] = pattern[i % pattern.length];
+        }
+        return result;
+    }
+
+    private static byte[] random ( final int size )
+    {
+        final byte[] result = new byte[size];
+        new Random ( 42 ).nextBytes ( result );
+        return result;
+    }
+
+    private static byte[] frame ( final int type, final int len, final byte... payload )
+    {
+        final IoBuffer buffer = IoBuffer.allocate ( 5 + payload.length );
+        buffer.put ( (byte)type );
+        buffer.putInt ( len );
+        buffer.put ( payload );
+        buffer.flip ();
+        final byte[] result = new byte[buffer.remaining ()];
+        buffer.get ( result );
+        return result;
+    }
+
+    @Test
+    public void testPlain () throws Exception
+    {
+        final byte[] data = text ( 1000 );
+        write ( this.sender, this.senderNext, data );
+
+        // not activated, passed on as it is
+        Assert.assertTrue ( Arrays.equals ( data, this.senderNext.takeWritten () ) );
+    }
+
+    @Test
+    public void testRawFrame () throws Exception
+    {
+        activate ();
+
+        final byte[] data = text ( 100 );
+        write ( this.sender, this.senderNext, data );
+
+        final byte[] wire = this.senderNext.takeWritten ();
+        Assert.assertEquals ( 0, wire[0] );
+        Assert.assertEquals ( 5 + data.length, wire.length );
+
+        receive ( this.receiver, this.receiverNext, wire );
+        Assert.assertTrue ( Arrays.equals ( data, this.receiverNext.takeReceived () ) );
+    }
+
+    @Test
+    public void testDeflateFrame () throws Exception
+    {
+        activate ();
+
+        final byte[] data = text ( 10000 );
+        write ( this.sender, this.senderNext, data );
+
+        final byte[] wire = this.senderNext.takeWritten ();
+        Assert.assertEquals ( 1, wire[0] );
+        Assert.assertTrue ( wire.length < data.length / 10 );
+
+        receive ( this.receiver, this.receiverNext, wire );
+        Assert.assertTrue ( Arrays.equals ( data, this.receiverNext.takeReceived () ) );
+    }
+
+    @Test
+    public void testIncompressible () throws Exception
+    {
+        activate ();
+
+        final byte[] data = random ( 10000 );
+        write ( this.sender, this.senderNext, data );
+
+        // does not get smaller, so it is sent raw
+        final byte[] wire = this.senderNext.takeWritten ();
+        Assert.assertEquals ( 0, wire[0] );
+
+        receive ( this.receiver, this.receiverNext, wire );
+        Assert.assertTrue ( Arrays.equals ( data, this.receiverNext.takeReceived () ) );
+    }
+
+    @Test
+    public void testEmptyBuffer () throws Exception
+    {
+        activate ();
+
+        // the end of message marker of the codec is not framed
+        write ( this.sender, this.senderNext, new byte[0] );
+        Assert.assertEquals ( 1, this.senderNext.written.size () );
+        Assert.assertEquals ( 0, ( (IoBuffer)this.senderNext.written.get ( 0 ).getMessage () ).remaining () );
+    }
+
+    @Test
+    public void testPartialReads () throws Exception
+    {
+        activate ();
+
+        final ByteArrayOutputStream expected = new ByteArrayOutputStream ();
+        for ( final byte[] data : new byte[][] { text ( 100 ), text ( 5000 ), random ( 3000 ), text ( 1 ) } )
+        {
+            expected.write ( data, 0, data.length );
+            write ( this.sender, this.senderNext, data );
+        }
+        final byte[] wire = this.senderNext.takeWritten ();
+
+        // one byte at a time, splitting every header and payload
+        for ( final byte b : wire )
+        {
+            receive ( this.receiver, this.receiverNext, new byte[] { b } );
+        }
+        Assert.assertTrue ( Arrays.equals ( expected.toByteArray (), this.receiverNext.takeReceived () ) );
+
+        // several frames in one read, the last one split
+        final int split = wire.length - 10;
+        receive ( this.receiver, this.receiverNext, Arrays.copyOfRange ( wire, 0, split ) );
+        receive ( this.receiver, this.receiverNext, Arrays.copyOfRange ( wire, split, wire.length ) );
+        Assert.assertTrue ( Arrays.equals ( expected.toByteArray (), this.receiverNext.takeReceived () ) );
+    }
+
+    @Test
+    public void testLargeMessage () throws Exception
+    {
+        activate ();
+
+        final byte[] data = random ( 2 * MAX_FRAME_SIZE + 100 );
+        write ( this.sender, this.senderNext, data );
+
+        final byte[] wire = this.senderNext.takeWritten ();
+
+        // split into frames which stay within the limit
+        final IoBuffer buffer = IoBuffer.wrap ( wire );
+        int frames = 0;
+        while ( buffer.hasRemaining () )
+        {
+            buffer.get ();
+            final int len = buffer.getInt ();
+            Assert.assertTrue ( len <= MAX_FRAME_SIZE );
+            buffer.position ( buffer.position () + len );
+            frames++;
+        }
+        Assert.assertEquals ( 3, frames );
+
+        receive ( this.receiver, this.receiverNext, wire );
+        Assert.assertTrue ( Arrays.equals ( data, this.receiverNext.takeReceived () ) );
+    }
+
+    @Test ( expected = IllegalStateException.class )
+    public void testInvalidType () throws Exception
+    {
+        receive ( this.receiver, this.receiverNext, frame ( 3, 0 ) );
+    }
+
+    @Test ( expected = IllegalStateException.class )
+    public void testNegativeLength () throws Exception
+    {
+        receive ( this.receiver, this.receiverNext, frame ( 0, -1 ) );
+    }
+
+    @Test ( expected = IllegalStateException.class )
+    public void testOversizedFrame () throws Exception
+    {
+        // rejected on the header alone, before the payload arrives
+        receive ( this.receiver, this.receiverNext, frame ( 0, MAX_FRAME_SIZE + 1 ) );
+    }
+
+    @Test ( expected = IllegalStateException.class )
+    public void testInvalidActivation () throws Exception
+    {
+        receive ( this.receiver, this.receiverNext, frame ( 2, 1, (byte)0 ) );
+    }
+
+    @Test ( expected = IllegalStateException.class )
+    public void testShortDeflateFrame () throws Exception
+    {
+        receive ( this.receiver, this.receiverNext, frame ( 1, 4, (byte)0, (byte)0, (byte)0, (byte)0 ) );
+    }
+
+    @Test ( expected = IllegalStateException.class )
+    public void testDeflateRatio () throws Exception
+    {
+        // a tiny frame claiming a huge uncompressed size
+        receive ( this.receiver, this.receiverNext, frame ( 1, 5, (byte)0, (byte)0x10, (byte)0, (byte)0, (byte)0 ) );
+    }
+
+    @Test
+    public void testHoldAndActivate () throws Exception
+    {
+        // the server holds everything after the session accepted message
+        this.receiver.hold ();
+
+        final byte[] data1 = text ( 100 );
+        final byte[] data2 = text ( 5000 );
+        write ( this.receiver, this.receiverNext, data1 );
+        write ( this.receiver, this.receiverNext, data2 );
+        Assert.assertTrue ( this.receiverNext.written.isEmpty () );
+
+        // the client activates
+        this.sender.activate ( null );
+        final WriteRequest activation = this.senderNext.written.get ( 0 );
+        receive ( this.receiver, this.receiverNext, this.senderNext.takeWritten () );
+
+        // the held messages are sent framed, in order
+        final byte[] wire = this.receiverNext.takeWritten ();
+        Assert.assertEquals ( 0, wire[0] );
+        receive ( this.sender, this.senderNext, wire );
+
+        final ByteArrayOutputStream expected = new ByteArrayOutputStream ();
+        expected.write ( data1, 0, data1.length );
+        expected.write ( data2, 0, data2.length );
+        Assert.assertTrue ( Arrays.equals ( expected.toByteArray (), this.senderNext.takeReceived () ) );
+
+        // the activation frame is our own, nobody above waits for it
+        this.sender.messageSent ( this.senderNext.nextFilter, null, activation );
+        Assert.assertTrue ( this.senderNext.sent.isEmpty () );
+    }
+
+    @Test
+    public void testDisposeFailsHeldWrites () throws Exception
+    {
+        this.receiver.hold ();
+
+        final WriteRequest request = new DefaultWriteRequest ( IoBuffer.wrap ( text ( 100 ) ), new DefaultWriteFuture ( null ) );
+        this.receiver.filterWrite ( this.receiverNext.nextFilter, null, request );
+
+        this.receiver.sessionClosed ( this.receiverNext.nextFilter, null );
+
+        Assert.assertTrue ( request.getFuture ().getException () instanceof IllegalStateException );
+        Assert.assertTrue ( this.receiverNext.written.isEmpty () );
+    }
+
+    @Test
+    public void testWriteAfterDispose () throws Exception
+    {
+        activate ();
+
+        this.sender.sessionClosed ( this.senderNext.nextFilter, null );
+
+        try
+        {
+            write ( this.sender, this.senderNext, text ( 1000 ) );
+            Assert.fail ( "Write must fail" );
+        }
+        catch ( final IllegalStateException e )
+        {
+            // expected, instead of running into the ended deflater
+        }
+        Assert.assertTrue ( this.senderNext.written.isEmpty () );
+
+        // closing twice is fine
+        this.sender.sessionClosed ( this.senderNext.nextFilter, null );
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+
+package org.openscada.core.ngp;
+
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openscada.core.data.CallbackRequest;
+import org.openscada.core.data.CallbackResponse;
+import org.openscada.core.data.RequestMessage;
+import org.openscada.core.data.Response;
+import org.openscada.core.data.ResponseMessage;
+import org.openscada.core.data.message.RequestCallbacks;
+import org.openscada.core.data.message.RespondCallbacks;
+import org.openscada.core.info.StatisticsImpl;
+import org.openscada.utils.concurrent.DirectExecutor;
+import org.openscada.utils.concurrent.NotifyFuture;
+
+public class ResponseManagerTest
+{
+    /**
+     * Keeps the futures of all scheduled timeouts
+     */
+    private static class TimeoutExecutor extends ScheduledThreadPoolExecutor
+    {
+        private final List<ScheduledFuture<?>> timeouts = new LinkedList<ScheduledFuture<?>> ();
+
+        public TimeoutExecutor ()
+        {
+            super ( 1 );
+        }
+
+        @Override
+        public synchronized ScheduledFuture<?> schedule ( final Runnable command, final long delay, final TimeUnit unit )
+        {
+            final ScheduledFuture<?> future = super.schedule ( command, delay, unit );
+            this.timeouts.add ( future );
+            return future;
+        }
+
+        public synchronized ScheduledFuture<?> getLastTimeout ()
+        {
+            return this.timeouts.get ( this.timeouts.size () - 1 );
+        }
+    }
+
+    private static class Sender implements MessageSender
+    {
+        private final List<Object> messages = new LinkedList<Object> ();
+
+        private RuntimeException error;
+
+        @Override
+        public void sendMessage ( final Object message )
+        {
+            if ( this.error != null )
+            {
+                throw this.error;
+            }
+            this.messages.add ( message );
+        }
+    }
+
+    private TimeoutExecutor timeoutExecutor;
+
+    private Sender sender;
+
+    private ResponseManager manager;
+
+    @Before
+    public void setup ()
+    {
+        this.timeoutExecutor = new TimeoutExecutor ();
+        this.sender = new Sender ();
+        this.manager = new ResponseManager ( new StatisticsImpl (), this.sender, DirectExecutor.INSTANCE, this.timeoutExecutor, 60 * 1000 );
+        this.manager.connected ();
+    }
+
+    @After
+    public void cleanup ()
+    {
+        this.timeoutExecutor.shutdownNow ();
+    }
+
+    private RequestMessage makeRequest ()
+    {
+        return new RequestCallbacks ( this.manager.nextRequest (), 0L, Collections.<CallbackRequest> emptyList (), 1000L );
+    }
+
+    private static ResponseMessage makeResponse ( final RequestMessage request )
+    {
+        return new RespondCallbacks ( new Response ( request.getRequest () ), Collections.<CallbackResponse> emptyList (), null );
+    }
+
+    @Test
+    public void testResponse () throws Exception
+    {
+        final RequestMessage request = makeRequest ();
+        final NotifyFuture<ResponseMessage> future = this.manager.sendRequestMessage ( request );
+
+        Assert.assertEquals ( 1, this.sender.messages.size () );
+        Assert.assertEquals ( 1, this.manager.getOpenRequestCount () );
+
+        final ResponseMessage response = makeResponse ( request );
+        this.manager.handleResponse ( response );
+
+        Assert.assertSame ( response, future.get ( 1, TimeUnit.SECONDS ) );
+        Assert.assertEquals ( 0, this.manager.getOpenRequestCount () );
+        Assert.assertTrue ( this.timeoutExecutor.getLastTimeout ().isCancelled () );
+
+        // a second response is ignored
+        this.manager.handleResponse ( makeResponse ( request ) );
+    }
+
+    @Test
+    public void testDisconnected () throws Exception
+    {
+        final NotifyFuture<ResponseMessage> future = this.manager.sendRequestMessage ( makeRequest () );
+
+        this.manager.disconnected ();
+
+        Assert.assertEquals ( 0, this.manager.getOpenRequestCount () );
+        Assert.assertTrue ( this.timeoutExecutor.getLastTimeout ().isCancelled () );
+        try
+        {
+            future.get ( 1, TimeUnit.SECONDS );
+            Assert.fail ( "Request must fail" );
+        }
+        catch ( final ExecutionException e )
+        {
+        }
+
+        // not connected anymore
+        try
+        {
+            this.manager.sendRequestMessage ( makeRequest () ).get ( 1, TimeUnit.SECONDS );
+            Assert.fail ( "Request must fail" );
+        }
+        catch ( final ExecutionException e )
+        {
+            Assert.assertEquals ( 1, this.sender.messages.size () );
+        }
+    }
+
+    @Test
+    public void testTimeout () throws Exception
+    {
+        this.manager = new ResponseManager ( new StatisticsImpl (), this.sender, DirectExecutor.INSTANCE, this.timeoutExecutor, 50 );
+        this.manager.connected ();
+
+        final NotifyFuture<ResponseMessage> future = this.manager.sendRequestMessage ( makeRequest () );
+        try
+        {
+            future.get ( 10, TimeUnit.SECONDS );
+            Assert.fail ( "Request must time out" );
+        }
+        catch ( final ExecutionException e )
+        {
+        }
+        Assert.assertEquals ( 0, this.manager.getOpenRequestCount () );
+    }
+
+    @Test
+    public void testSendFailure () throws Exception
+    {
+        final IllegalStateException error = new IllegalStateException ( "Failed to send" );
+        this.sender.error = error;
+
+        final NotifyFuture<ResponseMessage> future = this.manager.sendRequestMessage ( makeRequest () );
+
+        Assert.assertEquals ( 0, this.manager.getOpenRequestCount () );
+        Assert.assertTrue ( this.timeoutExecutor.getLastTimeout ().isCancelled () );
+        try
+        {
+            future.get ( 1, TimeUnit.SECONDS );
+            Assert.fail ( "Request must fail" );
+        }
+        catch ( final ExecutionException e )
+        {
+            Assert.assertSame ( error, e.getCause () );
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.core.server.common;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.openscada.sec.AuthorizationReply;
+import org.openscada.sec.callback.CallbackHandler;
+import org.openscada.sec.callback.PropertiesCredentialsCallback;
+
+/**
+ * Caches successful logins for a short time
+ * <p>
+ * Only logins using a plain {@link PropertiesCredentialsCallback} are cached,
+ * since only then everything the authorization can see is contained in the
+ * session properties. The key covers all session properties, so a cached
+ * login is only used for exactly the same properties. The properties are
+ * only kept as a hash.
+ * </p>
+ */
+class LoginCache
+{
+    private static final Charset UTF8 = Charset.forName ( "UTF-8" );
+
+    private static final int PURGE_SIZE = 1000;
+
+    private static class Entry
+    {
+        private final AuthorizationReply reply;
+
+        private final long expires;
+
+        public Entry ( final AuthorizationReply reply, final long expires )
+        {
+            this.reply = reply;
+            this.expires = expires;
+        }
+    }
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry> ();
+
+    private final long timeout;
+
+    /**
+     * @param timeout
+     *            the time in milliseconds a login is cached, zero or less
+     *            disables the cache
+     */
+    public LoginCache ( final long timeout )
+    {
+        this.timeout = timeout;
+    }
+
+    /**
+     * Make the cache key of a login
+     * 
+     * @return the key or <code>null</code> if the login must not be cached
+     */
+    public String makeKey ( final Properties properties, final CallbackHandler callbackHandler )
+    {
+        if ( this.timeout <= 0 || properties == null || callbackHandler == null || callbackHandler.getClass () != PropertiesCredentialsCallback.class )
+        {
+            // the authorization may depend on more than the properties
+            return null;
+        }
+
+        final SortedMap<String, String> values = new TreeMap<String, String> ();
+        for ( final Map.Entry<Object, Object> entry : properties.entrySet () )
+        {
+            values.put ( String.valueOf ( entry.getKey () ), String.valueOf ( entry.getValue () ) );
+        }
+
+        try
+        {
+            final MessageDigest md = MessageDigest.getInstance ( "SHA-256" );
+            update ( md, callbackHandler.getClass ().getName () );
+            for ( final Map.Entry<String, String> entry : values.entrySet () )
+            {
+                update ( md, entry.getKey () );
+                update ( md, entry.getValue () );
+            }
+
+            final StringBuilder sb = new StringBuilder ();
+            for ( final byte b : md.digest () )
+            {
+                sb.append ( String.format ( "%02x", b & 0xFF ) );
+            }
+            return sb.toString ();
+        }
+        catch ( final NoSuchAlgorithmException e )
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Add a length prefixed string to the digest, so that the boundaries
+     * between the strings are part of the key
+     */
+    private static void update ( final MessageDigest md, final String value )
+    {
+        final byte[] data = value.getBytes ( UTF8 );
+        md.update ( (byte) ( data.length >>> 24 ) );
+        md.update ( (byte) ( data.length >>> 16 ) );
+        md.update ( (byte) ( data.length >>> 8 ) );
+        md.update ( (byte)data.length );
+        md.update ( data );
+    }
+
+    public AuthorizationReply get ( final String key )
+    {
+        if ( key == null )
+        {
+            return null;
+        }
+
+        final Entry entry = this.entries.get ( key );
+        if ( entry == null )
+        {
+            return null;
+        }
+        if ( entry.expires - System.currentTimeMillis () <= 0 )
+        {
+            this.entries.remove ( key, entry );
+            return null;
+        }
+        return entry.reply;
+    }
+
+    public void put ( final String key, final AuthorizationReply reply )
+    {
+        if ( key == null || reply == null )
+        {
+            return;
+        }
+
+        final long now = System.currentTimeMillis ();
+        if ( this.entries.size () >= PURGE_SIZE )
+        {
+            purge ( now );
+        }
+        this.entries.put ( key, new Entry ( reply, now + this.timeout ) );
+    }
+
+    private void purge ( final long now )
+    {
+        final Iterator<Map.Entry<String, Entry>> i = this.entries.entrySet ().iterator ();
+        while ( i.hasNext () )
+        {
+            if ( i.next ().getValue ().expires - now <= 0 )
+            {
+                i.remove ();
+            }
+        }
+    }
+
+    public void clear ()
+    {
+        this.entries.clear ();
+    }
+}
@@ -0,0 +1,337 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.core.server.common;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openscada.sec.AuthenticationException;
+import org.openscada.sec.StatusCodes;
+import org.openscada.sec.UserInformation;
+import org.openscada.utils.concurrent.AbstractFuture;
+import org.openscada.utils.concurrent.FutureListener;
+import org.openscada.utils.concurrent.InstantErrorFuture;
+import org.openscada.utils.concurrent.NamedThreadFactory;
+import org.openscada.utils.concurrent.NotifyFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs logins on a bounded executor instead of the calling I/O thread
+ * <p>
+ * Only a limited number of logins wait for execution. Further logins are
+ * rejected right away, so that a burst of reconnecting clients does not pile
+ * up work which the clients have long given up on. The rate at which logins
+ * are started can be limited as well.
+ * </p>
+ * <p>
+ * Without threads of its own the pipeline runs logins on the calling thread.
+ * Since that usually is an I/O thread, logins exceeding the rate limit are
+ * then rejected instead of delayed.
+ * </p>
+ * <p>
+ * The login task only has to start the login. Asynchronous parts, like
+ * callbacks to the client, complete on whatever thread they complete.
+ * </p>
+ * 
+ * @since 1.1
+ */
+public class LoginPipeline
+{
+    private final static Logger logger = LoggerFactory.getLogger ( LoginPipeline.class );
+
+    private static LoginPipeline defaultInstance;
+
+    private final ThreadPoolExecutor executor;
+
+    private final long interval;
+
+    private final long burst;
+
+    private long nextPermit;
+
+    private final AtomicLong started = new AtomicLong ();
+
+    private final AtomicLong rejected = new AtomicLong ();
+
+    private static class LoginFuture extends AbstractFuture<UserInformation>
+    {
+        public void forward ( final NotifyFuture<UserInformation> future )
+        {
+            future.addListener ( new FutureListener<UserInformation> () {
+
+                @Override
+                public void complete ( final Future<UserInformation> future )
+                {
+                    try
+                    {
+                        setResult ( future.get () );
+                    }
+                    catch ( final ExecutionException e )
+                    {
+                        setError ( e.getCause () );
+                    }
+                    catch ( final Exception e )
+                    {
+                        setError ( e );
+                    }
+                }
+            } );
+        }
+    }
+
+    /**
+     * Create a new login pipeline
+     * 
+     * @param threads
+     *            the number of threads performing logins, if zero or less
+     *            logins are performed by the calling thread and logins
+     *            exceeding the rate limit are rejected
+     * @param queueSize
+     *            the number of logins which may wait for a thread
+     * @param rate
+     *            the maximum number of logins started per second, zero or less
+     *            for no limit. Up to one second worth of logins may start at
+     *            once.
+     */
+    public LoginPipeline ( final int threads, final int queueSize, final int rate )
+    {
+        if ( threads > 0 )
+        {
+            this.executor = new ThreadPoolExecutor ( threads, threads, 1, TimeUnit.MINUTES, new ArrayBlockingQueue<Runnable> ( Math.max ( 1, queueSize ) ), new NamedThreadFactory ( "LoginPipeline", true ) );
+            this.executor.allowCoreThreadTimeOut ( true );
+        }
+        else
+        {
+            this.executor = null;
+        }
+
+        if ( rate > 0 )
+        {
+            this.interval = TimeUnit.SECONDS.toNanos ( 1 ) / rate;
+            this.burst = this.interval * ( rate - 1 );
+            this.nextPermit = System.nanoTime () - this.burst;
+        }
+        else
+        {
+            this.interval = 0;
+            this.burst = 0;
+        }
+    }
+
+    /**
+     * Get the process wide default pipeline
+     * <p>
+     * It is configured by the system properties
+     * <code>org.openscada.core.server.common.login.threads</code> (defaults
+     * to the number of processors), <code>...login.queueSize</code> (defaults
+     * to 1000) and <code>...login.rate</code> (defaults to 0, no limit).
+     * </p>
+     * 
+     * @return the default pipeline, never <code>null</code>
+     */
+    public static synchronized LoginPipeline getDefault ()
+    {
+        if ( defaultInstance == null )
+        {
+            final int threads = Integer.getInteger ( "org.openscada.core.server.common.login.threads", Runtime.getRuntime ().availableProcessors () );
+            final int queueSize = Integer.getInteger ( "org.openscada.core.server.common.login.queueSize", 1000 );
+            final int rate = Integer.getInteger ( "org.openscada.core.server.common.login.rate", 0 );
+            defaultInstance = new LoginPipeline ( threads, queueSize, rate );
+        }
+        return defaultInstance;
+    }
+
+    /**
+     * Submit a login which is subject to the rate limit
+     * 
+     * @see #submit(Callable, boolean)
+     */
+    public NotifyFuture<UserInformation> submit ( final Callable<NotifyFuture<UserInformation>> login )
+    {
+        return submit ( login, true );
+    }
+
+    /**
+     * Submit a login
+     * 
+     * @param login
+     *            the task starting the login
+     * @param throttle
+     *            <code>true</code> if the login is subject to the rate limit,
+     *            <code>false</code> for logins which are known to be cheap
+     * @return the future of the login, fails with an
+     *         {@link AuthenticationException} if the login was rejected
+     *         because too many logins are pending, or because the rate limit
+     *         is exceeded and the pipeline has no threads of its own
+     */
+    public NotifyFuture<UserInformation> submit ( final Callable<NotifyFuture<UserInformation>> login, final boolean throttle )
+    {
+        if ( this.executor == null )
+        {
+            // never block the calling thread
+            if ( throttle && reservePermit ( false ) > 0 )
+            {
+                logger.warn ( "Rejecting login - rate limit exceeded" );
+                return reject ( "Server busy. Too many logins." );
+            }
+            return call ( login );
+        }
+
+        final LoginFuture future = new LoginFuture ();
+        try
+        {
+            this.executor.execute ( new Runnable () {
+
+                @Override
+                public void run ()
+                {
+                    if ( throttle )
+                    {
+                        throttle ();
+                    }
+                    future.forward ( call ( login ) );
+                }
+            } );
+        }
+        catch ( final RejectedExecutionException e )
+        {
+            logger.warn ( "Rejecting login - {} logins pending", this.executor.getQueue ().size () );
+            return reject ( "Server busy. Too many pending logins." );
+        }
+        return future;
+    }
+
+    private NotifyFuture<UserInformation> reject ( final String message )
+    {
+        this.rejected.incrementAndGet ();
+        return new InstantErrorFuture<UserInformation> ( new AuthenticationException ( StatusCodes.AUTHENTICATION_FAILED, message ).fillInStackTrace () );
+    }
+
+    private NotifyFuture<UserInformation> call ( final Callable<NotifyFuture<UserInformation>> login )
+    {
+        this.started.incrementAndGet ();
+        try
+        {
+            return login.call ();
+        }
+        catch ( final Exception e )
+        {
+            return new InstantErrorFuture<UserInformation> ( e );
+        }
+    }
+
+    /**
+     * Reserve the next permit of the rate limit
+     * 
+     * @param always
+     *            <code>true</code> to reserve the permit even if it is not
+     *            available yet, <code>false</code> to only reserve an
+     *            available permit
+     * @return the time in nanoseconds until the permit is available, zero or
+     *         less if it is available now
+     */
+    private synchronized long reservePermit ( final boolean always )
+    {
+        if ( this.interval <= 0 )
+        {
+            return 0;
+        }
+
+        final long now = System.nanoTime ();
+        // unused permits of the last second may be used at once
+        if ( this.nextPermit - ( now - this.burst ) < 0 )
+        {
+            this.nextPermit = now - this.burst;
+        }
+
+        final long wait = this.nextPermit - now;
+        if ( always || wait <= 0 )
+        {
+            this.nextPermit += this.interval;
+        }
+        return wait;
+    }
+
+    /**
+     * Wait until the rate limit allows the next login
+     * <p>
+     * Must only be called by the threads of the pipeline.
+     * </p>
+     */
+    private void throttle ()
+    {
+        final long wait = reservePermit ( true );
+        if ( wait > 0 )
+        {
+            try
+            {
+                TimeUnit.NANOSECONDS.sleep ( wait );
+            }
+            catch ( final InterruptedException e )
+            {
+                Thread.currentThread ().interrupt ();
+            }
+        }
+    }
+
+    /**
+     * @return the number of logins which were started
+     */
+    public long getStartedCount ()
+    {
+        return this.started.get ();
+    }
+
+    /**
+     * @return the number of logins which were rejected because too many were
+     *         pending
+     */
+    public long getRejectedCount ()
+    {
+        return this.rejected.get ();
+    }
+
+    /**
+     * @return the number of logins waiting for execution
+     */
+    public int getPendingCount ()
+    {
+        return this.executor == null ? 0 : this.executor.getQueue ().size ();
+    }
+
+    /**
+     * Shut down the executor of the pipeline
+     */
+    public void dispose ()
+    {
+        if ( this.executor != null )
+        {
+            this.executor.shutdown ();
+        }
+    }
+}
@@ -25,6 +25,7 @@ import java.util.HashSet;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.Future;
 
 import org.openscada.core.server.Service;
@@ -60,6 +61,10 @@ public abstract class ServiceCommon<S extends Session, SI extends AbstractSessio
 
     private AuditLogService auditLogService;
 
+    private LoginPipeline loginPipeline = LoginPipeline.getDefault ();
+
+    private final LoginCache loginCache = new LoginCache ( Long.getLong ( "org.openscada.core.server.common.login.cacheTimeout", 0 ) );
+
     public ServiceCommon ()
     {
         this.authenticationImplementation = new DefaultAuthentication ();
@@ -88,11 +93,26 @@ public abstract class ServiceCommon<S extends Session, SI extends AbstractSessio
     protected void setAuthenticationImplementation ( final AuthenticationImplementation authenticationImplementation )
     {
         this.authenticationImplementation = authenticationImplementation;
+        this.loginCache.clear ();
     }
 
     protected void setAuthorizationImplementation ( final AuthorizationImplementation authorizationImplementation )
     {
         this.authorizationImplementation = authorizationImplementation;
+        this.loginCache.clear ();
+    }
+
+    /**
+     * Set the pipeline performing the logins of new sessions
+     * 
+     * @param loginPipeline
+     *            the pipeline to use, <code>null</code> for the default
+     *            pipeline
+     * @since 1.1
+     */
+    protected void setLoginPipeline ( final LoginPipeline loginPipeline )
+    {
+        this.loginPipeline = loginPipeline == null ? LoginPipeline.getDefault () : loginPipeline;
     }
 
     protected Set<String> extractPrivileges ( final Properties properties )
@@ -118,6 +138,15 @@ public abstract class ServiceCommon<S extends Session, SI extends AbstractSessio
     /**
      * Wraps the call to {@link #authenticate(Properties)} so that the correct
      * exceptions are thrown for a {@link #createSession(Properties)} call.
+     * <p>
+     * The login is performed by the login pipeline, so the returned future
+     * and everything chained to it completes outside of the calling thread.
+     * Successful logins with the credentials contained in the properties may
+     * be cached for a short time (system property
+     * <code>org.openscada.core.server.common.login.cacheTimeout</code> in
+     * milliseconds, defaults to 0, which disables the cache). A login taken
+     * from the cache is still written to the audit log.
+     * </p>
      * 
      * @param properties
      *            the user session properties
@@ -132,7 +161,81 @@ public abstract class ServiceCommon<S extends Session, SI extends AbstractSessio
      */
     protected NotifyFuture<UserInformation> loginUser ( final Properties properties, final CallbackHandler callbackHandler )
     {
-        final NotifyFuture<AuthorizationReply> future = authorize ( new AuthorizationRequest ( "SESSION", null, "CONNECT", UserInformation.ANONYMOUS, null ), callbackHandler );
+        final String cacheKey = this.loginCache.makeKey ( properties, callbackHandler );
+
+        final AuthorizationReply cachedReply = this.loginCache.get ( cacheKey );
+        if ( cachedReply != null )
+        {
+            logger.debug ( "Using cached login of user: {}", cachedReply.getUserInformation () );
+            // still hand over to the pipeline, the session is created by the thread completing the login
+            return this.loginPipeline.submit ( new Callable<NotifyFuture<UserInformation>> () {
+
+                @Override
+                public NotifyFuture<UserInformation> call () throws Exception
+                {
+                    return performCachedLoginUser ( cachedReply, callbackHandler );
+                }
+            }, false );
+        }
+
+        return this.loginPipeline.submit ( new Callable<NotifyFuture<UserInformation>> () {
+
+            @Override
+            public NotifyFuture<UserInformation> call () throws Exception
+            {
+                return performLoginUser ( cacheKey, callbackHandler );
+            }
+        } );
+    }
+
+    private static AuthorizationRequest makeLoginRequest ()
+    {
+        return new AuthorizationRequest ( "SESSION", null, "CONNECT", UserInformation.ANONYMOUS, null );
+    }
+
+    private NotifyFuture<UserInformation> performCachedLoginUser ( final AuthorizationReply reply, final CallbackHandler callbackHandler )
+    {
+        final AuthorizationRequest request = makeLoginRequest ();
+
+        final AuthorizationContext context = new AuthorizationContext ();
+        context.setCallbackHandler ( callbackHandler );
+        context.setRequest ( request );
+
+        // the authorization is skipped, but the login is audited like any other
+        this.auditLogService.authorizationRequested ( request );
+        this.auditLogService.authorizationDone ( context, request, reply );
+
+        return new InstantFuture<UserInformation> ( reply.getUserInformation () );
+    }
+
+    private NotifyFuture<UserInformation> performLoginUser ( final String cacheKey, final CallbackHandler callbackHandler )
+    {
+        final NotifyFuture<AuthorizationReply> future = authorize ( makeLoginRequest (), callbackHandler );
+
+        if ( cacheKey != null )
+        {
+            future.addListener ( new FutureListener<AuthorizationReply> () {
+
+                @Override
+                public void complete ( final Future<AuthorizationReply> future )
+                {
+                    try
+                    {
+                        final AuthorizationReply reply = future.get ();
+                        // failed logins are not cached
+                        if ( reply.getResult ().asException () == null )
+                        {
+                            ServiceCommon.this.loginCache.put ( cacheKey, reply );
+                        }
+                    }
+                    catch ( final Exception e )
+                    {
+                        // failed logins are not cached
+                    }
+                }
+            } );
+        }
+
         return new CallingFuture<AuthorizationReply, UserInformation> ( future ) {
 
             @Override
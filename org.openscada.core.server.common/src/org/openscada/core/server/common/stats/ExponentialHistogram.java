@@ -0,0 +1,180 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.core.server.common.stats;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of durations, like request round trip times or operation
+ * latencies
+ * <p>
+ * Values are recorded in microseconds into buckets of exponentially growing
+ * size (bucket <em>n</em> holds values below 2<sup>n</sup>&micro;s).
+ * Recording a value is a single atomic increment. Percentiles are reported
+ * as the upper bound of the bucket they fall into.
+ * </p>
+ * <p>
+ * The histogram can either be used cumulative, by reading it using
+ * {@link #getCounts()} and {@link #getMax()}, or per interval, by reading and
+ * resetting it using {@link #drainCounts()} and {@link #drainMax()}.
+ * </p>
+ * 
+ * @since 1.1
+ */
+public class ExponentialHistogram
+{
+    public static final int BUCKETS = 40;
+
+    private final AtomicLongArray buckets = new AtomicLongArray ( BUCKETS );
+
+    private final AtomicLong max = new AtomicLong ();
+
+    public void record ( final long duration, final TimeUnit unit )
+    {
+        final long micros = Math.max ( 0, unit.toMicros ( duration ) );
+
+        this.buckets.incrementAndGet ( bucketOf ( micros ) );
+
+        long current;
+        while ( micros > ( current = this.max.get () ) )
+        {
+            if ( this.max.compareAndSet ( current, micros ) )
+            {
+                break;
+            }
+        }
+    }
+
+    /**
+     * @return the bucket a value in microseconds is recorded to
+     */
+    public static int bucketOf ( final long micros )
+    {
+        final int bucket = 64 - Long.numberOfLeadingZeros ( micros );
+        return Math.min ( bucket, BUCKETS - 1 );
+    }
+
+    /**
+     * @return the largest value a bucket holds in microseconds
+     */
+    public static long upperBound ( final int bucket )
+    {
+        return ( 1L << bucket ) - 1;
+    }
+
+    /**
+     * @return a copy of the bucket counts
+     */
+    public long[] getCounts ()
+    {
+        final long[] counts = new long[BUCKETS];
+        for ( int i = 0; i < BUCKETS; i++ )
+        {
+            counts[i] = this.buckets.get ( i );
+        }
+        return counts;
+    }
+
+    /**
+     * @return the maximum recorded value in microseconds
+     */
+    public long getMax ()
+    {
+        return this.max.get ();
+    }
+
+    /**
+     * Get the bucket counts and reset them
+     * <p>
+     * Each bucket is reset atomically, values recorded concurrently are
+     * either part of the result or of the next call.
+     * </p>
+     * 
+     * @return the bucket counts since the last call
+     */
+    public long[] drainCounts ()
+    {
+        final long[] counts = new long[BUCKETS];
+        for ( int i = 0; i < BUCKETS; i++ )
+        {
+            counts[i] = this.buckets.getAndSet ( i, 0 );
+        }
+        return counts;
+    }
+
+    /**
+     * Get the maximum recorded value and reset it
+     * 
+     * @return the maximum value in microseconds since the last call
+     */
+    public long drainMax ()
+    {
+        return this.max.getAndSet ( 0 );
+    }
+
+    /**
+     * @return the sum of the provided bucket counts
+     */
+    public static long count ( final long[] counts )
+    {
+        long count = 0;
+        for ( final long c : counts )
+        {
+            count += c;
+        }
+        return count;
+    }
+
+    /**
+     * Calculate the percentile of the provided bucket counts
+     * 
+     * @return the upper bound of the bucket containing the percentile in
+     *         microseconds, or zero if there are no values
+     */
+    public static long percentile ( final long[] counts, final double percentile )
+    {
+        final long count = count ( counts );
+        if ( count == 0 )
+        {
+            return 0;
+        }
+
+        final long threshold = (long)Math.ceil ( count * percentile );
+        long sum = 0;
+        for ( int i = 0; i < counts.length; i++ )
+        {
+            sum += counts[i];
+            if ( sum >= threshold )
+            {
+                return upperBound ( i );
+            }
+        }
+        return upperBound ( counts.length - 1 );
+    }
+
+    public LatencyInformation getInformation ()
+    {
+        final long[] counts = getCounts ();
+        return new LatencyInformation ( count ( counts ), percentile ( counts, 0.5 ), percentile ( counts, 0.9 ), percentile ( counts, 0.99 ), getMax () );
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.core.server.common.stats;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Summary of a {@link ExponentialHistogram}, all times in microseconds
+ * 
+ * @since 1.1
+ */
+public class LatencyInformation
+{
+    private final long count;
+
+    private final long p50;
+
+    private final long p90;
+
+    private final long p99;
+
+    private final long max;
+
+    @ConstructorProperties ( { "count", "p50", "p90", "p99", "max" } )
+    public LatencyInformation ( final long count, final long p50, final long p90, final long p99, final long max )
+    {
+        super ();
+        this.count = count;
+        this.p50 = p50;
+        this.p90 = p90;
+        this.p99 = p99;
+        this.max = max;
+    }
+
+    public long getCount ()
+    {
+        return this.count;
+    }
+
+    public long getP50 ()
+    {
+        return this.p50;
+    }
+
+    public long getP90 ()
+    {
+        return this.p90;
+    }
+
+    public long getP99 ()
+    {
+        return this.p99;
+    }
+
+    public long getMax ()
+    {
+        return this.max;
+    }
+
+}
@@ -26,6 +26,9 @@ import java.net.SocketAddress;
 import java.net.URLEncoder;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
 
 import javax.management.MBeanServer;
 import javax.management.ObjectName;
@@ -39,8 +42,12 @@ public abstract class ManagedConnection implements ManagedConnectionMXBean
 
     private final static Logger logger = LoggerFactory.getLogger ( ManagedConnection.class );
 
+    private static final Set<ManagedConnection> connections = new CopyOnWriteArraySet<ManagedConnection> ();
+
     private ObjectName name;
 
+    private String remoteAddress;
+
     public ManagedConnection ()
     {
 
@@ -53,6 +60,8 @@ public abstract class ManagedConnection implements ManagedConnectionMXBean
 
     public void dispose ()
     {
+        connections.remove ( this );
+
         final MBeanServer mbs = ManagementFactory.getPlatformMBeanServer ();
         try
         {
@@ -93,6 +102,68 @@ public abstract class ManagedConnection implements ManagedConnectionMXBean
 
     protected abstract Collection<StatisticEntry> getEntries ();
 
+    /**
+     * Get the traffic statistics of the connection
+     * 
+     * @return the traffic statistics, <code>null</code> if the connection
+     *         does not collect any
+     * @since 1.1
+     */
+    public TrafficStatistics getTrafficStatistics ()
+    {
+        return null;
+    }
+
+    @Override
+    public String getRemoteAddress ()
+    {
+        return this.remoteAddress;
+    }
+
+    @Override
+    public long getQueuedMessages ()
+    {
+        return 0;
+    }
+
+    @Override
+    public long getBytesReceived ()
+    {
+        final TrafficStatistics traffic = getTrafficStatistics ();
+        return traffic == null ? 0 : traffic.getBytesReceived ();
+    }
+
+    @Override
+    public long getBytesSent ()
+    {
+        final TrafficStatistics traffic = getTrafficStatistics ();
+        return traffic == null ? 0 : traffic.getBytesSent ();
+    }
+
+    @Override
+    public MessageTypeInformation[] getMessageTypes ()
+    {
+        final TrafficStatistics traffic = getTrafficStatistics ();
+        return traffic == null ? new MessageTypeInformation[0] : traffic.getMessageTypes ();
+    }
+
+    @Override
+    public LatencyInformation getRequestLatency ()
+    {
+        final TrafficStatistics traffic = getTrafficStatistics ();
+        return traffic == null ? null : traffic.getRoundTrips ().getInformation ();
+    }
+
+    /**
+     * Get all registered connections of the process
+     * 
+     * @since 1.1
+     */
+    public static Collection<ManagedConnection> getConnections ()
+    {
+        return Collections.unmodifiableSet ( connections );
+    }
+
     public static ManagedConnection register ( final ManagedConnection connection, final SocketAddress socketAddress, final String baseName )
     {
         try
@@ -104,7 +175,9 @@ public abstract class ManagedConnection implements ManagedConnectionMXBean
 
             final ObjectName name = new ObjectName ( baseName, "remote", remote );
             connection.setName ( name );
+            connection.remoteAddress = socketAddress.toString ();
             mbs.registerMBean ( connection, name );
+            connections.add ( connection );
             return connection;
         }
         catch ( final Exception e )
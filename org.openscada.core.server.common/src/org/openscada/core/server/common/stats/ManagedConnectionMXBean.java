@@ -28,4 +28,40 @@ public interface ManagedConnectionMXBean
     public Map<String, String> getTransportProperties ();
 
     public void close ();
+
+    /**
+     * @return the remote address of the connection
+     * @since 1.1
+     */
+    public String getRemoteAddress ();
+
+    /**
+     * @return the number of messages waiting to be sent
+     * @since 1.1
+     */
+    public long getQueuedMessages ();
+
+    /**
+     * @since 1.1
+     */
+    public long getBytesReceived ();
+
+    /**
+     * @since 1.1
+     */
+    public long getBytesSent ();
+
+    /**
+     * @return the traffic by message type, empty if traffic statistics are
+     *         disabled
+     * @since 1.1
+     */
+    public MessageTypeInformation[] getMessageTypes ();
+
+    /**
+     * @return the round trip times of requests in microseconds,
+     *         <code>null</code> if traffic statistics are disabled
+     * @since 1.1
+     */
+    public LatencyInformation getRequestLatency ();
 }
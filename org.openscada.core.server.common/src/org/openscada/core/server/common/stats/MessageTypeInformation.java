@@ -0,0 +1,73 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.core.server.common.stats;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * The traffic of one message type of a connection
+ * 
+ * @since 1.1
+ */
+public class MessageTypeInformation
+{
+    private final String type;
+
+    private final long messagesReceived;
+
+    private final long messagesSent;
+
+    private final long bytesSent;
+
+    @ConstructorProperties ( { "type", "messagesReceived", "messagesSent", "bytesSent" } )
+    public MessageTypeInformation ( final String type, final long messagesReceived, final long messagesSent, final long bytesSent )
+    {
+        super ();
+        this.type = type;
+        this.messagesReceived = messagesReceived;
+        this.messagesSent = messagesSent;
+        this.bytesSent = bytesSent;
+    }
+
+    public String getType ()
+    {
+        return this.type;
+    }
+
+    public long getMessagesReceived ()
+    {
+        return this.messagesReceived;
+    }
+
+    public long getMessagesSent ()
+    {
+        return this.messagesSent;
+    }
+
+    /**
+     * @return the number of encoded bytes of sent messages
+     */
+    public long getBytesSent ()
+    {
+        return this.bytesSent;
+    }
+
+}
@@ -0,0 +1,134 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.core.server.common.stats;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.filterchain.IoFilterAdapter;
+import org.apache.mina.core.filterchain.IoFilterChain;
+import org.apache.mina.core.filterchain.IoFilterChain.Entry;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.core.write.WriteRequest;
+import org.apache.mina.filter.codec.ProtocolCodecFilter;
+
+/**
+ * Feeds the bytes of a session into its {@link TrafficStatistics}
+ * <p>
+ * The filter is placed directly below the protocol codec. The codec hands on
+ * the encoded data of a message followed by a marker request which refers
+ * to the original message. The filter sums up the encoded data until it
+ * sees the marker, so the bytes can be attributed to the type of the
+ * message. Incoming data is only counted in total, since the decoder may
+ * take any number of messages out of one buffer.
+ * </p>
+ * <p>
+ * The bytes attributed to a message type are the bytes written by the
+ * filters below the codec and above this filter. Since {@link #install}
+ * places the filter directly below the codec, the order it is installed in
+ * relative to other filters which are placed below the codec decides what is
+ * counted:
+ * </p>
+ * <ul>
+ * <li>A filter installed <em>before</em> this filter ends up below it. The
+ * <code>WriteCoalescingFilter</code> must be one of these. It merges the
+ * encoded data and the markers of several messages into one request, so the
+ * markers would no longer be visible to this filter if it was placed below
+ * the coalescing filter.</li>
+ * <li>A filter installed <em>after</em> this filter ends up between it and the
+ * codec, like the NGP frame compression, which is only enabled once the
+ * session is created. The bytes of a message type are then the compressed
+ * bytes, which pass the markers unchanged. Bytes which are not part of any
+ * message, like the frame activating the compression, are attributed to the
+ * message following them.</li>
+ * <li>A filter added below the codec by the chain builder, like the GMPP
+ * compression, is below this filter as well, so the bytes of a message type
+ * are counted before that compression.</li>
+ * </ul>
+ * <p>
+ * The total number of bytes sent always matches the bytes written to this
+ * filter, including the bytes not attributed to a message type yet.
+ * </p>
+ * 
+ * @since 1.1
+ */
+public class TrafficAccountingFilter extends IoFilterAdapter
+{
+    public static final String FILTER_NAME = "trafficAccounting";
+
+    private final TrafficStatistics statistics;
+
+    private final AtomicLong pendingBytes = new AtomicLong ();
+
+    public TrafficAccountingFilter ( final TrafficStatistics statistics )
+    {
+        this.statistics = statistics;
+    }
+
+    /**
+     * Add a new filter directly below the protocol codec of the session
+     * 
+     * @return <code>true</code> if the filter was added,
+     *         <code>false</code> if the chain has no protocol codec
+     */
+    public static boolean install ( final IoSession session, final TrafficStatistics statistics )
+    {
+        final IoFilterChain chain = session.getFilterChain ();
+        for ( final Entry entry : chain.getAll () )
+        {
+            if ( entry.getFilter () instanceof ProtocolCodecFilter )
+            {
+                chain.addBefore ( entry.getName (), FILTER_NAME, new TrafficAccountingFilter ( statistics ) );
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void messageReceived ( final NextFilter nextFilter, final IoSession session, final Object message ) throws Exception
+    {
+        if ( message instanceof IoBuffer )
+        {
+            this.statistics.bytesReceived ( ( (IoBuffer)message ).remaining () );
+        }
+        nextFilter.messageReceived ( session, message );
+    }
+
+    @Override
+    public void filterWrite ( final NextFilter nextFilter, final IoSession session, final WriteRequest writeRequest ) throws Exception
+    {
+        final WriteRequest originalRequest = writeRequest.getOriginalRequest ();
+        if ( originalRequest != writeRequest && ! ( originalRequest.getMessage () instanceof IoBuffer ) )
+        {
+            // the marker following the encoded data of a message
+            this.statistics.messageSent ( originalRequest.getMessage (), this.pendingBytes.getAndSet ( 0 ) );
+        }
+        else if ( writeRequest.getMessage () instanceof IoBuffer )
+        {
+            final int bytes = ( (IoBuffer)writeRequest.getMessage () ).remaining ();
+            this.pendingBytes.addAndGet ( bytes );
+            this.statistics.bytesSent ( bytes );
+        }
+
+        nextFilter.filterWrite ( session, writeRequest );
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.core.server.common.stats;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Traffic counters of one connection
+ * <p>
+ * Counts messages and bytes by message type and records the round trip time
+ * of requests, from receiving the request until the reply was written. All
+ * updates are lock free. Requests are tracked in a fixed size table indexed
+ * by the request id, so a request which gets no reply only occupies its slot
+ * until another request uses it.
+ * </p>
+ * <p>
+ * Connections only collect traffic statistics unless the system property
+ * <code>org.openscada.core.server.common.stats.traffic</code> is set to
+ * <code>false</code>.
+ * </p>
+ * 
+ * @since 1.1
+ */
+public class TrafficStatistics
+{
+    private static final int PENDING_SIZE = 256;
+
+    private static final long NO_REQUEST = Long.MIN_VALUE;
+
+    private static class Counter
+    {
+        private final AtomicLong received = new AtomicLong ();
+
+        private final AtomicLong sent = new AtomicLong ();
+
+        private final AtomicLong bytesSent = new AtomicLong ();
+    }
+
+    private final ConcurrentMap<Object, Counter> types = new ConcurrentHashMap<Object, Counter> ();
+
+    private final AtomicLong bytesReceived = new AtomicLong ();
+
+    private final AtomicLong bytesSent = new AtomicLong ();
+
+    private final AtomicLongArray pendingIds = new AtomicLongArray ( PENDING_SIZE );
+
+    private final AtomicLongArray pendingTimes = new AtomicLongArray ( PENDING_SIZE );
+
+    private final ExponentialHistogram roundTrips = new ExponentialHistogram ();
+
+    public TrafficStatistics ()
+    {
+        for ( int i = 0; i < PENDING_SIZE; i++ )
+        {
+            this.pendingIds.set ( i, NO_REQUEST );
+        }
+    }
+
+    public static boolean isEnabled ()
+    {
+        return Boolean.parseBoolean ( System.getProperty ( "org.openscada.core.server.common.stats.traffic", "true" ) );
+    }
+
+    /**
+     * Get the type a message is counted as
+     * <p>
+     * The default implementation uses the class of the message
+     * </p>
+     */
+    protected Object getMessageType ( final Object message )
+    {
+        return message.getClass ();
+    }
+
+    /**
+     * Get the display name of a message type
+     */
+    protected String getTypeName ( final Object type )
+    {
+        if ( type instanceof Class<?> )
+        {
+            return ( (Class<?>)type ).getSimpleName ();
+        }
+        return String.valueOf ( type );
+    }
+
+    private Counter getCounter ( final Object message )
+    {
+        final Object type = getMessageType ( message );
+
+        Counter counter = this.types.get ( type );
+        if ( counter == null )
+        {
+            counter = new Counter ();
+            final Counter oldCounter = this.types.putIfAbsent ( type, counter );
+            if ( oldCounter != null )
+            {
+                return oldCounter;
+            }
+        }
+        return counter;
+    }
+
+    public void messageReceived ( final Object message )
+    {
+        getCounter ( message ).received.incrementAndGet ();
+    }
+
+    /**
+     * Count a sent message
+     * 
+     * @param message
+     *            the message
+     * @param bytes
+     *            the size of the encoded message
+     */
+    public void messageSent ( final Object message, final long bytes )
+    {
+        final Counter counter = getCounter ( message );
+        counter.sent.incrementAndGet ();
+        counter.bytesSent.addAndGet ( bytes );
+    }
+
+    public void bytesReceived ( final long bytes )
+    {
+        this.bytesReceived.addAndGet ( bytes );
+    }
+
+    public void bytesSent ( final long bytes )
+    {
+        this.bytesSent.addAndGet ( bytes );
+    }
+
+    /**
+     * Start the round trip of a request
+     * 
+     * @param requestId
+     *            the id the reply will refer to
+     */
+    public void requestReceived ( final long requestId )
+    {
+        final int index = (int) ( requestId & ( PENDING_SIZE - 1 ) );
+        // invalidate the slot first, so that a concurrent reply cannot pick up the wrong time
+        this.pendingIds.set ( index, NO_REQUEST );
+        this.pendingTimes.set ( index, System.nanoTime () );
+        this.pendingIds.set ( index, requestId );
+    }
+
+    /**
+     * Complete the round trip of a request
+     * <p>
+     * Replies to requests which are not (or no longer) tracked are ignored
+     * </p>
+     * 
+     * @param requestId
+     *            the id of the request the reply refers to
+     */
+    public void replySent ( final long requestId )
+    {
+        if ( requestId == NO_REQUEST )
+        {
+            return;
+        }
+
+        final int index = (int) ( requestId & ( PENDING_SIZE - 1 ) );
+        final long start = this.pendingTimes.get ( index );
+        if ( this.pendingIds.compareAndSet ( index, requestId, NO_REQUEST ) )
+        {
+            this.roundTrips.record ( System.nanoTime () - start, TimeUnit.NANOSECONDS );
+        }
+    }
+
+    public long getBytesReceived ()
+    {
+        return this.bytesReceived.get ();
+    }
+
+    public long getBytesSent ()
+    {
+        return this.bytesSent.get ();
+    }
+
+    public ExponentialHistogram getRoundTrips ()
+    {
+        return this.roundTrips;
+    }
+
+    public MessageTypeInformation[] getMessageTypes ()
+    {
+        final List<MessageTypeInformation> result = new ArrayList<MessageTypeInformation> ( this.types.size () );
+        for ( final Map.Entry<Object, Counter> entry : this.types.entrySet () )
+        {
+            final Counter counter = entry.getValue ();
+            result.add ( new MessageTypeInformation ( getTypeName ( entry.getKey () ), counter.received.get (), counter.sent.get (), counter.bytesSent.get () ) );
+        }
+        return result.toArray ( new MessageTypeInformation[result.size ()] );
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.core.server.common;
+
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openscada.core.server.Session;
+import org.openscada.core.server.common.session.AbstractSessionImpl;
+import org.openscada.sec.AuthorizationImplementation;
+import org.openscada.sec.AuthorizationReply;
+import org.openscada.sec.AuthorizationRequest;
+import org.openscada.sec.AuthorizationResult;
+import org.openscada.sec.audit.AuditLogService;
+import org.openscada.sec.authz.AuthorizationContext;
+import org.openscada.sec.callback.CallbackHandler;
+import org.openscada.sec.callback.PropertiesCredentialsCallback;
+import org.openscada.utils.concurrent.InstantFuture;
+import org.openscada.utils.concurrent.NotifyFuture;
+
+public class LoginCacheTest
+{
+    private static final String CACHE_TIMEOUT = "org.openscada.core.server.common.login.cacheTimeout";
+
+    private static class CountingAuthorization implements AuthorizationImplementation
+    {
+        private final AtomicInteger count = new AtomicInteger ();
+
+        @Override
+        public NotifyFuture<AuthorizationReply> authorize ( final AuthorizationContext context, final AuthorizationResult defaultResult )
+        {
+            this.count.incrementAndGet ();
+            return new InstantFuture<AuthorizationReply> ( AuthorizationReply.createGranted ( context ) );
+        }
+    }
+
+    private static class CountingAuditLog implements AuditLogService
+    {
+        private final AtomicInteger requested = new AtomicInteger ();
+
+        private final AtomicInteger done = new AtomicInteger ();
+
+        @Override
+        public void info ( final String message, final Object... arguments )
+        {
+        }
+
+        @Override
+        public void debug ( final String message, final Object... arguments )
+        {
+        }
+
+        @Override
+        public void info ( final String message, final Throwable e, final Object... arguments )
+        {
+        }
+
+        @Override
+        public void debug ( final String message, final Throwable e, final Object... arguments )
+        {
+        }
+
+        @Override
+        public void authorizationRequested ( final AuthorizationRequest request )
+        {
+            this.requested.incrementAndGet ();
+        }
+
+        @Override
+        public void authorizationFailed ( final AuthorizationContext context, final AuthorizationRequest request, final Throwable error )
+        {
+        }
+
+        @Override
+        public void authorizationDone ( final AuthorizationContext context, final AuthorizationRequest request, final AuthorizationReply reply )
+        {
+            this.done.incrementAndGet ();
+        }
+    }
+
+    private static class TestService extends ServiceCommon<Session, AbstractSessionImpl>
+    {
+        private final CountingAuthorization authorization = new CountingAuthorization ();
+
+        private final CountingAuditLog auditLog = new CountingAuditLog ();
+
+        public TestService ()
+        {
+            setAuthorizationImplementation ( this.authorization );
+            setAuditLogService ( this.auditLog );
+            // perform logins on the calling thread
+            setLoginPipeline ( new LoginPipeline ( 0, 0, 0 ) );
+        }
+
+        @Override
+        public void start () throws Exception
+        {
+        }
+
+        @Override
+        public void stop () throws Exception
+        {
+        }
+
+        @Override
+        public NotifyFuture<Session> createSession ( final Properties props, final CallbackHandler callbackHandler )
+        {
+            throw new UnsupportedOperationException ();
+        }
+
+        @Override
+        public void closeSession ( final Session session )
+        {
+        }
+
+        public void login ( final Properties properties ) throws Exception
+        {
+            login ( properties, new PropertiesCredentialsCallback ( properties ) );
+        }
+
+        public void login ( final Properties properties, final CallbackHandler callbackHandler ) throws Exception
+        {
+            loginUser ( properties, callbackHandler ).get ();
+        }
+    }
+
+    private static Properties makeProperties ( final String password )
+    {
+        final Properties properties = new Properties ();
+        properties.setProperty ( "user", "user" );
+        properties.setProperty ( "password", password );
+        return properties;
+    }
+
+    @Before
+    public void setup ()
+    {
+        System.setProperty ( CACHE_TIMEOUT, "60000" );
+    }
+
+    @After
+    public void cleanup ()
+    {
+        System.clearProperty ( CACHE_TIMEOUT );
+    }
+
+    @Test
+    public void testDisabledByDefault () throws Exception
+    {
+        System.clearProperty ( CACHE_TIMEOUT );
+        final TestService service = new TestService ();
+
+        service.login ( makeProperties ( "secret" ) );
+        service.login ( makeProperties ( "secret" ) );
+
+        Assert.assertEquals ( 2, service.authorization.count.get () );
+    }
+
+    @Test
+    public void testHitIsAudited () throws Exception
+    {
+        final TestService service = new TestService ();
+
+        service.login ( makeProperties ( "secret" ) );
+        service.login ( makeProperties ( "secret" ) );
+
+        Assert.assertEquals ( 1, service.authorization.count.get () );
+        Assert.assertEquals ( 2, service.auditLog.requested.get () );
+        Assert.assertEquals ( 2, service.auditLog.done.get () );
+    }
+
+    @Test
+    public void testKeyCoversAllProperties () throws Exception
+    {
+        final TestService service = new TestService ();
+
+        service.login ( makeProperties ( "secret" ) );
+        service.login ( makeProperties ( "other" ) );
+
+        final Properties properties = makeProperties ( "secret" );
+        properties.setProperty ( "session.privilege.admin", "true" );
+        service.login ( properties );
+
+        Assert.assertEquals ( 3, service.authorization.count.get () );
+    }
+
+    @Test
+    public void testKeyCoversCallbackHandler () throws Exception
+    {
+        final TestService service = new TestService ();
+        final Properties properties = makeProperties ( "secret" );
+
+        // a derived handler may answer callbacks differently
+        service.login ( properties, new PropertiesCredentialsCallback ( properties ) {} );
+        service.login ( properties, new PropertiesCredentialsCallback ( properties ) {} );
+
+        Assert.assertEquals ( 2, service.authorization.count.get () );
+    }
+
+    @Test
+    public void testKeyBoundaries ()
+    {
+        final LoginCache cache = new LoginCache ( 60000 );
+
+        final Properties properties1 = new Properties ();
+        properties1.setProperty ( "a", "bc" );
+        final Properties properties2 = new Properties ();
+        properties2.setProperty ( "ab", "c" );
+
+        final String key1 = cache.makeKey ( properties1, new PropertiesCredentialsCallback ( properties1 ) );
+        final String key2 = cache.makeKey ( properties2, new PropertiesCredentialsCallback ( properties2 ) );
+
+        Assert.assertNotNull ( key1 );
+        Assert.assertFalse ( key1.equals ( key2 ) );
+        Assert.assertEquals ( key1, cache.makeKey ( properties1, new PropertiesCredentialsCallback ( properties1 ) ) );
+    }
+
+    @Test
+    public void testDisabledWithoutTimeout ()
+    {
+        final LoginCache cache = new LoginCache ( 0 );
+        final Properties properties = makeProperties ( "secret" );
+
+        Assert.assertNull ( cache.makeKey ( properties, new PropertiesCredentialsCallback ( properties ) ) );
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.core.server.common;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openscada.sec.AuthenticationException;
+import org.openscada.sec.UserInformation;
+import org.openscada.utils.concurrent.InstantFuture;
+import org.openscada.utils.concurrent.NotifyFuture;
+
+public class LoginPipelineTest
+{
+    private static final UserInformation USER = UserInformation.ANONYMOUS;
+
+    private LoginPipeline pipeline;
+
+    @After
+    public void dispose ()
+    {
+        if ( this.pipeline != null )
+        {
+            this.pipeline.dispose ();
+        }
+    }
+
+    private static Callable<NotifyFuture<UserInformation>> login ( final CountDownLatch started, final CountDownLatch release )
+    {
+        return new Callable<NotifyFuture<UserInformation>> () {
+
+            @Override
+            public NotifyFuture<UserInformation> call () throws Exception
+            {
+                if ( started != null )
+                {
+                    started.countDown ();
+                }
+                if ( release != null )
+                {
+                    release.await ();
+                }
+                return new InstantFuture<UserInformation> ( USER );
+            }
+        };
+    }
+
+    private static Callable<NotifyFuture<UserInformation>> login ()
+    {
+        return login ( null, null );
+    }
+
+    private static void assertRejected ( final NotifyFuture<UserInformation> future ) throws Exception
+    {
+        Assert.assertTrue ( future.isDone () );
+        try
+        {
+            future.get ();
+            Assert.fail ( "Login must be rejected" );
+        }
+        catch ( final ExecutionException e )
+        {
+            Assert.assertTrue ( e.getCause () instanceof AuthenticationException );
+        }
+    }
+
+    @Test
+    public void testRejectWhenQueueFull () throws Exception
+    {
+        this.pipeline = new LoginPipeline ( 1, 1, 0 );
+
+        final CountDownLatch started = new CountDownLatch ( 1 );
+        final CountDownLatch release = new CountDownLatch ( 1 );
+
+        // occupies the only thread
+        final NotifyFuture<UserInformation> running = this.pipeline.submit ( login ( started, release ) );
+        Assert.assertTrue ( started.await ( 5, TimeUnit.SECONDS ) );
+
+        // fills the queue
+        final NotifyFuture<UserInformation> queued = this.pipeline.submit ( login () );
+        Assert.assertEquals ( 1, this.pipeline.getPendingCount () );
+
+        assertRejected ( this.pipeline.submit ( login () ) );
+        Assert.assertEquals ( 1, this.pipeline.getRejectedCount () );
+
+        release.countDown ();
+        Assert.assertEquals ( USER, running.get ( 5, TimeUnit.SECONDS ) );
+        Assert.assertEquals ( USER, queued.get ( 5, TimeUnit.SECONDS ) );
+        Assert.assertEquals ( 2, this.pipeline.getStartedCount () );
+    }
+
+    @Test
+    public void testRateLimitDelays () throws Exception
+    {
+        // one second worth of logins starts at once, the rest every 50ms
+        this.pipeline = new LoginPipeline ( 1, 100, 20 );
+
+        final long start = System.nanoTime ();
+
+        NotifyFuture<UserInformation> last = null;
+        for ( int i = 0; i < 25; i++ )
+        {
+            last = this.pipeline.submit ( login () );
+        }
+        Assert.assertEquals ( USER, last.get ( 5, TimeUnit.SECONDS ) );
+
+        final long duration = TimeUnit.NANOSECONDS.toMillis ( System.nanoTime () - start );
+        Assert.assertTrue ( "Logins must be delayed: " + duration, duration >= 200 );
+        Assert.assertEquals ( 0, this.pipeline.getRejectedCount () );
+    }
+
+    @Test
+    public void testRateLimitWithoutThreads () throws Exception
+    {
+        this.pipeline = new LoginPipeline ( 0, 0, 2 );
+
+        final long start = System.nanoTime ();
+
+        Assert.assertEquals ( USER, this.pipeline.submit ( login () ).get () );
+        Assert.assertEquals ( USER, this.pipeline.submit ( login () ).get () );
+
+        // the calling thread must never be blocked, so the login is rejected
+        assertRejected ( this.pipeline.submit ( login () ) );
+        Assert.assertEquals ( 1, this.pipeline.getRejectedCount () );
+        Assert.assertEquals ( 2, this.pipeline.getStartedCount () );
+
+        // cheap logins are not subject to the rate limit
+        Assert.assertEquals ( USER, this.pipeline.submit ( login (), false ).get () );
+
+        // a delayed login would have taken 500ms
+        Assert.assertTrue ( TimeUnit.NANOSECONDS.toMillis ( System.nanoTime () - start ) < 400 );
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+
+package org.openscada.core.server.common.stats;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ExponentialHistogramTest
+{
+    @Test
+    public void testBuckets ()
+    {
+        Assert.assertEquals ( 0, ExponentialHistogram.bucketOf ( 0 ) );
+        Assert.assertEquals ( 1, ExponentialHistogram.bucketOf ( 1 ) );
+        Assert.assertEquals ( 2, ExponentialHistogram.bucketOf ( 3 ) );
+        Assert.assertEquals ( 11, ExponentialHistogram.bucketOf ( 1500 ) );
+        Assert.assertTrue ( ExponentialHistogram.upperBound ( ExponentialHistogram.bucketOf ( 1500 ) ) >= 1500 );
+        Assert.assertEquals ( ExponentialHistogram.BUCKETS - 1, ExponentialHistogram.bucketOf ( Long.MAX_VALUE ) );
+    }
+
+    @Test
+    public void testRecord ()
+    {
+        final ExponentialHistogram histogram = new ExponentialHistogram ();
+
+        histogram.record ( 1, TimeUnit.MILLISECONDS );
+        histogram.record ( 3, TimeUnit.MICROSECONDS );
+        histogram.record ( -1, TimeUnit.MICROSECONDS );
+
+        final long[] counts = histogram.getCounts ();
+        Assert.assertEquals ( 3, ExponentialHistogram.count ( counts ) );
+        Assert.assertEquals ( 1, counts[0] );
+        Assert.assertEquals ( 1, counts[2] );
+        Assert.assertEquals ( 1, counts[ExponentialHistogram.bucketOf ( 1000 )] );
+        Assert.assertEquals ( 1000, histogram.getMax () );
+    }
+
+    @Test
+    public void testPercentiles ()
+    {
+        final long[] counts = new long[ExponentialHistogram.BUCKETS];
+        Assert.assertEquals ( 0, ExponentialHistogram.percentile ( counts, 0.5 ) );
+
+        counts[ExponentialHistogram.bucketOf ( 10 )] = 99;
+        counts[ExponentialHistogram.bucketOf ( 5000 )] = 1;
+
+        Assert.assertEquals ( 15, ExponentialHistogram.percentile ( counts, 0.5 ) );
+        Assert.assertEquals ( 15, ExponentialHistogram.percentile ( counts, 0.99 ) );
+        Assert.assertEquals ( 8191, ExponentialHistogram.percentile ( counts, 1.0 ) );
+    }
+
+    @Test
+    public void testInformation ()
+    {
+        final ExponentialHistogram histogram = new ExponentialHistogram ();
+        for ( int i = 0; i < 9; i++ )
+        {
+            histogram.record ( 10, TimeUnit.MICROSECONDS );
+        }
+        histogram.record ( 100, TimeUnit.MICROSECONDS );
+
+        final LatencyInformation information = histogram.getInformation ();
+        Assert.assertEquals ( 10, information.getCount () );
+        Assert.assertEquals ( 15, information.getP50 () );
+        Assert.assertEquals ( 15, information.getP90 () );
+        Assert.assertEquals ( 127, information.getP99 () );
+        Assert.assertEquals ( 100, information.getMax () );
+    }
+
+    @Test
+    public void testDrain ()
+    {
+        final ExponentialHistogram histogram = new ExponentialHistogram ();
+        histogram.record ( 10, TimeUnit.MICROSECONDS );
+        histogram.record ( 20, TimeUnit.MICROSECONDS );
+
+        // reading does not reset
+        Assert.assertEquals ( 2, ExponentialHistogram.count ( histogram.getCounts () ) );
+
+        Assert.assertEquals ( 2, ExponentialHistogram.count ( histogram.drainCounts () ) );
+        Assert.assertEquals ( 20, histogram.drainMax () );
+
+        Assert.assertEquals ( 0, ExponentialHistogram.count ( histogram.getCounts () ) );
+        Assert.assertEquals ( 0, histogram.getMax () );
+
+        histogram.record ( 5, TimeUnit.MICROSECONDS );
+        Assert.assertEquals ( 1, ExponentialHistogram.count ( histogram.drainCounts () ) );
+        Assert.assertEquals ( 5, histogram.drainMax () );
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+
+package org.openscada.core.server.common.stats;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.filterchain.IoFilter.NextFilter;
+import org.apache.mina.core.write.DefaultWriteRequest;
+import org.apache.mina.core.write.WriteRequest;
+import org.apache.mina.core.write.WriteRequestWrapper;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TrafficAccountingFilterTest
+{
+    /**
+     * The marker the protocol codec writes after the encoded data of a
+     * message, an empty buffer referring to the original request
+     */
+    private static class MarkerRequest extends WriteRequestWrapper
+    {
+        public MarkerRequest ( final WriteRequest request )
+        {
+            super ( request );
+        }
+
+        @Override
+        public Object getMessage ()
+        {
+            return IoBuffer.wrap ( new byte[0] );
+        }
+    }
+
+    private final List<Object> passed = new LinkedList<Object> ();
+
+    private NextFilter nextFilter;
+
+    private TrafficStatistics statistics;
+
+    private TrafficAccountingFilter filter;
+
+    @Before
+    public void setup ()
+    {
+        this.passed.clear ();
+        this.nextFilter = (NextFilter)Proxy.newProxyInstance ( NextFilter.class.getClassLoader (), new Class<?>[] { NextFilter.class }, new InvocationHandler () {
+            @Override
+            public Object invoke ( final Object proxy, final Method method, final Object[] args ) throws Throwable
+            {
+                TrafficAccountingFilterTest.this.passed.add ( args[1] );
+                return null;
+            }
+        } );
+        this.statistics = new TrafficStatistics ();
+        this.filter = new TrafficAccountingFilter ( this.statistics );
+    }
+
+    private void write ( final Object message, final int... frames ) throws Exception
+    {
+        final WriteRequest request = new DefaultWriteRequest ( message );
+        for ( final int frame : frames )
+        {
+            this.filter.filterWrite ( this.nextFilter, null, new DefaultWriteRequest ( IoBuffer.wrap ( new byte[frame] ) ) );
+        }
+        this.filter.filterWrite ( this.nextFilter, null, new MarkerRequest ( request ) );
+    }
+
+    private MessageTypeInformation find ( final String name )
+    {
+        for ( final MessageTypeInformation information : this.statistics.getMessageTypes () )
+        {
+            if ( information.getType ().equals ( name ) )
+            {
+                return information;
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void testAttribution () throws Exception
+    {
+        write ( "message", 10 );
+        write ( 1, 3, 4 );
+        write ( "message", 5 );
+
+        Assert.assertEquals ( 2, find ( "String" ).getMessagesSent () );
+        Assert.assertEquals ( 15, find ( "String" ).getBytesSent () );
+        Assert.assertEquals ( 1, find ( "Integer" ).getMessagesSent () );
+        Assert.assertEquals ( 7, find ( "Integer" ).getBytesSent () );
+        Assert.assertEquals ( 22, this.statistics.getBytesSent () );
+
+        // all requests are passed on, data and markers
+        Assert.assertEquals ( 7, this.passed.size () );
+    }
+
+    @Test
+    public void testUnattributedBytes () throws Exception
+    {
+        // data written below the codec, like the frame activating the compression
+        this.filter.filterWrite ( this.nextFilter, null, new DefaultWriteRequest ( IoBuffer.wrap ( new byte[2] ) ) );
+        Assert.assertEquals ( 2, this.statistics.getBytesSent () );
+        Assert.assertEquals ( 0, this.statistics.getMessageTypes ().length );
+
+        // is attributed to the following message
+        write ( "message", 10 );
+        Assert.assertEquals ( 12, find ( "String" ).getBytesSent () );
+        Assert.assertEquals ( 12, this.statistics.getBytesSent () );
+    }
+
+    @Test
+    public void testWrappedData () throws Exception
+    {
+        // data wrapped by a filter between the codec and this filter, like a compressed frame
+        final WriteRequest encoded = new DefaultWriteRequest ( IoBuffer.wrap ( new byte[20] ) );
+        this.filter.filterWrite ( this.nextFilter, null, new WriteRequestWrapper ( encoded ) {
+            @Override
+            public Object getMessage ()
+            {
+                return IoBuffer.wrap ( new byte[8] );
+            }
+        } );
+        this.filter.filterWrite ( this.nextFilter, null, new MarkerRequest ( new DefaultWriteRequest ( "message" ) ) );
+
+        Assert.assertEquals ( 8, find ( "String" ).getBytesSent () );
+        Assert.assertEquals ( 8, this.statistics.getBytesSent () );
+    }
+
+    @Test
+    public void testReceived () throws Exception
+    {
+        this.filter.messageReceived ( this.nextFilter, null, IoBuffer.wrap ( new byte[10] ) );
+        this.filter.messageReceived ( this.nextFilter, null, IoBuffer.wrap ( new byte[5] ) );
+        this.filter.messageReceived ( this.nextFilter, null, "decoded" );
+
+        Assert.assertEquals ( 15, this.statistics.getBytesReceived () );
+        Assert.assertEquals ( 3, this.passed.size () );
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+
+package org.openscada.core.server.common.stats;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TrafficStatisticsTest
+{
+    private static MessageTypeInformation find ( final TrafficStatistics statistics, final String name )
+    {
+        for ( final MessageTypeInformation information : statistics.getMessageTypes () )
+        {
+            if ( information.getType ().equals ( name ) )
+            {
+                return information;
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void testMessageTypes ()
+    {
+        final TrafficStatistics statistics = new TrafficStatistics ();
+
+        statistics.messageReceived ( "request" );
+        statistics.messageReceived ( "request" );
+        statistics.messageSent ( "reply", 10 );
+        statistics.messageSent ( 1, 4 );
+        statistics.messageSent ( 2, 6 );
+
+        Assert.assertEquals ( 2, statistics.getMessageTypes ().length );
+
+        final MessageTypeInformation strings = find ( statistics, "String" );
+        Assert.assertEquals ( 2, strings.getMessagesReceived () );
+        Assert.assertEquals ( 1, strings.getMessagesSent () );
+        Assert.assertEquals ( 10, strings.getBytesSent () );
+
+        final MessageTypeInformation integers = find ( statistics, "Integer" );
+        Assert.assertEquals ( 0, integers.getMessagesReceived () );
+        Assert.assertEquals ( 2, integers.getMessagesSent () );
+        Assert.assertEquals ( 10, integers.getBytesSent () );
+    }
+
+    @Test
+    public void testCustomMessageType ()
+    {
+        final TrafficStatistics statistics = new TrafficStatistics () {
+            @Override
+            protected Object getMessageType ( final Object message )
+            {
+                return ( (String)message ).substring ( 0, 1 );
+            }
+        };
+
+        statistics.messageSent ( "a1", 1 );
+        statistics.messageSent ( "a2", 2 );
+        statistics.messageSent ( "b1", 4 );
+
+        Assert.assertEquals ( 3, find ( statistics, "a" ).getBytesSent () );
+        Assert.assertEquals ( 4, find ( statistics, "b" ).getBytesSent () );
+    }
+
+    @Test
+    public void testBytes ()
+    {
+        final TrafficStatistics statistics = new TrafficStatistics ();
+
+        statistics.bytesReceived ( 100 );
+        statistics.bytesReceived ( 20 );
+        statistics.bytesSent ( 7 );
+
+        Assert.assertEquals ( 120, statistics.getBytesReceived () );
+        Assert.assertEquals ( 7, statistics.getBytesSent () );
+    }
+
+    @Test
+    public void testRoundTrip ()
+    {
+        final TrafficStatistics statistics = new TrafficStatistics ();
+
+        statistics.requestReceived ( 1 );
+        statistics.requestReceived ( 2 );
+        statistics.replySent ( 2 );
+        statistics.replySent ( 1 );
+
+        Assert.assertEquals ( 2, statistics.getRoundTrips ().getInformation ().getCount () );
+
+        // the reply was already counted
+        statistics.replySent ( 1 );
+        Assert.assertEquals ( 2, statistics.getRoundTrips ().getInformation ().getCount () );
+    }
+
+    @Test
+    public void testUnknownReply ()
+    {
+        final TrafficStatistics statistics = new TrafficStatistics ();
+
+        // never received, and a reply which does not refer to a request
+        statistics.replySent ( 42 );
+        statistics.replySent ( Long.MIN_VALUE );
+
+        Assert.assertEquals ( 0, statistics.getRoundTrips ().getInformation ().getCount () );
+    }
+
+    @Test
+    public void testReplacedRequest ()
+    {
+        final TrafficStatistics statistics = new TrafficStatistics ();
+
+        // both requests use the same slot, the first one is no longer tracked
+        statistics.requestReceived ( 1 );
+        statistics.requestReceived ( 1 + 256 );
+
+        statistics.replySent ( 1 );
+        Assert.assertEquals ( 0, statistics.getRoundTrips ().getInformation ().getCount () );
+
+        statistics.replySent ( 1 + 256 );
+        Assert.assertEquals ( 1, statistics.getRoundTrips ().getInformation ().getCount () );
+    }
+}
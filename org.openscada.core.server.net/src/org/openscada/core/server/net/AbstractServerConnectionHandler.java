@@ -36,11 +36,15 @@ import org.openscada.core.info.StatisticsImpl;
 import org.openscada.core.net.ConnectionHelper;
 import org.openscada.core.net.MessageHelper;
 import org.openscada.core.server.common.stats.ManagedConnection;
+import org.openscada.core.server.common.stats.TrafficAccountingFilter;
+import org.openscada.core.server.common.stats.TrafficStatistics;
 import org.openscada.net.Constants;
 import org.openscada.net.base.PingService;
 import org.openscada.net.base.data.Message;
 import org.openscada.net.mina.IoSessionSender;
 import org.openscada.net.mina.Messenger;
+import org.openscada.net.mina.PrioritizedWriter;
+import org.openscada.net.mina.WritePriority;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -59,6 +63,8 @@ public abstract class AbstractServerConnectionHandler implements SingleSessionIo
 
     private static final int DEFAULT_TIMEOUT = 10000;
 
+    private static final boolean IDLE_KEEP_ALIVE = Boolean.parseBoolean ( System.getProperty ( "org.openscada.core.server.net.idleKeepAlive", "true" ) );
+
     protected IoSession ioSession;
 
     protected final Messenger messenger;
@@ -75,6 +81,15 @@ public abstract class AbstractServerConnectionHandler implements SingleSessionIo
 
     private Set<String> privileges;
 
+    private final PrioritizedWriter writer;
+
+    private final IoSessionSender sender;
+
+    /**
+     * The traffic statistics, <code>null</code> if disabled
+     */
+    private final TrafficStatistics traffic;
+
     public AbstractServerConnectionHandler ( final IoSession ioSession, final ConnectionInformation connectionInformation )
     {
         super ();
@@ -84,12 +99,64 @@ public abstract class AbstractServerConnectionHandler implements SingleSessionIo
         this.statistics = new StatisticsImpl ();
 
         this.messenger = new Messenger ( getMessageTimeout (), this.statistics );
+        this.messenger.setIdleDriven ( IDLE_KEEP_ALIVE );
 
         this.pingService = new PingService ( this.messenger );
 
-        this.ioSession.getConfig ().setReaderIdleTime ( getPingPeriod () / 1000 );
+        if ( IDLE_KEEP_ALIVE )
+        {
+            // the idle event drives the session timeout check, so never disable it
+            this.ioSession.getConfig ().setReaderIdleTime ( Math.max ( 1, getPingPeriod () / 1000 ) );
+        }
+        else
+        {
+            // a ping period below one second disables the idle event
+            this.ioSession.getConfig ().setReaderIdleTime ( getPingPeriod () / 1000 );
+        }
 
-        this.messenger.connected ( new IoSessionSender ( this.ioSession, this.statistics ) );
+        // replies and control messages overtake queued data notifications
+        final String priorityWrites = connectionInformation.getProperties ().get ( "priorityWrites" );
+        if ( priorityWrites != null ? Boolean.parseBoolean ( priorityWrites ) : PrioritizedWriter.isEnabled () )
+        {
+            this.writer = new PrioritizedWriter ( this.ioSession );
+        }
+        else
+        {
+            this.writer = null;
+        }
+
+        if ( TrafficStatistics.isEnabled () )
+        {
+            this.traffic = new TrafficStatistics () {
+                @Override
+                protected Object getMessageType ( final Object message )
+                {
+                    if ( message instanceof Message )
+                    {
+                        return Integer.valueOf ( ( (Message)message ).getCommandCode () );
+                    }
+                    return super.getMessageType ( message );
+                }
+
+                @Override
+                protected String getTypeName ( final Object type )
+                {
+                    if ( type instanceof Integer )
+                    {
+                        return String.format ( "0x%08X", type );
+                    }
+                    return super.getTypeName ( type );
+                }
+            };
+            TrafficAccountingFilter.install ( this.ioSession, this.traffic );
+        }
+        else
+        {
+            this.traffic = null;
+        }
+
+        this.sender = new IoSessionSender ( this.ioSession, this.statistics, this.writer );
+        this.messenger.connected ( this.sender );
 
         this.mxBean = ManagedConnection.register ( new ManagedConnection () {
             @Override
@@ -109,6 +176,18 @@ public abstract class AbstractServerConnectionHandler implements SingleSessionIo
             {
                 AbstractServerConnectionHandler.this.ioSession.close ( false );
             }
+
+            @Override
+            public TrafficStatistics getTrafficStatistics ()
+            {
+                return AbstractServerConnectionHandler.this.traffic;
+            }
+
+            @Override
+            public long getQueuedMessages ()
+            {
+                return getScheduledWriteMessages ();
+            }
         }, ioSession.getRemoteAddress (), "org.openscada.core.server.net" );
 
         this.statistics.setLabel ( STATS_PINGS_SENT, "Pings sent" );
@@ -124,6 +203,49 @@ public abstract class AbstractServerConnectionHandler implements SingleSessionIo
         modifyFilterChain ( this.ioSession, properties );
     }
 
+    /**
+     * @since 1.1
+     */
+    protected StatisticsImpl getStatistics ()
+    {
+        return this.statistics;
+    }
+
+    /**
+     * Set the outbound lane of messages with the provided command code
+     * 
+     * @see IoSessionSender#setPriority(int, WritePriority)
+     * @since 1.1
+     */
+    protected void setWritePriority ( final int commandCode, final WritePriority priority )
+    {
+        this.sender.setPriority ( commandCode, priority );
+    }
+
+    /**
+     * @return the number of bytes queued for sending, including the
+     *         (estimated) size of the messages waiting in the outbound lanes
+     * @since 1.1
+     */
+    protected long getScheduledWriteBytes ()
+    {
+        final IoSession ioSession = this.ioSession;
+        final long scheduled = ioSession == null ? 0 : ioSession.getScheduledWriteBytes ();
+        return this.writer == null ? scheduled : scheduled + this.writer.getQueuedBytes ();
+    }
+
+    /**
+     * @return the number of messages queued for sending, including the
+     *         messages waiting in the outbound lanes
+     * @since 1.1
+     */
+    protected long getScheduledWriteMessages ()
+    {
+        final IoSession ioSession = this.ioSession;
+        final long scheduled = ioSession == null ? 0 : ioSession.getScheduledWriteMessages ();
+        return this.writer == null ? scheduled : scheduled + this.writer.getQueuedMessages ();
+    }
+
     protected void sendPrivilegeChange ( final Set<String> privileges )
     {
         this.privileges = privileges;
@@ -201,6 +323,12 @@ public abstract class AbstractServerConnectionHandler implements SingleSessionIo
         {
             this.statistics.setCurrentValue ( STATS_SESSION_BYTES_READ, this.ioSession.getReadBytes () );
 
+            if ( this.traffic != null )
+            {
+                this.traffic.messageReceived ( message );
+                this.traffic.requestReceived ( ( (Message)message ).getSequence () );
+            }
+
             if ( ( (Message)message ).getCommandCode () == MessageHelper.CC_START_SESSION )
             {
                 startSession ();
@@ -238,7 +366,16 @@ public abstract class AbstractServerConnectionHandler implements SingleSessionIo
     public void messageSent ( final Object message ) throws Exception
     {
         this.statistics.setCurrentValue ( STATS_SESSION_BYTES_WRITTEN, this.ioSession.getWrittenBytes () );
-        this.statistics.setCurrentValue ( IoSessionSender.STATS_QUEUED_BYTES, this.ioSession.getScheduledWriteBytes () );
+        this.statistics.setCurrentValue ( IoSessionSender.STATS_QUEUED_BYTES, getScheduledWriteBytes () );
+
+        if ( this.traffic != null && message instanceof Message )
+        {
+            final long replySequence = ( (Message)message ).getReplySequence ();
+            if ( replySequence != 0 )
+            {
+                this.traffic.replySent ( replySequence );
+            }
+        }
     }
 
     @Override
@@ -261,6 +398,11 @@ public abstract class AbstractServerConnectionHandler implements SingleSessionIo
             this.ioSession.close ( true );
             this.ioSession = null;
         }
+
+        if ( this.writer != null )
+        {
+            this.writer.dispose ();
+        }
     }
 
     @Override
@@ -271,6 +413,24 @@ public abstract class AbstractServerConnectionHandler implements SingleSessionIo
     @Override
     public void sessionIdle ( final IdleStatus status ) throws Exception
     {
+        if ( status != IdleStatus.READER_IDLE )
+        {
+            return;
+        }
+
+        // any received message counts as sign of life, so we only get here if nothing was received for a ping period
+        if ( !this.messenger.sessionIdle () )
+        {
+            // timed out and closed
+            return;
+        }
+
+        if ( getPingPeriod () <= 0 )
+        {
+            // only checking the session timeout, pings are disabled
+            return;
+        }
+
         this.pingService.sendPing ();
         this.statistics.changeCurrentValue ( STATS_PINGS_SENT, 1 );
     }
@@ -27,10 +27,12 @@ import java.util.Set;
 
 import org.apache.mina.core.service.IoAcceptor;
 import org.apache.mina.core.service.IoHandler;
+import org.apache.mina.filter.executor.ExecutorFilter;
 import org.apache.mina.handler.multiton.SingleSessionIoHandlerDelegate;
 import org.openscada.core.ConnectionInformation;
 import org.openscada.core.net.ConnectionHelper;
 import org.openscada.core.server.common.NetworkHelper;
+import org.openscada.net.mina.AcceptorConfiguration;
 import org.openscada.net.mina.SocketImpl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -42,6 +44,8 @@ public class Server
 
     private IoAcceptor acceptor;
 
+    private ExecutorFilter executorFilter;
+
     private final ConnectionInformation connectionInformation;
 
     public Server ( final ConnectionInformation connectionInformation )
@@ -61,12 +65,22 @@ public class Server
 
         final SocketImpl socketImpl = SocketImpl.fromName ( this.connectionInformation.getProperties ().get ( "socketImpl" ) );
 
+        final AcceptorConfiguration configuration = AcceptorConfiguration.fromProperties ( this.connectionInformation.getProperties () );
+        logger.debug ( "Acceptor configuration: {}", configuration );
+
         // create the acceptor
-        acceptor = socketImpl.createAcceptor ();
+        acceptor = socketImpl.createAcceptor ( configuration );
 
         // set up the filter chain
         ConnectionHelper.setupFilterChain ( this.connectionInformation, acceptor.getFilterChain (), false );
 
+        // hand over decoded messages to the executor, if configured
+        this.executorFilter = configuration.createExecutorFilter ();
+        if ( this.executorFilter != null )
+        {
+            acceptor.getFilterChain ().addLast ( "executor", this.executorFilter );
+        }
+
         // set the session handler
         acceptor.setHandler ( ioHandler );
 
@@ -97,5 +111,10 @@ public class Server
             this.acceptor.dispose ();
             this.acceptor = null;
         }
+        if ( this.executorFilter != null )
+        {
+            this.executorFilter.destroy ();
+            this.executorFilter = null;
+        }
     }
 }
@@ -26,9 +26,14 @@ import java.net.InetSocketAddress;
 import java.util.Collection;
 import java.util.Set;
 
+import org.apache.mina.core.filterchain.IoFilterChain;
+import org.apache.mina.core.filterchain.IoFilterChainBuilder;
 import org.apache.mina.core.session.IoSession;
+import org.apache.mina.filter.executor.ExecutorFilter;
 import org.apache.mina.transport.socket.nio.NioSocketAcceptor;
 import org.openscada.core.server.common.NetworkHelper;
+import org.openscada.net.mina.AcceptorConfiguration;
+import org.openscada.net.mina.WriteCoalescingFilter;
 import org.openscada.protocol.ngp.common.FilterChainBuilder;
 import org.openscada.protocol.ngp.common.ProtocolConfigurationFactory;
 import org.slf4j.Logger;
@@ -45,17 +50,54 @@ public abstract class ServerBase
 
     private final FilterChainBuilder chainBuilder;
 
+    private final ExecutorFilter executorFilter;
+
+    private final WriteCoalescingFilter coalescingFilter;
+
     public ServerBase ( final Collection<InetSocketAddress> addresses, final ProtocolConfigurationFactory protocolConfigurationFactory ) throws Exception
+    {
+        this ( addresses, protocolConfigurationFactory, AcceptorConfiguration.fromSystemProperties () );
+    }
+
+    /**
+     * @since 1.1
+     */
+    public ServerBase ( final Collection<InetSocketAddress> addresses, final ProtocolConfigurationFactory protocolConfigurationFactory, final AcceptorConfiguration acceptorConfiguration ) throws Exception
     {
         this.addresses = addresses;
 
-        this.acceptor = new NioSocketAcceptor ();
-        this.acceptor.setReuseAddress ( true );
+        logger.debug ( "Acceptor configuration: {}", acceptorConfiguration );
+        this.acceptor = acceptorConfiguration.createNioAcceptor ();
 
         this.chainBuilder = new FilterChainBuilder ( false );
         this.chainBuilder.setLoggerName ( ServerBase.class.getName () + ".protocol" );
 
-        this.acceptor.setFilterChainBuilder ( this.chainBuilder );
+        this.executorFilter = acceptorConfiguration.createExecutorFilter ();
+        this.coalescingFilter = WriteCoalescingFilter.isEnabled () ? new WriteCoalescingFilter () : null;
+        if ( this.executorFilter == null && this.coalescingFilter == null )
+        {
+            this.acceptor.setFilterChainBuilder ( this.chainBuilder );
+        }
+        else
+        {
+            this.acceptor.setFilterChainBuilder ( new IoFilterChainBuilder () {
+
+                @Override
+                public void buildFilterChain ( final IoFilterChain chain ) throws Exception
+                {
+                    ServerBase.this.chainBuilder.buildFilterChain ( chain );
+                    if ( ServerBase.this.coalescingFilter != null )
+                    {
+                        WriteCoalescingFilter.install ( chain, ServerBase.this.coalescingFilter );
+                    }
+                    if ( ServerBase.this.executorFilter != null )
+                    {
+                        // hand over decoded messages to the executor
+                        chain.addLast ( "executor", ServerBase.this.executorFilter );
+                    }
+                }
+            } );
+        }
         this.acceptor.setHandler ( new ServerBaseHandler ( this, protocolConfigurationFactory.createConfiguration ( false ) ) );
     }
 
@@ -76,6 +118,10 @@ public abstract class ServerBase
     public void dispose ()
     {
         this.acceptor.dispose ();
+        if ( this.executorFilter != null )
+        {
+            this.executorFilter.destroy ();
+        }
     }
 
     public abstract ServerConnection createNewConnection ( final IoSession session );
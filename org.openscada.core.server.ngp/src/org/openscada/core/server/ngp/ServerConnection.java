@@ -26,11 +26,19 @@ import java.util.Map;
 
 import javax.net.ssl.SSLSession;
 
+import org.apache.mina.core.future.IoFutureListener;
+import org.apache.mina.core.future.WriteFuture;
 import org.apache.mina.core.session.IoSession;
 import org.apache.mina.filter.ssl.SslFilter;
+import org.openscada.core.data.RequestMessage;
+import org.openscada.core.data.ResponseMessage;
 import org.openscada.core.info.StatisticEntry;
 import org.openscada.core.info.StatisticsImpl;
 import org.openscada.core.server.common.stats.ManagedConnection;
+import org.openscada.core.server.common.stats.TrafficAccountingFilter;
+import org.openscada.core.server.common.stats.TrafficStatistics;
+import org.openscada.net.mina.PrioritizedWriter;
+import org.openscada.net.mina.WritePriority;
 import org.openscada.protocol.ngp.common.StatisticsFilter;
 import org.openscada.protocol.ngp.common.mc.MessageChannelFilter;
 import org.slf4j.Logger;
@@ -53,6 +61,17 @@ public abstract class ServerConnection
 
     private final Object writeLock = new Object ();
 
+    /**
+     * The writer of the outbound lanes, <code>null</code> if messages are
+     * written to the session directly
+     */
+    private final PrioritizedWriter writer;
+
+    /**
+     * The traffic statistics, <code>null</code> if disabled
+     */
+    private final TrafficStatistics traffic;
+
     public ServerConnection ( final IoSession session )
     {
         logger.info ( "Creating new server connection: {}", session );
@@ -61,6 +80,18 @@ public abstract class ServerConnection
 
         this.session = session;
 
+        this.writer = PrioritizedWriter.isEnabled () ? new PrioritizedWriter ( session ) : null;
+
+        if ( TrafficStatistics.isEnabled () )
+        {
+            this.traffic = new TrafficStatistics ();
+            TrafficAccountingFilter.install ( session, this.traffic );
+        }
+        else
+        {
+            this.traffic = null;
+        }
+
         this.mxBean = ManagedConnection.register ( new ManagedConnection () {
             @Override
             protected Collection<StatisticEntry> getEntries ()
@@ -74,6 +105,18 @@ public abstract class ServerConnection
                 ServerConnection.this.session.close ( false );
             }
 
+            @Override
+            public TrafficStatistics getTrafficStatistics ()
+            {
+                return ServerConnection.this.traffic;
+            }
+
+            @Override
+            public long getQueuedMessages ()
+            {
+                return getScheduledWriteMessages ();
+            }
+
             @Override
             public Map<String, String> getTransportProperties ()
             {
@@ -106,20 +149,96 @@ public abstract class ServerConnection
         }
 
         requestClose ( true );
+
+        if ( this.writer != null )
+        {
+            this.writer.dispose ();
+        }
     }
 
     protected void sendMessage ( final Object message )
+    {
+        sendMessage ( message, WritePriority.CONTROL );
+    }
+
+    /**
+     * Send a message through one of the outbound lanes
+     * <p>
+     * Replies to requests should be sent as {@link WritePriority#CONTROL} so
+     * that they are not queued behind pending data updates.
+     * </p>
+     * 
+     * @param message
+     *            the message to send
+     * @param priority
+     *            the lane to use
+     * @since 1.1
+     */
+    protected void sendMessage ( final Object message, final WritePriority priority )
     {
         logger.trace ( "Sending message: {}", message );
 
         this.statistics.changeCurrentValue ( STATS_MESSAGES_SENT, 1 );
 
-        synchronized ( this.writeLock )
+        final WriteFuture future;
+        if ( this.writer != null )
         {
-            // only one thread may write at a time, otherwise MINA's filters may get corrupted
-            // also see https://issues.apache.org/jira/browse/DIRMINA-653
-            this.session.write ( message );
+            // the writer serializes the writes itself
+            future = this.writer.write ( message, priority );
         }
+        else
+        {
+            synchronized ( this.writeLock )
+            {
+                // only one thread may write at a time, otherwise MINA's filters may get corrupted
+                // also see https://issues.apache.org/jira/browse/DIRMINA-653
+                future = this.session.write ( message );
+            }
+        }
+
+        if ( this.traffic != null && message instanceof ResponseMessage )
+        {
+            final long requestId = ( (ResponseMessage)message ).getResponse ().getRequest ().getRequestId ();
+            future.addListener ( new IoFutureListener<WriteFuture> () {
+
+                @Override
+                public void operationComplete ( final WriteFuture future )
+                {
+                    ServerConnection.this.traffic.replySent ( requestId );
+                }
+            } );
+        }
+    }
+
+    /**
+     * @return the network session of the connection
+     * @since 1.1
+     */
+    protected IoSession getIoSession ()
+    {
+        return this.session;
+    }
+
+    /**
+     * @return the number of bytes queued for sending, including the
+     *         (estimated) size of the messages waiting in the outbound lanes
+     * @since 1.1
+     */
+    public long getScheduledWriteBytes ()
+    {
+        final long scheduled = this.session.getScheduledWriteBytes ();
+        return this.writer == null ? scheduled : scheduled + this.writer.getQueuedBytes ();
+    }
+
+    /**
+     * @return the number of messages queued for sending, including the
+     *         messages waiting in the outbound lanes
+     * @since 1.1
+     */
+    public long getScheduledWriteMessages ()
+    {
+        final long scheduled = this.session.getScheduledWriteMessages ();
+        return this.writer == null ? scheduled : scheduled + this.writer.getQueuedMessages ();
     }
 
     public void requestClose ( final boolean immediately )
@@ -134,6 +253,16 @@ public abstract class ServerConnection
         logger.trace ( "Message received: {}", message );
 
         this.statistics.changeCurrentValue ( STATS_MESSAGES_RECEIVED, 1 );
+
+        if ( this.traffic != null )
+        {
+            this.traffic.messageReceived ( message );
+            if ( message instanceof RequestMessage )
+            {
+                this.traffic.requestReceived ( ( (RequestMessage)message ).getRequest ().getRequestId () );
+            }
+        }
+
         messageReceived ( message );
     }
 
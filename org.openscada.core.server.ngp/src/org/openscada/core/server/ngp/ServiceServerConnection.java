@@ -21,6 +21,7 @@
 
 package org.openscada.core.server.ngp;
 
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -42,6 +43,7 @@ import org.openscada.core.data.message.SessionAccepted;
 import org.openscada.core.data.message.SessionPrivilegesChanged;
 import org.openscada.core.data.message.SessionRejected;
 import org.openscada.core.ngp.Features;
+import org.openscada.core.ngp.FrameCompressionFilter;
 import org.openscada.core.ngp.MessageSender;
 import org.openscada.core.ngp.ResponseManager;
 import org.openscada.core.server.Service;
@@ -72,6 +74,8 @@ public abstract class ServiceServerConnection<T extends Session, S extends Servi
 
     private boolean enableCallbacks;
 
+    private boolean enableFrameCompression;
+
     private final ResponseManager responseManager;
 
     private final MessageSender messageSender = new MessageSender () {
@@ -122,6 +126,9 @@ public abstract class ServiceServerConnection<T extends Session, S extends Servi
             this.enableCallbacks = message.getProperties ().containsKey ( Features.FEATURE_CALLBACKS );
             logger.info ( "Enable callbacks: {}", this.enableCallbacks ); //$NON-NLS-1$
 
+            this.enableFrameCompression = isFrameCompressionAllowed () && FrameCompressionFilter.getFeatureValue ().equals ( message.getProperties ().get ( Features.FEATURE_FRAME_COMPRESSION ) ) && FrameCompressionFilter.isSupported ( getIoSession () );
+            logger.info ( "Enable frame compression: {}", this.enableFrameCompression ); //$NON-NLS-1$
+
             this.logonInProgress = true;
 
             final CallbackHandler callbackHandler;
@@ -187,7 +194,28 @@ public abstract class ServiceServerConnection<T extends Session, S extends Servi
 
         initializeSession ( this.session );
 
-        sendMessage ( makeSuccessMessage ( this.session.getProperties () ) );
+        final Map<String, String> properties = new HashMap<String, String> ();
+        if ( this.session.getProperties () != null )
+        {
+            properties.putAll ( this.session.getProperties () );
+        }
+
+        // the client does not send anything until it received the reply, so the filter can be installed now
+        final FrameCompressionFilter frameCompressionFilter = this.enableFrameCompression ? FrameCompressionFilter.install ( getIoSession () ) : null;
+        if ( frameCompressionFilter != null )
+        {
+            properties.put ( Features.FEATURE_FRAME_COMPRESSION, FrameCompressionFilter.getFeatureValue () );
+        }
+
+        // nothing else is pending before the session is accepted, so even the outbound lanes hand this over right away
+        sendMessage ( makeSuccessMessage ( properties ) );
+
+        if ( frameCompressionFilter != null )
+        {
+            // hold back everything else until the client activated compression
+            frameCompressionFilter.hold ();
+        }
+
         this.session.addSessionListener ( new SessionListener () {
 
             @Override
@@ -198,6 +226,19 @@ public abstract class ServiceServerConnection<T extends Session, S extends Servi
         } );
     }
 
+    /**
+     * Check if the server allows frame compression
+     * <p>
+     * Can be disabled by setting the system property
+     * <code>org.openscada.core.server.ngp.frameCompression</code> to
+     * <code>false</code>.
+     * </p>
+     */
+    private static boolean isFrameCompressionAllowed ()
+    {
+        return Boolean.parseBoolean ( System.getProperty ( "org.openscada.core.server.ngp.frameCompression", "true" ) ); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
     /**
      * @since 1.1
      */
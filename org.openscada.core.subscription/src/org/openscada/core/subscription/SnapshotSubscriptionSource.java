@@ -0,0 +1,47 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+
+package org.openscada.core.subscription;
+
+import java.util.Collection;
+
+/**
+ * A subscription source which can hand out its current state as a snapshot
+ * instead of delivering it to each new listener on its own.
+ * 
+ * @since 1.1
+ */
+public interface SnapshotSubscriptionSource extends SubscriptionSource
+{
+    /**
+     * Add listeners without sending them the current state
+     * <p>
+     * Adding the listeners and taking the snapshot must be atomic with respect
+     * to changes of the source. So every change delivered to the new listeners
+     * is newer than the returned snapshot.
+     * </p>
+     * 
+     * @param listeners
+     *            the listeners to add
+     * @return the current state of the source
+     */
+    public abstract Object addListenerWithSnapshot ( Collection<SubscriptionInformation> listeners );
+}
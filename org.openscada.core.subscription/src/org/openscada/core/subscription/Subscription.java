@@ -67,6 +67,21 @@ public class Subscription
     }
 
     public synchronized void subscribe ( final SubscriptionListener listener, final Object hint )
+    {
+        subscribe ( listener, hint, null );
+    }
+
+    /**
+     * Subscribe a listener
+     * 
+     * @param snapshots
+     *            if not <code>null</code> and the source is a
+     *            {@link SnapshotSubscriptionSource}, the current state is not
+     *            delivered to the listener but put into this map using the
+     *            topic as key
+     * @since 1.1
+     */
+    public synchronized void subscribe ( final SubscriptionListener listener, final Object hint, final Map<Object, Object> snapshots )
     {
         final SubscriptionInformation subscriptionInformation = new SubscriptionInformation ( listener, hint );
 
@@ -83,7 +98,14 @@ public class Subscription
         else
         {
             listener.updateStatus ( this.topic, SubscriptionState.CONNECTED );
-            this.source.addListener ( Arrays.asList ( subscriptionInformation ) );
+            if ( snapshots != null && this.source instanceof SnapshotSubscriptionSource )
+            {
+                snapshots.put ( this.topic, ( (SnapshotSubscriptionSource)this.source ).addListenerWithSnapshot ( Arrays.asList ( subscriptionInformation ) ) );
+            }
+            else
+            {
+                this.source.addListener ( Arrays.asList ( subscriptionInformation ) );
+            }
         }
     }
 
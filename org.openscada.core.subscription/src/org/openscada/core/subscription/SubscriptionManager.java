@@ -19,6 +19,7 @@
 
 package org.openscada.core.subscription;
 
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -86,6 +87,11 @@ public class SubscriptionManager
      *             topic is invalid)
      */
     public synchronized void subscribe ( final Object topic, final SubscriptionListener listener, final Object hint ) throws ValidationException
+    {
+        subscribe ( topic, listener, hint, null );
+    }
+
+    private void subscribe ( final Object topic, final SubscriptionListener listener, final Object hint, final Map<Object, Object> snapshots ) throws ValidationException
     {
         // If we have a validator then do validate
         SubscriptionValidator v;
@@ -105,7 +111,83 @@ public class SubscriptionManager
             this.subscriptions.put ( topic, s );
         }
 
-        s.subscribe ( listener, hint );
+        s.subscribe ( listener, hint, snapshots );
+    }
+
+    /**
+     * Subscribe to a set of topics at once.
+     * <p>
+     * All subscriptions are processed while holding the lock of the manager
+     * only once.
+     * </p>
+     * 
+     * @param topics
+     *            The topics to which the subscriptions should be made
+     * @param listener
+     *            The listener which will receive the events
+     * @return The topics which failed validation, never <code>null</code>
+     * @since 1.1
+     */
+    public synchronized Collection<Object> subscribeTopics ( final Collection<?> topics, final SubscriptionListener listener )
+    {
+        return subscribeTopics ( topics, listener, null );
+    }
+
+    /**
+     * Subscribe to a set of topics at once, collecting the current state
+     * <p>
+     * For topics whose source is a {@link SnapshotSubscriptionSource}, the
+     * current state is not delivered to the listener topic by topic, but put
+     * into the provided map. The caller is responsible for delivering the
+     * snapshots to the listener. All changes the listener receives from these
+     * sources are newer than the snapshots.
+     * </p>
+     * 
+     * @param topics
+     *            The topics to which the subscriptions should be made
+     * @param listener
+     *            The listener which will receive the events
+     * @param snapshots
+     *            The map receiving the snapshots, mapped by topic. May be
+     *            <code>null</code> in which case the current state is
+     *            delivered to the listener as usual.
+     * @return The topics which failed validation, never <code>null</code>
+     * @since 1.1
+     */
+    public synchronized Collection<Object> subscribeTopics ( final Collection<?> topics, final SubscriptionListener listener, final Map<Object, Object> snapshots )
+    {
+        final Collection<Object> rejected = new LinkedList<Object> ();
+
+        for ( final Object topic : topics )
+        {
+            try
+            {
+                subscribe ( topic, listener, null, snapshots );
+            }
+            catch ( final ValidationException e )
+            {
+                rejected.add ( topic );
+            }
+        }
+
+        return rejected;
+    }
+
+    /**
+     * Unsubscribe from a set of topics at once.
+     * 
+     * @param topics
+     *            The topics to unsubscribe from
+     * @param listener
+     *            The listener to unsubscribe
+     * @since 1.1
+     */
+    public synchronized void unsubscribeTopics ( final Collection<?> topics, final SubscriptionListener listener )
+    {
+        for ( final Object topic : topics )
+        {
+            unsubscribe ( topic, listener );
+        }
     }
 
     public synchronized void unsubscribe ( final Object topic, final SubscriptionListener listener )
@@ -162,6 +244,26 @@ public class SubscriptionManager
         }
     }
 
+    /**
+     * Set a number of sources at once
+     * <p>
+     * This has the same effect as calling
+     * {@link #setSource(Object, SubscriptionSource)} for each entry, but
+     * acquires the lock only once.
+     * </p>
+     * 
+     * @param sources
+     *            the sources, mapped by topic
+     * @since 1.1
+     */
+    public synchronized void setSources ( final Map<?, ? extends SubscriptionSource> sources )
+    {
+        for ( final Map.Entry<?, ? extends SubscriptionSource> entry : sources.entrySet () )
+        {
+            setSource ( entry.getKey (), entry.getValue () );
+        }
+    }
+
     /**
      * Get the number of subscriptions currently registered
      * 
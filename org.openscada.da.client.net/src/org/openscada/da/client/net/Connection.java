@@ -27,9 +27,11 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledExecutorService;
 
+import org.apache.mina.core.session.IoSession;
 import org.openscada.core.ConnectionInformation;
 import org.openscada.core.OperationException;
 import org.openscada.core.Variant;
@@ -51,6 +53,7 @@ import org.openscada.da.core.Location;
 import org.openscada.da.core.WriteAttributeResults;
 import org.openscada.da.core.WriteResult;
 import org.openscada.da.core.browser.Entry;
+import org.openscada.da.net.handler.ItemHandleTable;
 import org.openscada.da.net.handler.ListBrowser;
 import org.openscada.da.net.handler.Messages;
 import org.openscada.da.net.handler.WriteAttributesOperation;
@@ -60,6 +63,7 @@ import org.openscada.net.base.data.MapValue;
 import org.openscada.net.base.data.Message;
 import org.openscada.net.base.data.StringValue;
 import org.openscada.net.base.data.Value;
+import org.openscada.net.mina.GMPPProtocolDecoder;
 import org.openscada.sec.callback.CallbackHandler;
 import org.openscada.utils.concurrent.AbstractFuture;
 import org.openscada.utils.concurrent.NotifyFuture;
@@ -128,6 +132,18 @@ public class Connection extends SessionConnectionBase implements org.openscada.d
 
     private final Map<Location, FolderListener> folderListeners = new ConcurrentHashMap<Location, FolderListener> ();
 
+    /**
+     * The last known state of the subscribed items, kept over reconnects if
+     * the server supports resuming from a sequence number
+     */
+    private final ResyncCache resyncCache = new ResyncCache ();
+
+    /**
+     * The item handles defined by the server, only used if the server
+     * announced {@link Messages#PROP_FEATURE_ITEM_HANDLES}
+     */
+    private final ItemHandleTable itemHandles = new ItemHandleTable ();
+
     // operations
     private final BrowseOperationController browseController;
 
@@ -151,7 +167,23 @@ public class Connection extends SessionConnectionBase implements org.openscada.d
             @Override
             public void messageReceived ( final Message message )
             {
-                notifyDataChange ( message );
+                if ( message.getPayload () instanceof NotifyDataVisitor )
+                {
+                    notifyDataChange ( (NotifyDataVisitor)message.getPayload () );
+                }
+                else
+                {
+                    notifyDataChange ( message );
+                }
+            }
+        } );
+
+        this.messenger.setHandler ( Messages.CC_NOTIFY_DATA_BULK, new MessageListener () {
+
+            @Override
+            public void messageReceived ( final Message message )
+            {
+                notifyDataChangeBulk ( message );
             }
         } );
 
@@ -185,6 +217,18 @@ public class Connection extends SessionConnectionBase implements org.openscada.d
         this.writeAttributesController.register ();
     }
 
+    @Override
+    public synchronized void sessionCreated ( final IoSession session ) throws Exception
+    {
+        super.sessionCreated ( session );
+
+        // handles are only valid within one session
+        this.itemHandles.clear ();
+
+        // read data notifications directly from the stream
+        session.setAttribute ( GMPPProtocolDecoder.ATTR_MESSAGE_VISITOR_FACTORY, NotifyDataVisitor.FACTORY );
+    }
+
     private void fireBrowseEvent ( final Location location, final Collection<Entry> added, final Collection<String> removed, final boolean full )
     {
         final FolderListener listener = this.folderListeners.get ( location );
@@ -220,11 +264,69 @@ public class Connection extends SessionConnectionBase implements org.openscada.d
 
     private void notifyDataChange ( final Message message )
     {
-        final boolean cache = message.getValues ().containsKey ( "cache-read" );
-        final String itemId = message.getValues ().get ( "item-id" ).toString ();
+        notifyDataChange ( message.getValues () );
+    }
+
+    private void notifyDataChangeBulk ( final Message message )
+    {
+        for ( final MapValue entry : Messages.parseNotifyDataBulk ( message ) )
+        {
+            notifyDataChange ( entry );
+        }
+    }
+
+    private void notifyDataChange ( final NotifyDataVisitor change )
+    {
+        final String itemId = resolveItem ( change.getItemId (), change.getItemHandle () );
+        if ( itemId == null )
+        {
+            return;
+        }
+
+        notifyDataChange ( itemId, change.getValue (), change.getAttributes (), change.isCache (), change.getSequence () );
+    }
+
+    private void notifyDataChange ( final MapValue values )
+    {
+        final boolean cache = values.containsKey ( "cache-read" );
+        final Value itemValue = values.get ( "item-id" );
+        final String itemId = resolveItem ( itemValue == null ? null : itemValue.toString (), Messages.parseItemHandle ( values ) );
+        if ( itemId == null )
+        {
+            return;
+        }
+
+        notifyDataChange ( itemId, decodeValueChange ( values ), decodeAttributeChange ( values ), cache, Messages.parseSequence ( values ) );
+    }
+
+    /**
+     * Get the item a data notification refers to
+     * 
+     * @return the item id or <code>null</code> if the notification cannot
+     *         be mapped to an item
+     * @see ItemHandleTable#resolve(String, int)
+     */
+    private String resolveItem ( final String itemId, final int itemHandle )
+    {
+        final String result = this.itemHandles.resolve ( itemId, itemHandle );
+        if ( result == null )
+        {
+            if ( itemHandle == 0 )
+            {
+                logger.warn ( "Received data notification without item id" );
+            }
+            else
+            {
+                logger.warn ( "Received data notification for unknown item handle: {}", itemHandle );
+            }
+        }
+        return result;
+    }
 
-        Variant value = decodeValueChange ( message );
-        Map<String, Variant> attributes = decodeAttributeChange ( message );
+    private void notifyDataChange ( final String itemId, final Variant valueChange, final Map<String, Variant> attributesChange, final boolean cache, final long sequence )
+    {
+        Variant value = valueChange;
+        Map<String, Variant> attributes = attributesChange;
 
         if ( cache && value == null )
         {
@@ -237,21 +339,23 @@ public class Connection extends SessionConnectionBase implements org.openscada.d
             attributes = new HashMap<String, Variant> ( 0 );
         }
 
+        this.resyncCache.update ( itemId, value, attributes, cache, sequence );
+
         fireDataChange ( itemId, value, attributes, cache );
     }
 
     /**
      * Decode the value change information from a "notify data" message
      * 
-     * @param message
-     *            the message
+     * @param values
+     *            the message values
      * @return the decoded value or <code>null</code> if no value was encoded
      */
-    private Variant decodeValueChange ( final Message message )
+    static Variant decodeValueChange ( final MapValue values )
     {
-        if ( message.getValues ().containsKey ( "value" ) )
+        if ( values.containsKey ( "value" ) )
         {
-            return MessageHelper.valueToVariant ( message.getValues ().get ( "value" ), null );
+            return MessageHelper.valueToVariant ( values.get ( "value" ), null );
         }
         return null;
     }
@@ -259,16 +363,16 @@ public class Connection extends SessionConnectionBase implements org.openscada.d
     /**
      * Decode the attributes from a "notify data" message
      * 
-     * @param message
-     *            the message
+     * @param values
+     *            the message values
      * @return the decoded attributes or <code>null</code> if no attribute
      *         changed
      */
-    private Map<String, Variant> decodeAttributeChange ( final Message message )
+    static Map<String, Variant> decodeAttributeChange ( final MapValue values )
     {
         final Map<String, Variant> attributes = new HashMap<String, Variant> ();
 
-        final Value setEntries = message.getValues ().get ( "attributes-set" );
+        final Value setEntries = values.get ( "attributes-set" );
         if ( setEntries instanceof MapValue )
         {
             for ( final Map.Entry<String, Value> entry : ( (MapValue)setEntries ).getValues ().entrySet () )
@@ -281,7 +385,7 @@ public class Connection extends SessionConnectionBase implements org.openscada.d
             }
         }
 
-        final Value unsetEntries = message.getValues ().get ( "attributes-unset" );
+        final Value unsetEntries = values.get ( "attributes-unset" );
         if ( unsetEntries instanceof ListValue )
         {
             for ( final Value entry : ( (ListValue)unsetEntries ).getValues () )
@@ -550,12 +654,96 @@ public class Connection extends SessionConnectionBase implements org.openscada.d
     public void unsubscribeItem ( final String itemId ) throws NoConnectionException
     {
         logger.debug ( "Unsubscribe from item: {}", itemId );
+        this.resyncCache.remove ( Collections.singleton ( itemId ) );
         if ( getState () == ConnectionState.BOUND )
         {
             this.messenger.sendMessage ( Messages.unsubscribeItem ( itemId ) );
         }
     }
 
+    @Override
+    public void subscribeItems ( final Collection<String> itemIds ) throws NoConnectionException
+    {
+        logger.debug ( "Subscribe to {} items", itemIds.size () );
+        if ( getState () != ConnectionState.BOUND )
+        {
+            return;
+        }
+
+        if ( isBulkSupported () )
+        {
+            final Collection<String> full = new ArrayList<String> ( itemIds.size () );
+            final Map<String, ResyncCache.ItemState> resumed = new HashMap<String, ResyncCache.ItemState> ();
+            final long since = this.resyncCache.prepare ( getSessionProperties ().get ( Messages.PROP_FEATURE_RESYNC ), itemIds, full, resumed );
+
+            if ( !resumed.isEmpty () )
+            {
+                logger.debug ( "Resuming {} items from sequence {}", resumed.size (), since );
+
+                // replay the known state, the server only sends the items which changed since then
+                for ( final Map.Entry<String, ResyncCache.ItemState> entry : resumed.entrySet () )
+                {
+                    fireDataChange ( entry.getKey (), entry.getValue ().getValue (), entry.getValue ().getAttributes (), true );
+                }
+                this.messenger.sendMessage ( Messages.subscribeItems ( resumed.keySet (), since ) );
+            }
+            if ( !full.isEmpty () )
+            {
+                this.messenger.sendMessage ( Messages.subscribeItems ( full ) );
+            }
+        }
+        else
+        {
+            for ( final String itemId : itemIds )
+            {
+                this.messenger.sendMessage ( Messages.subscribeItem ( itemId ) );
+            }
+        }
+    }
+
+    @Override
+    public void unsubscribeItems ( final Collection<String> itemIds ) throws NoConnectionException
+    {
+        logger.debug ( "Unsubscribe from {} items", itemIds.size () );
+        this.resyncCache.remove ( itemIds );
+        if ( getState () != ConnectionState.BOUND )
+        {
+            return;
+        }
+
+        if ( isBulkSupported () )
+        {
+            this.messenger.sendMessage ( Messages.unsubscribeItems ( itemIds ) );
+        }
+        else
+        {
+            for ( final String itemId : itemIds )
+            {
+                this.messenger.sendMessage ( Messages.unsubscribeItem ( itemId ) );
+            }
+        }
+    }
+
+    @Override
+    protected void customizeSessionProperties ( final Properties properties )
+    {
+        super.customizeSessionProperties ( properties );
+
+        // request item handles unless the connection information says otherwise
+        if ( !properties.containsKey ( Messages.PROP_FEATURE_ITEM_HANDLES ) )
+        {
+            properties.put ( Messages.PROP_FEATURE_ITEM_HANDLES, "true" );
+        }
+    }
+
+    /**
+     * Check if the server announced support for bulk subscriptions
+     */
+    private boolean isBulkSupported ()
+    {
+        return Boolean.parseBoolean ( getSessionProperties ().get ( Messages.PROP_FEATURE_BULK_SUBSCRIBE ) );
+    }
+
     @Override
     public ItemUpdateListener setItemUpdateListener ( final String itemId, final ItemUpdateListener listener )
     {
@@ -584,6 +772,8 @@ public class Connection extends SessionConnectionBase implements org.openscada.d
     @Override
     protected synchronized void onConnectionClosed ()
     {
+        this.itemHandles.clear ();
+
         // clear all subscribed folders
         final HashMap<Location, FolderListener> listeners = new HashMap<Location, FolderListener> ( this.folderListeners );
 
@@ -609,6 +799,11 @@ public class Connection extends SessionConnectionBase implements org.openscada.d
 
         Messages.parseSubscriptionChange ( message, item, subscriptionState );
 
+        if ( subscriptionState.value == SubscriptionState.DISCONNECTED && item.value != null )
+        {
+            this.itemHandles.remove ( item.value );
+        }
+
         fireSubscriptionChange ( item.value, subscriptionState.value );
     }
 
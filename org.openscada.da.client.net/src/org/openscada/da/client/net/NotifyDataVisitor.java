@@ -0,0 +1,288 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+
+package org.openscada.da.client.net;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.openscada.core.Variant;
+import org.openscada.da.net.handler.Messages;
+import org.openscada.net.mina.MessageVisitor;
+import org.openscada.net.mina.MessageVisitorFactory;
+import org.openscada.net.mina.ValueVisitor;
+
+/**
+ * Reads a {@link Messages#CC_NOTIFY_DATA}
+ * message while it is decoded, without creating the intermediate value tree
+ * <p>
+ * Handles the same fields as the {@link org.openscada.net.base.data.MapValue}
+ * based decoding in {@link Connection}. Values which cannot be converted to a
+ * {@link Variant} are ignored.
+ * </p>
+ */
+class NotifyDataVisitor implements MessageVisitor
+{
+    /**
+     * Creates a visitor for every {@link Messages#CC_NOTIFY_DATA} message
+     */
+    static final MessageVisitorFactory FACTORY = new MessageVisitorFactory () {
+
+        @Override
+        public MessageVisitor createVisitor ( final int commandCode )
+        {
+            if ( commandCode == Messages.CC_NOTIFY_DATA )
+            {
+                return new NotifyDataVisitor ();
+            }
+            return null;
+        }
+    };
+
+    private String itemId;
+
+    private int itemHandle;
+
+    private Variant value;
+
+    private Map<String, Variant> attributes;
+
+    private boolean cache;
+
+    private long sequence;
+
+    public String getItemId ()
+    {
+        return this.itemId;
+    }
+
+    /**
+     * @return the item handle or <code>0</code> if the notification has none
+     */
+    public int getItemHandle ()
+    {
+        return this.itemHandle;
+    }
+
+    /**
+     * @return the value or <code>null</code> if the value did not change
+     */
+    public Variant getValue ()
+    {
+        return this.value;
+    }
+
+    /**
+     * @return the attributes or <code>null</code> if no attribute changed
+     */
+    public Map<String, Variant> getAttributes ()
+    {
+        return this.attributes;
+    }
+
+    public boolean isCache ()
+    {
+        return this.cache;
+    }
+
+    public long getSequence ()
+    {
+        return this.sequence;
+    }
+
+    @Override
+    public Object getResult ()
+    {
+        return this;
+    }
+
+    private void setAttribute ( final String name, final Variant value )
+    {
+        if ( this.attributes == null )
+        {
+            this.attributes = new HashMap<String, Variant> ();
+        }
+        this.attributes.put ( name, value );
+    }
+
+    @Override
+    public void visitString ( final String key, final String value )
+    {
+        if ( "item-id".equals ( key ) )
+        {
+            this.itemId = value;
+        }
+        else if ( "value".equals ( key ) )
+        {
+            this.value = Variant.valueOf ( value );
+        }
+    }
+
+    @Override
+    public void visitLong ( final String key, final long value )
+    {
+        if ( "sequence".equals ( key ) )
+        {
+            this.sequence = value;
+        }
+        else if ( "value".equals ( key ) )
+        {
+            this.value = Variant.valueOf ( value );
+        }
+    }
+
+    @Override
+    public void visitInteger ( final String key, final int value )
+    {
+        if ( "item-handle".equals ( key ) )
+        {
+            this.itemHandle = value;
+        }
+        else if ( "value".equals ( key ) )
+        {
+            this.value = Variant.valueOf ( value );
+        }
+    }
+
+    @Override
+    public void visitDouble ( final String key, final double value )
+    {
+        if ( "value".equals ( key ) )
+        {
+            this.value = Variant.valueOf ( value );
+        }
+    }
+
+    @Override
+    public void visitBoolean ( final String key, final boolean value )
+    {
+        if ( "value".equals ( key ) )
+        {
+            this.value = Variant.valueOf ( value );
+        }
+    }
+
+    @Override
+    public void visitVoid ( final String key )
+    {
+        if ( "cache-read".equals ( key ) )
+        {
+            this.cache = true;
+        }
+        else if ( "value".equals ( key ) )
+        {
+            this.value = Variant.NULL;
+        }
+    }
+
+    @Override
+    public ValueVisitor visitMap ( final String key, final int size )
+    {
+        if ( "attributes-set".equals ( key ) )
+        {
+            return new AttributeVisitor () {
+
+                @Override
+                protected void attribute ( final String name, final Variant value )
+                {
+                    setAttribute ( name, value );
+                }
+            };
+        }
+        return null;
+    }
+
+    @Override
+    public ValueVisitor visitList ( final String key, final int size )
+    {
+        if ( "attributes-unset".equals ( key ) )
+        {
+            return new AttributeVisitor () {
+
+                @Override
+                public void visitString ( final String key, final String value )
+                {
+                    setAttribute ( value, null );
+                }
+
+                @Override
+                protected void attribute ( final String name, final Variant value )
+                {
+                    // only strings are attribute names
+                }
+            };
+        }
+        return null;
+    }
+
+    private static abstract class AttributeVisitor implements ValueVisitor
+    {
+        protected abstract void attribute ( String name, Variant value );
+
+        @Override
+        public void visitString ( final String key, final String value )
+        {
+            attribute ( key, Variant.valueOf ( value ) );
+        }
+
+        @Override
+        public void visitLong ( final String key, final long value )
+        {
+            attribute ( key, Variant.valueOf ( value ) );
+        }
+
+        @Override
+        public void visitInteger ( final String key, final int value )
+        {
+            attribute ( key, Variant.valueOf ( value ) );
+        }
+
+        @Override
+        public void visitDouble ( final String key, final double value )
+        {
+            attribute ( key, Variant.valueOf ( value ) );
+        }
+
+        @Override
+        public void visitBoolean ( final String key, final boolean value )
+        {
+            attribute ( key, Variant.valueOf ( value ) );
+        }
+
+        @Override
+        public void visitVoid ( final String key )
+        {
+            attribute ( key, Variant.NULL );
+        }
+
+        @Override
+        public ValueVisitor visitMap ( final String key, final int size )
+        {
+            return null;
+        }
+
+        @Override
+        public ValueVisitor visitList ( final String key, final int size )
+        {
+            return null;
+        }
+    }
+}
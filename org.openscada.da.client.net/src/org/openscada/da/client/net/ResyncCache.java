@@ -0,0 +1,158 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+
+package org.openscada.da.client.net;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.openscada.core.AttributesHelper;
+import org.openscada.core.Variant;
+
+/**
+ * The last known state of the subscribed items, kept over reconnects if the
+ * server supports resuming from a sequence number
+ * <p>
+ * The cache is only valid as long as the server announces the same epoch. If
+ * the epoch changes the server was restarted and all items have to be
+ * subscribed with their full state again.
+ * </p>
+ */
+class ResyncCache
+{
+    static class ItemState
+    {
+        private Variant value = Variant.NULL;
+
+        private final Map<String, Variant> attributes = new HashMap<String, Variant> ();
+
+        public Variant getValue ()
+        {
+            return this.value;
+        }
+
+        public Map<String, Variant> getAttributes ()
+        {
+            return this.attributes;
+        }
+    }
+
+    private final Map<String, ItemState> items = new HashMap<String, ItemState> ();
+
+    private String epoch;
+
+    private long sequence;
+
+    /**
+     * Apply a data change to the cache
+     * <p>
+     * Items are only tracked after their full state (a cache update) was
+     * received.
+     * </p>
+     */
+    public synchronized void update ( final String itemId, final Variant value, final Map<String, Variant> attributes, final boolean cache, final long sequence )
+    {
+        if ( this.epoch == null )
+        {
+            return;
+        }
+
+        ItemState state = this.items.get ( itemId );
+        if ( state == null )
+        {
+            if ( !cache )
+            {
+                // we never got the full state of this item
+                return;
+            }
+            state = new ItemState ();
+            this.items.put ( itemId, state );
+        }
+
+        if ( value != null )
+        {
+            state.value = value;
+        }
+        if ( attributes != null )
+        {
+            AttributesHelper.mergeAttributes ( state.attributes, attributes, cache );
+        }
+
+        if ( sequence > this.sequence )
+        {
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * Split up the items into the ones which can be resumed and the ones
+     * which need the full state
+     * 
+     * @param epoch
+     *            the epoch announced by the server, may be <code>null</code>
+     *            if the server does not support resuming
+     * @param itemIds
+     *            the items to subscribe
+     * @param full
+     *            receives the items which need their full state
+     * @param resumed
+     *            receives a copy of the known state of the items which can be
+     *            resumed
+     * @return the sequence number to resume from
+     */
+    public synchronized long prepare ( final String epoch, final Collection<String> itemIds, final Collection<String> full, final Map<String, ItemState> resumed )
+    {
+        if ( epoch == null || !epoch.equals ( this.epoch ) )
+        {
+            // different server or server restarted, start over
+            this.items.clear ();
+            this.sequence = 0;
+            this.epoch = epoch;
+        }
+
+        for ( final String itemId : itemIds )
+        {
+            final ItemState state = this.sequence > 0 ? this.items.get ( itemId ) : null;
+            if ( state == null )
+            {
+                full.add ( itemId );
+            }
+            else
+            {
+                final ItemState copy = new ItemState ();
+                copy.value = state.value;
+                copy.attributes.putAll ( state.attributes );
+                resumed.put ( itemId, copy );
+            }
+        }
+
+        return this.sequence;
+    }
+
+    public synchronized void remove ( final Collection<String> itemIds )
+    {
+        for ( final String itemId : itemIds )
+        {
+            this.items.remove ( itemId );
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.da.client.net;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mina.core.service.IoHandlerAdapter;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.transport.vmpipe.VmPipeAcceptor;
+import org.apache.mina.transport.vmpipe.VmPipeAddress;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openscada.core.ConnectionInformation;
+import org.openscada.core.client.ConnectionState;
+import org.openscada.core.client.ConnectionStateListener;
+import org.openscada.core.net.ConnectionHelper;
+import org.openscada.core.net.MessageHelper;
+import org.openscada.da.net.handler.Messages;
+import org.openscada.net.base.data.Message;
+
+public class ConnectionTest
+{
+    private static final int PORT = 4711;
+
+    /**
+     * The messages received by the server, except the session handshake
+     */
+    private final BlockingQueue<Message> received = new LinkedBlockingQueue<Message> ();
+
+    private VmPipeAcceptor acceptor;
+
+    private Connection connection;
+
+    /**
+     * Start a server which announces the provided session properties and
+     * connect to it
+     */
+    private void connect ( final Map<String, String> sessionProperties ) throws Exception
+    {
+        final ConnectionInformation connectionInformation = ConnectionInformation.fromURI ( "da:net://localhost:" + PORT + "?socketImpl=VMPIPE" );
+
+        this.acceptor = new VmPipeAcceptor ();
+        ConnectionHelper.setupFilterChain ( connectionInformation, this.acceptor.getFilterChain (), false );
+        this.acceptor.setHandler ( new IoHandlerAdapter () {
+
+            @Override
+            public void messageReceived ( final IoSession session, final Object message ) throws Exception
+            {
+                final Message msg = (Message)message;
+                if ( msg.getCommandCode () == MessageHelper.CC_CREATE_SESSION )
+                {
+                    session.write ( MessageHelper.createSessionACK ( msg, sessionProperties, null ) );
+                }
+                else if ( msg.getCommandCode () != MessageHelper.CC_START_SESSION )
+                {
+                    ConnectionTest.this.received.add ( msg );
+                }
+            }
+        } );
+        this.acceptor.bind ( new VmPipeAddress ( PORT ) );
+
+        final CountDownLatch bound = new CountDownLatch ( 1 );
+        this.connection = new Connection ( connectionInformation );
+        this.connection.addConnectionStateListener ( new ConnectionStateListener () {
+
+            @Override
+            public void stateChange ( final org.openscada.core.client.Connection connection, final ConnectionState state, final Throwable error )
+            {
+                if ( state == ConnectionState.BOUND )
+                {
+                    bound.countDown ();
+                }
+            }
+        } );
+        this.connection.connect ();
+
+        Assert.assertTrue ( "Connection not bound", bound.await ( 10, TimeUnit.SECONDS ) );
+    }
+
+    @After
+    public void dispose ()
+    {
+        if ( this.connection != null )
+        {
+            this.connection.dispose ();
+        }
+        if ( this.acceptor != null )
+        {
+            this.acceptor.unbind ();
+            this.acceptor.dispose ();
+        }
+    }
+
+    private Message next ( final int commandCode ) throws InterruptedException
+    {
+        final Message message = this.received.poll ( 10, TimeUnit.SECONDS );
+        Assert.assertNotNull ( "No message received", message );
+        Assert.assertEquals ( String.format ( "Unexpected message 0x%08X", message.getCommandCode () ), commandCode, message.getCommandCode () );
+        return message;
+    }
+
+    @Test
+    public void testBulkSubscribe () throws Exception
+    {
+        final Map<String, String> sessionProperties = new HashMap<String, String> ();
+        sessionProperties.put ( Messages.PROP_FEATURE_BULK_SUBSCRIBE, "true" );
+        connect ( sessionProperties );
+
+        this.connection.subscribeItems ( Arrays.asList ( "a", "b" ) );
+
+        final Message subscribe = next ( Messages.CC_SUBSCRIBE_ITEMS );
+        Assert.assertEquals ( Arrays.asList ( "a", "b" ), Messages.parseItemList ( subscribe ) );
+        Assert.assertEquals ( 0, Messages.parseSince ( subscribe ) );
+
+        this.connection.unsubscribeItems ( Arrays.asList ( "a", "b" ) );
+
+        Assert.assertEquals ( Arrays.asList ( "a", "b" ), Messages.parseItemList ( next ( Messages.CC_UNSUBSCRIBE_ITEMS ) ) );
+    }
+
+    @Test
+    public void testFallback () throws Exception
+    {
+        // an older server does not announce the bulk subscription
+        connect ( new HashMap<String, String> () );
+
+        this.connection.subscribeItems ( Arrays.asList ( "a", "b" ) );
+
+        Assert.assertEquals ( "a", next ( Messages.CC_SUBSCRIBE_ITEM ).getValues ().get ( "item-id" ).toString () );
+        Assert.assertEquals ( "b", next ( Messages.CC_SUBSCRIBE_ITEM ).getValues ().get ( "item-id" ).toString () );
+
+        this.connection.unsubscribeItems ( Arrays.asList ( "a", "b" ) );
+
+        Assert.assertEquals ( "a", next ( Messages.CC_UNSUBSCRIBE_ITEM ).getValues ().get ( "item-id" ).toString () );
+        Assert.assertEquals ( "b", next ( Messages.CC_UNSUBSCRIBE_ITEM ).getValues ().get ( "item-id" ).toString () );
+    }
+
+    @Test
+    public void testNotBound () throws Exception
+    {
+        this.connection = new Connection ( ConnectionInformation.fromURI ( "da:net://localhost:" + PORT + "?socketImpl=VMPIPE" ) );
+
+        // nothing to send to, the items get subscribed when the connection is bound
+        this.connection.subscribeItems ( Arrays.asList ( "a" ) );
+        this.connection.unsubscribeItems ( Arrays.asList ( "a" ) );
+
+        Assert.assertEquals ( ConnectionState.CLOSED, this.connection.getState () );
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+
+package org.openscada.da.client.net;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.filterchain.IoFilter.NextFilter;
+import org.apache.mina.core.session.DummySession;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.filter.codec.ProtocolDecoderOutput;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openscada.core.Variant;
+import org.openscada.da.net.handler.Messages;
+import org.openscada.net.base.data.MapValue;
+import org.openscada.net.base.data.Message;
+import org.openscada.net.mina.GMPPProtocolDecoder;
+import org.openscada.net.mina.GMPPProtocolEncoder;
+
+/**
+ * Decodes data notifications using the {@link NotifyDataVisitor} and
+ * compares the result with the {@link MapValue} based decoding
+ */
+public class NotifyDataVisitorTest
+{
+    private static class Output implements ProtocolDecoderOutput
+    {
+        private final List<Message> messages = new LinkedList<Message> ();
+
+        @Override
+        public void write ( final Object message )
+        {
+            this.messages.add ( (Message)message );
+        }
+
+        @Override
+        public void flush ( final NextFilter nextFilter, final IoSession session )
+        {
+        }
+    }
+
+    private static Message decode ( final Message message, final boolean visit ) throws Exception
+    {
+        final IoBuffer buffer = new GMPPProtocolEncoder ().code ( message );
+
+        final DummySession session = new DummySession ();
+        if ( visit )
+        {
+            session.setAttribute ( GMPPProtocolDecoder.ATTR_MESSAGE_VISITOR_FACTORY, NotifyDataVisitor.FACTORY );
+        }
+
+        final Output output = new Output ();
+        new GMPPProtocolDecoder ().decode ( session, buffer, output );
+
+        Assert.assertEquals ( 1, output.messages.size () );
+        Assert.assertFalse ( buffer.hasRemaining () );
+        return output.messages.get ( 0 );
+    }
+
+    /**
+     * Decode the message both ways and assert that the results match
+     * 
+     * @return the result of the visitor
+     */
+    private static NotifyDataVisitor assertDecoding ( final Message message ) throws Exception
+    {
+        final Message visited = decode ( message, true );
+        final Message decoded = decode ( message, false );
+
+        Assert.assertTrue ( visited.getPayload () instanceof NotifyDataVisitor );
+        Assert.assertNull ( decoded.getPayload () );
+
+        final NotifyDataVisitor visitor = (NotifyDataVisitor)visited.getPayload ();
+        final MapValue values = decoded.getValues ();
+
+        Assert.assertEquals ( values.containsKey ( "item-id" ) ? values.get ( "item-id" ).toString () : null, visitor.getItemId () );
+        Assert.assertEquals ( Messages.parseItemHandle ( values ), visitor.getItemHandle () );
+        Assert.assertEquals ( Messages.parseSequence ( values ), visitor.getSequence () );
+        Assert.assertEquals ( values.containsKey ( "cache-read" ), visitor.isCache () );
+        Assert.assertEquals ( Connection.decodeValueChange ( values ), visitor.getValue () );
+        Assert.assertEquals ( Connection.decodeAttributeChange ( values ), visitor.getAttributes () );
+
+        return visitor;
+    }
+
+    private static Map<String, Variant> makeAttributes ()
+    {
+        final Map<String, Variant> attributes = new HashMap<String, Variant> ();
+        attributes.put ( "string", Variant.valueOf ( "\u00e4\u00f6\u00fc \u20ac" ) );
+        attributes.put ( "integer", Variant.valueOf ( 1 ) );
+        attributes.put ( "long", Variant.valueOf ( 2L ) );
+        attributes.put ( "double", Variant.valueOf ( 1.5 ) );
+        attributes.put ( "boolean", Variant.TRUE );
+        attributes.put ( "null", Variant.NULL );
+        attributes.put ( "removed", null );
+        return attributes;
+    }
+
+    @Test
+    public void testItemId () throws Exception
+    {
+        final NotifyDataVisitor visitor = assertDecoding ( Messages.notifyData ( "item1", Variant.valueOf ( 42 ), makeAttributes (), false ) );
+
+        Assert.assertEquals ( "item1", visitor.getItemId () );
+        Assert.assertEquals ( 0, visitor.getItemHandle () );
+        Assert.assertEquals ( 0, visitor.getSequence () );
+        Assert.assertEquals ( Variant.valueOf ( 42 ), visitor.getValue () );
+        Assert.assertEquals ( 7, visitor.getAttributes ().size () );
+        Assert.assertTrue ( visitor.getAttributes ().containsKey ( "removed" ) );
+        Assert.assertNull ( visitor.getAttributes ().get ( "removed" ) );
+    }
+
+    @Test
+    public void testValueTypes () throws Exception
+    {
+        assertDecoding ( Messages.notifyData ( "item1", Variant.valueOf ( "text" ), null, false ) );
+        assertDecoding ( Messages.notifyData ( "item1", Variant.valueOf ( 1L << 40 ), null, false ) );
+        assertDecoding ( Messages.notifyData ( "item1", Variant.valueOf ( 0.25 ), null, false ) );
+        assertDecoding ( Messages.notifyData ( "item1", Variant.FALSE, null, false ) );
+        assertDecoding ( Messages.notifyData ( "item1", Variant.NULL, null, false ) );
+    }
+
+    @Test
+    public void testNoChange () throws Exception
+    {
+        final NotifyDataVisitor visitor = assertDecoding ( Messages.notifyData ( "item1", null, null, false ) );
+
+        Assert.assertNull ( visitor.getValue () );
+        Assert.assertNull ( visitor.getAttributes () );
+    }
+
+    @Test
+    public void testCache () throws Exception
+    {
+        final NotifyDataVisitor visitor = assertDecoding ( Messages.notifyData ( "item1", Variant.valueOf ( 1 ), makeAttributes (), true ) );
+
+        Assert.assertTrue ( visitor.isCache () );
+    }
+
+    @Test
+    public void testSequence () throws Exception
+    {
+        final NotifyDataVisitor visitor = assertDecoding ( Messages.notifyData ( "item1", Variant.valueOf ( 1 ), null, false, 1234567890123L ) );
+
+        Assert.assertEquals ( 1234567890123L, visitor.getSequence () );
+    }
+
+    @Test
+    public void testHandleDefinition () throws Exception
+    {
+        final NotifyDataVisitor visitor = assertDecoding ( Messages.notifyData ( 7, "item1", Variant.valueOf ( 1 ), makeAttributes (), true, 5 ) );
+
+        Assert.assertEquals ( "item1", visitor.getItemId () );
+        Assert.assertEquals ( 7, visitor.getItemHandle () );
+        Assert.assertEquals ( 5, visitor.getSequence () );
+    }
+
+    @Test
+    public void testHandleOnly () throws Exception
+    {
+        final NotifyDataVisitor visitor = assertDecoding ( Messages.notifyData ( 7, null, Variant.valueOf ( 2 ), null, false, 6 ) );
+
+        Assert.assertNull ( visitor.getItemId () );
+        Assert.assertEquals ( 7, visitor.getItemHandle () );
+        Assert.assertEquals ( 6, visitor.getSequence () );
+        Assert.assertEquals ( Variant.valueOf ( 2 ), visitor.getValue () );
+        // the compact encoding omits empty attribute changes
+        Assert.assertNull ( visitor.getAttributes () );
+    }
+
+    @Test
+    public void testHandleOnlyAttributes () throws Exception
+    {
+        final Map<String, Variant> attributes = new HashMap<String, Variant> ();
+        attributes.put ( "removed", null );
+
+        final NotifyDataVisitor visitor = assertDecoding ( Messages.notifyData ( 7, null, null, attributes, false, 0 ) );
+
+        Assert.assertNull ( visitor.getValue () );
+        Assert.assertEquals ( 1, visitor.getAttributes ().size () );
+    }
+
+    @Test
+    public void testLargeString () throws Exception
+    {
+        final StringBuilder sb = new StringBuilder ();
+        for ( int i = 0; i < 100000; i++ )
+        {
+            sb.append ( (char) ( 'a' + i % 26 ) );
+        }
+
+        // the decoder does not keep the buffer of a large string, strings decoded afterwards must not be affected
+        assertDecoding ( Messages.notifyData ( "item1", Variant.valueOf ( sb.toString () ), null, false ) );
+        final NotifyDataVisitor visitor = assertDecoding ( Messages.notifyData ( "item2", Variant.valueOf ( "short" ), null, false ) );
+
+        Assert.assertEquals ( "item2", visitor.getItemId () );
+        Assert.assertEquals ( Variant.valueOf ( "short" ), visitor.getValue () );
+    }
+}
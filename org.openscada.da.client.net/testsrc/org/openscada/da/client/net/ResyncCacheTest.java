@@ -0,0 +1,153 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+
+package org.openscada.da.client.net;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openscada.core.Variant;
+
+public class ResyncCacheTest
+{
+    private static Map<String, Variant> attributes ( final String key, final Variant value )
+    {
+        final Map<String, Variant> result = new HashMap<String, Variant> ();
+        result.put ( key, value );
+        return result;
+    }
+
+    @Test
+    public void testSameEpoch ()
+    {
+        final ResyncCache cache = new ResyncCache ();
+
+        final List<String> full = new LinkedList<String> ();
+        final Map<String, ResyncCache.ItemState> resumed = new HashMap<String, ResyncCache.ItemState> ();
+
+        // first connect, nothing known yet
+        Assert.assertEquals ( 0, cache.prepare ( "1", Arrays.asList ( "a", "b" ), full, resumed ) );
+        Assert.assertEquals ( Arrays.asList ( "a", "b" ), full );
+        Assert.assertTrue ( resumed.isEmpty () );
+
+        cache.update ( "a", Variant.valueOf ( 1 ), attributes ( "q", Variant.TRUE ), true, 10 );
+        cache.update ( "b", Variant.valueOf ( 2 ), null, true, 11 );
+        cache.update ( "a", Variant.valueOf ( 3 ), attributes ( "q", null ), false, 12 );
+
+        // reconnect to the same server instance
+        full.clear ();
+        Assert.assertEquals ( 12, cache.prepare ( "1", Arrays.asList ( "a", "b", "c" ), full, resumed ) );
+        Assert.assertEquals ( Arrays.asList ( "c" ), full );
+        Assert.assertEquals ( 2, resumed.size () );
+        Assert.assertEquals ( Variant.valueOf ( 3 ), resumed.get ( "a" ).getValue () );
+        Assert.assertTrue ( resumed.get ( "a" ).getAttributes ().isEmpty () );
+        Assert.assertEquals ( Variant.valueOf ( 2 ), resumed.get ( "b" ).getValue () );
+
+        // the replayed state is a copy
+        cache.update ( "a", Variant.valueOf ( 4 ), null, false, 13 );
+        Assert.assertEquals ( Variant.valueOf ( 3 ), resumed.get ( "a" ).getValue () );
+    }
+
+    @Test
+    public void testEpochChange ()
+    {
+        final ResyncCache cache = new ResyncCache ();
+
+        final List<String> full = new LinkedList<String> ();
+        final Map<String, ResyncCache.ItemState> resumed = new HashMap<String, ResyncCache.ItemState> ();
+
+        cache.prepare ( "1", Arrays.asList ( "a" ), full, resumed );
+        cache.update ( "a", Variant.valueOf ( 1 ), null, true, 10 );
+
+        // the server was restarted
+        full.clear ();
+        Assert.assertEquals ( 0, cache.prepare ( "2", Arrays.asList ( "a" ), full, resumed ) );
+        Assert.assertEquals ( Arrays.asList ( "a" ), full );
+        Assert.assertTrue ( resumed.isEmpty () );
+
+        // a server without resync support disables the cache
+        cache.update ( "a", Variant.valueOf ( 1 ), null, true, 10 );
+        full.clear ();
+        Assert.assertEquals ( 0, cache.prepare ( null, Arrays.asList ( "a" ), full, resumed ) );
+        cache.update ( "a", Variant.valueOf ( 2 ), null, true, 11 );
+        full.clear ();
+        Assert.assertEquals ( 0, cache.prepare ( null, Arrays.asList ( "a" ), full, resumed ) );
+        Assert.assertEquals ( Arrays.asList ( "a" ), full );
+        Assert.assertTrue ( resumed.isEmpty () );
+    }
+
+    @Test
+    public void testOverrun ()
+    {
+        final ResyncCache cache = new ResyncCache ();
+
+        final List<String> full = new LinkedList<String> ();
+        final Map<String, ResyncCache.ItemState> resumed = new HashMap<String, ResyncCache.ItemState> ();
+
+        cache.prepare ( "1", Arrays.asList ( "a" ), full, resumed );
+        cache.update ( "a", Variant.valueOf ( 1 ), attributes ( "old", Variant.TRUE ), true, 10 );
+
+        full.clear ();
+        Assert.assertEquals ( 10, cache.prepare ( "1", Arrays.asList ( "a" ), full, resumed ) );
+        Assert.assertTrue ( full.isEmpty () );
+
+        // the server could not tell what changed and sends the full state, which replaces the cached one
+        cache.update ( "a", Variant.valueOf ( 2 ), attributes ( "new", Variant.TRUE ), true, 500 );
+
+        resumed.clear ();
+        Assert.assertEquals ( 500, cache.prepare ( "1", Arrays.asList ( "a" ), full, resumed ) );
+        Assert.assertEquals ( Variant.valueOf ( 2 ), resumed.get ( "a" ).getValue () );
+        Assert.assertEquals ( Collections.singleton ( "new" ), resumed.get ( "a" ).getAttributes ().keySet () );
+    }
+
+    @Test
+    public void testUpdateWithoutFullState ()
+    {
+        final ResyncCache cache = new ResyncCache ();
+
+        final List<String> full = new LinkedList<String> ();
+        final Map<String, ResyncCache.ItemState> resumed = new HashMap<String, ResyncCache.ItemState> ();
+
+        cache.prepare ( "1", Arrays.asList ( "a" ), full, resumed );
+
+        // a delta alone is not enough to resume the item
+        cache.update ( "a", Variant.valueOf ( 1 ), null, false, 10 );
+        cache.update ( "b", Variant.valueOf ( 1 ), null, true, 11 );
+
+        full.clear ();
+        cache.prepare ( "1", Arrays.asList ( "a", "b" ), full, resumed );
+        Assert.assertEquals ( Arrays.asList ( "a" ), full );
+        Assert.assertEquals ( Collections.singleton ( "b" ), resumed.keySet () );
+
+        // unsubscribed items are dropped
+        cache.remove ( Arrays.asList ( "b" ) );
+        full.clear ();
+        resumed.clear ();
+        cache.prepare ( "1", Arrays.asList ( "b" ), full, resumed );
+        Assert.assertEquals ( Arrays.asList ( "b" ), full );
+    }
+}
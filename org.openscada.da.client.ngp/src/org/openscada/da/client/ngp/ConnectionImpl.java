@@ -27,6 +27,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
@@ -197,9 +198,25 @@ public class ConnectionImpl extends ConnectionBaseImpl implements Connection
         }
     }
 
-    private final Map<String, ItemUpdateListener> itemListeners = new HashMap<String, ItemUpdateListener> ();
+    /**
+     * The lanes handling item updates, each item is always handled by the
+     * same lane
+     */
+    private static final Object[] LANES_ITEMS = new Object[Math.max ( 1, Integer.getInteger ( "org.openscada.da.client.ngp.itemLanes", 4 ) )];
 
-    private final Map<Location, FolderListener> folderListeners = new HashMap<Location, FolderListener> ();
+    private static final Object LANE_BROWSE = new Object ();
+
+    static
+    {
+        for ( int i = 0; i < LANES_ITEMS.length; i++ )
+        {
+            LANES_ITEMS[i] = new Object ();
+        }
+    }
+
+    private final Map<String, ItemUpdateListener> itemListeners = new ConcurrentHashMap<String, ItemUpdateListener> ();
+
+    private final Map<Location, FolderListener> folderListeners = new ConcurrentHashMap<Location, FolderListener> ();
 
     public ConnectionImpl ( final ConnectionInformation connectionInformation ) throws Exception
     {
@@ -337,8 +354,12 @@ public class ConnectionImpl extends ConnectionBaseImpl implements Connection
     }
 
     @Override
-    public synchronized FolderListener setFolderListener ( final Location location, final FolderListener listener )
+    public FolderListener setFolderListener ( final Location location, final FolderListener listener )
     {
+        if ( listener == null )
+        {
+            return this.folderListeners.remove ( location );
+        }
         return this.folderListeners.put ( location, listener );
     }
 
@@ -355,14 +376,68 @@ public class ConnectionImpl extends ConnectionBaseImpl implements Connection
         sendMessage ( new UnsubscibeItem ( itemId ) );
     }
 
+    /**
+     * The protocol has no bulk subscription message, so the items are
+     * subscribed one by one
+     */
+    @Override
+    public void subscribeItems ( final Collection<String> itemIds ) throws NoConnectionException, OperationException
+    {
+        logger.debug ( "Subscribe {} items", itemIds.size () );
+        for ( final String itemId : itemIds )
+        {
+            sendMessage ( new SubscribeItem ( itemId ) );
+        }
+    }
+
+    @Override
+    public void unsubscribeItems ( final Collection<String> itemIds ) throws NoConnectionException, OperationException
+    {
+        for ( final String itemId : itemIds )
+        {
+            sendMessage ( new UnsubscibeItem ( itemId ) );
+        }
+    }
+
     @Override
-    public synchronized ItemUpdateListener setItemUpdateListener ( final String itemId, final ItemUpdateListener listener )
+    public ItemUpdateListener setItemUpdateListener ( final String itemId, final ItemUpdateListener listener )
     {
+        if ( listener == null )
+        {
+            return this.itemListeners.remove ( itemId );
+        }
         return this.itemListeners.put ( itemId, listener );
     }
 
     @Override
-    protected synchronized void handleMessage ( final Object message )
+    protected Object getMessageLane ( final Object message )
+    {
+        if ( message instanceof ItemDataUpdate )
+        {
+            return itemLane ( ( (ItemDataUpdate)message ).getItemId () );
+        }
+        else if ( message instanceof ItemStateUpdate )
+        {
+            return itemLane ( ( (ItemStateUpdate)message ).getItemId () );
+        }
+        else if ( message instanceof FolderDataUpdate )
+        {
+            return LANE_BROWSE;
+        }
+        return super.getMessageLane ( message );
+    }
+
+    private static Object itemLane ( final String itemId )
+    {
+        if ( itemId == null )
+        {
+            return LANES_ITEMS[0];
+        }
+        return LANES_ITEMS[ ( itemId.hashCode () & 0x7FFFFFFF ) % LANES_ITEMS.length];
+    }
+
+    @Override
+    protected void handleMessage ( final Object message )
     {
         if ( message instanceof ItemDataUpdate )
         {
@@ -21,6 +21,7 @@
 
 package org.openscada.da.client;
 
+import java.util.Collection;
 import java.util.Map;
 import java.util.concurrent.ScheduledExecutorService;
 
@@ -80,6 +81,28 @@ public interface Connection extends org.openscada.core.client.Connection
 
     public abstract void unsubscribeItem ( String itemId ) throws NoConnectionException, OperationException;
 
+    /**
+     * Subscribe to a set of items at once
+     * <p>
+     * Connections which do not support bulk requests on the protocol level
+     * fall back to subscribing item by item.
+     * </p>
+     * 
+     * @param itemIds
+     *            the items to subscribe to
+     * @since 1.1
+     */
+    public abstract void subscribeItems ( Collection<String> itemIds ) throws NoConnectionException, OperationException;
+
+    /**
+     * Unsubscribe from a set of items at once
+     * 
+     * @param itemIds
+     *            the items to unsubscribe from
+     * @since 1.1
+     */
+    public abstract void unsubscribeItems ( Collection<String> itemIds ) throws NoConnectionException, OperationException;
+
     /**
      * Set the listener for this item.
      * 
@@ -19,9 +19,33 @@
 
 package org.openscada.da.client;
 
+import java.util.Map;
+
 public interface ItemManager
 {
     public void addItemUpdateListener ( final String itemId, final ItemUpdateListener listener );
 
     public void removeItemUpdateListener ( final String itemId, final ItemUpdateListener listener );
+
+    /**
+     * Add a set of listeners at once
+     * <p>
+     * Items which change their subscription state are subscribed with one
+     * bulk request to the connection.
+     * </p>
+     * 
+     * @param listeners
+     *            the listeners, mapped by item id
+     * @since 1.1
+     */
+    public void addItemUpdateListeners ( final Map<String, ItemUpdateListener> listeners );
+
+    /**
+     * Remove a set of listeners at once
+     * 
+     * @param listeners
+     *            the listeners, mapped by item id
+     * @since 1.1
+     */
+    public void removeItemUpdateListeners ( final Map<String, ItemUpdateListener> listeners );
 }
\ No newline at end of file
@@ -19,7 +19,11 @@
 
 package org.openscada.da.client;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Executor;
 
@@ -113,6 +117,103 @@ public class ItemManagerImpl implements ConnectionStateListener, ItemManager
         controller.remove ( listener );
     }
 
+    @Override
+    public synchronized void addItemUpdateListeners ( final Map<String, ItemUpdateListener> listeners )
+    {
+        logger.debug ( "Adding {} item update listeners", listeners.size () );
+
+        final List<ItemSyncController> changed = new ArrayList<ItemSyncController> ( listeners.size () );
+        for ( final Map.Entry<String, ItemUpdateListener> entry : listeners.entrySet () )
+        {
+            ItemSyncController controller = this.itemListeners.get ( entry.getKey () );
+            if ( controller == null )
+            {
+                controller = new ItemSyncController ( this.connection, this, entry.getKey () );
+                this.itemListeners.put ( entry.getKey (), controller );
+            }
+            if ( controller.addListener ( entry.getValue () ) )
+            {
+                changed.add ( controller );
+            }
+        }
+
+        syncControllers ( changed, false );
+    }
+
+    @Override
+    public synchronized void removeItemUpdateListeners ( final Map<String, ItemUpdateListener> listeners )
+    {
+        logger.debug ( "Removing {} item update listeners", listeners.size () );
+
+        final List<ItemSyncController> changed = new ArrayList<ItemSyncController> ( listeners.size () );
+        for ( final Map.Entry<String, ItemUpdateListener> entry : listeners.entrySet () )
+        {
+            final ItemSyncController controller = this.itemListeners.get ( entry.getKey () );
+            if ( controller != null && controller.removeListener ( entry.getValue () ) )
+            {
+                changed.add ( controller );
+            }
+        }
+
+        syncControllers ( changed, false );
+    }
+
+    /**
+     * Sync the subscription state of a set of controllers using one bulk
+     * subscribe and one bulk unsubscribe call
+     */
+    private void syncControllers ( final Collection<ItemSyncController> controllers, final boolean force )
+    {
+        final List<ItemSyncController> subscribe = new LinkedList<ItemSyncController> ();
+        final List<String> subscribeIds = new LinkedList<String> ();
+        final List<String> unsubscribeIds = new LinkedList<String> ();
+
+        for ( final ItemSyncController controller : controllers )
+        {
+            final Boolean result = controller.prepareSync ( force );
+            if ( result == null )
+            {
+                continue;
+            }
+            if ( result )
+            {
+                subscribe.add ( controller );
+                subscribeIds.add ( controller.getItemName () );
+            }
+            else
+            {
+                unsubscribeIds.add ( controller.getItemName () );
+            }
+        }
+
+        if ( !unsubscribeIds.isEmpty () )
+        {
+            try
+            {
+                this.connection.unsubscribeItems ( unsubscribeIds );
+            }
+            catch ( final Throwable e )
+            {
+                logger.warn ( "Failed to handle unsubscribe", e );
+            }
+        }
+
+        if ( !subscribeIds.isEmpty () )
+        {
+            try
+            {
+                this.connection.subscribeItems ( subscribeIds );
+            }
+            catch ( final Throwable e )
+            {
+                for ( final ItemSyncController controller : subscribe )
+                {
+                    controller.handleSyncError ( e );
+                }
+            }
+        }
+    }
+
     /**
      * Synchronized all items that are currently known
      */
@@ -120,10 +221,7 @@ public class ItemManagerImpl implements ConnectionStateListener, ItemManager
     {
         logger.debug ( "Syncing all items ({})", this.itemListeners.size () );
 
-        for ( final Map.Entry<String, ItemSyncController> entry : this.itemListeners.entrySet () )
-        {
-            entry.getValue ().sync ( true );
-        }
+        syncControllers ( this.itemListeners.values (), true );
 
         logger.debug ( "re-sync complete" );
     }
@@ -126,6 +126,19 @@ public class ItemSyncController implements ItemUpdateListener
     }
 
     public synchronized void add ( final ItemUpdateListener listener )
+    {
+        if ( addListener ( listener ) )
+        {
+            sync ( false );
+        }
+    }
+
+    /**
+     * Add the listener without syncing the subscription state
+     * 
+     * @return <code>true</code> if the listener was added
+     */
+    synchronized boolean addListener ( final ItemUpdateListener listener )
     {
         if ( !this.listeners.containsKey ( listener ) )
         {
@@ -149,19 +162,70 @@ public class ItemSyncController implements ItemUpdateListener
                 }
             } );
 
-            sync ( false );
+            return true;
         }
+        return false;
     }
 
     public synchronized void remove ( final ItemUpdateListener listener )
     {
-        final ListenerInfo result = this.listeners.remove ( listener );
-        if ( result != null )
+        if ( removeListener ( listener ) )
         {
             sync ( false );
         }
     }
 
+    /**
+     * Remove the listener without syncing the subscription state
+     * 
+     * @return <code>true</code> if the listener was removed
+     */
+    synchronized boolean removeListener ( final ItemUpdateListener listener )
+    {
+        return this.listeners.remove ( listener ) != null;
+    }
+
+    /**
+     * Prepare the subscription state change without talking to the
+     * connection
+     * <p>
+     * This is used by the item manager to sync a set of items using one bulk
+     * call to the connection.
+     * </p>
+     * 
+     * @return {@link Boolean#TRUE} if the item has to be subscribed,
+     *         {@link Boolean#FALSE} if it has to be unsubscribed and
+     *         <code>null</code> if nothing has to be done
+     */
+    synchronized Boolean prepareSync ( final boolean force )
+    {
+        final boolean subscribe = !this.listeners.isEmpty ();
+
+        if ( this.subscribed == subscribe && !force )
+        {
+            return null;
+        }
+
+        this.subscribed = subscribe;
+
+        if ( !subscribe )
+        {
+            this.cachedValue = null;
+            this.cachedAttributes.clear ();
+            notifySubscriptionChange ( SubscriptionState.DISCONNECTED, null );
+        }
+
+        return subscribe;
+    }
+
+    /**
+     * Handle a failed bulk subscription
+     */
+    synchronized void handleSyncError ( final Throwable e )
+    {
+        handleError ( e );
+    }
+
     public synchronized void sync ( final boolean force )
     {
         final boolean subscribe = !this.listeners.isEmpty ();
@@ -0,0 +1,230 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.da.client;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openscada.core.OperationException;
+import org.openscada.core.Variant;
+import org.openscada.core.client.ConnectionState;
+import org.openscada.core.data.SubscriptionState;
+
+public class ItemManagerImplTest
+{
+    private static class RecordingListener implements ItemUpdateListener
+    {
+        private SubscriptionState state;
+
+        private Throwable error;
+
+        @Override
+        public void notifyDataChange ( final Variant value, final Map<String, Variant> attributes, final boolean cache )
+        {
+        }
+
+        @Override
+        public void notifySubscriptionChange ( final SubscriptionState subscriptionState, final Throwable subscriptionError )
+        {
+            this.state = subscriptionState;
+            this.error = subscriptionError;
+        }
+    }
+
+    /**
+     * The subscription calls made to the connection, in order
+     */
+    private final List<String> calls = new LinkedList<String> ();
+
+    private OperationException subscribeError;
+
+    private Connection connection;
+
+    private ItemManagerImpl itemManager;
+
+    @Before
+    public void setup ()
+    {
+        // runs the listener notifications in the calling thread
+        final ScheduledExecutorService executor = (ScheduledExecutorService)Proxy.newProxyInstance ( getClass ().getClassLoader (), new Class<?>[] { ScheduledExecutorService.class }, new InvocationHandler () {
+
+            @Override
+            public Object invoke ( final Object proxy, final Method method, final Object[] args ) throws Throwable
+            {
+                if ( method.getName ().equals ( "execute" ) )
+                {
+                    ( (Runnable)args[0] ).run ();
+                    return null;
+                }
+                throw new UnsupportedOperationException ( method.getName () );
+            }
+        } );
+
+        this.connection = (Connection)Proxy.newProxyInstance ( getClass ().getClassLoader (), new Class<?>[] { Connection.class }, new InvocationHandler () {
+
+            @Override
+            @SuppressWarnings ( "unchecked" )
+            public Object invoke ( final Object proxy, final Method method, final Object[] args ) throws Throwable
+            {
+                final String name = method.getName ();
+                if ( name.equals ( "getState" ) )
+                {
+                    return ConnectionState.BOUND;
+                }
+                else if ( name.equals ( "getExecutor" ) )
+                {
+                    return executor;
+                }
+                else if ( name.equals ( "subscribeItems" ) || name.equals ( "unsubscribeItems" ) )
+                {
+                    ItemManagerImplTest.this.calls.add ( name + " " + new TreeSet<String> ( (Collection<String>)args[0] ) );
+                    if ( name.equals ( "subscribeItems" ) && ItemManagerImplTest.this.subscribeError != null )
+                    {
+                        throw ItemManagerImplTest.this.subscribeError;
+                    }
+                }
+                else if ( name.equals ( "subscribeItem" ) || name.equals ( "unsubscribeItem" ) )
+                {
+                    ItemManagerImplTest.this.calls.add ( name + " " + args[0] );
+                }
+                return null;
+            }
+        } );
+
+        this.itemManager = new ItemManagerImpl ( this.connection );
+    }
+
+    private static Map<String, ItemUpdateListener> listeners ( final ItemUpdateListener listener, final String... itemIds )
+    {
+        final Map<String, ItemUpdateListener> result = new LinkedHashMap<String, ItemUpdateListener> ();
+        for ( final String itemId : itemIds )
+        {
+            result.put ( itemId, listener );
+        }
+        return result;
+    }
+
+    @Test
+    public void testBulkSubscribe ()
+    {
+        this.itemManager.addItemUpdateListeners ( listeners ( new RecordingListener (), "a", "b", "c" ) );
+
+        Assert.assertEquals ( Arrays.asList ( "subscribeItems [a, b, c]" ), this.calls );
+    }
+
+    @Test
+    public void testAlreadySubscribed ()
+    {
+        final RecordingListener listener = new RecordingListener ();
+        this.itemManager.addItemUpdateListeners ( listeners ( listener, "a" ) );
+        this.calls.clear ();
+
+        // neither the same listener again nor a second one changes the subscription
+        this.itemManager.addItemUpdateListeners ( listeners ( listener, "a" ) );
+        this.itemManager.addItemUpdateListeners ( listeners ( new RecordingListener (), "a" ) );
+
+        Assert.assertTrue ( this.calls.isEmpty () );
+
+        // only the new item gets subscribed
+        this.itemManager.addItemUpdateListeners ( listeners ( listener, "a", "b" ) );
+
+        Assert.assertEquals ( Arrays.asList ( "subscribeItems [b]" ), this.calls );
+    }
+
+    @Test
+    public void testBulkUnsubscribe ()
+    {
+        final RecordingListener listener = new RecordingListener ();
+        final RecordingListener other = new RecordingListener ();
+        this.itemManager.addItemUpdateListeners ( listeners ( listener, "a", "b", "c" ) );
+        this.itemManager.addItemUpdateListeners ( listeners ( other, "b" ) );
+        this.calls.clear ();
+
+        this.itemManager.removeItemUpdateListeners ( listeners ( listener, "a", "b" ) );
+
+        // "b" still has a listener
+        Assert.assertEquals ( Arrays.asList ( "unsubscribeItems [a]" ), this.calls );
+
+        this.calls.clear ();
+        this.itemManager.removeItemUpdateListeners ( listeners ( other, "b" ) );
+        this.itemManager.removeItemUpdateListeners ( listeners ( other, "b" ) );
+
+        Assert.assertEquals ( Arrays.asList ( "unsubscribeItems [b]" ), this.calls );
+        Assert.assertEquals ( SubscriptionState.DISCONNECTED, other.state );
+    }
+
+    @Test
+    public void testSubscribeError ()
+    {
+        this.subscribeError = new OperationException ( "Failed" );
+
+        final RecordingListener listener = new RecordingListener ();
+        this.itemManager.addItemUpdateListeners ( listeners ( listener, "a", "b" ) );
+
+        Assert.assertEquals ( SubscriptionState.DISCONNECTED, listener.state );
+        Assert.assertSame ( this.subscribeError, listener.error );
+
+        // the failed items are subscribed again with the next listener
+        this.subscribeError = null;
+        this.calls.clear ();
+        this.itemManager.addItemUpdateListeners ( listeners ( new RecordingListener (), "a", "b" ) );
+
+        Assert.assertEquals ( Arrays.asList ( "subscribeItems [a, b]" ), this.calls );
+    }
+
+    @Test
+    public void testResync ()
+    {
+        final RecordingListener listener = new RecordingListener ();
+        this.itemManager.addItemUpdateListeners ( listeners ( listener, "a", "b" ) );
+        this.calls.clear ();
+
+        this.itemManager.stateChange ( this.connection, ConnectionState.CLOSED, null );
+        Assert.assertEquals ( SubscriptionState.DISCONNECTED, listener.state );
+
+        // all items are subscribed with one call after reconnecting
+        this.itemManager.stateChange ( this.connection, ConnectionState.BOUND, null );
+
+        Assert.assertEquals ( Arrays.asList ( "subscribeItems [a, b]" ), this.calls );
+    }
+
+    @Test
+    public void testSingleListener ()
+    {
+        final RecordingListener listener = new RecordingListener ();
+        this.itemManager.addItemUpdateListener ( "a", listener );
+        this.itemManager.removeItemUpdateListener ( "a", listener );
+
+        Assert.assertEquals ( Arrays.asList ( "subscribeItem a", "unsubscribeItem a" ), this.calls );
+    }
+}
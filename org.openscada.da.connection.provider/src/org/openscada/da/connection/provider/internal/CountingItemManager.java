@@ -57,6 +57,26 @@ public class CountingItemManager implements ItemManager
         this.itemManager.removeItemUpdateListener ( itemName, listener );
     }
 
+    @Override
+    public void addItemUpdateListeners ( final Map<String, ItemUpdateListener> listeners )
+    {
+        for ( final Map.Entry<String, ItemUpdateListener> entry : listeners.entrySet () )
+        {
+            addItemRegistration ( entry.getKey (), entry.getValue () );
+        }
+        this.itemManager.addItemUpdateListeners ( listeners );
+    }
+
+    @Override
+    public void removeItemUpdateListeners ( final Map<String, ItemUpdateListener> listeners )
+    {
+        for ( final Map.Entry<String, ItemUpdateListener> entry : listeners.entrySet () )
+        {
+            removeItemRegistration ( entry.getKey (), entry.getValue () );
+        }
+        this.itemManager.removeItemUpdateListeners ( listeners );
+    }
+
     protected void addItemRegistration ( final String itemId, final ItemUpdateListener listener )
     {
         this.itemRegistrationSet.put ( new SubscriptionItemEntry ( itemId, listener ), Boolean.TRUE );
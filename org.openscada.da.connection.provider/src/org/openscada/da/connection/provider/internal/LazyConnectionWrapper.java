@@ -245,6 +245,34 @@ public abstract class LazyConnectionWrapper implements Connection, StatisticsPro
         this.connection.unsubscribeItem ( itemId );
     }
 
+    @Override
+    public void subscribeItems ( final Collection<String> itemIds ) throws NoConnectionException, OperationException
+    {
+        synchronized ( this )
+        {
+            if ( this.subscribedItems.addAll ( itemIds ) )
+            {
+                this.statistics.setCurrentValue ( STATS_ITEM_SUBSCRIPTIONS, this.subscribedItems.size () );
+                checkConnection ();
+            }
+        }
+        this.connection.subscribeItems ( itemIds );
+    }
+
+    @Override
+    public void unsubscribeItems ( final Collection<String> itemIds ) throws NoConnectionException, OperationException
+    {
+        synchronized ( this )
+        {
+            if ( this.subscribedItems.removeAll ( itemIds ) )
+            {
+                this.statistics.setCurrentValue ( STATS_ITEM_SUBSCRIPTIONS, this.subscribedItems.size () );
+                checkConnection ();
+            }
+        }
+        this.connection.unsubscribeItems ( itemIds );
+    }
+
     private void checkConnection ()
     {
         if ( this.subscribedItems.isEmpty () )
@@ -0,0 +1,495 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+
+package org.openscada.da.core;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.openscada.core.Variant;
+import org.openscada.utils.lang.Immutable;
+
+/**
+ * A compact, immutable attribute map
+ * <p>
+ * The keys are stored in a sorted key table which is interned and shared by
+ * all maps having the same set of keys. Since most items carry the same few
+ * attributes, an attribute map mostly costs one array holding the values.
+ * Changing values of existing keys creates a new map sharing the key table of
+ * the old one, and two maps sharing a key table can be compared value by
+ * value without any lookup.
+ * </p>
+ * <p>
+ * Like the other attribute maps in openSCADA, a <code>null</code> value marks
+ * a removed attribute when the map is used as a change set.
+ * </p>
+ * 
+ * @since 1.1
+ */
+@Immutable
+public final class AttributeMap extends AbstractMap<String, Variant>
+{
+    /**
+     * Upper limit of interned key tables, protects against items using
+     * generated attribute names
+     */
+    private static final int MAX_TABLES = Integer.getInteger ( "org.openscada.da.core.attributeMap.maxKeyTables", 4096 );
+
+    private static final ConcurrentMap<KeyTable, KeyTable> tables = new ConcurrentHashMap<KeyTable, KeyTable> ();
+
+    private static final KeyTable EMPTY_TABLE = new KeyTable ( new String[0] );
+
+    public static final AttributeMap EMPTY = new AttributeMap ( EMPTY_TABLE, new Variant[0] );
+
+    private static final class KeyTable
+    {
+        private final String[] keys;
+
+        private final int hash;
+
+        public KeyTable ( final String[] keys )
+        {
+            this.keys = keys;
+            this.hash = Arrays.hashCode ( keys );
+        }
+
+        public int indexOf ( final Object key )
+        {
+            if ( ! ( key instanceof String ) )
+            {
+                return -1;
+            }
+            final int idx = Arrays.binarySearch ( this.keys, key );
+            return idx < 0 ? -1 : idx;
+        }
+
+        @Override
+        public int hashCode ()
+        {
+            return this.hash;
+        }
+
+        @Override
+        public boolean equals ( final Object obj )
+        {
+            if ( this == obj )
+            {
+                return true;
+            }
+            if ( ! ( obj instanceof KeyTable ) )
+            {
+                return false;
+            }
+            final KeyTable other = (KeyTable)obj;
+            return this.hash == other.hash && Arrays.equals ( this.keys, other.keys );
+        }
+    }
+
+    private final KeyTable table;
+
+    private final Variant[] values;
+
+    private transient Set<Map.Entry<String, Variant>> entrySet;
+
+    private AttributeMap ( final KeyTable table, final Variant[] values )
+    {
+        this.table = table;
+        this.values = values;
+    }
+
+    private static KeyTable intern ( final String[] keys )
+    {
+        if ( keys.length == 0 )
+        {
+            return EMPTY_TABLE;
+        }
+
+        final KeyTable table = new KeyTable ( keys );
+        final KeyTable result = tables.get ( table );
+        if ( result != null )
+        {
+            return result;
+        }
+
+        if ( tables.size () >= MAX_TABLES )
+        {
+            return table;
+        }
+
+        final KeyTable old = tables.putIfAbsent ( table, table );
+        return old != null ? old : table;
+    }
+
+    /**
+     * @return the number of interned key tables
+     */
+    static int getKeyTableCount ()
+    {
+        return tables.size ();
+    }
+
+    static int getMaxKeyTables ()
+    {
+        return MAX_TABLES;
+    }
+
+    /**
+     * Drop all interned key tables, existing maps keep their tables
+     */
+    static void clearKeyTables ()
+    {
+        tables.clear ();
+    }
+
+    /**
+     * Check if both maps use the same key table instance
+     */
+    boolean sharesKeys ( final AttributeMap other )
+    {
+        return this.table == other.table;
+    }
+
+    private static AttributeMap create ( final TreeMap<String, Variant> sorted )
+    {
+        if ( sorted.isEmpty () )
+        {
+            return EMPTY;
+        }
+
+        final String[] keys = new String[sorted.size ()];
+        final Variant[] values = new Variant[sorted.size ()];
+
+        int i = 0;
+        for ( final Map.Entry<String, Variant> entry : sorted.entrySet () )
+        {
+            keys[i] = entry.getKey ();
+            values[i] = entry.getValue ();
+            i++;
+        }
+
+        return new AttributeMap ( intern ( keys ), values );
+    }
+
+    /**
+     * Create an attribute map from the provided map
+     * 
+     * @param attributes
+     *            the attributes to copy, may be <code>null</code>
+     * @return the attribute map, the same instance if the provided map already
+     *         is an attribute map
+     */
+    public static AttributeMap copyOf ( final Map<String, Variant> attributes )
+    {
+        if ( attributes == null || attributes.isEmpty () )
+        {
+            return EMPTY;
+        }
+        if ( attributes instanceof AttributeMap )
+        {
+            return (AttributeMap)attributes;
+        }
+        return create ( new TreeMap<String, Variant> ( attributes ) );
+    }
+
+    @Override
+    public int size ()
+    {
+        return this.values.length;
+    }
+
+    @Override
+    public boolean isEmpty ()
+    {
+        return this.values.length == 0;
+    }
+
+    @Override
+    public boolean containsKey ( final Object key )
+    {
+        return this.table.indexOf ( key ) >= 0;
+    }
+
+    @Override
+    public Variant get ( final Object key )
+    {
+        final int idx = this.table.indexOf ( key );
+        return idx < 0 ? null : this.values[idx];
+    }
+
+    /**
+     * Set a single attribute
+     * 
+     * @param value
+     *            the new value, <code>null</code> removes the attribute
+     * @return the new map, or the same instance if nothing changed
+     */
+    public AttributeMap with ( final String key, final Variant value )
+    {
+        if ( value == null )
+        {
+            return merge ( Collections.singletonMap ( key, (Variant)null ) );
+        }
+
+        final int idx = this.table.indexOf ( key );
+        if ( idx >= 0 )
+        {
+            if ( isEqual ( this.values[idx], value ) )
+            {
+                return this;
+            }
+            // share the key table, only the values change
+            final Variant[] values = this.values.clone ();
+            values[idx] = value;
+            return new AttributeMap ( this.table, values );
+        }
+
+        final TreeMap<String, Variant> sorted = toTreeMap ();
+        sorted.put ( key, value );
+        return create ( sorted );
+    }
+
+    /**
+     * Merge a set of changes into this map
+     * <p>
+     * Entries with a <code>null</code> value remove the attribute, all others
+     * set it. This has the same semantics as
+     * <code>AttributesHelper.mergeAttributes</code>.
+     * </p>
+     * 
+     * @return the new map, or the same instance if nothing changed
+     */
+    public AttributeMap merge ( final Map<String, Variant> updates )
+    {
+        if ( updates == null || updates.isEmpty () )
+        {
+            return this;
+        }
+
+        // fast path: only existing keys are changed
+        Variant[] values = null;
+        for ( final Map.Entry<String, Variant> entry : updates.entrySet () )
+        {
+            final int idx = this.table.indexOf ( entry.getKey () );
+            if ( idx < 0 )
+            {
+                if ( entry.getValue () == null )
+                {
+                    // removing a missing key is no change
+                    continue;
+                }
+                return mergeSlow ( updates );
+            }
+            if ( entry.getValue () == null )
+            {
+                return mergeSlow ( updates );
+            }
+            if ( !isEqual ( this.values[idx], entry.getValue () ) )
+            {
+                if ( values == null )
+                {
+                    values = this.values.clone ();
+                }
+                values[idx] = entry.getValue ();
+            }
+        }
+
+        return values == null ? this : new AttributeMap ( this.table, values );
+    }
+
+    private AttributeMap mergeSlow ( final Map<String, Variant> updates )
+    {
+        final TreeMap<String, Variant> sorted = toTreeMap ();
+        for ( final Map.Entry<String, Variant> entry : updates.entrySet () )
+        {
+            if ( entry.getValue () == null )
+            {
+                sorted.remove ( entry.getKey () );
+            }
+            else
+            {
+                sorted.put ( entry.getKey (), entry.getValue () );
+            }
+        }
+        return create ( sorted );
+    }
+
+    /**
+     * Calculate the changes from this map to the provided map
+     * <p>
+     * If both maps share the same key table, only the values are compared.
+     * </p>
+     * 
+     * @param other
+     *            the new state
+     * @return the changes, removed attributes have a <code>null</code> value.
+     *         Returns {@link #EMPTY} if there are no changes.
+     */
+    public AttributeMap diff ( final AttributeMap other )
+    {
+        if ( other == this )
+        {
+            return EMPTY;
+        }
+
+        if ( other.table == this.table )
+        {
+            return diffSameTable ( other );
+        }
+
+        final TreeMap<String, Variant> diff = new TreeMap<String, Variant> ();
+
+        for ( int i = 0; i < this.table.keys.length; i++ )
+        {
+            if ( !other.containsKey ( this.table.keys[i] ) )
+            {
+                diff.put ( this.table.keys[i], null );
+            }
+        }
+        for ( int i = 0; i < other.table.keys.length; i++ )
+        {
+            final int idx = this.table.indexOf ( other.table.keys[i] );
+            if ( idx < 0 || !isEqual ( this.values[idx], other.values[i] ) )
+            {
+                diff.put ( other.table.keys[i], other.values[i] );
+            }
+        }
+
+        return create ( diff );
+    }
+
+    private AttributeMap diffSameTable ( final AttributeMap other )
+    {
+        int changes = 0;
+        for ( int i = 0; i < this.values.length; i++ )
+        {
+            if ( !isEqual ( this.values[i], other.values[i] ) )
+            {
+                changes++;
+            }
+        }
+
+        if ( changes == 0 )
+        {
+            return EMPTY;
+        }
+        if ( changes == this.values.length )
+        {
+            return other;
+        }
+
+        final String[] keys = new String[changes];
+        final Variant[] values = new Variant[changes];
+        int j = 0;
+        for ( int i = 0; i < this.values.length; i++ )
+        {
+            if ( !isEqual ( this.values[i], other.values[i] ) )
+            {
+                keys[j] = this.table.keys[i];
+                values[j] = other.values[i];
+                j++;
+            }
+        }
+        return new AttributeMap ( intern ( keys ), values );
+    }
+
+    private TreeMap<String, Variant> toTreeMap ()
+    {
+        final TreeMap<String, Variant> result = new TreeMap<String, Variant> ();
+        for ( int i = 0; i < this.values.length; i++ )
+        {
+            result.put ( this.table.keys[i], this.values[i] );
+        }
+        return result;
+    }
+
+    private static boolean isEqual ( final Variant v1, final Variant v2 )
+    {
+        if ( v1 == v2 )
+        {
+            return true;
+        }
+        if ( v1 == null || v2 == null )
+        {
+            return false;
+        }
+        return v1.equals ( v2 );
+    }
+
+    @Override
+    public Set<Map.Entry<String, Variant>> entrySet ()
+    {
+        if ( this.entrySet == null )
+        {
+            this.entrySet = new EntrySet ();
+        }
+        return this.entrySet;
+    }
+
+    private class EntrySet extends AbstractSet<Map.Entry<String, Variant>>
+    {
+        @Override
+        public int size ()
+        {
+            return AttributeMap.this.values.length;
+        }
+
+        @Override
+        public Iterator<Map.Entry<String, Variant>> iterator ()
+        {
+            return new Iterator<Map.Entry<String, Variant>> () {
+
+                private int index;
+
+                @Override
+                public boolean hasNext ()
+                {
+                    return this.index < AttributeMap.this.values.length;
+                }
+
+                @Override
+                public Map.Entry<String, Variant> next ()
+                {
+                    if ( this.index >= AttributeMap.this.values.length )
+                    {
+                        throw new NoSuchElementException ();
+                    }
+                    final int i = this.index++;
+                    return new SimpleImmutableEntry<String, Variant> ( AttributeMap.this.table.keys[i], AttributeMap.this.values[i] );
+                }
+
+                @Override
+                public void remove ()
+                {
+                    throw new UnsupportedOperationException ();
+                }
+            };
+        }
+    }
+}
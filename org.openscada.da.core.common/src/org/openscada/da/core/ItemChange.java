@@ -0,0 +1,116 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+
+package org.openscada.da.core;
+
+import java.util.Map;
+
+import org.openscada.core.Variant;
+import org.openscada.utils.lang.Immutable;
+
+/**
+ * A change of one data item as delivered to a listener
+ * 
+ * @since 1.1
+ */
+@Immutable
+public class ItemChange
+{
+    private final String itemId;
+
+    private final Variant value;
+
+    private final Map<String, Variant> attributes;
+
+    private final boolean cache;
+
+    private final long sequence;
+
+    /**
+     * Create a new item change
+     * 
+     * @param itemId
+     *            the id of the item
+     * @param value
+     *            the new value or <code>null</code> if the value did not
+     *            change
+     * @param attributes
+     *            the changed attributes or <code>null</code> if no attribute
+     *            changed
+     * @param cache
+     *            the cache flag
+     */
+    public ItemChange ( final String itemId, final Variant value, final Map<String, Variant> attributes, final boolean cache )
+    {
+        this ( itemId, value, attributes, cache, 0 );
+    }
+
+    /**
+     * Create a new item change carrying a sequence number
+     * 
+     * @param sequence
+     *            the sequence number of the change or <code>0</code> if the
+     *            change has no sequence number
+     */
+    public ItemChange ( final String itemId, final Variant value, final Map<String, Variant> attributes, final boolean cache, final long sequence )
+    {
+        this.itemId = itemId;
+        this.value = value;
+        this.attributes = attributes;
+        this.cache = cache;
+        this.sequence = sequence;
+    }
+
+    public String getItemId ()
+    {
+        return this.itemId;
+    }
+
+    public Variant getValue ()
+    {
+        return this.value;
+    }
+
+    public Map<String, Variant> getAttributes ()
+    {
+        return this.attributes;
+    }
+
+    public boolean isCache ()
+    {
+        return this.cache;
+    }
+
+    /**
+     * @return the sequence number of the change or <code>0</code> if the
+     *         change has no sequence number
+     */
+    public long getSequence ()
+    {
+        return this.sequence;
+    }
+
+    @Override
+    public String toString ()
+    {
+        return String.format ( "[ItemChange - itemId: %s, value: %s, attributes: %s, cache: %s]", this.itemId, this.value, this.attributes, this.cache );
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+
+package org.openscada.da.core;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openscada.core.Variant;
+
+public class AttributeMapTest
+{
+    @After
+    public void cleanup ()
+    {
+        AttributeMap.clearKeyTables ();
+    }
+
+    private static Map<String, Variant> map ( final Object... entries )
+    {
+        final Map<String, Variant> result = new HashMap<String, Variant> ();
+        for ( int i = 0; i < entries.length; i += 2 )
+        {
+            result.put ( (String)entries[i], (Variant)entries[i + 1] );
+        }
+        return result;
+    }
+
+    @Test
+    public void testCopyOf ()
+    {
+        Assert.assertSame ( AttributeMap.EMPTY, AttributeMap.copyOf ( null ) );
+        Assert.assertSame ( AttributeMap.EMPTY, AttributeMap.copyOf ( new HashMap<String, Variant> () ) );
+
+        final AttributeMap attributes = AttributeMap.copyOf ( map ( "b", Variant.valueOf ( 2 ), "a", Variant.valueOf ( 1 ) ) );
+        Assert.assertSame ( attributes, AttributeMap.copyOf ( attributes ) );
+
+        Assert.assertEquals ( 2, attributes.size () );
+        Assert.assertEquals ( Variant.valueOf ( 1 ), attributes.get ( "a" ) );
+        Assert.assertEquals ( Variant.valueOf ( 2 ), attributes.get ( "b" ) );
+        Assert.assertNull ( attributes.get ( "c" ) );
+        Assert.assertNull ( attributes.get ( 1 ) );
+        Assert.assertTrue ( attributes.containsKey ( "a" ) );
+        Assert.assertFalse ( attributes.containsKey ( "c" ) );
+    }
+
+    @Test
+    public void testEqualsHashMap ()
+    {
+        final Map<String, Variant> expected = map ( "a", Variant.valueOf ( 1 ), "b", Variant.valueOf ( 2 ) );
+        final AttributeMap attributes = AttributeMap.copyOf ( expected );
+
+        Assert.assertEquals ( expected, attributes );
+        Assert.assertEquals ( attributes, expected );
+        Assert.assertEquals ( expected.hashCode (), attributes.hashCode () );
+        Assert.assertEquals ( expected.entrySet (), attributes.entrySet () );
+
+        Assert.assertFalse ( attributes.equals ( map ( "a", Variant.valueOf ( 1 ) ) ) );
+        Assert.assertFalse ( attributes.equals ( map ( "a", Variant.valueOf ( 1 ), "b", Variant.valueOf ( 3 ) ) ) );
+    }
+
+    @Test ( expected = UnsupportedOperationException.class )
+    public void testImmutable ()
+    {
+        AttributeMap.copyOf ( map ( "a", Variant.valueOf ( 1 ) ) ).put ( "b", Variant.valueOf ( 2 ) );
+    }
+
+    @Test
+    public void testWith ()
+    {
+        final AttributeMap attributes = AttributeMap.copyOf ( map ( "a", Variant.valueOf ( 1 ) ) );
+
+        // same value, same instance
+        Assert.assertSame ( attributes, attributes.with ( "a", Variant.valueOf ( 1 ) ) );
+
+        // changed value, shared keys
+        final AttributeMap changed = attributes.with ( "a", Variant.valueOf ( 2 ) );
+        Assert.assertEquals ( map ( "a", Variant.valueOf ( 2 ) ), changed );
+        Assert.assertTrue ( changed.sharesKeys ( attributes ) );
+        Assert.assertEquals ( map ( "a", Variant.valueOf ( 1 ) ), attributes );
+
+        // new key
+        final AttributeMap added = attributes.with ( "b", Variant.valueOf ( 3 ) );
+        Assert.assertEquals ( map ( "a", Variant.valueOf ( 1 ), "b", Variant.valueOf ( 3 ) ), added );
+
+        // removal by null value
+        Assert.assertEquals ( map ( "b", Variant.valueOf ( 3 ) ), added.with ( "a", null ) );
+        Assert.assertSame ( AttributeMap.EMPTY, attributes.with ( "a", null ) );
+        Assert.assertSame ( attributes, attributes.with ( "c", null ) );
+    }
+
+    @Test
+    public void testMerge ()
+    {
+        final AttributeMap attributes = AttributeMap.copyOf ( map ( "a", Variant.valueOf ( 1 ), "b", Variant.valueOf ( 2 ) ) );
+
+        Assert.assertSame ( attributes, attributes.merge ( null ) );
+        Assert.assertSame ( attributes, attributes.merge ( new HashMap<String, Variant> () ) );
+        Assert.assertSame ( attributes, attributes.merge ( map ( "a", Variant.valueOf ( 1 ) ) ) );
+        Assert.assertSame ( attributes, attributes.merge ( map ( "c", null ) ) );
+
+        // only existing keys
+        final AttributeMap changed = attributes.merge ( map ( "a", Variant.valueOf ( 10 ) ) );
+        Assert.assertEquals ( map ( "a", Variant.valueOf ( 10 ), "b", Variant.valueOf ( 2 ) ), changed );
+        Assert.assertTrue ( changed.sharesKeys ( attributes ) );
+
+        // add, change and remove at once
+        final AttributeMap merged = attributes.merge ( map ( "a", null, "b", Variant.valueOf ( 20 ), "c", Variant.valueOf ( 30 ) ) );
+        Assert.assertEquals ( map ( "b", Variant.valueOf ( 20 ), "c", Variant.valueOf ( 30 ) ), merged );
+
+        // remove everything
+        Assert.assertSame ( AttributeMap.EMPTY, attributes.merge ( map ( "a", null, "b", null ) ) );
+
+        // the source is unchanged
+        Assert.assertEquals ( map ( "a", Variant.valueOf ( 1 ), "b", Variant.valueOf ( 2 ) ), attributes );
+    }
+
+    @Test
+    public void testDiff ()
+    {
+        final AttributeMap attributes = AttributeMap.copyOf ( map ( "a", Variant.valueOf ( 1 ), "b", Variant.valueOf ( 2 ) ) );
+
+        Assert.assertSame ( AttributeMap.EMPTY, attributes.diff ( attributes ) );
+        Assert.assertSame ( AttributeMap.EMPTY, attributes.diff ( attributes.with ( "a", Variant.valueOf ( 1 ) ) ) );
+
+        // same key table, one value changed
+        final AttributeMap changed = attributes.with ( "b", Variant.valueOf ( 3 ) );
+        Assert.assertEquals ( map ( "b", Variant.valueOf ( 3 ) ), attributes.diff ( changed ) );
+
+        // same key table, all values changed
+        final AttributeMap allChanged = attributes.merge ( map ( "a", Variant.valueOf ( 4 ), "b", Variant.valueOf ( 5 ) ) );
+        Assert.assertSame ( allChanged, attributes.diff ( allChanged ) );
+
+        // different key tables, removed attributes have a null value
+        final AttributeMap other = AttributeMap.copyOf ( map ( "b", Variant.valueOf ( 2 ), "c", Variant.valueOf ( 6 ) ) );
+        final AttributeMap diff = attributes.diff ( other );
+        Assert.assertEquals ( map ( "a", null, "c", Variant.valueOf ( 6 ) ), diff );
+
+        // applying the diff results in the new state
+        Assert.assertEquals ( other, attributes.merge ( diff ) );
+        Assert.assertEquals ( allChanged, attributes.merge ( attributes.diff ( allChanged ) ) );
+    }
+
+    @Test
+    public void testInterning ()
+    {
+        final AttributeMap a1 = AttributeMap.copyOf ( map ( "a", Variant.valueOf ( 1 ), "b", Variant.valueOf ( 2 ) ) );
+        final AttributeMap a2 = AttributeMap.copyOf ( map ( "b", Variant.valueOf ( 3 ), "a", Variant.valueOf ( 4 ) ) );
+        final AttributeMap a3 = AttributeMap.copyOf ( Collections.singletonMap ( "a", Variant.valueOf ( 1 ) ) ).with ( "b", Variant.valueOf ( 5 ) );
+
+        Assert.assertTrue ( a1.sharesKeys ( a2 ) );
+        Assert.assertTrue ( a1.sharesKeys ( a3 ) );
+        Assert.assertFalse ( a1.sharesKeys ( AttributeMap.copyOf ( map ( "a", Variant.valueOf ( 1 ) ) ) ) );
+    }
+
+    @Test
+    public void testMaxKeyTables ()
+    {
+        final int max = AttributeMap.getMaxKeyTables ();
+
+        for ( int i = 0; i < max + 10; i++ )
+        {
+            AttributeMap.copyOf ( map ( "generated." + i, Variant.valueOf ( i ) ) );
+        }
+
+        // the table does not grow beyond its limit
+        Assert.assertEquals ( max, AttributeMap.getKeyTableCount () );
+
+        // maps with new keys still work, but don't share their keys
+        final AttributeMap m1 = AttributeMap.copyOf ( map ( "new", Variant.valueOf ( 1 ) ) );
+        final AttributeMap m2 = AttributeMap.copyOf ( map ( "new", Variant.valueOf ( 2 ) ) );
+        Assert.assertFalse ( m1.sharesKeys ( m2 ) );
+        Assert.assertEquals ( map ( "new", Variant.valueOf ( 2 ) ), m2 );
+        Assert.assertEquals ( map ( "new", Variant.valueOf ( 2 ) ), m1.diff ( m2 ) );
+
+        // tables interned before the limit was reached are still shared
+        final AttributeMap g1 = AttributeMap.copyOf ( map ( "generated.0", Variant.valueOf ( 1 ) ) );
+        final AttributeMap g2 = AttributeMap.copyOf ( map ( "generated.0", Variant.valueOf ( 2 ) ) );
+        Assert.assertTrue ( g1.sharesKeys ( g2 ) );
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+
+package org.openscada.da.core.server;
+
+import java.util.List;
+
+import org.openscada.da.core.ItemChange;
+
+/**
+ * An item change listener which can receive a batch of changes at once
+ * <p>
+ * Sessions use this interface, if the listener implements it, for delivering
+ * the initial values of a bulk subscription (see
+ * {@link Hive#subscribeItems(Session, java.util.Collection)}) in one call.
+ * </p>
+ * 
+ * @since 1.1
+ */
+public interface BulkItemChangeListener extends ItemChangeListener
+{
+    /**
+     * A list of changes occurred
+     * 
+     * @param changes
+     *            the changes, in the order they occurred
+     */
+    public void dataChanged ( List<ItemChange> changes );
+}
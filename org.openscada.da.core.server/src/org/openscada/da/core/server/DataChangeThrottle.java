@@ -0,0 +1,640 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.da.core.server;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.openscada.core.Variant;
+import org.openscada.da.core.AttributeMap;
+import org.openscada.utils.concurrent.NamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Protects a server connection from clients which cannot keep up with the
+ * data changes
+ * <p>
+ * As long as the outbound queue of the connection stays inside the
+ * configured budget, data changes are passed on directly. Once the budget is
+ * exceeded the connection is considered congested and data changes are held
+ * back, keeping only the latest state per item. The held back changes are
+ * sent when the outbound queue has drained again. A congested connection can
+ * be disconnected, depending on the {@link DisconnectPolicy}.
+ * </p>
+ * <p>
+ * The drain job is only scheduled while the connection is congested.
+ * Changes are passed on to the {@link Channel} without holding the lock of
+ * the throttle.
+ * </p>
+ * <p>
+ * Held back changes are sent without sequence numbers, since they are no
+ * longer sent in sequence order. Only changes sent directly carry their
+ * sequence number (see {@link SequencedItemChangeListener}).
+ * </p>
+ * 
+ * @since 1.1
+ */
+public class DataChangeThrottle
+{
+    private final static Logger logger = LoggerFactory.getLogger ( DataChangeThrottle.class );
+
+    private static ScheduledExecutorService defaultScheduler;
+
+    public enum DisconnectPolicy
+    {
+        /**
+         * Never disconnect, keep conflating
+         */
+        NEVER,
+        /**
+         * Disconnect if the connection stays congested for longer than the
+         * disconnect timeout
+         */
+        TIMEOUT,
+        /**
+         * Disconnect if the number of held back items exceeds the configured
+         * maximum
+         */
+        OVERFLOW;
+    }
+
+    /**
+     * The channel data changes are sent to
+     */
+    public interface Channel
+    {
+        /**
+         * @return the number of bytes queued for sending
+         */
+        public long getQueuedBytes ();
+
+        /**
+         * @return the number of messages queued for sending
+         */
+        public long getQueuedMessages ();
+
+        /**
+         * Send a data change
+         * 
+         * @param sequence
+         *            the sequence number of the change, <code>0</code> for
+         *            changes which were held back
+         */
+        public void sendData ( String itemId, Variant value, Map<String, Variant> attributes, boolean cache, long sequence );
+
+        /**
+         * Close the connection because the peer cannot keep up
+         */
+        public void disconnect ( String reason );
+
+        /**
+         * Called after each drain cycle while the connection is congested,
+         * allows the channel to publish the counters of the throttle
+         */
+        public void statisticsChanged ( DataChangeThrottle throttle );
+    }
+
+    public static class Configuration
+    {
+        private final long maxQueuedBytes;
+
+        private final long maxQueuedMessages;
+
+        private final DisconnectPolicy disconnectPolicy;
+
+        private final long disconnectTimeout;
+
+        private final int maxPendingItems;
+
+        private final long drainInterval;
+
+        /**
+         * @param maxQueuedBytes
+         *            the outbound byte budget, <code>0</code> for unlimited
+         * @param maxQueuedMessages
+         *            the outbound message budget, <code>0</code> for unlimited
+         * @param disconnectPolicy
+         *            the disconnect policy
+         * @param disconnectTimeout
+         *            the time in milliseconds a connection may stay congested
+         *            when using {@link DisconnectPolicy#TIMEOUT}
+         * @param maxPendingItems
+         *            the number of held back items allowed when using
+         *            {@link DisconnectPolicy#OVERFLOW}
+         * @param drainInterval
+         *            the period in milliseconds for checking if held back
+         *            changes can be sent
+         */
+        public Configuration ( final long maxQueuedBytes, final long maxQueuedMessages, final DisconnectPolicy disconnectPolicy, final long disconnectTimeout, final int maxPendingItems, final long drainInterval )
+        {
+            this.maxQueuedBytes = maxQueuedBytes;
+            this.maxQueuedMessages = maxQueuedMessages;
+            this.disconnectPolicy = disconnectPolicy == null ? DisconnectPolicy.NEVER : disconnectPolicy;
+            this.disconnectTimeout = disconnectTimeout;
+            this.maxPendingItems = maxPendingItems;
+            this.drainInterval = Math.max ( 1, drainInterval );
+        }
+
+        /**
+         * Create the configuration from the system properties
+         * <code>org.openscada.da.server.outbound.*</code>
+         */
+        public static Configuration fromSystemProperties ()
+        {
+            DisconnectPolicy policy;
+            try
+            {
+                policy = DisconnectPolicy.valueOf ( System.getProperty ( "org.openscada.da.server.outbound.disconnectPolicy", DisconnectPolicy.NEVER.name () ) );
+            }
+            catch ( final IllegalArgumentException e )
+            {
+                logger.warn ( "Invalid disconnect policy, using NEVER", e );
+                policy = DisconnectPolicy.NEVER;
+            }
+
+            return new Configuration ( Long.getLong ( "org.openscada.da.server.outbound.maxQueuedBytes", 8 * 1024 * 1024 ), Long.getLong ( "org.openscada.da.server.outbound.maxQueuedMessages", 50000 ), policy, Long.getLong ( "org.openscada.da.server.outbound.disconnectTimeout", 60 * 1000 ), Integer.getInteger ( "org.openscada.da.server.outbound.maxPendingItems", 100000 ), Long.getLong ( "org.openscada.da.server.outbound.drainInterval", 100 ) );
+        }
+
+        public long getMaxQueuedBytes ()
+        {
+            return this.maxQueuedBytes;
+        }
+
+        public long getMaxQueuedMessages ()
+        {
+            return this.maxQueuedMessages;
+        }
+
+        public DisconnectPolicy getDisconnectPolicy ()
+        {
+            return this.disconnectPolicy;
+        }
+
+        public long getDisconnectTimeout ()
+        {
+            return this.disconnectTimeout;
+        }
+
+        public int getMaxPendingItems ()
+        {
+            return this.maxPendingItems;
+        }
+
+        public long getDrainInterval ()
+        {
+            return this.drainInterval;
+        }
+    }
+
+    private static class PendingChange
+    {
+        private Variant value;
+
+        private Map<String, Variant> attributes;
+
+        private boolean cache;
+
+        public PendingChange ( final Variant value, final Map<String, Variant> attributes, final boolean cache )
+        {
+            this.value = value;
+            this.attributes = copy ( attributes );
+            this.cache = cache;
+        }
+
+        private static Map<String, Variant> copy ( final Map<String, Variant> attributes )
+        {
+            if ( attributes == null || attributes instanceof AttributeMap )
+            {
+                // immutable, no need to copy
+                return attributes;
+            }
+            return new HashMap<String, Variant> ( attributes );
+        }
+
+        public void merge ( final Variant value, final Map<String, Variant> attributes, final boolean cache )
+        {
+            if ( cache )
+            {
+                // a cache notification is a full state and replaces everything pending
+                this.value = value;
+                this.attributes = copy ( attributes );
+                this.cache = true;
+                return;
+            }
+
+            if ( value != null )
+            {
+                this.value = value;
+            }
+            if ( attributes != null )
+            {
+                if ( this.attributes == null )
+                {
+                    this.attributes = copy ( attributes );
+                }
+                else
+                {
+                    if ( this.attributes instanceof AttributeMap )
+                    {
+                        // the change set must keep the null values marking removed attributes
+                        this.attributes = new HashMap<String, Variant> ( this.attributes );
+                    }
+                    this.attributes.putAll ( attributes );
+                }
+            }
+        }
+    }
+
+    private final Channel channel;
+
+    private final Configuration configuration;
+
+    private final ScheduledExecutorService scheduler;
+
+    private boolean started;
+
+    private ScheduledFuture<?> drainJob;
+
+    private boolean draining;
+
+    private final Map<String, PendingChange> pending = new LinkedHashMap<String, PendingChange> ();
+
+    private boolean congested;
+
+    private long congestedSince;
+
+    private boolean disconnected;
+
+    private long directCount;
+
+    private long deferredCount;
+
+    private long conflatedCount;
+
+    private long congestionCount;
+
+    /**
+     * Create a new throttle
+     * 
+     * @param scheduler
+     *            the scheduler running the drain job, if <code>null</code> a
+     *            shared default scheduler is used
+     */
+    public DataChangeThrottle ( final Channel channel, final Configuration configuration, final ScheduledExecutorService scheduler )
+    {
+        this.channel = channel;
+        this.configuration = configuration;
+        this.scheduler = scheduler != null ? scheduler : getDefaultScheduler ();
+    }
+
+    private static synchronized ScheduledExecutorService getDefaultScheduler ()
+    {
+        if ( defaultScheduler == null )
+        {
+            defaultScheduler = Executors.newSingleThreadScheduledExecutor ( new NamedThreadFactory ( "DataChangeThrottle", true ) );
+        }
+        return defaultScheduler;
+    }
+
+    /**
+     * Allow the throttle to schedule its drain job
+     * <p>
+     * The job only runs while the connection is congested.
+     * </p>
+     */
+    public synchronized void start ()
+    {
+        this.started = true;
+        if ( this.congested )
+        {
+            scheduleDrain ();
+        }
+    }
+
+    public synchronized void dispose ()
+    {
+        this.started = false;
+        cancelDrain ();
+        this.pending.clear ();
+    }
+
+    private void scheduleDrain ()
+    {
+        if ( this.drainJob != null || !this.started )
+        {
+            return;
+        }
+
+        this.drainJob = this.scheduler.scheduleWithFixedDelay ( new Runnable () {
+
+            @Override
+            public void run ()
+            {
+                drain ();
+            }
+        }, this.configuration.getDrainInterval (), this.configuration.getDrainInterval (), TimeUnit.MILLISECONDS );
+    }
+
+    private void cancelDrain ()
+    {
+        if ( this.drainJob != null )
+        {
+            this.drainJob.cancel ( false );
+            this.drainJob = null;
+        }
+    }
+
+    private boolean isOverBudget ()
+    {
+        if ( this.configuration.getMaxQueuedBytes () > 0 && this.channel.getQueuedBytes () > this.configuration.getMaxQueuedBytes () )
+        {
+            return true;
+        }
+        if ( this.configuration.getMaxQueuedMessages () > 0 && this.channel.getQueuedMessages () > this.configuration.getMaxQueuedMessages () )
+        {
+            return true;
+        }
+        return false;
+    }
+
+    private void checkCongestion ()
+    {
+        if ( !this.congested && isOverBudget () )
+        {
+            logger.info ( "Connection is congested, start conflating data changes" );
+            this.congested = true;
+            this.congestedSince = System.currentTimeMillis ();
+            this.congestionCount++;
+            scheduleDrain ();
+        }
+    }
+
+    /**
+     * Check if changes may be sent directly to the channel
+     * <p>
+     * This can be used for sending bulk changes directly. If this method
+     * returns <code>false</code>, the changes have to be passed to
+     * {@link #dataChanged(String, Variant, Map, boolean)}.
+     * </p>
+     */
+    public synchronized boolean canSendDirect ()
+    {
+        checkCongestion ();
+        return !this.congested;
+    }
+
+    /**
+     * Send a data change or hold it back if the channel is congested
+     */
+    public void dataChanged ( final String itemId, final Variant value, final Map<String, Variant> attributes, final boolean cache )
+    {
+        dataChanged ( itemId, value, attributes, cache, 0 );
+    }
+
+    /**
+     * Send a data change or hold it back if the channel is congested
+     * 
+     * @param sequence
+     *            the sequence number of the change, <code>0</code> if
+     *            unknown
+     */
+    public void dataChanged ( final String itemId, final Variant value, final Map<String, Variant> attributes, final boolean cache, final long sequence )
+    {
+        final String disconnectReason;
+
+        synchronized ( this )
+        {
+            if ( this.disconnected )
+            {
+                return;
+            }
+
+            checkCongestion ();
+
+            if ( this.congested )
+            {
+                final PendingChange change = this.pending.get ( itemId );
+                if ( change == null )
+                {
+                    this.pending.put ( itemId, new PendingChange ( value, attributes, cache ) );
+                }
+                else
+                {
+                    change.merge ( value, attributes, cache );
+                    this.conflatedCount++;
+                }
+
+                if ( this.configuration.getDisconnectPolicy () == DisconnectPolicy.OVERFLOW && this.configuration.getMaxPendingItems () > 0 && this.pending.size () > this.configuration.getMaxPendingItems () )
+                {
+                    disconnectReason = markDisconnected ( String.format ( "Too many pending items: %s", this.pending.size () ) );
+                }
+                else
+                {
+                    return;
+                }
+            }
+            else
+            {
+                this.directCount++;
+                disconnectReason = null;
+            }
+        }
+
+        if ( disconnectReason != null )
+        {
+            this.channel.disconnect ( disconnectReason );
+        }
+        else
+        {
+            this.channel.sendData ( itemId, value, attributes, cache, sequence );
+        }
+    }
+
+    /**
+     * Drop held back changes of an item, e.g. when the item got unsubscribed
+     */
+    public synchronized void remove ( final String itemId )
+    {
+        this.pending.remove ( itemId );
+    }
+
+    /**
+     * Send held back changes as long as the channel is inside its budget
+     * <p>
+     * This is called periodically while the connection is congested, once
+     * {@link #start()} was called.
+     * </p>
+     */
+    public void drain ()
+    {
+        synchronized ( this )
+        {
+            if ( this.disconnected || this.draining )
+            {
+                return;
+            }
+            this.draining = true;
+        }
+
+        try
+        {
+            while ( drainOne () )
+            {
+            }
+        }
+        finally
+        {
+            synchronized ( this )
+            {
+                this.draining = false;
+            }
+        }
+
+        this.channel.statisticsChanged ( this );
+    }
+
+    /**
+     * Send one held back change
+     * 
+     * @return <code>true</code> if the next change should be sent
+     */
+    private boolean drainOne ()
+    {
+        final String itemId;
+        final PendingChange change;
+        final String disconnectReason;
+
+        synchronized ( this )
+        {
+            if ( this.disconnected || !this.congested )
+            {
+                return false;
+            }
+
+            final Iterator<Map.Entry<String, PendingChange>> i = this.pending.entrySet ().iterator ();
+            if ( i.hasNext () && !isOverBudget () )
+            {
+                final Map.Entry<String, PendingChange> entry = i.next ();
+                i.remove ();
+
+                itemId = entry.getKey ();
+                change = entry.getValue ();
+                this.deferredCount++;
+                disconnectReason = null;
+            }
+            else if ( this.pending.isEmpty () && !isOverBudget () )
+            {
+                logger.info ( "Connection recovered from congestion" );
+                this.congested = false;
+                cancelDrain ();
+                return false;
+            }
+            else if ( this.configuration.getDisconnectPolicy () == DisconnectPolicy.TIMEOUT && System.currentTimeMillis () - this.congestedSince > this.configuration.getDisconnectTimeout () )
+            {
+                itemId = null;
+                change = null;
+                disconnectReason = markDisconnected ( String.format ( "Connection congested for more than %s ms", this.configuration.getDisconnectTimeout () ) );
+            }
+            else
+            {
+                // wait for the next cycle
+                return false;
+            }
+        }
+
+        if ( disconnectReason != null )
+        {
+            this.channel.disconnect ( disconnectReason );
+            return false;
+        }
+
+        this.channel.sendData ( itemId, change.value, change.attributes, change.cache, 0 );
+        return true;
+    }
+
+    /**
+     * Mark the throttle disconnected, the caller has to disconnect the
+     * channel after releasing the lock
+     * 
+     * @return the reason
+     */
+    private String markDisconnected ( final String reason )
+    {
+        logger.warn ( "Disconnecting slow consumer: {}", reason );
+
+        this.disconnected = true;
+        this.pending.clear ();
+        cancelDrain ();
+        return reason;
+    }
+
+    public synchronized boolean isCongested ()
+    {
+        return this.congested;
+    }
+
+    /**
+     * @return the number of items with held back changes
+     */
+    public synchronized int getPendingCount ()
+    {
+        return this.pending.size ();
+    }
+
+    /**
+     * @return the number of changes sent directly
+     */
+    public synchronized long getDirectCount ()
+    {
+        return this.directCount;
+    }
+
+    /**
+     * @return the number of held back changes sent after the congestion
+     */
+    public synchronized long getDeferredCount ()
+    {
+        return this.deferredCount;
+    }
+
+    /**
+     * @return the number of changes merged into a held back change
+     */
+    public synchronized long getConflatedCount ()
+    {
+        return this.conflatedCount;
+    }
+
+    /**
+     * @return the number of times the connection became congested
+     */
+    public synchronized long getCongestionCount ()
+    {
+        return this.congestionCount;
+    }
+}
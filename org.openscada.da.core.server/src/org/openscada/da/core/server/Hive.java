@@ -21,7 +21,9 @@
 
 package org.openscada.da.core.server;
 
+import java.util.Collection;
 import java.util.Map;
+import java.util.Set;
 
 import org.openscada.core.InvalidSessionException;
 import org.openscada.core.Variant;
@@ -66,6 +68,63 @@ public interface Hive extends Service<Session>
      */
     public void unsubscribeItem ( Session session, String item ) throws InvalidSessionException, InvalidItemException;
 
+    /**
+     * Register to a set of items at once
+     * <p>
+     * The initial values of the items will be delivered in one batch if the
+     * item change listener of the session is a {@link BulkItemChangeListener}.
+     * </p>
+     * 
+     * @param session
+     *            the session to use
+     * @param items
+     *            the items to register for
+     * @return the items which could not be subscribed, never
+     *         <code>null</code>
+     * @throws InvalidSessionException
+     *             In the case the session is not a valid session
+     * @since 1.1
+     */
+    public Set<String> subscribeItems ( Session session, Collection<String> items ) throws InvalidSessionException;
+
+    /**
+     * Register to a set of items at once, resuming from a known state
+     * <p>
+     * Same as {@link #subscribeItems(Session, Collection)} but the initial
+     * value is only delivered for items which changed after the provided
+     * sequence number. If the hive cannot tell which items changed since then,
+     * the initial values of all items are delivered.
+     * </p>
+     * 
+     * @param session
+     *            the session to use
+     * @param items
+     *            the items to register for
+     * @param lastSequence
+     *            the sequence number of the last change the client received
+     *            (see {@link SequencedItemChangeListener}), <code>0</code>
+     *            to receive the initial values of all items
+     * @return the items which could not be subscribed, never
+     *         <code>null</code>
+     * @throws InvalidSessionException
+     *             In the case the session is not a valid session
+     * @since 1.1
+     */
+    public Set<String> subscribeItems ( Session session, Collection<String> items, long lastSequence ) throws InvalidSessionException;
+
+    /**
+     * Unregister from a set of items at once
+     * 
+     * @param session
+     *            the session to use
+     * @param items
+     *            the items to unregister from
+     * @throws InvalidSessionException
+     *             In the case the session is not a valid session
+     * @since 1.1
+     */
+    public void unsubscribeItems ( Session session, Collection<String> items ) throws InvalidSessionException;
+
     /**
      * Start a write operation
      * The operation is not started unless {@link #thawOperation(Session, long)}
@@ -0,0 +1,64 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+
+package org.openscada.da.core.server;
+
+import java.util.Map;
+
+import org.openscada.core.Variant;
+
+/**
+ * An item change listener which receives the hive wide sequence numbers of
+ * the changes
+ * <p>
+ * Changes are delivered with increasing sequence numbers. A client which
+ * received all changes up to a sequence number can pass that number to
+ * {@link Hive#subscribeItems(Session, java.util.Collection, long)} after a
+ * reconnect and will only receive the items that changed in the meantime.
+ * </p>
+ * <p>
+ * Initial values delivered in a batch to a {@link BulkItemChangeListener}
+ * do not carry a sequence number.
+ * </p>
+ * 
+ * @since 1.1
+ */
+public interface SequencedItemChangeListener extends ItemChangeListener
+{
+    /**
+     * Session property holding the epoch of the sequence numbers
+     * <p>
+     * Sequence numbers can only be compared if the epoch is the same. The
+     * property is only present if the hive supports resuming from a sequence
+     * number.
+     * </p>
+     */
+    public static final String PROP_SEQUENCE_EPOCH = "sequence.epoch";
+
+    /**
+     * Data of an item changed
+     * 
+     * @param sequence
+     *            the sequence number of the change, <code>0</code> if the
+     *            change has no sequence number
+     */
+    public void dataChanged ( String itemId, Variant value, Map<String, Variant> attributes, boolean cache, long sequence );
+}
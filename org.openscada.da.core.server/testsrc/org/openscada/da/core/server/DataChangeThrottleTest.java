@@ -0,0 +1,289 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.da.core.server;
+
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openscada.core.Variant;
+import org.openscada.da.core.AttributeMap;
+import org.openscada.da.core.ItemChange;
+import org.openscada.da.core.server.DataChangeThrottle.Configuration;
+import org.openscada.da.core.server.DataChangeThrottle.DisconnectPolicy;
+
+public class DataChangeThrottleTest
+{
+    private static class TestChannel implements DataChangeThrottle.Channel
+    {
+        private final List<ItemChange> sent = new LinkedList<ItemChange> ();
+
+        private long queuedBytes;
+
+        private String disconnectReason;
+
+        private Object lock;
+
+        private boolean calledLocked;
+
+        @Override
+        public long getQueuedBytes ()
+        {
+            return this.queuedBytes;
+        }
+
+        @Override
+        public long getQueuedMessages ()
+        {
+            return 0;
+        }
+
+        @Override
+        public void sendData ( final String itemId, final Variant value, final Map<String, Variant> attributes, final boolean cache, final long sequence )
+        {
+            checkLock ();
+            this.sent.add ( new ItemChange ( itemId, value, attributes, cache ) );
+        }
+
+        @Override
+        public void disconnect ( final String reason )
+        {
+            checkLock ();
+            this.disconnectReason = reason;
+        }
+
+        private void checkLock ()
+        {
+            if ( this.lock != null && Thread.holdsLock ( this.lock ) )
+            {
+                this.calledLocked = true;
+            }
+        }
+
+        @Override
+        public void statisticsChanged ( final DataChangeThrottle throttle )
+        {
+        }
+    }
+
+    private TestChannel channel;
+
+    @Before
+    public void setup ()
+    {
+        this.channel = new TestChannel ();
+    }
+
+    @Test
+    public void testAttributeMapChanges ()
+    {
+        final DataChangeThrottle throttle = new DataChangeThrottle ( this.channel, new Configuration ( 1000, 0, DisconnectPolicy.NEVER, 0, 0, 100 ), null );
+        this.channel.queuedBytes = 2000;
+        throttle.dataChanged ( "a", null, null, false );
+
+        // immutable change sets are kept as they are ...
+        final AttributeMap attributes = AttributeMap.copyOf ( Collections.singletonMap ( "attr1", Variant.TRUE ) );
+        throttle.dataChanged ( "a", null, attributes, false );
+
+        // ... and copied before pending changes get merged into them
+        throttle.dataChanged ( "a", null, Collections.singletonMap ( "attr2", (Variant)null ), false );
+
+        this.channel.queuedBytes = 0;
+        throttle.drain ();
+
+        final Map<String, Variant> sent = this.channel.sent.get ( this.channel.sent.size () - 1 ).getAttributes ();
+        Assert.assertEquals ( 2, sent.size () );
+        Assert.assertEquals ( Variant.TRUE, sent.get ( "attr1" ) );
+        Assert.assertTrue ( sent.containsKey ( "attr2" ) );
+        Assert.assertNull ( sent.get ( "attr2" ) );
+
+        // the original map is untouched
+        Assert.assertEquals ( 1, attributes.size () );
+    }
+
+    @Test
+    public void testConflation ()
+    {
+        final DataChangeThrottle throttle = new DataChangeThrottle ( this.channel, new Configuration ( 1000, 0, DisconnectPolicy.NEVER, 0, 0, 100 ), null );
+        this.channel.lock = throttle;
+
+        throttle.dataChanged ( "a", Variant.valueOf ( 1 ), null, false );
+        Assert.assertEquals ( 1, this.channel.sent.size () );
+
+        // the peer stops reading
+        this.channel.queuedBytes = 2000;
+
+        for ( int i = 2; i <= 100; i++ )
+        {
+            throttle.dataChanged ( "a", Variant.valueOf ( i ), null, false );
+            throttle.dataChanged ( "b", Variant.valueOf ( i ), Collections.singletonMap ( "attr" + i % 2, Variant.TRUE ), false );
+        }
+
+        Assert.assertTrue ( throttle.isCongested () );
+        Assert.assertEquals ( 1, this.channel.sent.size () );
+        Assert.assertEquals ( 2, throttle.getPendingCount () );
+
+        // still congested, nothing gets sent
+        throttle.drain ();
+        Assert.assertEquals ( 1, this.channel.sent.size () );
+
+        // the peer catches up
+        this.channel.queuedBytes = 0;
+        throttle.drain ();
+
+        Assert.assertFalse ( throttle.isCongested () );
+        Assert.assertEquals ( 3, this.channel.sent.size () );
+        Assert.assertEquals ( 0, throttle.getPendingCount () );
+
+        final ItemChange a = this.channel.sent.get ( 1 );
+        Assert.assertEquals ( "a", a.getItemId () );
+        Assert.assertEquals ( Variant.valueOf ( 100 ), a.getValue () );
+
+        final ItemChange b = this.channel.sent.get ( 2 );
+        Assert.assertEquals ( "b", b.getItemId () );
+        Assert.assertEquals ( Variant.valueOf ( 100 ), b.getValue () );
+        Assert.assertEquals ( 2, b.getAttributes ().size () );
+
+        Assert.assertEquals ( 196, throttle.getConflatedCount () );
+
+        // back to direct sending
+        throttle.dataChanged ( "a", Variant.valueOf ( 101 ), null, false );
+        Assert.assertEquals ( 4, this.channel.sent.size () );
+
+        Assert.assertFalse ( this.channel.calledLocked );
+    }
+
+    @Test
+    public void testDrainOnlyWhileCongested ()
+    {
+        final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor ( 1 );
+        try
+        {
+            final DataChangeThrottle throttle = new DataChangeThrottle ( this.channel, new Configuration ( 1000, 0, DisconnectPolicy.NEVER, 0, 0, 60 * 1000 ), scheduler );
+            throttle.start ();
+
+            throttle.dataChanged ( "a", Variant.valueOf ( 1 ), null, false );
+            Assert.assertEquals ( 0, activeJobs ( scheduler ) );
+
+            this.channel.queuedBytes = 2000;
+            throttle.dataChanged ( "a", Variant.valueOf ( 2 ), null, false );
+            Assert.assertEquals ( 1, activeJobs ( scheduler ) );
+
+            this.channel.queuedBytes = 0;
+            throttle.drain ();
+            Assert.assertFalse ( throttle.isCongested () );
+            Assert.assertEquals ( 0, activeJobs ( scheduler ) );
+            Assert.assertEquals ( 2, this.channel.sent.size () );
+        }
+        finally
+        {
+            scheduler.shutdownNow ();
+        }
+    }
+
+    private static int activeJobs ( final ScheduledThreadPoolExecutor scheduler )
+    {
+        int count = 0;
+        for ( final Runnable job : scheduler.getQueue () )
+        {
+            if ( ! ( (Future<?>)job ).isCancelled () )
+            {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Test
+    public void testCacheReplacesPending ()
+    {
+        final DataChangeThrottle throttle = new DataChangeThrottle ( this.channel, new Configuration ( 1000, 0, DisconnectPolicy.NEVER, 0, 0, 100 ), null );
+
+        this.channel.queuedBytes = 2000;
+
+        throttle.dataChanged ( "a", Variant.valueOf ( 1 ), Collections.singletonMap ( "old", Variant.TRUE ), false );
+        throttle.dataChanged ( "a", Variant.valueOf ( 2 ), Collections.singletonMap ( "new", Variant.TRUE ), true );
+
+        this.channel.queuedBytes = 0;
+        throttle.drain ();
+
+        Assert.assertEquals ( 1, this.channel.sent.size () );
+        final ItemChange a = this.channel.sent.get ( 0 );
+        Assert.assertTrue ( a.isCache () );
+        Assert.assertEquals ( Collections.singletonMap ( "new", Variant.TRUE ), a.getAttributes () );
+    }
+
+    @Test
+    public void testRemove ()
+    {
+        final DataChangeThrottle throttle = new DataChangeThrottle ( this.channel, new Configuration ( 1000, 0, DisconnectPolicy.NEVER, 0, 0, 100 ), null );
+
+        this.channel.queuedBytes = 2000;
+        throttle.dataChanged ( "a", Variant.valueOf ( 1 ), null, false );
+        throttle.remove ( "a" );
+
+        this.channel.queuedBytes = 0;
+        throttle.drain ();
+
+        Assert.assertTrue ( this.channel.sent.isEmpty () );
+    }
+
+    @Test
+    public void testOverflowDisconnect ()
+    {
+        final DataChangeThrottle throttle = new DataChangeThrottle ( this.channel, new Configuration ( 1000, 0, DisconnectPolicy.OVERFLOW, 0, 10, 100 ), null );
+        this.channel.lock = throttle;
+
+        this.channel.queuedBytes = 2000;
+        for ( int i = 0; i < 20; i++ )
+        {
+            throttle.dataChanged ( "item" + i, Variant.valueOf ( i ), null, false );
+        }
+
+        Assert.assertNotNull ( this.channel.disconnectReason );
+        Assert.assertEquals ( 0, throttle.getPendingCount () );
+        Assert.assertTrue ( this.channel.sent.isEmpty () );
+        Assert.assertFalse ( this.channel.calledLocked );
+    }
+
+    @Test
+    public void testTimeoutDisconnect () throws Exception
+    {
+        final DataChangeThrottle throttle = new DataChangeThrottle ( this.channel, new Configuration ( 1000, 0, DisconnectPolicy.TIMEOUT, 10, 0, 100 ), null );
+
+        this.channel.queuedBytes = 2000;
+        throttle.dataChanged ( "a", Variant.valueOf ( 1 ), null, false );
+
+        throttle.drain ();
+        Assert.assertNull ( this.channel.disconnectReason );
+
+        Thread.sleep ( 50 );
+
+        throttle.drain ();
+        Assert.assertNotNull ( this.channel.disconnectReason );
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+
+package org.openscada.da.net.handler;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The numeric item handles of one GMPP session
+ * <p>
+ * Data notifications of sessions which negotiated
+ * {@link Messages#PROP_FEATURE_ITEM_HANDLES} carry a numeric handle instead
+ * of the item id. The first notification of an item carries both, which
+ * defines the handle for the peer. The server removes the handle when the
+ * item gets unsubscribed and sends the subscription change afterwards, so
+ * the client drops the handle when it receives
+ * {@link org.openscada.core.data.SubscriptionState#DISCONNECTED}. A handle
+ * is never assigned to another item while it is in use. Handles are
+ * assigned in ascending order, so the handle of a removed item is only
+ * assigned again once the handles wrapped around, after two billion
+ * assignments in one session.
+ * </p>
+ * <p>
+ * The table is used by both sides. The server assigns handles, the client
+ * defines them. Sending a notification that defines a handle must happen
+ * while holding the lock of the table, so that no other notification using
+ * the handle can overtake it.
+ * </p>
+ * 
+ * @since 1.1
+ */
+public class ItemHandleTable
+{
+    private final Map<String, Integer> handles = new HashMap<String, Integer> ();
+
+    private final Map<Integer, String> itemIds = new HashMap<Integer, String> ();
+
+    private int nextHandle;
+
+    public ItemHandleTable ()
+    {
+        this ( 1 );
+    }
+
+    ItemHandleTable ( final int nextHandle )
+    {
+        this.nextHandle = nextHandle;
+    }
+
+    /**
+     * Get the handle of an item
+     * 
+     * @return the handle or <code>0</code> if the item has none
+     */
+    public synchronized int getHandle ( final String itemId )
+    {
+        final Integer handle = this.handles.get ( itemId );
+        return handle == null ? 0 : handle;
+    }
+
+    /**
+     * Get the item of a handle
+     * 
+     * @return the item id or <code>null</code> if the handle is unknown
+     */
+    public synchronized String getItemId ( final int handle )
+    {
+        return this.itemIds.get ( handle );
+    }
+
+    /**
+     * Assign a new handle to an item
+     * <p>
+     * Handles which are still in use are skipped.
+     * </p>
+     * 
+     * @return the new handle
+     */
+    public synchronized int assign ( final String itemId )
+    {
+        int handle;
+        do
+        {
+            handle = this.nextHandle++;
+            if ( this.nextHandle <= 0 )
+            {
+                // after two billion items in one session, start again
+                this.nextHandle = 1;
+            }
+        } while ( this.itemIds.containsKey ( handle ) );
+
+        define ( handle, itemId );
+        return handle;
+    }
+
+    /**
+     * Define the handle of an item as announced by the peer
+     * <p>
+     * An item which used the handle before loses its handle.
+     * </p>
+     */
+    public synchronized void define ( final int handle, final String itemId )
+    {
+        final Integer oldHandle = this.handles.put ( itemId, handle );
+        if ( oldHandle != null && oldHandle != handle )
+        {
+            this.itemIds.remove ( oldHandle );
+        }
+        final String oldItemId = this.itemIds.put ( handle, itemId );
+        if ( oldItemId != null && !oldItemId.equals ( itemId ) )
+        {
+            this.handles.remove ( oldItemId );
+        }
+    }
+
+    /**
+     * Get the item a data notification refers to
+     * <p>
+     * A notification carrying both the item id and a handle defines the
+     * handle for the following notifications.
+     * </p>
+     * 
+     * @param itemId
+     *            the item id of the notification, <code>null</code> if it
+     *            has none
+     * @param handle
+     *            the item handle of the notification, <code>0</code> if it
+     *            has none
+     * @return the item id or <code>null</code> if the notification cannot be
+     *         mapped to an item
+     */
+    public synchronized String resolve ( final String itemId, final int handle )
+    {
+        if ( handle == 0 )
+        {
+            return itemId;
+        }
+
+        if ( itemId != null )
+        {
+            define ( handle, itemId );
+            return itemId;
+        }
+
+        return getItemId ( handle );
+    }
+
+    /**
+     * Remove the handle of an item
+     */
+    public synchronized void remove ( final String itemId )
+    {
+        final Integer handle = this.handles.remove ( itemId );
+        if ( handle != null )
+        {
+            this.itemIds.remove ( handle );
+        }
+    }
+
+    public synchronized void clear ()
+    {
+        this.handles.clear ();
+        this.itemIds.clear ();
+    }
+
+    public synchronized int size ()
+    {
+        return this.handles.size ();
+    }
+}
@@ -19,15 +19,20 @@
 
 package org.openscada.da.net.handler;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.EnumSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import org.openscada.core.Variant;
 import org.openscada.core.data.SubscriptionState;
+import org.openscada.da.core.ItemChange;
 import org.openscada.da.data.IODirection;
 import org.openscada.net.base.data.IntegerValue;
 import org.openscada.net.base.data.ListValue;
+import org.openscada.net.base.data.LongValue;
 import org.openscada.net.base.data.MapValue;
 import org.openscada.net.base.data.Message;
 import org.openscada.net.base.data.StringValue;
@@ -41,11 +46,26 @@ public class Messages extends org.openscada.core.net.MessageHelper
 
     public final static int CC_UNSUBSCRIBE_ITEM = 0x00010011;
 
+    /**
+     * @since 1.1
+     */
+    public final static int CC_SUBSCRIBE_ITEMS = 0x00010012;
+
+    /**
+     * @since 1.1
+     */
+    public final static int CC_UNSUBSCRIBE_ITEMS = 0x00010013;
+
     public final static int CC_NOTIFY_DATA = 0x00010020;
 
     // public final static int CC_NOTIFY_ATTRIBUTES = 0x00010021; // unsupported
     public static final int CC_SUBSCRIPTION_CHANGE = 0x00010022;
 
+    /**
+     * @since 1.1
+     */
+    public static final int CC_NOTIFY_DATA_BULK = 0x00010023;
+
     public final static int CC_WRITE_OPERATION = 0x00010030;
 
     public final static int CC_WRITE_OPERATION_RESULT = 0x00010031;
@@ -66,6 +86,33 @@ public class Messages extends org.openscada.core.net.MessageHelper
 
     public final static int CC_BROWSER_UNSUBSCRIBE = 0x00010212;
 
+    /**
+     * Session property announced by servers supporting
+     * {@link #CC_SUBSCRIBE_ITEMS} and {@link #CC_UNSUBSCRIBE_ITEMS}
+     * 
+     * @since 1.1
+     */
+    public static final String PROP_FEATURE_BULK_SUBSCRIBE = "feature.da.bulkSubscribe";
+
+    /**
+     * Session property announced by servers which stamp data changes with
+     * sequence numbers and accept the last known sequence number in
+     * {@link #CC_SUBSCRIBE_ITEMS}. The value is the epoch of the sequence
+     * numbers, sequence numbers of different epochs cannot be compared.
+     * 
+     * @since 1.1
+     */
+    public static final String PROP_FEATURE_RESYNC = "feature.da.resync";
+
+    /**
+     * Session property requested by clients and announced by servers which
+     * identify items in data notifications by a numeric handle instead of
+     * the item id. See {@link ItemHandleTable}.
+     * 
+     * @since 1.1
+     */
+    public static final String PROP_FEATURE_ITEM_HANDLES = "feature.da.itemHandles";
+
     public static Message subscribeItem ( final String itemName )
     {
         final Message msg = new Message ( CC_SUBSCRIBE_ITEM );
@@ -80,23 +127,288 @@ public class Messages extends org.openscada.core.net.MessageHelper
         return msg;
     }
 
+    /**
+     * @since 1.1
+     */
+    public static Message subscribeItems ( final Collection<String> itemNames )
+    {
+        return subscribeItems ( itemNames, 0 );
+    }
+
+    /**
+     * Create a bulk subscribe message resuming from a known state
+     * 
+     * @param lastSequence
+     *            the last sequence number received from the server,
+     *            <code>0</code> to request the full state
+     * @since 1.1
+     */
+    public static Message subscribeItems ( final Collection<String> itemNames, final long lastSequence )
+    {
+        final Message msg = new Message ( CC_SUBSCRIBE_ITEMS );
+        msg.getValues ().put ( "item-ids", encodeItemList ( itemNames ) );
+        if ( lastSequence > 0 )
+        {
+            msg.getValues ().put ( "since", new LongValue ( lastSequence ) );
+        }
+        return msg;
+    }
+
+    /**
+     * Get the last known sequence number of a {@link #CC_SUBSCRIBE_ITEMS}
+     * message
+     * 
+     * @return the sequence number or <code>0</code> if the message does not
+     *         carry one
+     * @since 1.1
+     */
+    public static long parseSince ( final Message message )
+    {
+        return parseSequence ( message.getValues (), "since" );
+    }
+
+    /**
+     * Get the sequence number of a data change
+     * 
+     * @param values
+     *            the values of a {@link #CC_NOTIFY_DATA} message or an entry
+     *            of a {@link #CC_NOTIFY_DATA_BULK} message
+     * @return the sequence number or <code>0</code> if the change does not
+     *         carry one
+     * @since 1.1
+     */
+    public static long parseSequence ( final MapValue values )
+    {
+        return parseSequence ( values, "sequence" );
+    }
+
+    private static long parseSequence ( final MapValue values, final String key )
+    {
+        final Value value = values.get ( key );
+        if ( value instanceof LongValue )
+        {
+            return ( (LongValue)value ).getValue ();
+        }
+        return 0;
+    }
+
+    /**
+     * @since 1.1
+     */
+    public static Message unsubscribeItems ( final Collection<String> itemNames )
+    {
+        final Message msg = new Message ( CC_UNSUBSCRIBE_ITEMS );
+        msg.getValues ().put ( "item-ids", encodeItemList ( itemNames ) );
+        return msg;
+    }
+
+    private static ListValue encodeItemList ( final Collection<String> itemNames )
+    {
+        final ListValue items = new ListValue ( itemNames.size () );
+        for ( final String itemName : itemNames )
+        {
+            items.add ( new StringValue ( itemName ) );
+        }
+        return items;
+    }
+
+    /**
+     * Parse the item list of a {@link #CC_SUBSCRIBE_ITEMS} or
+     * {@link #CC_UNSUBSCRIBE_ITEMS} message
+     * 
+     * @since 1.1
+     */
+    public static List<String> parseItemList ( final Message message )
+    {
+        final Value value = message.getValues ().get ( "item-ids" );
+        if ( ! ( value instanceof ListValue ) )
+        {
+            return new ArrayList<String> ( 0 );
+        }
+
+        final List<String> result = new ArrayList<String> ( ( (ListValue)value ).getValues ().size () );
+        for ( final Value entry : ( (ListValue)value ).getValues () )
+        {
+            if ( entry instanceof StringValue )
+            {
+                result.add ( ( (StringValue)entry ).getValue () );
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Create one message carrying a list of data changes
+     * <p>
+     * Each entry of the list has the same layout as the values of a
+     * {@link #CC_NOTIFY_DATA} message.
+     * </p>
+     * 
+     * @since 1.1
+     */
+    public static Message notifyDataBulk ( final List<ItemChange> changes )
+    {
+        final Message msg = new Message ( CC_NOTIFY_DATA_BULK );
+
+        final ListValue items = new ListValue ( changes.size () );
+        for ( final ItemChange change : changes )
+        {
+            final MapValue entry = new MapValue ();
+            encodeData ( entry, change.getItemId (), change.getValue (), change.getAttributes (), change.isCache (), change.getSequence () );
+            items.add ( entry );
+        }
+        msg.getValues ().put ( "items", items );
+
+        return msg;
+    }
+
+    /**
+     * Create one message carrying a list of data changes using item handles
+     * <p>
+     * Items which have no handle yet get one assigned, their entry carries
+     * the item id as well. The caller must hold the lock of the handle table
+     * until the message is sent.
+     * </p>
+     * 
+     * @since 1.1
+     */
+    public static Message notifyDataBulk ( final List<ItemChange> changes, final ItemHandleTable handles )
+    {
+        final Message msg = new Message ( CC_NOTIFY_DATA_BULK );
+
+        final ListValue items = new ListValue ( changes.size () );
+        for ( final ItemChange change : changes )
+        {
+            final MapValue entry = new MapValue ();
+
+            int handle = handles.getHandle ( change.getItemId () );
+            if ( handle == 0 )
+            {
+                handle = handles.assign ( change.getItemId () );
+                entry.put ( "item-id", new StringValue ( change.getItemId () ) );
+            }
+            entry.put ( "item-handle", IntegerValue.valueOf ( handle ) );
+
+            encodeData ( entry, change.getValue (), change.getAttributes (), change.isCache (), change.getSequence (), true );
+            items.add ( entry );
+        }
+        msg.getValues ().put ( "items", items );
+
+        return msg;
+    }
+
+    /**
+     * Get the data entries of a {@link #CC_NOTIFY_DATA_BULK} message
+     * 
+     * @since 1.1
+     */
+    public static List<MapValue> parseNotifyDataBulk ( final Message message )
+    {
+        final Value value = message.getValues ().get ( "items" );
+        if ( ! ( value instanceof ListValue ) )
+        {
+            return new ArrayList<MapValue> ( 0 );
+        }
+
+        final List<MapValue> result = new ArrayList<MapValue> ( ( (ListValue)value ).getValues ().size () );
+        for ( final Value entry : ( (ListValue)value ).getValues () )
+        {
+            if ( entry instanceof MapValue )
+            {
+                result.add ( (MapValue)entry );
+            }
+        }
+        return result;
+    }
+
     public static Message notifyData ( final String itemName, final Variant value, final Map<String, Variant> attributes, final boolean cache )
+    {
+        return notifyData ( itemName, value, attributes, cache, 0 );
+    }
+
+    /**
+     * @param sequence
+     *            the sequence number of the change, <code>0</code> if the
+     *            change has no sequence number
+     * @since 1.1
+     */
+    public static Message notifyData ( final String itemName, final Variant value, final Map<String, Variant> attributes, final boolean cache, final long sequence )
     {
         final Message msg = new Message ( CC_NOTIFY_DATA );
 
-        msg.getValues ().put ( "item-id", new StringValue ( itemName ) );
+        encodeData ( msg.getValues (), itemName, value, attributes, cache, sequence );
+
+        return msg;
+    }
+
+    /**
+     * Create a data notification using an item handle
+     * <p>
+     * Empty attribute changes are omitted from the message.
+     * </p>
+     * 
+     * @param itemHandle
+     *            the handle of the item
+     * @param itemName
+     *            the item id if the message defines the handle,
+     *            <code>null</code> if the peer already knows the handle
+     * @since 1.1
+     */
+    public static Message notifyData ( final int itemHandle, final String itemName, final Variant value, final Map<String, Variant> attributes, final boolean cache, final long sequence )
+    {
+        final Message msg = new Message ( CC_NOTIFY_DATA );
+
+        if ( itemName != null )
+        {
+            msg.getValues ().put ( "item-id", new StringValue ( itemName ) );
+        }
+        msg.getValues ().put ( "item-handle", IntegerValue.valueOf ( itemHandle ) );
+
+        encodeData ( msg.getValues (), value, attributes, cache, sequence, true );
+
+        return msg;
+    }
+
+    /**
+     * Get the item handle of a data notification
+     * 
+     * @return the handle or <code>0</code> if the notification has none
+     * @since 1.1
+     */
+    public static int parseItemHandle ( final MapValue values )
+    {
+        final Value value = values.get ( "item-handle" );
+        if ( value instanceof IntegerValue )
+        {
+            return ( (IntegerValue)value ).getValue ();
+        }
+        return 0;
+    }
+
+    private static void encodeData ( final MapValue target, final String itemName, final Variant value, final Map<String, Variant> attributes, final boolean cache, final long sequence )
+    {
+        target.put ( "item-id", new StringValue ( itemName ) );
+        encodeData ( target, value, attributes, cache, sequence, false );
+    }
+
+    private static void encodeData ( final MapValue target, final Variant value, final Map<String, Variant> attributes, final boolean cache, final long sequence, final boolean compact )
+    {
+        if ( sequence > 0 )
+        {
+            target.put ( "sequence", new LongValue ( sequence ) );
+        }
 
         // flag if initial bit is set
         if ( cache )
         {
-            msg.getValues ().put ( "cache-read", VoidValue.INSTANCE );
+            target.put ( "cache-read", VoidValue.INSTANCE );
         }
 
         // encode message
         final Value messageValue = variantToValue ( value );
         if ( messageValue != null )
         {
-            msg.getValues ().put ( "value", messageValue );
+            target.put ( "value", messageValue );
         }
 
         // encode attributes
@@ -119,10 +431,15 @@ public class Messages extends org.openscada.core.net.MessageHelper
             }
         }
 
-        msg.getValues ().put ( "attributes-unset", unsetEntries );
-        msg.getValues ().put ( "attributes-set", setEntries );
-
-        return msg;
+        // older clients expect both entries to be present
+        if ( !compact || unsetEntries.size () > 0 )
+        {
+            target.put ( "attributes-unset", unsetEntries );
+        }
+        if ( !compact || setEntries.size () > 0 )
+        {
+            target.put ( "attributes-set", setEntries );
+        }
     }
 
     public static int encodeIO ( final Set<IODirection> io )
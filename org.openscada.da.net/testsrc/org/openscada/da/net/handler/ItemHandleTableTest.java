@@ -0,0 +1,219 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+
+package org.openscada.da.net.handler;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openscada.core.Variant;
+import org.openscada.da.core.ItemChange;
+import org.openscada.net.base.data.MapValue;
+import org.openscada.net.base.data.Message;
+import org.openscada.net.base.data.Value;
+
+public class ItemHandleTableTest
+{
+    /**
+     * Resolve a notification like the client does
+     */
+    private static String resolve ( final ItemHandleTable client, final MapValue values )
+    {
+        final Value itemId = values.get ( "item-id" );
+        return client.resolve ( itemId == null ? null : itemId.toString (), Messages.parseItemHandle ( values ) );
+    }
+
+    private static String resolve ( final ItemHandleTable client, final Message message )
+    {
+        return resolve ( client, message.getValues () );
+    }
+
+    @Test
+    public void testAssign ()
+    {
+        final ItemHandleTable table = new ItemHandleTable ();
+
+        final int a = table.assign ( "a" );
+        final int b = table.assign ( "b" );
+
+        Assert.assertTrue ( a > 0 );
+        Assert.assertTrue ( b > 0 );
+        Assert.assertFalse ( a == b );
+        Assert.assertEquals ( a, table.getHandle ( "a" ) );
+        Assert.assertEquals ( "b", table.getItemId ( b ) );
+        Assert.assertEquals ( 0, table.getHandle ( "c" ) );
+        Assert.assertNull ( table.getItemId ( 42 ) );
+        Assert.assertEquals ( 2, table.size () );
+    }
+
+    @Test
+    public void testRemove ()
+    {
+        final ItemHandleTable table = new ItemHandleTable ();
+
+        final int a = table.assign ( "a" );
+        table.remove ( "a" );
+
+        Assert.assertEquals ( 0, table.getHandle ( "a" ) );
+        Assert.assertNull ( table.getItemId ( a ) );
+        Assert.assertEquals ( 0, table.size () );
+
+        // a removed handle is not assigned again right away
+        Assert.assertFalse ( a == table.assign ( "a" ) );
+    }
+
+    @Test
+    public void testWrapSkipsLiveHandles ()
+    {
+        final ItemHandleTable table = new ItemHandleTable ( Integer.MAX_VALUE - 1 );
+
+        Assert.assertEquals ( Integer.MAX_VALUE - 1, table.assign ( "a" ) );
+        Assert.assertEquals ( Integer.MAX_VALUE, table.assign ( "b" ) );
+
+        // wrapped around, handle 1 is still in use
+        table.define ( 1, "c" );
+        table.define ( 2, "d" );
+        table.remove ( "d" );
+
+        Assert.assertEquals ( 2, table.assign ( "e" ) );
+        Assert.assertEquals ( "c", table.getItemId ( 1 ) );
+        Assert.assertEquals ( "e", table.getItemId ( 2 ) );
+    }
+
+    @Test
+    public void testRedefine ()
+    {
+        final ItemHandleTable table = new ItemHandleTable ();
+
+        table.define ( 1, "a" );
+        table.define ( 2, "a" );
+
+        Assert.assertNull ( table.getItemId ( 1 ) );
+        Assert.assertEquals ( 2, table.getHandle ( "a" ) );
+
+        // the handle moves to another item
+        table.define ( 2, "b" );
+
+        Assert.assertEquals ( 0, table.getHandle ( "a" ) );
+        Assert.assertEquals ( "b", table.getItemId ( 2 ) );
+        Assert.assertEquals ( 1, table.size () );
+    }
+
+    @Test
+    public void testResolve ()
+    {
+        final ItemHandleTable table = new ItemHandleTable ();
+
+        // notifications without handle
+        Assert.assertEquals ( "a", table.resolve ( "a", 0 ) );
+        Assert.assertNull ( table.resolve ( null, 0 ) );
+
+        // unknown handle
+        Assert.assertNull ( table.resolve ( null, 5 ) );
+
+        // defined by the first notification, used by the following ones
+        Assert.assertEquals ( "a", table.resolve ( "a", 5 ) );
+        Assert.assertEquals ( "a", table.resolve ( null, 5 ) );
+    }
+
+    @Test
+    public void testNotifyData ()
+    {
+        final ItemHandleTable server = new ItemHandleTable ();
+        final ItemHandleTable client = new ItemHandleTable ();
+
+        // the first notification defines the handle
+        final int handle = server.assign ( "a" );
+        final Message first = Messages.notifyData ( handle, "a", Variant.valueOf ( 1 ), null, false, 1 );
+        Assert.assertEquals ( "a", resolve ( client, first ) );
+        Assert.assertEquals ( handle, client.getHandle ( "a" ) );
+
+        // the following ones only carry the handle
+        final Message second = Messages.notifyData ( server.getHandle ( "a" ), null, Variant.valueOf ( 2 ), null, false, 2 );
+        Assert.assertFalse ( second.getValues ().containsKey ( "item-id" ) );
+        Assert.assertEquals ( "a", resolve ( client, second ) );
+    }
+
+    @Test
+    public void testNotifyDataBulk ()
+    {
+        final ItemHandleTable server = new ItemHandleTable ();
+        final ItemHandleTable client = new ItemHandleTable ();
+
+        final List<ItemChange> changes = Arrays.asList ( new ItemChange ( "a", Variant.valueOf ( 1 ), null, false ), new ItemChange ( "b", Variant.valueOf ( 2 ), null, false ) );
+
+        // defining the handles
+        final List<MapValue> first = Messages.parseNotifyDataBulk ( Messages.notifyDataBulk ( changes, server ) );
+        Assert.assertEquals ( 2, first.size () );
+        Assert.assertTrue ( first.get ( 0 ).containsKey ( "item-id" ) );
+        Assert.assertEquals ( "a", resolve ( client, first.get ( 0 ) ) );
+        Assert.assertEquals ( "b", resolve ( client, first.get ( 1 ) ) );
+
+        // reusing the handles
+        final List<MapValue> second = Messages.parseNotifyDataBulk ( Messages.notifyDataBulk ( changes, server ) );
+        Assert.assertFalse ( second.get ( 0 ).containsKey ( "item-id" ) );
+        Assert.assertFalse ( second.get ( 1 ).containsKey ( "item-id" ) );
+        Assert.assertEquals ( "a", resolve ( client, second.get ( 0 ) ) );
+        Assert.assertEquals ( "b", resolve ( client, second.get ( 1 ) ) );
+    }
+
+    @Test
+    public void testDisconnected ()
+    {
+        final ItemHandleTable server = new ItemHandleTable ();
+        final ItemHandleTable client = new ItemHandleTable ();
+
+        final int handle = server.assign ( "a" );
+        resolve ( client, Messages.notifyData ( handle, "a", Variant.valueOf ( 1 ), null, false, 0 ) );
+
+        // the server drops the handle before sending DISCONNECTED, the client when receiving it
+        server.remove ( "a" );
+        client.remove ( "a" );
+        Assert.assertNull ( client.getItemId ( handle ) );
+
+        // subscribing again defines a new handle
+        Assert.assertEquals ( 0, server.getHandle ( "a" ) );
+        final int newHandle = server.assign ( "a" );
+        Assert.assertEquals ( "a", resolve ( client, Messages.notifyData ( newHandle, "a", Variant.valueOf ( 2 ), null, false, 0 ) ) );
+        Assert.assertEquals ( "a", resolve ( client, Messages.notifyData ( newHandle, null, Variant.valueOf ( 3 ), null, false, 0 ) ) );
+
+        // the old handle stays unknown
+        Assert.assertNull ( resolve ( client, Messages.notifyData ( handle, null, Variant.valueOf ( 4 ), null, false, 0 ) ) );
+    }
+
+    @Test
+    public void testReconnect ()
+    {
+        final ItemHandleTable client = new ItemHandleTable ();
+        resolve ( client, Messages.notifyData ( 1, "a", Variant.valueOf ( 1 ), null, false, 0 ) );
+
+        // handles are only valid within one session
+        client.clear ();
+
+        Assert.assertEquals ( 0, client.size () );
+        Assert.assertNull ( resolve ( client, Messages.notifyData ( 1, null, Variant.valueOf ( 2 ), null, false, 0 ) ) );
+
+        // the new session defines the handles again
+        Assert.assertEquals ( "b", resolve ( client, Messages.notifyData ( 1, "b", Variant.valueOf ( 3 ), null, false, 0 ) ) );
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.da.net.handler;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openscada.core.Variant;
+import org.openscada.core.net.MessageHelper;
+import org.openscada.da.core.ItemChange;
+import org.openscada.net.base.data.ListValue;
+import org.openscada.net.base.data.MapValue;
+import org.openscada.net.base.data.Message;
+import org.openscada.net.base.data.StringValue;
+
+public class MessagesTest
+{
+    @Test
+    public void testSubscribeItems ()
+    {
+        final Message message = Messages.subscribeItems ( Arrays.asList ( "a", "b", "c" ) );
+
+        Assert.assertEquals ( Messages.CC_SUBSCRIBE_ITEMS, message.getCommandCode () );
+        Assert.assertEquals ( Arrays.asList ( "a", "b", "c" ), Messages.parseItemList ( message ) );
+        Assert.assertFalse ( message.getValues ().containsKey ( "since" ) );
+        Assert.assertEquals ( 0, Messages.parseSince ( message ) );
+    }
+
+    @Test
+    public void testSubscribeItemsSince ()
+    {
+        final Message message = Messages.subscribeItems ( Arrays.asList ( "a" ), 42 );
+
+        Assert.assertEquals ( Messages.CC_SUBSCRIBE_ITEMS, message.getCommandCode () );
+        Assert.assertEquals ( Arrays.asList ( "a" ), Messages.parseItemList ( message ) );
+        Assert.assertEquals ( 42, Messages.parseSince ( message ) );
+    }
+
+    @Test
+    public void testUnsubscribeItems ()
+    {
+        final Message message = Messages.unsubscribeItems ( Arrays.asList ( "a", "b" ) );
+
+        Assert.assertEquals ( Messages.CC_UNSUBSCRIBE_ITEMS, message.getCommandCode () );
+        Assert.assertEquals ( Arrays.asList ( "a", "b" ), Messages.parseItemList ( message ) );
+    }
+
+    @Test
+    public void testEmptyItemList ()
+    {
+        Assert.assertTrue ( Messages.parseItemList ( Messages.subscribeItems ( Collections.<String> emptyList () ) ).isEmpty () );
+
+        // a message without list, e.g. from a broken peer
+        Assert.assertTrue ( Messages.parseItemList ( new Message ( Messages.CC_SUBSCRIBE_ITEMS ) ).isEmpty () );
+    }
+
+    @Test
+    public void testItemListSkipsInvalidEntries ()
+    {
+        final ListValue items = new ListValue ();
+        items.add ( new StringValue ( "a" ) );
+        items.add ( new MapValue () );
+        items.add ( new StringValue ( "b" ) );
+
+        final Message message = new Message ( Messages.CC_UNSUBSCRIBE_ITEMS );
+        message.getValues ().put ( "item-ids", items );
+
+        Assert.assertEquals ( Arrays.asList ( "a", "b" ), Messages.parseItemList ( message ) );
+    }
+
+    @Test
+    public void testNotifyDataBulk ()
+    {
+        final Map<String, Variant> attributes = new HashMap<String, Variant> ();
+        attributes.put ( "set", Variant.valueOf ( "x" ) );
+        attributes.put ( "unset", null );
+
+        final List<ItemChange> changes = Arrays.asList ( new ItemChange ( "a", Variant.valueOf ( 1 ), null, true, 10 ), new ItemChange ( "b", null, attributes, false ) );
+
+        final Message message = Messages.notifyDataBulk ( changes );
+        Assert.assertEquals ( Messages.CC_NOTIFY_DATA_BULK, message.getCommandCode () );
+
+        final List<MapValue> entries = Messages.parseNotifyDataBulk ( message );
+        Assert.assertEquals ( 2, entries.size () );
+
+        final MapValue a = entries.get ( 0 );
+        Assert.assertEquals ( "a", a.get ( "item-id" ).toString () );
+        Assert.assertEquals ( Variant.valueOf ( 1 ), MessageHelper.valueToVariant ( a.get ( "value" ), null ) );
+        Assert.assertTrue ( a.containsKey ( "cache-read" ) );
+        Assert.assertEquals ( 10, Messages.parseSequence ( a ) );
+        Assert.assertEquals ( 0, Messages.parseItemHandle ( a ) );
+
+        final MapValue b = entries.get ( 1 );
+        Assert.assertEquals ( "b", b.get ( "item-id" ).toString () );
+        Assert.assertFalse ( b.containsKey ( "value" ) );
+        Assert.assertFalse ( b.containsKey ( "cache-read" ) );
+        Assert.assertEquals ( 0, Messages.parseSequence ( b ) );
+
+        final MapValue set = (MapValue)b.get ( "attributes-set" );
+        Assert.assertEquals ( Variant.valueOf ( "x" ), MessageHelper.valueToVariant ( set.get ( "set" ), null ) );
+        final ListValue unset = (ListValue)b.get ( "attributes-unset" );
+        Assert.assertEquals ( 1, unset.size () );
+        Assert.assertEquals ( "unset", unset.getValues ().get ( 0 ).toString () );
+    }
+
+    @Test
+    public void testNotifyDataBulkEmpty ()
+    {
+        Assert.assertTrue ( Messages.parseNotifyDataBulk ( Messages.notifyDataBulk ( Collections.<ItemChange> emptyList () ) ).isEmpty () );
+        Assert.assertTrue ( Messages.parseNotifyDataBulk ( new Message ( Messages.CC_NOTIFY_DATA_BULK ) ).isEmpty () );
+    }
+
+    @Test
+    public void testBulkMatchesSingle ()
+    {
+        final Map<String, Variant> attributes = Collections.singletonMap ( "foo", Variant.valueOf ( true ) );
+
+        final Message single = Messages.notifyData ( "a", Variant.valueOf ( 1.5 ), attributes, false, 7 );
+        final MapValue bulk = Messages.parseNotifyDataBulk ( Messages.notifyDataBulk ( Arrays.asList ( new ItemChange ( "a", Variant.valueOf ( 1.5 ), attributes, false, 7 ) ) ) ).get ( 0 );
+
+        // each bulk entry has the layout of a single notification
+        Assert.assertEquals ( single.getValues ().getValues ().keySet (), bulk.getValues ().keySet () );
+        Assert.assertEquals ( Messages.parseSequence ( single.getValues () ), Messages.parseSequence ( bulk ) );
+        Assert.assertEquals ( MessageHelper.valueToVariant ( single.getValues ().get ( "value" ), null ), MessageHelper.valueToVariant ( bulk.get ( "value" ), null ) );
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.da.ngp.perf.test;
+
+import org.eclipse.equinox.app.IApplication;
+import org.eclipse.equinox.app.IApplicationContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Run the NGP benchmark and print the results
+ * <p>
+ * The benchmark is configured using the system properties
+ * <code>org.openscada.da.ngp.perf.test.items</code> (default 100),
+ * <code>org.openscada.da.ngp.perf.test.iterations</code> (default 10000)
+ * and <code>org.openscada.da.ngp.perf.test.runs</code> (default 3). The
+ * first run warms up the JIT.
+ * </p>
+ */
+public class Application implements IApplication
+{
+    private final static Logger logger = LoggerFactory.getLogger ( Application.class );
+
+    @Override
+    public Object start ( final IApplicationContext context ) throws Exception
+    {
+        final int items = Integer.getInteger ( "org.openscada.da.ngp.perf.test.items", 100 );
+        final int iterations = Integer.getInteger ( "org.openscada.da.ngp.perf.test.iterations", 10000 );
+        final int runs = Integer.getInteger ( "org.openscada.da.ngp.perf.test.runs", 3 );
+
+        for ( int i = 0; i < runs; i++ )
+        {
+            logger.info ( "Run {} of {} - items: {}, iterations: {}", new Object[] { i + 1, runs, items, iterations } );
+
+            final Benchmark benchmark = new Benchmark ( items, iterations );
+            benchmark.run ();
+
+            System.out.println ( String.format ( "Run %s:", i + 1 ) );
+            for ( final LatencyRecorder recorder : benchmark.getResults () )
+            {
+                System.out.println ( "  " + recorder );
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public void stop ()
+    {
+    }
+}
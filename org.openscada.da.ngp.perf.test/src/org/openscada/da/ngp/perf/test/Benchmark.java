@@ -0,0 +1,321 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.da.ngp.perf.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.openscada.core.ConnectionInformation;
+import org.openscada.core.Variant;
+import org.openscada.core.client.Connection;
+import org.openscada.core.client.ConnectionState;
+import org.openscada.core.client.ConnectionStateListener;
+import org.openscada.core.data.SubscriptionState;
+import org.openscada.da.client.ItemUpdateListener;
+import org.openscada.da.client.ngp.ConnectionImpl;
+import org.openscada.da.core.Location;
+import org.openscada.da.server.ngp.Exporter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the NGP protocol stack of server and client over the loopback
+ * interface and measures the common operations
+ * <p>
+ * Each step records the latency of every single operation and the number of
+ * operations per second:
+ * </p>
+ * <dl>
+ * <dt>hello</dt>
+ * <dd>Connect, create the session and disconnect</dd>
+ * <dt>subscribe</dt>
+ * <dd>Subscribe an item and wait for the initial value</dd>
+ * <dt>data</dt>
+ * <dd>Update an item on the server and wait for the client to receive it</dd>
+ * <dt>browse</dt>
+ * <dd>Browse the data folder</dd>
+ * <dt>write</dt>
+ * <dd>Write a value and wait for the result</dd>
+ * </dl>
+ */
+public class Benchmark
+{
+    private final static Logger logger = LoggerFactory.getLogger ( Benchmark.class );
+
+    private static final long TIMEOUT = Long.getLong ( "org.openscada.da.ngp.perf.test.timeout", 60 * 1000 );
+
+    private final int numberOfItems;
+
+    private final int iterations;
+
+    private final List<LatencyRecorder> results = new ArrayList<LatencyRecorder> ();
+
+    private BenchmarkHive hive;
+
+    private Exporter exporter;
+
+    private ConnectionInformation connectionInformation;
+
+    /**
+     * Create a new benchmark
+     * 
+     * @param numberOfItems
+     *            the number of items to subscribe and update
+     * @param iterations
+     *            the number of operations of the hello, data, browse and
+     *            write steps
+     */
+    public Benchmark ( final int numberOfItems, final int iterations )
+    {
+        this.numberOfItems = numberOfItems;
+        this.iterations = iterations;
+    }
+
+    public List<LatencyRecorder> getResults ()
+    {
+        return this.results;
+    }
+
+    public void run () throws Exception
+    {
+        startServer ();
+        try
+        {
+            runHello ( Math.max ( 1, this.iterations / 100 ) );
+
+            final ConnectionImpl connection = connect ();
+            try
+            {
+                runSubscribe ( connection );
+                runData ( connection );
+                runBrowse ( connection );
+                runWrite ( connection );
+            }
+            finally
+            {
+                connection.dispose ();
+            }
+        }
+        finally
+        {
+            stopServer ();
+        }
+    }
+
+    private void startServer () throws Exception
+    {
+        this.hive = new BenchmarkHive ( this.numberOfItems );
+        this.hive.start ();
+
+        final String host = System.getProperty ( "org.openscada.da.ngp.perf.test.host", "127.0.0.1" );
+        this.exporter = new Exporter ( this.hive, ConnectionInformation.fromURI ( "da:ngp://" + host + ":0" ) );
+        this.exporter.start ();
+
+        // we bound to one address only
+        this.connectionInformation = this.exporter.getStartedConnectionInformations ().iterator ().next ();
+        logger.info ( "Server started: {}", this.connectionInformation );
+    }
+
+    private void stopServer () throws Exception
+    {
+        if ( this.exporter != null )
+        {
+            this.exporter.stop ();
+            this.exporter = null;
+        }
+        if ( this.hive != null )
+        {
+            this.hive.stop ();
+            this.hive = null;
+        }
+    }
+
+    private ConnectionImpl connect () throws Exception
+    {
+        final ConnectionImpl connection = new ConnectionImpl ( this.connectionInformation );
+
+        final CountDownLatch bound = new CountDownLatch ( 1 );
+        connection.addConnectionStateListener ( new ConnectionStateListener () {
+
+            @Override
+            public void stateChange ( final Connection connection, final ConnectionState state, final Throwable error )
+            {
+                if ( state == ConnectionState.BOUND )
+                {
+                    bound.countDown ();
+                }
+            }
+        } );
+        connection.connect ();
+
+        if ( !bound.await ( TIMEOUT, TimeUnit.MILLISECONDS ) )
+        {
+            connection.dispose ();
+            throw new IllegalStateException ( "Connection did not get bound: " + this.connectionInformation );
+        }
+        return connection;
+    }
+
+    private LatencyRecorder createRecorder ( final String name, final int expectedSamples )
+    {
+        final LatencyRecorder recorder = new LatencyRecorder ( name, expectedSamples );
+        this.results.add ( recorder );
+        return recorder;
+    }
+
+    private void runHello ( final int count ) throws Exception
+    {
+        final LatencyRecorder recorder = createRecorder ( "hello", count );
+
+        recorder.start ();
+        for ( int i = 0; i < count; i++ )
+        {
+            final long start = System.nanoTime ();
+            connect ().dispose ();
+            recorder.record ( System.nanoTime () - start );
+        }
+        recorder.stop ();
+    }
+
+    private void runSubscribe ( final ConnectionImpl connection ) throws Exception
+    {
+        final LatencyRecorder recorder = createRecorder ( "subscribe", this.numberOfItems );
+
+        final AtomicLongArray starts = new AtomicLongArray ( this.numberOfItems );
+        final CountDownLatch latch = new CountDownLatch ( this.numberOfItems );
+
+        for ( int i = 0; i < this.numberOfItems; i++ )
+        {
+            final int index = i;
+            connection.setItemUpdateListener ( BenchmarkHive.makeItemId ( i ), new ItemUpdateListener () {
+
+                @Override
+                public void notifySubscriptionChange ( final SubscriptionState subscriptionState, final Throwable subscriptionError )
+                {
+                }
+
+                @Override
+                public void notifyDataChange ( final Variant value, final Map<String, Variant> attributes, final boolean cache )
+                {
+                    final long start = starts.getAndSet ( index, 0 );
+                    if ( start != 0 )
+                    {
+                        recorder.record ( System.nanoTime () - start );
+                        latch.countDown ();
+                    }
+                }
+            } );
+        }
+
+        recorder.start ();
+        for ( int i = 0; i < this.numberOfItems; i++ )
+        {
+            starts.set ( i, System.nanoTime () );
+            connection.subscribeItem ( BenchmarkHive.makeItemId ( i ) );
+        }
+        await ( latch, "subscribe" );
+        recorder.stop ();
+    }
+
+    private void runData ( final ConnectionImpl connection ) throws Exception
+    {
+        final LatencyRecorder recorder = createRecorder ( "data", this.iterations );
+
+        final CountDownLatch latch = new CountDownLatch ( this.iterations );
+
+        for ( int i = 0; i < this.numberOfItems; i++ )
+        {
+            connection.setItemUpdateListener ( BenchmarkHive.makeItemId ( i ), new ItemUpdateListener () {
+
+                @Override
+                public void notifySubscriptionChange ( final SubscriptionState subscriptionState, final Throwable subscriptionError )
+                {
+                }
+
+                @Override
+                public void notifyDataChange ( final Variant value, final Map<String, Variant> attributes, final boolean cache )
+                {
+                    if ( value == null || cache )
+                    {
+                        return;
+                    }
+                    // the value is the time the update was made, client and server share the clock
+                    final Long sent = value.asLong ( null );
+                    if ( sent != null && sent != 0 )
+                    {
+                        recorder.record ( System.nanoTime () - sent );
+                        latch.countDown ();
+                    }
+                }
+            } );
+        }
+
+        recorder.start ();
+        for ( int i = 0; i < this.iterations; i++ )
+        {
+            this.hive.update ( i % this.numberOfItems, Variant.valueOf ( System.nanoTime () ) );
+        }
+        await ( latch, "data" );
+        recorder.stop ();
+    }
+
+    private void runBrowse ( final ConnectionImpl connection ) throws Exception
+    {
+        final LatencyRecorder recorder = createRecorder ( "browse", this.iterations );
+
+        final Location location = new Location ( BenchmarkHive.DATA_FOLDER );
+
+        recorder.start ();
+        for ( int i = 0; i < this.iterations; i++ )
+        {
+            final long start = System.nanoTime ();
+            connection.browse ( location ).get ( TIMEOUT, TimeUnit.MILLISECONDS );
+            recorder.record ( System.nanoTime () - start );
+        }
+        recorder.stop ();
+    }
+
+    private void runWrite ( final ConnectionImpl connection ) throws Exception
+    {
+        final LatencyRecorder recorder = createRecorder ( "write", this.iterations );
+
+        recorder.start ();
+        for ( int i = 0; i < this.iterations; i++ )
+        {
+            final long start = System.nanoTime ();
+            connection.startWrite ( BenchmarkHive.WRITE_ITEM, Variant.valueOf ( i ), null, null ).get ( TIMEOUT, TimeUnit.MILLISECONDS );
+            recorder.record ( System.nanoTime () - start );
+        }
+        recorder.stop ();
+    }
+
+    private static void await ( final CountDownLatch latch, final String step ) throws InterruptedException
+    {
+        if ( !latch.await ( TIMEOUT, TimeUnit.MILLISECONDS ) )
+        {
+            logger.warn ( "Step '{}' timed out - {} outstanding", step, latch.getCount () );
+        }
+    }
+}
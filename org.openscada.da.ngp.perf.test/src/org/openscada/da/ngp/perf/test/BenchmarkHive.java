@@ -0,0 +1,107 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.da.ngp.perf.test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.openscada.core.Variant;
+import org.openscada.da.server.browser.common.FolderCommon;
+import org.openscada.da.server.common.AttributeMode;
+import org.openscada.da.server.common.DataItemInputCommon;
+import org.openscada.da.server.common.MemoryDataItem;
+import org.openscada.da.server.common.impl.HiveCommon;
+
+/**
+ * The hive serving the benchmark
+ * <p>
+ * Provides one writable item ({@link #WRITE_ITEM}) and a number of input
+ * items in the folder {@link #DATA_FOLDER}, which get updated by the
+ * benchmark.
+ * </p>
+ */
+public class BenchmarkHive extends HiveCommon
+{
+    public static final String WRITE_ITEM = "bench.write";
+
+    public static final String DATA_FOLDER = "data";
+
+    private final FolderCommon rootFolder;
+
+    private final List<DataItemInputCommon> dataItems;
+
+    public BenchmarkHive ( final int numberOfItems )
+    {
+        this.rootFolder = new FolderCommon ();
+        setRootFolder ( this.rootFolder );
+
+        this.dataItems = new ArrayList<DataItemInputCommon> ( numberOfItems );
+        for ( int i = 0; i < numberOfItems; i++ )
+        {
+            this.dataItems.add ( new DataItemInputCommon ( makeItemId ( i ) ) );
+        }
+    }
+
+    public static String makeItemId ( final int index )
+    {
+        return String.format ( "bench.data.%s", index );
+    }
+
+    @Override
+    public String getHiveId ()
+    {
+        return "org.openscada.da.ngp.perf.test";
+    }
+
+    @Override
+    public void start () throws Exception
+    {
+        super.start ();
+
+        final MemoryDataItem writeItem = new MemoryDataItem ( WRITE_ITEM );
+        registerItem ( writeItem );
+        this.rootFolder.add ( WRITE_ITEM, writeItem, Collections.<String, Variant> emptyMap () );
+
+        final FolderCommon dataFolder = new FolderCommon ();
+        this.rootFolder.add ( DATA_FOLDER, dataFolder, Collections.<String, Variant> emptyMap () );
+
+        for ( final DataItemInputCommon item : this.dataItems )
+        {
+            item.updateData ( Variant.valueOf ( 0L ), Collections.<String, Variant> emptyMap (), AttributeMode.SET );
+            registerItem ( item );
+            dataFolder.add ( item.getInformation ().getName (), item, Collections.<String, Variant> emptyMap () );
+        }
+    }
+
+    /**
+     * Update an input item
+     * 
+     * @param index
+     *            the index of the item
+     * @param value
+     *            the new value
+     */
+    public void update ( final int index, final Variant value )
+    {
+        this.dataItems.get ( index ).updateData ( value, Collections.<String, Variant> emptyMap (), AttributeMode.UPDATE );
+    }
+}
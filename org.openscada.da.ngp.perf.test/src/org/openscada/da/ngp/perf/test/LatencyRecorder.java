@@ -0,0 +1,124 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.da.ngp.perf.test;
+
+import java.util.Arrays;
+
+/**
+ * Records latencies of one benchmark step
+ * <p>
+ * All samples are kept, so that exact percentiles can be calculated. The
+ * throughput is calculated from the number of samples and the time between
+ * {@link #start()} and {@link #stop()}.
+ * </p>
+ */
+public class LatencyRecorder
+{
+    private final String name;
+
+    private long[] samples;
+
+    private int count;
+
+    private long start;
+
+    private long duration;
+
+    public LatencyRecorder ( final String name, final int expectedSamples )
+    {
+        this.name = name;
+        this.samples = new long[Math.max ( 16, expectedSamples )];
+    }
+
+    public String getName ()
+    {
+        return this.name;
+    }
+
+    public synchronized void start ()
+    {
+        this.start = System.nanoTime ();
+    }
+
+    public synchronized void stop ()
+    {
+        this.duration = System.nanoTime () - this.start;
+    }
+
+    /**
+     * Record one sample
+     * 
+     * @param nanos
+     *            the latency in nanoseconds
+     */
+    public synchronized void record ( final long nanos )
+    {
+        if ( this.count == this.samples.length )
+        {
+            this.samples = Arrays.copyOf ( this.samples, this.samples.length * 2 );
+        }
+        this.samples[this.count++] = nanos;
+    }
+
+    public synchronized int getCount ()
+    {
+        return this.count;
+    }
+
+    /**
+     * @return the number of samples per second
+     */
+    public synchronized double getRate ()
+    {
+        if ( this.duration <= 0 )
+        {
+            return 0.0;
+        }
+        return this.count * 1000000000.0 / this.duration;
+    }
+
+    /**
+     * Get a percentile of the recorded latencies
+     * 
+     * @param percentile
+     *            the percentile, from 0 to 100
+     * @return the latency in nanoseconds, 0 if nothing was recorded
+     */
+    public synchronized long getPercentile ( final double percentile )
+    {
+        if ( this.count == 0 )
+        {
+            return 0;
+        }
+
+        final long[] sorted = Arrays.copyOf ( this.samples, this.count );
+        Arrays.sort ( sorted );
+
+        final int index = (int)Math.ceil ( percentile / 100.0 * sorted.length ) - 1;
+        return sorted[Math.max ( 0, Math.min ( sorted.length - 1, index ) )];
+    }
+
+    @Override
+    public String toString ()
+    {
+        return String.format ( "%-12s %8d samples %12.1f msg/s   p50: %8.1f us   p90: %8.1f us   p99: %8.1f us   max: %8.1f us", this.name, getCount (), getRate (), getPercentile ( 50 ) / 1000.0, getPercentile ( 90 ) / 1000.0, getPercentile ( 99 ) / 1000.0, getPercentile ( 100 ) / 1000.0 );
+    }
+}
@@ -23,7 +23,8 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -38,14 +39,37 @@ import org.openscada.da.server.common.configuration.ConfigurableFolder;
 
 /**
  * A common folder implementation which can be used to easily implement folders.
+ * <p>
+ * Entries are additionally indexed by item id and folder instance so that
+ * finding or removing an entry does not require a scan over all entries. The
+ * initial content sent to a new subscriber is split into chunks of
+ * {@link #LIST_CHUNK_SIZE} entries.
+ * </p>
  * 
  * @author Jens Reimann
  */
 public class FolderCommon implements Folder, ConfigurableFolder
 {
+    /**
+     * The maximum number of entries sent to a new subscriber in one change
+     * notification
+     * 
+     * @since 1.1
+     */
+    public static final int LIST_CHUNK_SIZE = Integer.getInteger ( "org.openscada.da.server.browser.common.listChunkSize", 1000 );
 
     private final Map<String, Entry> entryMap = new HashMap<String, Entry> ();
 
+    /**
+     * item id to entry names
+     */
+    private final Map<String, Set<String>> itemIndex = new HashMap<String, Set<String>> ();
+
+    /**
+     * folder instance to entry name
+     */
+    private final Map<Folder, String> folderIndex = new IdentityHashMap<Folder, String> ();
+
     private final Map<Object, FolderListener> listeners = new HashMap<Object, FolderListener> ();
 
     @Override
@@ -85,6 +109,52 @@ public class FolderCommon implements Folder, ConfigurableFolder
 
     }
 
+    private void putEntry ( final String name, final Entry entry )
+    {
+        this.entryMap.put ( name, entry );
+
+        if ( entry instanceof FolderEntryCommon )
+        {
+            this.folderIndex.put ( ( (FolderEntryCommon)entry ).getFolder (), name );
+        }
+        else if ( entry instanceof DataItemEntryCommon )
+        {
+            final String itemId = ( (DataItemEntryCommon)entry ).getId ();
+            Set<String> names = this.itemIndex.get ( itemId );
+            if ( names == null )
+            {
+                names = new LinkedHashSet<String> ( 1 );
+                this.itemIndex.put ( itemId, names );
+            }
+            names.add ( name );
+        }
+    }
+
+    private Entry removeEntry ( final String name )
+    {
+        final Entry entry = this.entryMap.remove ( name );
+
+        if ( entry instanceof FolderEntryCommon )
+        {
+            this.folderIndex.remove ( ( (FolderEntryCommon)entry ).getFolder () );
+        }
+        else if ( entry instanceof DataItemEntryCommon )
+        {
+            final String itemId = ( (DataItemEntryCommon)entry ).getId ();
+            final Set<String> names = this.itemIndex.get ( itemId );
+            if ( names != null )
+            {
+                names.remove ( name );
+                if ( names.isEmpty () )
+                {
+                    this.itemIndex.remove ( itemId );
+                }
+            }
+        }
+
+        return entry;
+    }
+
     /**
      * Bulk add items
      * 
@@ -96,7 +166,31 @@ public class FolderCommon implements Folder, ConfigurableFolder
      *            registered
      * @return number of items added
      */
-    public synchronized int add ( final Map<String, Folder> folders, final Map<String, DataItemInformation> items )
+    public int add ( final Map<String, Folder> folders, final Map<String, DataItemInformation> items )
+    {
+        return add ( folders, items, null );
+    }
+
+    /**
+     * Bulk add items with their browser attributes
+     * <p>
+     * All entries are added and indexed while holding the lock once, and
+     * listeners are notified once.
+     * </p>
+     * 
+     * @param folders
+     *            folders to register or <code>null</code> if no folders should
+     *            be registered
+     * @param items
+     *            items to register or <code>null</code> if no item should be
+     *            registered
+     * @param itemAttributes
+     *            the browser attributes of the items, by entry name, may be
+     *            <code>null</code>
+     * @return number of items added
+     * @since 1.1
+     */
+    public synchronized int add ( final Map<String, Folder> folders, final Map<String, DataItemInformation> items, final Map<String, Map<String, Variant>> itemAttributes )
     {
         int size = 0;
         if ( folders != null )
@@ -120,7 +214,7 @@ public class FolderCommon implements Folder, ConfigurableFolder
                 if ( !this.entryMap.containsKey ( name ) )
                 {
                     final Entry entry = new FolderEntryCommon ( name, folder, null );
-                    this.entryMap.put ( name, entry );
+                    putEntry ( name, entry );
 
                     folder.added ();
                     entries.add ( entry );
@@ -137,8 +231,8 @@ public class FolderCommon implements Folder, ConfigurableFolder
                 final DataItemInformation itemInformation = itemEntry.getValue ();
                 if ( !this.entryMap.containsKey ( name ) )
                 {
-                    final Entry entry = new DataItemEntryCommon ( name, itemInformation, null );
-                    this.entryMap.put ( name, entry );
+                    final Entry entry = new DataItemEntryCommon ( name, itemInformation, itemAttributes == null ? null : itemAttributes.get ( name ) );
+                    putEntry ( name, entry );
                     entries.add ( entry );
                 }
             }
@@ -162,7 +256,7 @@ public class FolderCommon implements Folder, ConfigurableFolder
         if ( !this.entryMap.containsKey ( name ) )
         {
             final Entry entry = new FolderEntryCommon ( name, folder, attributes );
-            this.entryMap.put ( name, entry );
+            putEntry ( name, entry );
             notifyAdd ( entry );
             folder.added ();
             return true;
@@ -191,7 +285,7 @@ public class FolderCommon implements Folder, ConfigurableFolder
             if ( !this.entryMap.containsKey ( name ) )
             {
                 final Entry entry = new DataItemEntryCommon ( name, itemInformation, attributes );
-                this.entryMap.put ( name, entry );
+                putEntry ( name, entry );
                 notifyAdd ( entry );
                 return true;
             }
@@ -206,7 +300,7 @@ public class FolderCommon implements Folder, ConfigurableFolder
     {
         if ( this.entryMap.containsKey ( name ) )
         {
-            final Entry entry = this.entryMap.remove ( name );
+            final Entry entry = removeEntry ( name );
             if ( entry instanceof FolderEntryCommon )
             {
                 ( (FolderEntryCommon)entry ).getFolder ().removed ();
@@ -223,73 +317,44 @@ public class FolderCommon implements Folder, ConfigurableFolder
 
     public synchronized String findEntry ( final DataItem item )
     {
-        for ( final Iterator<Map.Entry<String, Entry>> i = this.entryMap.entrySet ().iterator (); i.hasNext (); )
+        final Set<String> names = this.itemIndex.get ( item.getInformation ().getName () );
+        if ( names == null || names.isEmpty () )
         {
-            final String itemId = item.getInformation ().getName ();
-            final Map.Entry<String, Entry> entry = i.next ();
-            if ( entry.getValue () instanceof DataItemEntryCommon )
-            {
-                if ( ( (DataItemEntryCommon)entry.getValue () ).getId () == itemId )
-                {
-                    return entry.getKey ();
-                }
-            }
+            return null;
         }
-        return null;
+        return names.iterator ().next ();
     }
 
     public synchronized String findEntry ( final Folder folder )
     {
-        for ( final Iterator<Map.Entry<String, Entry>> i = this.entryMap.entrySet ().iterator (); i.hasNext (); )
-        {
-            final Map.Entry<String, Entry> entry = i.next ();
-            if ( entry.getValue () instanceof FolderEntryCommon )
-            {
-                if ( ( (FolderEntryCommon)entry.getValue () ).getFolder () == folder )
-                {
-                    return entry.getKey ();
-                }
-            }
-        }
-        return null;
+        return this.folderIndex.get ( folder );
     }
 
     public synchronized boolean remove ( final Folder folder )
     {
-        for ( final Iterator<Map.Entry<String, Entry>> i = this.entryMap.entrySet ().iterator (); i.hasNext (); )
+        final String name = this.folderIndex.get ( folder );
+        if ( name == null )
         {
-            final Map.Entry<String, Entry> entry = i.next ();
-            if ( entry.getValue () instanceof FolderEntryCommon )
-            {
-                if ( ( (FolderEntryCommon)entry.getValue () ).getFolder () == folder )
-                {
-                    i.remove ();
-                    folder.removed ();
-                    notifyRemove ( entry.getKey () );
-                    return true;
-                }
-            }
+            return false;
         }
-        return false;
+
+        removeEntry ( name );
+        folder.removed ();
+        notifyRemove ( name );
+        return true;
     }
 
     public synchronized boolean remove ( final DataItem item )
     {
-        for ( final Iterator<Map.Entry<String, Entry>> i = this.entryMap.entrySet ().iterator (); i.hasNext (); )
+        final String name = findEntry ( item );
+        if ( name == null )
         {
-            final String itemId = item.getInformation ().getName ();
-            final Map.Entry<String, Entry> entry = i.next ();
-            if ( entry.getValue () instanceof DataItemEntryCommon )
-            {
-                if ( ( (DataItemEntryCommon)entry.getValue () ).getId () == itemId )
-                {
-                    i.remove ();
-                    notifyRemove ( entry.getKey () );
-                    return true;
-                }
-            }
+            return false;
         }
-        return false;
+
+        removeEntry ( name );
+        notifyRemove ( name );
+        return true;
     }
 
     @Override
@@ -346,7 +411,29 @@ public class FolderCommon implements Folder, ConfigurableFolder
 
     private synchronized void sendCurrentList ( final FolderListener listener, final Object tag )
     {
-        listener.changed ( tag, new ArrayList<Entry> ( this.entryMap.values () ), Collections.<String> emptySet (), true );
+        if ( this.entryMap.size () <= LIST_CHUNK_SIZE )
+        {
+            listener.changed ( tag, new ArrayList<Entry> ( this.entryMap.values () ), Collections.<String> emptySet (), true );
+            return;
+        }
+
+        // send large folders in chunks, the first one replaces the content, the others add to it
+        boolean full = true;
+        List<Entry> chunk = new ArrayList<Entry> ( LIST_CHUNK_SIZE );
+        for ( final Entry entry : this.entryMap.values () )
+        {
+            chunk.add ( entry );
+            if ( chunk.size () >= LIST_CHUNK_SIZE )
+            {
+                listener.changed ( tag, chunk, Collections.<String> emptySet (), full );
+                full = false;
+                chunk = new ArrayList<Entry> ( LIST_CHUNK_SIZE );
+            }
+        }
+        if ( !chunk.isEmpty () )
+        {
+            listener.changed ( tag, chunk, Collections.<String> emptySet (), full );
+        }
     }
 
     private synchronized void notifyAdd ( final List<Entry> added )
@@ -402,7 +489,7 @@ public class FolderCommon implements Folder, ConfigurableFolder
             entry.getValue ().changed ( entry.getKey (), Collections.<Entry> emptyList (), Collections.<String> emptySet (), true );
         }
 
-        for ( final Map.Entry<String, Entry> entry : this.entryMap.entrySet () )
+        for ( final Entry entry : this.entryMap.values () )
         {
             if ( entry instanceof FolderEntryCommon )
             {
@@ -411,5 +498,7 @@ public class FolderCommon implements Folder, ConfigurableFolder
         }
 
         this.entryMap.clear ();
+        this.itemIndex.clear ();
+        this.folderIndex.clear ();
     }
 }
@@ -0,0 +1,58 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+
+package org.openscada.da.server.browser.common.query;
+
+import java.util.Collection;
+
+import org.openscada.core.Variant;
+
+/**
+ * A matcher that matches all items having a describing attribute with a
+ * specific value
+ * 
+ * @since 1.1
+ */
+public class AttributeMatcher implements IndexedMatcher
+{
+    private final String name;
+
+    private final Variant value;
+
+    public AttributeMatcher ( final String name, final Variant value )
+    {
+        this.name = name;
+        this.value = value;
+    }
+
+    @Override
+    public boolean matches ( final ItemDescriptor desc )
+    {
+        final Variant value = desc.getAttributes ().get ( this.name );
+        return value != null && value.equals ( this.value );
+    }
+
+    @Override
+    public Collection<ItemDescriptor> select ( final ItemIndex index )
+    {
+        return index.findByAttribute ( this.name, this.value );
+    }
+}
@@ -19,27 +19,42 @@
 
 package org.openscada.da.server.browser.common.query;
 
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashSet;
 import java.util.LinkedList;
-import java.util.Set;
 
 public class InvisibleStorage implements SubscribeableStorage
 {
-    private final Set<ItemDescriptor> items = new HashSet<ItemDescriptor> ();
+    private final ItemIndex items;
 
     private final Collection<ItemStorage> childs = new LinkedList<ItemStorage> ();
 
+    public InvisibleStorage ()
+    {
+        this ( new String[0] );
+    }
+
+    /**
+     * Create a new storage
+     * 
+     * @param indexedAttributes
+     *            the attributes to index for the matchers of child folders
+     * @since 1.1
+     */
+    public InvisibleStorage ( final String... indexedAttributes )
+    {
+        this.items = new ItemIndex ( indexedAttributes );
+    }
+
     public void added ( final ItemDescriptor descriptor )
     {
         synchronized ( this )
         {
-            if ( this.items.contains ( descriptor ) )
+            if ( !this.items.add ( descriptor ) )
             {
                 return;
             }
 
-            this.items.add ( descriptor );
             notifyAdd ( descriptor );
         }
     }
@@ -64,7 +79,7 @@ public class InvisibleStorage implements SubscribeableStorage
             this.childs.add ( child );
 
             // now push all possible descriptors
-            for ( final ItemDescriptor desc : this.items )
+            for ( final ItemDescriptor desc : this.items.select ( child ) )
             {
                 child.added ( desc );
             }
@@ -101,7 +116,7 @@ public class InvisibleStorage implements SubscribeableStorage
     {
         synchronized ( this )
         {
-            for ( final ItemDescriptor desc : this.items )
+            for ( final ItemDescriptor desc : new ArrayList<ItemDescriptor> ( this.items.getAll () ) )
             {
                 notifyRemove ( desc );
             }
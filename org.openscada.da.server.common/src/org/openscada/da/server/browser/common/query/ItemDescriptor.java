@@ -69,6 +69,11 @@ public class ItemDescriptor
         return this.item;
     }
 
+    public String getItemId ()
+    {
+        return this.itemId;
+    }
+
     @Override
     public int hashCode ()
     {
@@ -0,0 +1,411 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+
+package org.openscada.da.server.browser.common.query;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+import org.openscada.core.Variant;
+
+/**
+ * An index over item descriptors
+ * <p>
+ * The primary index is a sorted map over the item IDs which allows
+ * prefix lookups in logarithmic time. Additionally secondary indexes can be
+ * maintained for a set of attribute names.
+ * </p>
+ * <p>
+ * The index is not thread safe, the owner of the index has to provide the
+ * required locking.
+ * </p>
+ * 
+ * @since 1.1
+ */
+public class ItemIndex
+{
+    private final NavigableMap<String, ItemDescriptor> items = new TreeMap<String, ItemDescriptor> ();
+
+    private final Map<String, Map<Variant, Set<ItemDescriptor>>> attributeIndexes = new HashMap<String, Map<Variant, Set<ItemDescriptor>>> ();
+
+    /**
+     * Create a new index
+     * 
+     * @param indexedAttributes
+     *            the names of the attributes that should be indexed
+     */
+    public ItemIndex ( final String... indexedAttributes )
+    {
+        for ( final String attribute : indexedAttributes )
+        {
+            this.attributeIndexes.put ( attribute, new HashMap<Variant, Set<ItemDescriptor>> () );
+        }
+    }
+
+    /**
+     * Add a descriptor to the index
+     * 
+     * @param descriptor
+     *            the descriptor to add
+     * @return <code>true</code> if the descriptor was added,
+     *         <code>false</code> if a descriptor for the item was already
+     *         present
+     */
+    public boolean add ( final ItemDescriptor descriptor )
+    {
+        if ( this.items.containsKey ( descriptor.getItemId () ) )
+        {
+            return false;
+        }
+
+        this.items.put ( descriptor.getItemId (), descriptor );
+
+        for ( final Map.Entry<String, Map<Variant, Set<ItemDescriptor>>> entry : this.attributeIndexes.entrySet () )
+        {
+            final Variant value = descriptor.getAttributes ().get ( entry.getKey () );
+            if ( value == null )
+            {
+                continue;
+            }
+
+            Set<ItemDescriptor> set = entry.getValue ().get ( value );
+            if ( set == null )
+            {
+                set = new HashSet<ItemDescriptor> ();
+                entry.getValue ().put ( value, set );
+            }
+            set.add ( descriptor );
+        }
+
+        return true;
+    }
+
+    /**
+     * Remove a descriptor from the index
+     * 
+     * @param descriptor
+     *            the descriptor to remove
+     * @return <code>true</code> if the descriptor was removed,
+     *         <code>false</code> if it was not part of the index
+     */
+    public boolean remove ( final ItemDescriptor descriptor )
+    {
+        final ItemDescriptor current = this.items.remove ( descriptor.getItemId () );
+        if ( current == null )
+        {
+            return false;
+        }
+
+        for ( final Map.Entry<String, Map<Variant, Set<ItemDescriptor>>> entry : this.attributeIndexes.entrySet () )
+        {
+            final Variant value = current.getAttributes ().get ( entry.getKey () );
+            if ( value == null )
+            {
+                continue;
+            }
+
+            final Set<ItemDescriptor> set = entry.getValue ().get ( value );
+            if ( set != null )
+            {
+                set.remove ( current );
+                if ( set.isEmpty () )
+                {
+                    entry.getValue ().remove ( value );
+                }
+            }
+        }
+
+        return true;
+    }
+
+    public boolean contains ( final ItemDescriptor descriptor )
+    {
+        return this.items.containsKey ( descriptor.getItemId () );
+    }
+
+    public ItemDescriptor get ( final String itemId )
+    {
+        return this.items.get ( itemId );
+    }
+
+    public int size ()
+    {
+        return this.items.size ();
+    }
+
+    public void clear ()
+    {
+        this.items.clear ();
+        for ( final Map<Variant, Set<ItemDescriptor>> index : this.attributeIndexes.values () )
+        {
+            index.clear ();
+        }
+    }
+
+    /**
+     * Get all descriptors
+     * 
+     * @return an unmodifiable view of all descriptors, sorted by item id
+     */
+    public Collection<ItemDescriptor> getAll ()
+    {
+        return Collections.unmodifiableCollection ( this.items.values () );
+    }
+
+    /**
+     * Find all descriptors whose item id starts with the provided prefix
+     * 
+     * @param prefix
+     *            the prefix to look for
+     * @return a new collection of matching descriptors
+     */
+    public Collection<ItemDescriptor> findByPrefix ( final String prefix )
+    {
+        if ( prefix == null || prefix.isEmpty () )
+        {
+            return new ArrayList<ItemDescriptor> ( this.items.values () );
+        }
+
+        return new ArrayList<ItemDescriptor> ( this.items.subMap ( prefix, true, prefix + Character.MAX_VALUE, false ).values () );
+    }
+
+    /**
+     * Find all descriptors having an attribute with the provided value
+     * 
+     * @param name
+     *            the name of the attribute
+     * @param value
+     *            the value of the attribute
+     * @return a new collection of matching descriptors or <code>null</code> if
+     *         the attribute is not indexed
+     */
+    public Collection<ItemDescriptor> findByAttribute ( final String name, final Variant value )
+    {
+        final Map<Variant, Set<ItemDescriptor>> index = this.attributeIndexes.get ( name );
+        if ( index == null )
+        {
+            return null;
+        }
+
+        final Set<ItemDescriptor> result = index.get ( value );
+        if ( result == null )
+        {
+            return Collections.emptyList ();
+        }
+        return new ArrayList<ItemDescriptor> ( result );
+    }
+
+    /**
+     * Find all descriptors whose item id matches the pattern
+     * <p>
+     * The literal prefix of the pattern is used to narrow the search before
+     * the pattern is applied. Patterns with flags or a top level alternation
+     * are checked against all items.
+     * </p>
+     * 
+     * @param pattern
+     *            the pattern the item id has to match completely
+     * @return a new collection of matching descriptors
+     */
+    public Collection<ItemDescriptor> findByPattern ( final Pattern pattern )
+    {
+        // the prefix lookup is case sensitive and does not know about any other flag either
+        final String prefix = pattern.flags () == 0 ? literalPrefix ( pattern.pattern () ) : "";
+        final Collection<ItemDescriptor> candidates = findByPrefix ( prefix );
+
+        final Collection<ItemDescriptor> result = new ArrayList<ItemDescriptor> ();
+        for ( final ItemDescriptor descriptor : candidates )
+        {
+            if ( pattern.matcher ( descriptor.getItemId () ).matches () )
+            {
+                result.add ( descriptor );
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Select the descriptors a child storage may be interested in
+     * <p>
+     * If the child is a {@link QueryFolder} with an {@link IndexedMatcher}
+     * only the candidates selected by the matcher are returned, otherwise all
+     * descriptors.
+     * </p>
+     * 
+     * @param child
+     *            the child storage
+     * @return the selected descriptors
+     */
+    public Collection<ItemDescriptor> select ( final ItemStorage child )
+    {
+        if ( child instanceof QueryFolder )
+        {
+            final Matcher matcher = ( (QueryFolder)child ).getMatcher ();
+            if ( matcher instanceof IndexedMatcher )
+            {
+                final Collection<ItemDescriptor> result = ( (IndexedMatcher)matcher ).select ( this );
+                if ( result != null )
+                {
+                    return result;
+                }
+            }
+        }
+        return new ArrayList<ItemDescriptor> ( this.items.values () );
+    }
+
+    /**
+     * Extract the literal prefix of a regular expression
+     * <p>
+     * Expressions with an alternation on the top level have no common prefix.
+     * </p>
+     * 
+     * @param regex
+     *            the regular expression
+     * @return the literal prefix, may be empty but never <code>null</code>
+     */
+    static String literalPrefix ( final String regex )
+    {
+        if ( hasTopLevelAlternation ( regex ) )
+        {
+            return "";
+        }
+
+        final StringBuilder sb = new StringBuilder ();
+
+        int i = 0;
+        if ( regex.startsWith ( "^" ) )
+        {
+            i++;
+        }
+
+        while ( i < regex.length () )
+        {
+            final char c = regex.charAt ( i );
+
+            if ( regex.startsWith ( "\\Q", i ) )
+            {
+                final int end = regex.indexOf ( "\\E", i + 2 );
+                if ( end < 0 )
+                {
+                    sb.append ( regex.substring ( i + 2 ) );
+                    return sb.toString ();
+                }
+                sb.append ( regex.substring ( i + 2, end ) );
+                i = end + 2;
+            }
+            else if ( c == '\\' && i + 1 < regex.length () && !Character.isLetterOrDigit ( regex.charAt ( i + 1 ) ) )
+            {
+                sb.append ( regex.charAt ( i + 1 ) );
+                i += 2;
+            }
+            else if ( "\\.[]{}()*+?^$|".indexOf ( c ) >= 0 )
+            {
+                break;
+            }
+            else
+            {
+                sb.append ( c );
+                i++;
+            }
+        }
+
+        // a quantifier makes the last literal character optional
+        if ( i < regex.length () && "?*{".indexOf ( regex.charAt ( i ) ) >= 0 && sb.length () > 0 )
+        {
+            sb.setLength ( sb.length () - 1 );
+        }
+
+        return sb.toString ();
+    }
+
+    /**
+     * Check if the regular expression contains a <code>|</code> outside of
+     * any group
+     */
+    private static boolean hasTopLevelAlternation ( final String regex )
+    {
+        int depth = 0;
+        boolean inClass = false;
+
+        int i = 0;
+        while ( i < regex.length () )
+        {
+            final char c = regex.charAt ( i );
+
+            if ( regex.startsWith ( "\\Q", i ) )
+            {
+                final int end = regex.indexOf ( "\\E", i + 2 );
+                if ( end < 0 )
+                {
+                    return false;
+                }
+                i = end + 2;
+                continue;
+            }
+
+            if ( c == '\\' )
+            {
+                i += 2;
+                continue;
+            }
+
+            if ( inClass )
+            {
+                if ( c == ']' )
+                {
+                    inClass = false;
+                }
+            }
+            else if ( c == '[' )
+            {
+                inClass = true;
+                // a closing bracket right after the opening one is a literal
+                if ( i + 1 < regex.length () && regex.charAt ( i + 1 ) == ']' )
+                {
+                    i++;
+                }
+            }
+            else if ( c == '(' )
+            {
+                depth++;
+            }
+            else if ( c == ')' )
+            {
+                depth--;
+            }
+            else if ( c == '|' && depth <= 0 )
+            {
+                return true;
+            }
+
+            i++;
+        }
+        return false;
+    }
+}
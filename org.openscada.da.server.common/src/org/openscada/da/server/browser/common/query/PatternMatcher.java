@@ -0,0 +1,52 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+
+package org.openscada.da.server.browser.common.query;
+
+import java.util.Collection;
+import java.util.regex.Pattern;
+
+/**
+ * A matcher that matches all items whose id matches a regular expression
+ * 
+ * @since 1.1
+ */
+public class PatternMatcher implements IndexedMatcher
+{
+    private final Pattern pattern;
+
+    public PatternMatcher ( final Pattern pattern )
+    {
+        this.pattern = pattern;
+    }
+
+    @Override
+    public boolean matches ( final ItemDescriptor desc )
+    {
+        return this.pattern.matcher ( desc.getItemId () ).matches ();
+    }
+
+    @Override
+    public Collection<ItemDescriptor> select ( final ItemIndex index )
+    {
+        return index.findByPattern ( this.pattern );
+    }
+}
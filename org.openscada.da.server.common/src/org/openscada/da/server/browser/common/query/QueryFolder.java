@@ -20,11 +20,8 @@
 package org.openscada.da.server.browser.common.query;
 
 import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.Stack;
 
 import org.openscada.core.Variant;
@@ -44,12 +41,34 @@ public class QueryFolder implements StorageBasedFolder
 
     private final List<StorageBasedFolder> _folders = new ArrayList<StorageBasedFolder> ();
 
-    private final Set<ItemDescriptor> _items = new HashSet<ItemDescriptor> ();
+    private final ItemIndex _items;
 
     public QueryFolder ( final Matcher matcher, final NameProvider nameProvider )
+    {
+        this ( matcher, nameProvider, new String[0] );
+    }
+
+    /**
+     * Create a new query folder
+     * 
+     * @param matcher
+     *            the matcher selecting the items of this folder
+     * @param nameProvider
+     *            the name provider
+     * @param indexedAttributes
+     *            the attributes to index for the matchers of child folders
+     * @since 1.1
+     */
+    public QueryFolder ( final Matcher matcher, final NameProvider nameProvider, final String... indexedAttributes )
     {
         this._matcher = matcher;
         this._nameProvider = nameProvider;
+        this._items = new ItemIndex ( indexedAttributes );
+    }
+
+    public Matcher getMatcher ()
+    {
+        return this._matcher;
     }
 
     public void addChild ( final String name, final StorageBasedFolder folder, final Map<String, Variant> attributes )
@@ -60,7 +79,7 @@ public class QueryFolder implements StorageBasedFolder
             this._folders.add ( folder );
 
             // now push all possible descriptors
-            for ( final ItemDescriptor desc : this._items )
+            for ( final ItemDescriptor desc : this._items.select ( folder ) )
             {
                 folder.added ( desc );
             }
@@ -121,15 +140,8 @@ public class QueryFolder implements StorageBasedFolder
     {
         synchronized ( this )
         {
-            final List<ItemDescriptor> removeList = new LinkedList<ItemDescriptor> ();
-            for ( final ItemDescriptor desc : this._items )
-            {
-                if ( desc.getItem () == dataItem )
-                {
-                    removeList.add ( desc );
-                }
-            }
-            for ( final ItemDescriptor desc : removeList )
+            final ItemDescriptor desc = this._items.get ( dataItem.getInformation ().getName () );
+            if ( desc != null && desc.getItem () == dataItem )
             {
                 removed ( desc );
             }
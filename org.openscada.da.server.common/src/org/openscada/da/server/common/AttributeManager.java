@@ -22,14 +22,24 @@ package org.openscada.da.server.common;
 import java.util.HashMap;
 import java.util.Map;
 
-import org.openscada.core.AttributesHelper;
 import org.openscada.core.Variant;
-
+import org.openscada.da.core.AttributeMap;
+
+/**
+ * Manages the attributes of a data item
+ * <p>
+ * The attributes are held in an immutable {@link AttributeMap}, so the map
+ * returned by {@link #get()} and the change sets passed to the item listener
+ * can be handed out without copying.
+ * </p>
+ */
 public class AttributeManager
 {
     private final DataItemBase item;
 
-    private final Map<String, Variant> attributes = new HashMap<String, Variant> ();
+    private final Object lock = new Object ();
+
+    private volatile AttributeMap attributes = AttributeMap.EMPTY;
 
     public AttributeManager ( final DataItemBase item )
     {
@@ -41,6 +51,11 @@ public class AttributeManager
         return new HashMap<String, Variant> ( this.attributes );
     }
 
+    /**
+     * Get the current attributes
+     * 
+     * @return the current attributes, the returned map is immutable
+     */
     public Map<String, Variant> get ()
     {
         return this.attributes;
@@ -67,47 +82,37 @@ public class AttributeManager
 
     public void update ( final Variant value, final Map<String, Variant> updates )
     {
-        Map<String, Variant> diff = new HashMap<String, Variant> ();
-        synchronized ( this.attributes )
+        synchronized ( this.lock )
         {
-            AttributesHelper.mergeAttributes ( this.attributes, updates, diff );
-            if ( value != null || !diff.isEmpty () )
-            {
-                if ( diff.isEmpty () )
-                {
-                    // don't send attribute diff if we don't have one
-                    diff = null;
-                }
-
-                this.item.notifyData ( value, diff );
-            }
+            apply ( value, this.attributes.merge ( updates ) );
         }
     }
 
     public void set ( final Variant value, final Map<String, Variant> values )
     {
-        Map<String, Variant> diff = new HashMap<String, Variant> ();
-        synchronized ( this.attributes )
+        synchronized ( this.lock )
         {
-            AttributesHelper.set ( this.attributes, values, diff );
-            if ( value != null || !diff.isEmpty () )
-            {
-                if ( diff.isEmpty () )
-                {
-                    // don't send attribute diff if we don't have one
-                    diff = null;
-                }
-
-                this.item.notifyData ( value, diff );
-            }
+            apply ( value, AttributeMap.EMPTY.merge ( values ) );
         }
     }
 
-    public void update ( final String name, final Variant value )
+    private void apply ( final Variant value, final AttributeMap newAttributes )
     {
-        final Map<String, Variant> updates = new HashMap<String, Variant> ();
-        updates.put ( name, value );
+        final AttributeMap diff = this.attributes.diff ( newAttributes );
+        this.attributes = newAttributes;
+
+        if ( value != null || !diff.isEmpty () )
+        {
+            // don't send attribute diff if we don't have one
+            this.item.notifyData ( value, diff.isEmpty () ? null : diff );
+        }
+    }
 
-        update ( null, updates );
+    public void update ( final String name, final Variant value )
+    {
+        synchronized ( this.lock )
+        {
+            apply ( null, this.attributes.with ( name, value ) );
+        }
     }
 }
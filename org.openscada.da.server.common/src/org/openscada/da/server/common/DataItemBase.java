@@ -34,6 +34,11 @@ import org.slf4j.LoggerFactory;
  * supports
  * the {@link SuspendableDataItem} interface.
  * 
+ * <p>
+ * Notifications can optionally be decoupled from the calling thread using a
+ * {@link NotificationDispatcher}.
+ * </p>
+ * 
  * @author Jens Reimann &lt;jens.reimann@th4-systems.com&gt;
  * @see SuspendableDataItem
  */
@@ -46,9 +51,55 @@ public abstract class DataItemBase implements DataItem
 
     private final DataItemInformation information;
 
+    private NotificationDispatcher.Slot dispatchSlot;
+
     public DataItemBase ( final DataItemInformation information )
     {
         this.information = information;
+
+        if ( Boolean.getBoolean ( "org.openscada.da.server.common.asyncNotify" ) )
+        {
+            this.dispatchSlot = NotificationDispatcher.getDefault ().createSlot ( this );
+        }
+    }
+
+    /**
+     * Set the dispatcher used for delivering notifications to the listener
+     * <p>
+     * If a dispatcher is set, {@link #notifyData(Variant, Map, boolean)} only
+     * stores the change in the latest-value slot of the item and returns.
+     * The listener gets called from the dispatcher's threads. If set to
+     * <code>null</code> notifications are delivered synchronously.
+     * </p>
+     * <p>
+     * Changes still pending in the previous dispatcher are delivered before
+     * any change published through the new one.
+     * </p>
+     * 
+     * @param dispatcher
+     *            the dispatcher to use, may be <code>null</code>
+     * @since 1.1
+     */
+    public void setNotificationDispatcher ( final NotificationDispatcher dispatcher )
+    {
+        final NotificationDispatcher.Slot oldSlot;
+        final NotificationDispatcher.Slot newSlot;
+
+        synchronized ( this )
+        {
+            oldSlot = this.dispatchSlot;
+            if ( oldSlot == null )
+            {
+                this.dispatchSlot = dispatcher == null ? null : dispatcher.createSlot ( this );
+                return;
+            }
+
+            // the old slot may still deliver, so even synchronous delivery has to queue up behind it
+            newSlot = ( dispatcher == null ? NotificationDispatcher.SYNCHRONOUS : dispatcher ).createSuccessorSlot ( this );
+            this.dispatchSlot = newSlot;
+        }
+
+        oldSlot.retire ( newSlot );
     }
 
     @Override
@@ -159,6 +210,28 @@ public abstract class DataItemBase implements DataItem
     {
         logger.debug ( "Notify data - value: {}, attributes: {}, cache: {}", new Object[] { value, attributes, cache } );
 
+        final NotificationDispatcher.Slot dispatchSlot;
+
+        synchronized ( this )
+        {
+            dispatchSlot = this.dispatchSlot;
+        }
+
+        if ( dispatchSlot != null )
+        {
+            dispatchSlot.offer ( value, attributes, cache );
+        }
+        else
+        {
+            deliverData ( value, attributes, cache );
+        }
+    }
+
+    /**
+     * Deliver a change to the currently connected listener
+     */
+    void deliverData ( final Variant value, final Map<String, Variant> attributes, final boolean cache )
+    {
         final ItemListener listener;
 
         synchronized ( this )
@@ -0,0 +1,428 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.da.server.common;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openscada.core.Variant;
+import org.openscada.da.core.AttributeMap;
+import org.openscada.utils.concurrent.NamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Decouples data item notifications from the thread calling
+ * {@link DataItemBase#notifyData(Variant, Map, boolean)}.
+ * <p>
+ * Each data item gets one slot which holds the latest, not yet delivered,
+ * change. The slot is drained by the executor of the dispatcher. At most one
+ * drain task per item is active at a time, so the order of notifications of
+ * one item is preserved. If the listener is slower than the producer, pending
+ * changes are merged (conflated) into the slot instead of being queued.
+ *
+ * @since 1.1
+ */
+public class NotificationDispatcher
+{
+    private final static Logger logger = LoggerFactory.getLogger ( NotificationDispatcher.class );
+
+    private static NotificationDispatcher defaultInstance;
+
+    /**
+     * Delivers in the thread offering the change, used when an item switches
+     * back to synchronous delivery
+     */
+    static final NotificationDispatcher SYNCHRONOUS = new NotificationDispatcher ();
+
+    private final Executor executor;
+
+    private final ExecutorService ownedExecutor;
+
+    private final AtomicLong dispatched = new AtomicLong ();
+
+    private final AtomicLong conflated = new AtomicLong ();
+
+    /**
+     * Create a new dispatcher based on an existing executor
+     *
+     * @param executor
+     *            the executor draining the item slots, the dispatcher does
+     *            not own the executor
+     */
+    public NotificationDispatcher ( final Executor executor )
+    {
+        this.executor = executor;
+        this.ownedExecutor = null;
+    }
+
+    private NotificationDispatcher ()
+    {
+        this.executor = null;
+        this.ownedExecutor = null;
+    }
+
+    /**
+     * Create a new dispatcher with its own thread pool
+     *
+     * @param name
+     *            the name of the threads
+     * @param threads
+     *            the number of worker threads
+     */
+    public NotificationDispatcher ( final String name, final int threads )
+    {
+        this.ownedExecutor = Executors.newFixedThreadPool ( threads, new NamedThreadFactory ( name, true ) );
+        this.executor = this.ownedExecutor;
+    }
+
+    /**
+     * Get the process wide default dispatcher
+     * <p>
+     * The default dispatcher is only used by data items if the system property
+     * <code>org.openscada.da.server.common.asyncNotify</code> is set to
+     * <code>true</code>.
+     * </p>
+     *
+     * @return the default dispatcher, never <code>null</code>
+     */
+    public static synchronized NotificationDispatcher getDefault ()
+    {
+        if ( defaultInstance == null )
+        {
+            final int threads = Integer.getInteger ( "org.openscada.da.server.common.asyncNotify.threads", Runtime.getRuntime ().availableProcessors () );
+            defaultInstance = new NotificationDispatcher ( "DataItemNotificationDispatcher", Math.max ( 1, threads ) );
+        }
+        return defaultInstance;
+    }
+
+    /**
+     * Dispose the dispatcher
+     * <p>
+     * Only shuts down the executor if it was created by the dispatcher itself
+     * </p>
+     */
+    public void dispose ()
+    {
+        if ( this.ownedExecutor != null )
+        {
+            this.ownedExecutor.shutdown ();
+        }
+    }
+
+    /**
+     * @return the number of notifications delivered to listeners
+     */
+    public long getDispatchedCount ()
+    {
+        return this.dispatched.get ();
+    }
+
+    /**
+     * @return the number of notifications which got merged into a pending
+     *         notification instead of being delivered on their own
+     */
+    public long getConflatedCount ()
+    {
+        return this.conflated.get ();
+    }
+
+    Slot createSlot ( final DataItemBase item )
+    {
+        return new Slot ( item, false );
+    }
+
+    /**
+     * Create a slot which takes over from the current slot of an item
+     * <p>
+     * The new slot collects changes but does not deliver them until it gets
+     * released by {@link Slot#retire(Slot)} of its predecessor.
+     * </p>
+     */
+    Slot createSuccessorSlot ( final DataItemBase item )
+    {
+        return new Slot ( item, true );
+    }
+
+    /**
+     * The latest-value slot of one data item
+     */
+    class Slot implements Runnable
+    {
+        private final DataItemBase item;
+
+        private boolean pending;
+
+        private boolean scheduled;
+
+        /**
+         * <code>true</code> while the predecessor slot still has changes to
+         * deliver
+         */
+        private boolean held;
+
+        /**
+         * The slot replacing this one, set when the item switches dispatchers
+         */
+        private Slot successor;
+
+        private Variant value;
+
+        private Map<String, Variant> attributes;
+
+        private boolean cache;
+
+        public Slot ( final DataItemBase item, final boolean held )
+        {
+            this.item = item;
+            this.held = held;
+        }
+
+        public void offer ( final Variant value, final Map<String, Variant> attributes, final boolean cache )
+        {
+            final Slot successor;
+
+            synchronized ( this )
+            {
+                successor = this.successor != null && !this.scheduled && !this.held ? this.successor : null;
+                if ( successor == null )
+                {
+                    store ( value, attributes, cache );
+                    if ( this.scheduled || this.held )
+                    {
+                        return;
+                    }
+                    this.scheduled = true;
+                }
+            }
+
+            if ( successor != null )
+            {
+                // everything of this slot is delivered, the caller still saw the old slot
+                successor.offer ( value, attributes, cache );
+            }
+            else
+            {
+                schedule ();
+            }
+        }
+
+        /**
+         * Hand over to the provided slot
+         * <p>
+         * The successor gets released as soon as this slot has delivered all
+         * of its changes, so changes of the successor cannot overtake older
+         * changes.
+         * </p>
+         */
+        public void retire ( final Slot successor )
+        {
+            synchronized ( this )
+            {
+                this.successor = successor;
+                if ( this.scheduled || this.held )
+                {
+                    // released by run () or release ()
+                    return;
+                }
+            }
+            successor.release ();
+        }
+
+        private void release ()
+        {
+            final Slot successor;
+            final boolean schedule;
+
+            synchronized ( this )
+            {
+                if ( !this.held )
+                {
+                    // already released
+                    return;
+                }
+                this.held = false;
+
+                schedule = this.pending;
+                if ( schedule )
+                {
+                    this.scheduled = true;
+                }
+                successor = schedule ? null : this.successor;
+            }
+
+            if ( schedule )
+            {
+                schedule ();
+            }
+            else if ( successor != null )
+            {
+                successor.release ();
+            }
+        }
+
+        private void store ( final Variant value, final Map<String, Variant> attributes, final boolean cache )
+        {
+            // called with the slot lock held
+            if ( !this.pending || cache )
+            {
+                // a cache notification is a full state and replaces everything pending
+                this.value = value;
+                this.attributes = attributes == null || attributes instanceof AttributeMap ? attributes : new HashMap<String, Variant> ( attributes );
+                this.cache = cache;
+                if ( this.pending )
+                {
+                    NotificationDispatcher.this.conflated.incrementAndGet ();
+                }
+            }
+            else
+            {
+                merge ( value, attributes );
+                NotificationDispatcher.this.conflated.incrementAndGet ();
+            }
+
+            this.pending = true;
+        }
+
+        private void merge ( final Variant value, final Map<String, Variant> attributes )
+        {
+            if ( value != null )
+            {
+                this.value = value;
+            }
+            if ( attributes != null )
+            {
+                if ( this.attributes == null )
+                {
+                    this.attributes = new HashMap<String, Variant> ( attributes );
+                }
+                else
+                {
+                    if ( this.attributes instanceof AttributeMap )
+                    {
+                        // immutable maps are passed on without copying, copy them when we need to merge
+                        this.attributes = new HashMap<String, Variant> ( this.attributes );
+                    }
+                    // later attribute changes (including removals) override earlier ones
+                    this.attributes.putAll ( attributes );
+                }
+            }
+        }
+
+        private void schedule ()
+        {
+            if ( NotificationDispatcher.this.executor == null )
+            {
+                run ();
+                return;
+            }
+
+            try
+            {
+                NotificationDispatcher.this.executor.execute ( this );
+            }
+            catch ( final RuntimeException e )
+            {
+                logger.warn ( "Failed to schedule notification. Delivering synchronously.", e );
+                run ();
+            }
+        }
+
+        @Override
+        public void run ()
+        {
+            while ( deliver () )
+            {
+                if ( NotificationDispatcher.this.executor != null )
+                {
+                    // re-schedule instead of looping so that busy items do not starve the others
+                    schedule ();
+                    return;
+                }
+            }
+
+            final Slot successor;
+            synchronized ( this )
+            {
+                successor = this.scheduled ? null : this.successor;
+            }
+
+            if ( successor != null )
+            {
+                successor.release ();
+            }
+        }
+
+        /**
+         * Deliver the pending change
+         * 
+         * @return <code>true</code> if another change arrived in the meantime
+         */
+        private boolean deliver ()
+        {
+            final Variant value;
+            final Map<String, Variant> attributes;
+            final boolean cache;
+
+            synchronized ( this )
+            {
+                if ( !this.pending )
+                {
+                    this.scheduled = false;
+                    return false;
+                }
+
+                value = this.value;
+                attributes = this.attributes;
+                cache = this.cache;
+
+                this.value = null;
+                this.attributes = null;
+                this.cache = false;
+                this.pending = false;
+            }
+
+            try
+            {
+                this.item.deliverData ( value, attributes, cache );
+                NotificationDispatcher.this.dispatched.incrementAndGet ();
+            }
+            catch ( final Exception e )
+            {
+                logger.warn ( "Failed to deliver notification", e );
+            }
+
+            synchronized ( this )
+            {
+                if ( this.pending )
+                {
+                    return true;
+                }
+                this.scheduled = false;
+                return false;
+            }
+        }
+    }
+}
@@ -46,6 +46,8 @@ public class DataItemInputChained extends DataItemBaseChained
 
     protected Variant secondaryValue = Variant.NULL;
 
+    private ValueFilter valueFilter;
+
     public DataItemInputChained ( final DataItemInformation dataItemInformation, final Executor executor )
     {
         this ( dataItemInformation, true, executor );
@@ -65,6 +67,56 @@ public class DataItemInputChained extends DataItemBaseChained
         this ( new DataItemInformationBase ( id, EnumSet.of ( IODirection.INPUT ) ), true, executor );
     }
 
+    /**
+     * Set the filter which is applied to new values before they are processed
+     * by the chain
+     * 
+     * @param valueFilter
+     *            the new filter, or <code>null</code> to remove the current
+     *            filter
+     * @since 1.1
+     */
+    public synchronized void setValueFilter ( final ValueFilter valueFilter )
+    {
+        if ( this.valueFilter != null )
+        {
+            this.valueFilter.unbind ();
+        }
+
+        this.valueFilter = valueFilter;
+
+        if ( this.valueFilter != null )
+        {
+            this.valueFilter.bind ( this );
+        }
+    }
+
+    /**
+     * @since 1.1
+     */
+    public synchronized ValueFilter getValueFilter ()
+    {
+        return this.valueFilter;
+    }
+
+    /**
+     * Deliver a value which was held back by the value filter
+     */
+    synchronized void flushValueFilter ( final ValueFilter valueFilter )
+    {
+        if ( this.valueFilter != valueFilter )
+        {
+            return;
+        }
+
+        final Variant value = valueFilter.takePending ();
+        if ( value != null && !this.primaryValue.equals ( value ) )
+        {
+            this.primaryValue = Variant.valueOf ( value );
+            process ();
+        }
+    }
+
     /**
      * Update the item data
      * 
@@ -82,15 +134,22 @@ public class DataItemInputChained extends DataItemBaseChained
     {
         boolean changed = false;
 
+        // apply the value filter, this has to be done before checking for duplicates since it needs to see all values
+        Variant newValue = value;
+        if ( newValue != null && this.valueFilter != null )
+        {
+            newValue = this.valueFilter.filter ( newValue );
+        }
+
         // handle value change
-        if ( value != null && !this.primaryValue.equals ( value ) )
+        if ( newValue != null && !this.primaryValue.equals ( newValue ) )
         {
-            this.primaryValue = Variant.valueOf ( value );
+            this.primaryValue = Variant.valueOf ( newValue );
             changed = true;
         }
 
         // change attribute change
-        if ( attributes != null )
+        if ( attributes != null && ( !attributes.isEmpty () || mode == AttributeMode.SET ) )
         {
             if ( mode == null )
             {
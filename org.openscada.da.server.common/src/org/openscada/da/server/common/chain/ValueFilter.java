@@ -0,0 +1,304 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+
+package org.openscada.da.server.common.chain;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.openscada.core.Variant;
+import org.openscada.utils.concurrent.NamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A filter for input values which runs before the item chain
+ * <p>
+ * The filter suppresses numeric values which are inside a deadband around the
+ * last forwarded value and limits the rate of forwarded values. Values which
+ * arrive too early are held back and the latest of them is delivered when the
+ * interval has passed (trailing edge), so the item always ends up with the
+ * latest value.
+ * </p>
+ * <p>
+ * Non-numeric values are only compared for equality. The filter is attached
+ * to an item using {@link DataItemInputChained#setValueFilter(ValueFilter)}
+ * and must not be shared between items.
+ * </p>
+ * 
+ * @since 1.1
+ */
+public class ValueFilter
+{
+    private final static Logger logger = LoggerFactory.getLogger ( ValueFilter.class );
+
+    private static ScheduledExecutorService defaultScheduler;
+
+    private final double absoluteDeadband;
+
+    private final double percentDeadband;
+
+    private final long minIntervalNanos;
+
+    private final ScheduledExecutorService scheduler;
+
+    private DataItemInputChained item;
+
+    private Variant lastValue;
+
+    private long lastTimestamp;
+
+    private Variant pendingValue;
+
+    private boolean scheduled;
+
+    private long deadbandSuppressed;
+
+    private long rateSuppressed;
+
+    private long deferred;
+
+    /**
+     * Create a new filter using the default scheduler
+     * 
+     * @param absoluteDeadband
+     *            the absolute deadband, <code>0</code> disables the absolute
+     *            deadband
+     * @param percentDeadband
+     *            the deadband in percent of the last forwarded value,
+     *            <code>0</code> disables the relative deadband
+     * @param minInterval
+     *            the minimum time between two forwarded values,
+     *            <code>0</code> disables rate limiting
+     * @param unit
+     *            the time unit of the minimum interval
+     */
+    public ValueFilter ( final double absoluteDeadband, final double percentDeadband, final long minInterval, final TimeUnit unit )
+    {
+        this ( absoluteDeadband, percentDeadband, minInterval, unit, null );
+    }
+
+    /**
+     * Create a new filter
+     * 
+     * @param scheduler
+     *            the scheduler used for trailing edge delivery, if
+     *            <code>null</code> the default scheduler is used
+     */
+    public ValueFilter ( final double absoluteDeadband, final double percentDeadband, final long minInterval, final TimeUnit unit, final ScheduledExecutorService scheduler )
+    {
+        this.absoluteDeadband = Math.abs ( absoluteDeadband );
+        this.percentDeadband = Math.abs ( percentDeadband );
+        this.minIntervalNanos = unit.toNanos ( Math.max ( 0, minInterval ) );
+        this.scheduler = scheduler != null || this.minIntervalNanos == 0 ? scheduler : getDefaultScheduler ();
+    }
+
+    private static synchronized ScheduledExecutorService getDefaultScheduler ()
+    {
+        if ( defaultScheduler == null )
+        {
+            defaultScheduler = Executors.newSingleThreadScheduledExecutor ( new NamedThreadFactory ( "ValueFilterTimer", true ) );
+        }
+        return defaultScheduler;
+    }
+
+    synchronized void bind ( final DataItemInputChained item )
+    {
+        if ( this.item != null && this.item != item )
+        {
+            throw new IllegalStateException ( "Value filter is already bound to another item" );
+        }
+        this.item = item;
+        this.lastValue = null;
+        this.pendingValue = null;
+    }
+
+    synchronized void unbind ()
+    {
+        this.item = null;
+        this.pendingValue = null;
+    }
+
+    /**
+     * Filter a new value
+     * <p>
+     * Must be called with the lock of the bound item held
+     * </p>
+     * 
+     * @return the value to forward, or <code>null</code> if the value was
+     *         suppressed or deferred
+     */
+    synchronized Variant filter ( final Variant value )
+    {
+        if ( this.lastValue != null && isInsideDeadband ( value ) )
+        {
+            // the current state equals the forwarded state, so drop anything that was held back
+            this.pendingValue = null;
+            this.deadbandSuppressed++;
+            return null;
+        }
+
+        final long now = System.nanoTime ();
+
+        if ( this.minIntervalNanos > 0 && this.lastValue != null && now - this.lastTimestamp < this.minIntervalNanos )
+        {
+            if ( this.pendingValue != null )
+            {
+                this.rateSuppressed++;
+            }
+            this.pendingValue = value;
+            schedule ( this.minIntervalNanos - ( now - this.lastTimestamp ) );
+            return null;
+        }
+
+        this.pendingValue = null;
+        this.lastValue = value;
+        this.lastTimestamp = now;
+        return value;
+    }
+
+    private boolean isInsideDeadband ( final Variant value )
+    {
+        if ( this.lastValue.equals ( value ) )
+        {
+            return true;
+        }
+
+        if ( this.absoluteDeadband <= 0 && this.percentDeadband <= 0 )
+        {
+            return false;
+        }
+
+        if ( !value.isNumber () || !this.lastValue.isNumber () )
+        {
+            return false;
+        }
+
+        final Double newValue = value.asDouble ( null );
+        final Double oldValue = this.lastValue.asDouble ( null );
+        if ( newValue == null || oldValue == null || newValue.isNaN () || oldValue.isNaN () )
+        {
+            return false;
+        }
+
+        final double delta = Math.abs ( newValue - oldValue );
+        if ( this.absoluteDeadband > 0 && delta <= this.absoluteDeadband )
+        {
+            return true;
+        }
+        if ( this.percentDeadband > 0 && delta <= Math.abs ( oldValue ) * this.percentDeadband / 100.0 )
+        {
+            return true;
+        }
+        return false;
+    }
+
+    private void schedule ( final long delayNanos )
+    {
+        if ( this.scheduled )
+        {
+            return;
+        }
+
+        final DataItemInputChained item = this.item;
+        if ( item == null )
+        {
+            return;
+        }
+
+        this.scheduled = true;
+        try
+        {
+            this.scheduler.schedule ( new Runnable () {
+
+                @Override
+                public void run ()
+                {
+                    item.flushValueFilter ( ValueFilter.this );
+                }
+            }, delayNanos, TimeUnit.NANOSECONDS );
+        }
+        catch ( final RuntimeException e )
+        {
+            logger.warn ( "Failed to schedule delivery of deferred value", e );
+            this.scheduled = false;
+        }
+    }
+
+    /**
+     * Take the value held back by rate limiting
+     * <p>
+     * Must be called with the lock of the bound item held
+     * </p>
+     * 
+     * @return the value to forward or <code>null</code> if there is none
+     */
+    synchronized Variant takePending ()
+    {
+        this.scheduled = false;
+
+        final Variant value = this.pendingValue;
+        if ( value == null )
+        {
+            return null;
+        }
+
+        this.pendingValue = null;
+        this.lastValue = value;
+        this.lastTimestamp = System.nanoTime ();
+        this.deferred++;
+        return value;
+    }
+
+    /**
+     * @return the number of values dropped because they were inside the
+     *         deadband
+     */
+    public synchronized long getDeadbandSuppressedCount ()
+    {
+        return this.deadbandSuppressed;
+    }
+
+    /**
+     * @return the number of values dropped because a newer value arrived
+     *         before the minimum interval passed
+     */
+    public synchronized long getRateSuppressedCount ()
+    {
+        return this.rateSuppressed;
+    }
+
+    /**
+     * @return the number of values which got delivered delayed at the end of
+     *         the minimum interval
+     */
+    public synchronized long getDeferredCount ()
+    {
+        return this.deferred;
+    }
+
+    @Override
+    public String toString ()
+    {
+        return String.format ( "[ValueFilter - absolute: %s, percent: %s, minInterval: %s ms]", this.absoluteDeadband, this.percentDeadband, TimeUnit.NANOSECONDS.toMillis ( this.minIntervalNanos ) );
+    }
+}
@@ -19,6 +19,8 @@
 
 package org.openscada.da.server.common.configuration;
 
+import java.util.Collection;
+
 import org.openscada.da.server.browser.common.Folder;
 import org.openscada.da.server.common.DataItem;
 import org.openscada.da.server.common.HiveServiceRegistry;
@@ -31,6 +33,38 @@ public interface ConfigurableHive extends HiveServiceRegistry
     // data item
     public abstract void registerItem ( DataItem item );
 
+    /**
+     * Register a number of items in one step
+     * <p>
+     * This should be preferred over calling {@link #registerItem(DataItem)}
+     * for each item when registering large numbers of items, e.g. during
+     * startup.
+     * </p>
+     * 
+     * @param items
+     *            the items to register
+     * @since 1.1
+     */
+    public abstract void registerItems ( Collection<? extends DataItem> items );
+
+    /**
+     * Start collecting item registrations
+     * <p>
+     * Items registered until the matching call to {@link #endRegistration()}
+     * are registered in one step when the batch ends. Calls may be nested.
+     * </p>
+     * 
+     * @since 1.1
+     */
+    public abstract void beginRegistration ();
+
+    /**
+     * End a batch started by {@link #beginRegistration()}
+     * 
+     * @since 1.1
+     */
+    public abstract void endRegistration ();
+
     public abstract void addItemFactory ( DataItemFactory factory );
 
     public abstract void registerTemplate ( FactoryTemplate template );
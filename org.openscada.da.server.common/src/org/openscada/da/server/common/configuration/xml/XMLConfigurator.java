@@ -23,10 +23,17 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Constructor;
+import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Stack;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Pattern;
 
 import org.apache.xmlbeans.XmlException;
@@ -45,6 +52,7 @@ import org.openscada.da.server.common.configuration.Configurator;
 import org.openscada.da.server.common.factory.ChainEntry;
 import org.openscada.da.server.common.factory.DataItemFactory;
 import org.openscada.da.server.common.factory.FactoryTemplate;
+import org.openscada.utils.concurrent.NamedThreadFactory;
 import org.openscada.utils.str.StringHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -106,9 +114,17 @@ public class XMLConfigurator implements Configurator
         this.factories.clear ();
         this.templates.clear ();
 
-        configureFactories ( hive, this.factoriesPart );
-        configureTemplates ( hive, this.itemTemplatesPart );
-
+        // register the items created by the factories in one step
+        hive.beginRegistration ();
+        try
+        {
+            configureFactories ( hive, this.factoriesPart );
+            configureTemplates ( hive, this.itemTemplatesPart );
+        }
+        finally
+        {
+            hive.endRegistration ();
+        }
     }
 
     private void configureFactories ( final ConfigurableHive hive, final FactoriesType factories ) throws ConfigurationError
@@ -118,59 +134,141 @@ public class XMLConfigurator implements Configurator
             return;
         }
 
-        for ( final FactoryType factory : factories.getFactoryList () )
+        final List<FactoryType> factoryList = factories.getFactoryList ();
+        final List<DataItemFactory> factoryObjects = createFactories ( hive, factoryList );
+
+        // register in the order of the configuration file
+        for ( int i = 0; i < factoryList.size (); i++ )
         {
-            Class<?> factoryClass;
-            try
-            {
-                factoryClass = Class.forName ( factory.getFactoryClass () );
-            }
-            catch ( final ClassNotFoundException e )
+            final DataItemFactory factoryObject = factoryObjects.get ( i );
+
+            hive.addItemFactory ( factoryObject );
+
+            // remember factory for later use
+            final Factory factory2 = new Factory ();
+            factory2.setFactory ( factoryObject );
+
+            this.factories.put ( factoryList.get ( i ).getId (), factory2 );
+        }
+    }
+
+    /**
+     * Create and configure the factories
+     * <p>
+     * The factories are created and configured in parallel, using the
+     * number of threads set by the system property
+     * <code>org.openscada.da.server.common.configuration.xml.threads</code>
+     * (defaults to the number of processors, 1 configures them one after the
+     * other). Factories creating their items during configuration then build
+     * their items concurrently.
+     * </p>
+     */
+    private List<DataItemFactory> createFactories ( final ConfigurableHive hive, final List<FactoryType> factoryList ) throws ConfigurationError
+    {
+        final int threads = Math.min ( factoryList.size (), Integer.getInteger ( "org.openscada.da.server.common.configuration.xml.threads", Runtime.getRuntime ().availableProcessors () ) );
+
+        final List<DataItemFactory> result = new ArrayList<DataItemFactory> ( factoryList.size () );
+
+        if ( threads <= 1 )
+        {
+            for ( final FactoryType factory : factoryList )
             {
-                throw new ConfigurationError ( "Unable to find factory class: " + factory.getFactoryClass (), e );
+                result.add ( createFactory ( hive, factory, factory.newDomNode () ) );
             }
+            return result;
+        }
+
+        logger.info ( "Configuring {} factories using {} threads", factoryList.size (), threads );
 
-            Object factoryObject = null;
-            try
+        final ExecutorService executor = Executors.newFixedThreadPool ( threads, new NamedThreadFactory ( "XMLConfigurator" ) );
+        try
+        {
+            final List<Future<DataItemFactory>> futures = new ArrayList<Future<DataItemFactory>> ( factoryList.size () );
+            for ( final FactoryType factory : factoryList )
             {
-                for ( final Constructor<?> ctor : factoryClass.getConstructors () )
-                {
-                    if ( ctor.getParameterTypes ().length == 1 )
+                // access the XML document from the calling thread only
+                final Node node = factory.newDomNode ();
+                futures.add ( executor.submit ( new Callable<DataItemFactory> () {
+
+                    @Override
+                    public DataItemFactory call () throws Exception
                     {
-                        if ( ctor.getParameterTypes ()[0].isAssignableFrom ( hive.getClass () ) )
-                        {
-                            factoryObject = ctor.newInstance ( new Object[] { hive } );
-                            break;
-                        }
+                        return createFactory ( hive, factory, node );
                     }
-                }
-                if ( factoryObject == null )
-                {
-                    factoryObject = factoryClass.newInstance ();
-                }
+                } ) );
             }
-            catch ( final Exception e )
+
+            for ( final Future<DataItemFactory> future : futures )
             {
-                throw new ConfigurationError ( "Unable to instantiate object for factory class: " + factory, e );
+                result.add ( future.get () );
             }
-            if ( ! ( factoryObject instanceof DataItemFactory ) )
+            return result;
+        }
+        catch ( final ExecutionException e )
+        {
+            if ( e.getCause () instanceof ConfigurationError )
             {
-                throw new ConfigurationError ( String.format ( "Factory class %s does not implement DataItemFactory interface", factory ) );
+                throw (ConfigurationError)e.getCause ();
             }
+            throw new ConfigurationError ( "Failed to configure factory", e.getCause () );
+        }
+        catch ( final InterruptedException e )
+        {
+            Thread.currentThread ().interrupt ();
+            throw new ConfigurationError ( "Interrupted while configuring factories", e );
+        }
+        finally
+        {
+            executor.shutdownNow ();
+        }
+    }
 
-            if ( factoryObject instanceof ConfigurableFactory )
+    private DataItemFactory createFactory ( final ConfigurableHive hive, final FactoryType factory, final Node node ) throws ConfigurationError
+    {
+        Class<?> factoryClass;
+        try
+        {
+            factoryClass = Class.forName ( factory.getFactoryClass () );
+        }
+        catch ( final ClassNotFoundException e )
+        {
+            throw new ConfigurationError ( "Unable to find factory class: " + factory.getFactoryClass (), e );
+        }
+
+        Object factoryObject = null;
+        try
+        {
+            for ( final Constructor<?> ctor : factoryClass.getConstructors () )
             {
-                ( (ConfigurableFactory)factoryObject ).configure ( factory.newDomNode () );
+                if ( ctor.getParameterTypes ().length == 1 )
+                {
+                    if ( ctor.getParameterTypes ()[0].isAssignableFrom ( hive.getClass () ) )
+                    {
+                        factoryObject = ctor.newInstance ( new Object[] { hive } );
+                        break;
+                    }
+                }
             }
+            if ( factoryObject == null )
+            {
+                factoryObject = factoryClass.newInstance ();
+            }
+        }
+        catch ( final Exception e )
+        {
+            throw new ConfigurationError ( "Unable to instantiate object for factory class: " + factory, e );
+        }
+        if ( ! ( factoryObject instanceof DataItemFactory ) )
+        {
+            throw new ConfigurationError ( String.format ( "Factory class %s does not implement DataItemFactory interface", factory ) );
+        }
 
-            hive.addItemFactory ( (DataItemFactory)factoryObject );
-
-            // remember factory for later use
-            final Factory factory2 = new Factory ();
-            factory2.setFactory ( (DataItemFactory)factoryObject );
-
-            this.factories.put ( factory.getId (), factory2 );
+        if ( factoryObject instanceof ConfigurableFactory )
+        {
+            ( (ConfigurableFactory)factoryObject ).configure ( node );
         }
+
+        return (DataItemFactory)factoryObject;
     }
 
     private void configureTemplates ( final ConfigurableHive hive, final ItemTemplatesType itemTemplates ) throws ConfigurationError
@@ -0,0 +1,162 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+
+package org.openscada.da.server.common.impl;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Hands out the hive wide sequence numbers of data changes and remembers
+ * which item changed with the most recent ones.
+ * <p>
+ * Sequence numbers start at the creation time of the ring (in milliseconds
+ * multiplied by 1000), so that the sequence numbers of a restarted hive are
+ * higher than the ones of the previous run.
+ * </p>
+ * <p>
+ * The ring does not lock. Each slot carries the sequence number it was written
+ * with, so a reader which finds a slot that was overwritten or not yet written
+ * reports the range as not covered instead of returning a wrong result.
+ * </p>
+ * 
+ * @since 1.1
+ */
+public class ChangeRing
+{
+    private static final class Entry
+    {
+        private final long sequence;
+
+        private final String itemId;
+
+        public Entry ( final long sequence, final String itemId )
+        {
+            this.sequence = sequence;
+            this.itemId = itemId;
+        }
+    }
+
+    private final AtomicReferenceArray<Entry> items;
+
+    private final long base;
+
+    private final AtomicLong sequence;
+
+    /**
+     * Create a new ring
+     * 
+     * @param capacity
+     *            the number of changes to remember, may be <code>0</code>
+     */
+    public ChangeRing ( final int capacity )
+    {
+        this ( capacity, System.currentTimeMillis () * 1000L );
+    }
+
+    ChangeRing ( final int capacity, final long base )
+    {
+        this.items = new AtomicReferenceArray<Entry> ( Math.max ( 0, capacity ) );
+        this.base = base;
+        this.sequence = new AtomicLong ( base );
+    }
+
+    /**
+     * Record a change of an item
+     * 
+     * @param itemId
+     *            the item that changed
+     * @return the sequence number of the change
+     */
+    public long record ( final String itemId )
+    {
+        final long sequence = this.sequence.incrementAndGet ();
+
+        if ( this.items.length () > 0 )
+        {
+            this.items.set ( (int) ( sequence % this.items.length () ), new Entry ( sequence, itemId ) );
+        }
+
+        return sequence;
+    }
+
+    /**
+     * Get the epoch of the sequence numbers
+     * <p>
+     * Sequence numbers of rings with a different epoch cannot be compared.
+     * </p>
+     * 
+     * @return the first sequence number of the ring
+     */
+    public long getEpoch ()
+    {
+        return this.base;
+    }
+
+    /**
+     * @return the sequence number of the last change
+     */
+    public long getSequence ()
+    {
+        return this.sequence.get ();
+    }
+
+    /**
+     * Get the items which changed after the provided sequence number
+     * 
+     * @param sequence
+     *            the last sequence number known to the caller
+     * @return the ids of the items which changed after the sequence number or
+     *         <code>null</code> if the ring does not cover the sequence
+     *         number (overrun, or the sequence number belongs to a
+     *         different run of the hive)
+     */
+    public Set<String> changedSince ( final long sequence )
+    {
+        final long current = this.sequence.get ();
+
+        if ( sequence < this.base || sequence > current )
+        {
+            return null;
+        }
+
+        if ( current - sequence > this.items.length () )
+        {
+            // overrun
+            return null;
+        }
+
+        final Set<String> result = new HashSet<String> ();
+        for ( long i = sequence + 1; i <= current; i++ )
+        {
+            final Entry entry = this.items.get ( (int) ( i % this.items.length () ) );
+            if ( entry == null || entry.sequence != i )
+            {
+                // overwritten in the meantime or not yet written
+                return null;
+            }
+            result.add ( entry.itemId );
+        }
+        return result;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+
+package org.openscada.da.server.common.impl;
+
+import org.openscada.core.Variant;
+import org.openscada.da.core.AttributeMap;
+import org.openscada.da.core.ItemChange;
+import org.openscada.utils.lang.Immutable;
+
+/**
+ * The state of a data item as known by its subscription source
+ * 
+ * @since 1.1
+ */
+@Immutable
+public class DataItemSnapshot
+{
+    private final String itemId;
+
+    private final Variant value;
+
+    private final AttributeMap attributes;
+
+    private final long sequence;
+
+    public DataItemSnapshot ( final String itemId, final Variant value, final AttributeMap attributes, final long sequence )
+    {
+        this.itemId = itemId;
+        this.value = value;
+        this.attributes = attributes;
+        this.sequence = sequence;
+    }
+
+    public String getItemId ()
+    {
+        return this.itemId;
+    }
+
+    public Variant getValue ()
+    {
+        return this.value;
+    }
+
+    public AttributeMap getAttributes ()
+    {
+        return this.attributes;
+    }
+
+    /**
+     * Get the sequence number of the last change contained in this snapshot
+     * <p>
+     * Changes of the same item with a sequence number lower or equal to this
+     * one are already part of the snapshot.
+     * </p>
+     * 
+     * @return the sequence number
+     */
+    public long getSequence ()
+    {
+        return this.sequence;
+    }
+
+    /**
+     * Convert the snapshot to a full (cache) change
+     */
+    public ItemChange toChange ()
+    {
+        return new ItemChange ( this.itemId, this.value, this.attributes, true );
+    }
+
+    @Override
+    public String toString ()
+    {
+        return String.format ( "%s#%s", this.itemId, this.sequence );
+    }
+}
@@ -35,5 +35,13 @@ import org.openscada.da.server.common.DataItem;
  */
 public interface DataItemSubscriptionListener extends SubscriptionListener
 {
-    public void dataChanged ( DataItem item, Variant value, Map<String, Variant> attributes, boolean cache );
+    /**
+     * A data change of the item
+     * 
+     * @param sequence
+     *            the sequence number of the change, increasing with every
+     *            change of the item. Also see
+     *            {@link DataItemSnapshot#getSequence()}.
+     */
+    public void dataChanged ( DataItem item, Variant value, Map<String, Variant> attributes, boolean cache, long sequence );
 }
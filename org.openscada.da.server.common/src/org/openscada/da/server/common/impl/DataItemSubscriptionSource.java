@@ -20,16 +20,16 @@
 package org.openscada.da.server.common.impl;
 
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Executor;
 
-import org.openscada.core.AttributesHelper;
 import org.openscada.core.Variant;
+import org.openscada.core.subscription.SnapshotSubscriptionSource;
 import org.openscada.core.subscription.SubscriptionInformation;
-import org.openscada.core.subscription.SubscriptionSource;
+import org.openscada.da.core.AttributeMap;
+import org.openscada.da.core.server.Session;
 import org.openscada.da.server.common.DataItem;
 import org.openscada.da.server.common.ItemListener;
 import org.openscada.da.server.common.impl.stats.HiveEventListener;
@@ -37,31 +37,73 @@ import org.openscada.da.server.common.impl.stats.HiveEventListener;
 /**
  * A subscription source for data items. This SubscriptionSource does not use a
  * hint object.
+ * <p>
+ * The current state of the item is published as an immutable
+ * {@link DataItemSnapshot}, which can be read without locking.
+ * </p>
+ * <p>
+ * Changes are stamped with their sequence number on the operation thread of
+ * the hive, which is single threaded. So events are delivered in sequence order
+ * without a lock shared by all items.
+ * </p>
  * 
  * @author Jens Reimann
  */
-public class DataItemSubscriptionSource implements SubscriptionSource, ItemListener
+public class DataItemSubscriptionSource implements SnapshotSubscriptionSource, ItemListener
 {
     private DataItem dataItem = null;
 
     private final Set<DataItemSubscriptionListener> listeners = new HashSet<DataItemSubscriptionListener> ( 1 );
 
+    /**
+     * Listeners which did not yet receive the initial state
+     */
+    private final Set<DataItemSubscriptionListener> initialPending = new HashSet<DataItemSubscriptionListener> ( 1 );
+
     private boolean bound = false;
 
-    private Variant cacheValue = null;
+    private final ChangeRing changeRing;
 
-    private final Map<String, Variant> cacheAttributes = new HashMap<String, Variant> ();
+    private volatile DataItemSnapshot snapshot;
 
     private final HiveEventListener hiveEventListener;
 
     private final Executor executor;
 
     public DataItemSubscriptionSource ( final Executor executor, final DataItem dataItem, final HiveEventListener hiveEventListener )
+    {
+        this ( executor, dataItem, hiveEventListener, new ChangeRing ( 0 ) );
+    }
+
+    /**
+     * Create a new subscription source
+     * 
+     * @param changeRing
+     *            the ring providing the sequence numbers of the changes
+     * @since 1.1
+     */
+    public DataItemSubscriptionSource ( final Executor executor, final DataItem dataItem, final HiveEventListener hiveEventListener, final ChangeRing changeRing )
     {
         super ();
         this.dataItem = dataItem;
         this.hiveEventListener = hiveEventListener;
         this.executor = executor;
+        this.changeRing = changeRing;
+        this.snapshot = new DataItemSnapshot ( dataItem.getInformation ().getName (), null, AttributeMap.EMPTY, 0 );
+    }
+
+    /**
+     * Get the current state of the item
+     * <p>
+     * This method does not lock the subscription source.
+     * </p>
+     * 
+     * @return the current snapshot, never <code>null</code>
+     * @since 1.1
+     */
+    public DataItemSnapshot getSnapshot ()
+    {
+        return this.snapshot;
     }
 
     /**
@@ -97,8 +139,9 @@ public class DataItemSubscriptionSource implements SubscriptionSource, ItemListe
             return;
         }
 
-        this.cacheValue = null;
-        this.cacheAttributes.clear ();
+        // record the reset, changes while we are unbound are not seen, so clients resuming from an older sequence must get the full state
+        final String itemId = this.snapshot.getItemId ();
+        this.snapshot = new DataItemSnapshot ( itemId, null, AttributeMap.EMPTY, this.changeRing.record ( itemId ) );
         this.bound = false;
 
         final DataItem item = this.dataItem;
@@ -117,19 +160,17 @@ public class DataItemSubscriptionSource implements SubscriptionSource, ItemListe
     {
         for ( final SubscriptionInformation listener : listeners )
         {
-            this.listeners.add ( (DataItemSubscriptionListener)listener.getListener () );
-            // send current state
-
-            final DataItem dataItem = this.dataItem;
-            final Variant cacheValue = this.cacheValue;
-            final Map<String, Variant> attributes = new HashMap<String, Variant> ( this.cacheAttributes );
+            final DataItemSubscriptionListener itemListener = (DataItemSubscriptionListener)listener.getListener ();
+            this.listeners.add ( itemListener );
+            this.initialPending.add ( itemListener );
 
+            // send current state, as it is when the changes queued before were applied
             this.executor.execute ( new Runnable () {
 
                 @Override
                 public void run ()
                 {
-                    ( (DataItemSubscriptionListener)listener.getListener () ).dataChanged ( dataItem, cacheValue, attributes, true );
+                    sendInitial ( itemListener );
                 }
             } );
         }
@@ -140,12 +181,32 @@ public class DataItemSubscriptionSource implements SubscriptionSource, ItemListe
         }
     }
 
+    /**
+     * @since 1.1
+     */
+    @Override
+    public synchronized DataItemSnapshot addListenerWithSnapshot ( final Collection<SubscriptionInformation> listeners )
+    {
+        for ( final SubscriptionInformation listener : listeners )
+        {
+            this.listeners.add ( (DataItemSubscriptionListener)listener.getListener () );
+        }
+
+        if ( !this.listeners.isEmpty () )
+        {
+            bind ();
+        }
+
+        return this.snapshot;
+    }
+
     @Override
     public synchronized void removeListener ( final Collection<SubscriptionInformation> listeners )
     {
         for ( final SubscriptionInformation listener : listeners )
         {
             this.listeners.remove ( listener.getListener () );
+            this.initialPending.remove ( listener.getListener () );
         }
 
         if ( this.listeners.isEmpty () )
@@ -160,59 +221,92 @@ public class DataItemSubscriptionSource implements SubscriptionSource, ItemListe
         return subscriptionInformation.getListener () instanceof DataItemSubscriptionListener;
     }
 
-    @Override
-    public synchronized void dataChanged ( final DataItem item, final Variant variant, final Map<String, Variant> attributes, final boolean cache )
+    private void sendInitial ( final DataItemSubscriptionListener listener )
     {
-        // update attributes
-        if ( attributes != null )
-        {
-            AttributesHelper.mergeAttributes ( this.cacheAttributes, attributes );
-        }
-        // update value
-        if ( variant != null )
+        final DataItemSnapshot snapshot;
+        synchronized ( this )
         {
-            this.cacheValue = variant;
+            if ( !this.initialPending.remove ( listener ) )
+            {
+                // removed in the meantime
+                return;
+            }
+            snapshot = this.snapshot;
         }
 
-        final DataItemSubscriptionListener[] listeners = this.listeners.toArray ( new DataItemSubscriptionListener[this.listeners.size ()] );
+        listener.dataChanged ( this.dataItem, snapshot.getValue (), snapshot.getAttributes (), true, snapshot.getSequence () );
+    }
+
+    @Override
+    public void dataChanged ( final DataItem item, final Variant variant, final Map<String, Variant> attributes, final boolean cache )
+    {
+        // the sequence number is handed out by the task, so events are delivered in sequence order
+        this.executor.execute ( new Runnable () {
+
+            @Override
+            public void run ()
+            {
+                applyDataChange ( item, variant, attributes, cache );
+            }
+        } );
+    }
 
-        if ( listeners.length > 0 )
+    /**
+     * Apply a data change, must be called on the operation thread
+     */
+    private void applyDataChange ( final DataItem item, final Variant variant, final Map<String, Variant> attributes, final boolean cache )
+    {
+        final long sequence;
+        final DataItemSubscriptionListener[] listeners;
+
+        synchronized ( this )
         {
-            // send out the events
-            this.executor.execute ( new Runnable () {
+            final DataItemSnapshot current = this.snapshot;
+            sequence = this.changeRing.record ( current.getItemId () );
 
-                @Override
-                public void run ()
-                {
-                    fireDataChange ( item, variant, attributes, cache, listeners );
-                }
-            } );
+            // publish the new state
+            this.snapshot = new DataItemSnapshot ( current.getItemId (), variant != null ? variant : current.getValue (), attributes != null ? current.getAttributes ().merge ( attributes ) : current.getAttributes (), sequence );
+
+            if ( this.initialPending.isEmpty () )
+            {
+                listeners = this.listeners.toArray ( new DataItemSubscriptionListener[this.listeners.size ()] );
+            }
+            else
+            {
+                // listeners still waiting for their initial state will get this change with it
+                final Set<DataItemSubscriptionListener> active = new HashSet<DataItemSubscriptionListener> ( this.listeners );
+                active.removeAll ( this.initialPending );
+                listeners = active.toArray ( new DataItemSubscriptionListener[active.size ()] );
+            }
         }
 
+        // send out the events
+        fireDataChange ( item, variant, attributes, cache, sequence, listeners );
+
         if ( this.hiveEventListener != null )
         {
-            this.executor.execute ( new Runnable () {
-
-                @Override
-                public void run ()
-                {
-                    updateStats ( item, variant, attributes, cache );
-                }
-            } );
+            updateStats ( item, variant, attributes, cache, listeners );
         }
-
     }
 
-    private static void fireDataChange ( final DataItem item, final Variant variant, final Map<String, Variant> attributes, final boolean cache, final DataItemSubscriptionListener[] listeners )
+    private static void fireDataChange ( final DataItem item, final Variant variant, final Map<String, Variant> attributes, final boolean cache, final long sequence, final DataItemSubscriptionListener[] listeners )
     {
         for ( final DataItemSubscriptionListener listener : listeners )
         {
-            listener.dataChanged ( item, variant, attributes, cache );
+            listener.dataChanged ( item, variant, attributes, cache, sequence );
         }
     }
 
-    private void updateStats ( final DataItem item, final Variant variant, final Map<String, Variant> attributes, final boolean cache )
+    private void updateStats ( final DataItem item, final Variant variant, final Map<String, Variant> attributes, final boolean cache, final DataItemSubscriptionListener[] listeners )
     {
+        for ( final DataItemSubscriptionListener listener : listeners )
+        {
+            if ( listener instanceof Session )
+            {
+                this.hiveEventListener.sessionNotified ( (Session)listener, item );
+            }
+        }
+
         // send out the hive events
         if ( variant != null )
         {
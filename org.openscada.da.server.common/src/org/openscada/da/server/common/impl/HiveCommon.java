@@ -25,6 +25,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -51,10 +52,12 @@ import org.openscada.core.subscription.SubscriptionListener;
 import org.openscada.core.subscription.SubscriptionManager;
 import org.openscada.core.subscription.SubscriptionValidator;
 import org.openscada.core.subscription.ValidationException;
+import org.openscada.da.core.DataItemInformation;
 import org.openscada.da.core.WriteAttributeResults;
 import org.openscada.da.core.WriteResult;
 import org.openscada.da.core.server.Hive;
 import org.openscada.da.core.server.InvalidItemException;
+import org.openscada.da.core.server.SequencedItemChangeListener;
 import org.openscada.da.core.server.Session;
 import org.openscada.da.core.server.browser.HiveBrowser;
 import org.openscada.da.server.browser.common.Folder;
@@ -76,6 +79,7 @@ import org.openscada.sec.UserInformation;
 import org.openscada.sec.callback.CallbackHandler;
 import org.openscada.utils.collection.MapBuilder;
 import org.openscada.utils.concurrent.CallingFuture;
+import org.openscada.utils.concurrent.FutureListener;
 import org.openscada.utils.concurrent.InstantErrorFuture;
 import org.openscada.utils.concurrent.NamedThreadFactory;
 import org.openscada.utils.concurrent.NotifyFuture;
@@ -116,6 +120,37 @@ public abstract class HiveCommon extends ServiceCommon<Session, SessionCommon> i
 
     private boolean autoEnableStats = true;
 
+    private final ChangeRing changeRing = new ChangeRing ( Integer.getInteger ( "org.openscada.da.server.common.changeRing.size", 100000 ) );
+
+    /**
+     * Guards the registration batch
+     */
+    private final Object registrationLock = new Object ();
+
+    private int registrationDepth;
+
+    /**
+     * Items registered while a registration batch is open
+     */
+    private final Map<String, DataItem> pendingItems = new LinkedHashMap<String, DataItem> ();
+
+    /**
+     * Folder entries added while a registration batch is open
+     */
+    private final Map<FolderCommon, FolderBatch> pendingFolders = new LinkedHashMap<FolderCommon, FolderBatch> ();
+
+    /**
+     * The number of times the item map was changed
+     */
+    private long itemMapWrites;
+
+    private static class FolderBatch
+    {
+        private final Map<String, DataItemInformation> items = new LinkedHashMap<String, DataItemInformation> ();
+
+        private final Map<String, Map<String, Variant>> attributes = new HashMap<String, Map<String, Variant>> ();
+    }
+
     /**
      * Services that are provided by this hive for internal use
      */
@@ -358,6 +393,7 @@ public abstract class HiveCommon extends ServiceCommon<Session, SessionCommon> i
         final Map<String, String> sessionProperties = new HashMap<String, String> ();
 
         fillSessionProperties ( user, sessionProperties );
+        sessionProperties.put ( SequencedItemChangeListener.PROP_SEQUENCE_EPOCH, Long.toString ( this.changeRing.getEpoch () ) );
 
         final SessionCommon session = new SessionCommon ( this, user, sessionProperties );
 
@@ -423,6 +459,102 @@ public abstract class HiveCommon extends ServiceCommon<Session, SessionCommon> i
         }
     }
 
+    /**
+     * @since 1.1
+     */
+    @Override
+    public Set<String> subscribeItems ( final Session session, final Collection<String> itemIds ) throws InvalidSessionException
+    {
+        return subscribeItems ( session, itemIds, 0 );
+    }
+
+    /**
+     * @since 1.1
+     */
+    @Override
+    public Set<String> subscribeItems ( final Session session, final Collection<String> itemIds, final long lastSequence ) throws InvalidSessionException
+    {
+        logger.debug ( "Subscribing {} items since {}", itemIds.size (), lastSequence );
+
+        // validate the session first
+        final SessionCommon sessionCommon = validateSession ( session );
+
+        // request realization, looking up all items with one lock acquisition
+        final List<String> missing = new LinkedList<String> ();
+        try
+        {
+            this.itemMapReadLock.lock ();
+            for ( final String itemId : itemIds )
+            {
+                if ( !this.itemMap.containsKey ( itemId ) )
+                {
+                    missing.add ( itemId );
+                }
+            }
+        }
+        finally
+        {
+            this.itemMapReadLock.unlock ();
+        }
+
+        for ( final String itemId : missing )
+        {
+            factoryCreate ( itemId );
+        }
+
+        // hold back changes of the items until the initial state is sent
+        sessionCommon.beginBulkTransfer ( itemIds );
+
+        final Collection<Object> rejected;
+        try
+        {
+            // the sources hand out their current state instead of notifying the session item by item
+            final Map<Object, Object> snapshots = new LinkedHashMap<Object, Object> ( itemIds.size () );
+            rejected = this.itemSubscriptionManager.subscribeTopics ( itemIds, sessionCommon, snapshots );
+
+            // the client already knows the state of items which did not change
+            final Set<String> changed = lastSequence > 0 ? this.changeRing.changedSince ( lastSequence ) : null;
+            if ( lastSequence > 0 && changed == null )
+            {
+                logger.info ( "Unable to resume from sequence {}, sending full state", lastSequence );
+            }
+
+            final List<DataItemSnapshot> initial = new ArrayList<DataItemSnapshot> ( snapshots.size () );
+            for ( final Object snapshot : snapshots.values () )
+            {
+                if ( changed == null || changed.contains ( ( (DataItemSnapshot)snapshot ).getItemId () ) )
+                {
+                    initial.add ( (DataItemSnapshot)snapshot );
+                }
+            }
+            sessionCommon.addSnapshots ( initial );
+        }
+        finally
+        {
+            sessionCommon.endBulkTransfer ();
+        }
+
+        final Set<String> result = new HashSet<String> ( rejected.size () );
+        for ( final Object topic : rejected )
+        {
+            result.add ( topic.toString () );
+        }
+        return result;
+    }
+
+    /**
+     * @since 1.1
+     */
+    @Override
+    public void unsubscribeItems ( final Session session, final Collection<String> itemIds ) throws InvalidSessionException
+    {
+        logger.debug ( "Unsubscribing {} items", itemIds.size () );
+
+        final SessionCommon sessionCommon = validateSession ( session );
+
+        this.itemSubscriptionManager.unsubscribeTopics ( itemIds, sessionCommon );
+    }
+
     /**
      * Unsubscribe a session from an item
      */
@@ -448,11 +580,28 @@ public abstract class HiveCommon extends ServiceCommon<Session, SessionCommon> i
     {
         logger.debug ( "Register item: {}", item );
 
+        final String id = item.getInformation ().getName ();
+
+        synchronized ( this.registrationLock )
+        {
+            if ( this.registrationDepth > 0 )
+            {
+                if ( this.pendingItems.containsKey ( id ) )
+                {
+                    logger.warn ( String.format ( "Duplicate error: item %s already registered with hive", id ) );
+                }
+                else
+                {
+                    this.pendingItems.put ( id, item );
+                }
+                return;
+            }
+        }
+
         try
         {
             this.itemMapWriteLock.lock ();
-
-            final String id = item.getInformation ().getName ();
+            this.itemMapWrites++;
 
             if ( !this.itemMap.containsKey ( id ) )
             {
@@ -470,7 +619,63 @@ public abstract class HiveCommon extends ServiceCommon<Session, SessionCommon> i
             }
 
             // add new topic to the new item subscription manager
-            this.itemSubscriptionManager.setSource ( id, new DataItemSubscriptionSource ( getOperationService (), item, this.statisticsGenerator ) );
+            this.itemSubscriptionManager.setSource ( id, new DataItemSubscriptionSource ( getOperationService (), item, this.statisticsGenerator, this.changeRing ) );
+        }
+        finally
+        {
+            this.itemMapWriteLock.unlock ();
+        }
+    }
+
+    /**
+     * Register a number of items with the hive
+     * <p>
+     * All items are added while holding the item map lock once and all
+     * subscription sources are set with one call to the subscription manager.
+     * </p>
+     * 
+     * @param items
+     *            the items to register
+     * @since 1.1
+     */
+    @Override
+    public void registerItems ( final Collection<? extends DataItem> items )
+    {
+        logger.debug ( "Register {} items", items.size () );
+
+        // create the sources before acquiring the lock
+        final Map<String, DataItemSubscriptionSource> sources = new LinkedHashMap<String, DataItemSubscriptionSource> ( items.size () );
+        final Executor executor = getOperationService ();
+        for ( final DataItem item : items )
+        {
+            sources.put ( item.getInformation ().getName (), new DataItemSubscriptionSource ( executor, item, this.statisticsGenerator, this.changeRing ) );
+        }
+
+        try
+        {
+            this.itemMapWriteLock.lock ();
+            this.itemMapWrites++;
+
+            for ( final DataItem item : items )
+            {
+                final String id = item.getInformation ().getName ();
+
+                if ( !this.itemMap.containsKey ( id ) )
+                {
+                    this.itemMap.put ( id, item );
+
+                    if ( this.statisticsGenerator != null )
+                    {
+                        this.statisticsGenerator.itemRegistered ( item );
+                    }
+                }
+                else
+                {
+                    logger.warn ( String.format ( "Duplicate error: item %s already registered with hive", id ) );
+                }
+            }
+
+            this.itemSubscriptionManager.setSources ( sources );
         }
         finally
         {
@@ -478,6 +683,135 @@ public abstract class HiveCommon extends ServiceCommon<Session, SessionCommon> i
         }
     }
 
+    /**
+     * Start a registration batch
+     * <p>
+     * Until the batch is ended, items passed to {@link #registerItem(DataItem)}
+     * and entries passed to
+     * {@link #addToFolder(FolderCommon, String, DataItemInformation, Map)} are
+     * only collected. Batches may be nested, the last call to
+     * {@link #endRegistration()} registers everything at once.
+     * </p>
+     * 
+     * @since 1.1
+     */
+    @Override
+    public void beginRegistration ()
+    {
+        synchronized ( this.registrationLock )
+        {
+            this.registrationDepth++;
+        }
+    }
+
+    /**
+     * End a registration batch
+     * <p>
+     * When the outermost batch ends, all collected items are registered with
+     * one call to {@link #registerItems(Collection)} and each folder gets its
+     * entries with one bulk add, which builds its index and notifies its
+     * listeners once.
+     * </p>
+     * 
+     * @since 1.1
+     */
+    @Override
+    public void endRegistration ()
+    {
+        final Map<String, DataItem> items;
+        final Map<FolderCommon, FolderBatch> folders;
+
+        synchronized ( this.registrationLock )
+        {
+            if ( this.registrationDepth <= 0 )
+            {
+                throw new IllegalStateException ( "No registration batch open" );
+            }
+            if ( --this.registrationDepth > 0 )
+            {
+                return;
+            }
+
+            items = new LinkedHashMap<String, DataItem> ( this.pendingItems );
+            folders = new LinkedHashMap<FolderCommon, FolderBatch> ( this.pendingFolders );
+            this.pendingFolders.clear ();
+        }
+
+        logger.info ( "Registering {} items and entries of {} folders", items.size (), folders.size () );
+
+        if ( !items.isEmpty () )
+        {
+            registerItems ( items.values () );
+        }
+
+        synchronized ( this.registrationLock )
+        {
+            // the items are visible in the item map now
+            for ( final Map.Entry<String, DataItem> entry : items.entrySet () )
+            {
+                if ( this.pendingItems.get ( entry.getKey () ) == entry.getValue () )
+                {
+                    this.pendingItems.remove ( entry.getKey () );
+                }
+            }
+        }
+
+        for ( final Map.Entry<FolderCommon, FolderBatch> entry : folders.entrySet () )
+        {
+            entry.getKey ().add ( null, entry.getValue ().items, entry.getValue ().attributes );
+        }
+    }
+
+    /**
+     * Add an item entry to a folder
+     * <p>
+     * While a registration batch is open the entry is added when the batch
+     * ends, otherwise it is added right away.
+     * </p>
+     * 
+     * @see #beginRegistration()
+     * @since 1.1
+     */
+    public void addToFolder ( final FolderCommon folder, final String name, final DataItemInformation itemInformation, final Map<String, Variant> attributes )
+    {
+        synchronized ( this.registrationLock )
+        {
+            if ( this.registrationDepth > 0 )
+            {
+                FolderBatch batch = this.pendingFolders.get ( folder );
+                if ( batch == null )
+                {
+                    batch = new FolderBatch ();
+                    this.pendingFolders.put ( folder, batch );
+                }
+                if ( !batch.items.containsKey ( name ) )
+                {
+                    batch.items.put ( name, itemInformation );
+                    batch.attributes.put ( name, attributes );
+                }
+                return;
+            }
+        }
+
+        folder.add ( name, itemInformation, attributes );
+    }
+
+    /**
+     * @return the number of times the item map was changed, for testing
+     */
+    long getItemMapWrites ()
+    {
+        this.itemMapReadLock.lock ();
+        try
+        {
+            return this.itemMapWrites;
+        }
+        finally
+        {
+            this.itemMapReadLock.unlock ();
+        }
+    }
+
     private Executor getOperationServiceInstance ()
     {
         return this.operationService;
@@ -504,11 +838,22 @@ public abstract class HiveCommon extends ServiceCommon<Session, SessionCommon> i
     {
         logger.debug ( "Unregister item: {}", item );
 
+        final String id = item.getInformation ().getName ();
+
+        synchronized ( this.registrationLock )
+        {
+            if ( this.pendingItems.get ( id ) == item )
+            {
+                this.pendingItems.remove ( id );
+                return;
+            }
+        }
+
         try
         {
             this.itemMapWriteLock.lock ();
+            this.itemMapWrites++;
 
-            final String id = item.getInformation ().getName ();
             if ( this.itemMap.containsKey ( id ) )
             {
                 this.itemMap.remove ( id );
@@ -599,12 +944,22 @@ public abstract class HiveCommon extends ServiceCommon<Session, SessionCommon> i
         try
         {
             this.itemMapReadLock.lock ();
-            return this.itemMap.get ( id );
+            final DataItem item = this.itemMap.get ( id );
+            if ( item != null )
+            {
+                return item;
+            }
         }
         finally
         {
             this.itemMapReadLock.unlock ();
         }
+
+        // the item may be waiting for the end of a registration batch
+        synchronized ( this.registrationLock )
+        {
+            return this.pendingItems.get ( id );
+        }
     }
 
     public FactoryTemplate findFactoryTemplate ( final String item )
@@ -672,13 +1027,18 @@ public abstract class HiveCommon extends ServiceCommon<Session, SessionCommon> i
         }
 
         // stats
-        if ( this.statisticsGenerator != null )
+        final HiveCommonStatisticsGenerator stats = this.statisticsGenerator;
+        if ( stats != null )
         {
-            this.statisticsGenerator.startWriteAttributes ( session, itemId, attributes.size () );
+            stats.startWriteAttributes ( session, itemId, attributes.size () );
         }
 
         // go
         final NotifyFuture<WriteAttributeResults> future = item.startSetAttributes ( attributes, operationParameters );
+        if ( stats != null )
+        {
+            trackWriteLatency ( stats, session, itemId, future );
+        }
         try
         {
             session.addFuture ( future );
@@ -690,6 +1050,19 @@ public abstract class HiveCommon extends ServiceCommon<Session, SessionCommon> i
         }
     }
 
+    private static <T> void trackWriteLatency ( final HiveCommonStatisticsGenerator stats, final Session session, final String itemId, final NotifyFuture<T> future )
+    {
+        final long start = System.nanoTime ();
+        future.addListener ( new FutureListener<T> () {
+
+            @Override
+            public void complete ( final Future<T> future )
+            {
+                stats.writeCompleted ( session, itemId, System.nanoTime () - start );
+            }
+        } );
+    }
+
     private Map<String, Object> makeSetAttributesContext ( final Map<String, Variant> attributes )
     {
         final Map<String, Object> context = new HashMap<String, Object> ( 1 );
@@ -734,13 +1107,18 @@ public abstract class HiveCommon extends ServiceCommon<Session, SessionCommon> i
         }
 
         // stats
-        if ( this.statisticsGenerator != null )
+        final HiveCommonStatisticsGenerator stats = this.statisticsGenerator;
+        if ( stats != null )
         {
-            this.statisticsGenerator.startWrite ( session, itemId, value );
+            stats.startWrite ( session, itemId, value );
         }
 
         // go
         final NotifyFuture<WriteResult> future = item.startWriteValue ( value, effectiveOperationParameters );
+        if ( stats != null )
+        {
+            trackWriteLatency ( stats, session, itemId, future );
+        }
         try
         {
             session.addFuture ( future );
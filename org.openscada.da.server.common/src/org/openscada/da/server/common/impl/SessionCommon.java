@@ -23,7 +23,12 @@ package org.openscada.da.server.common.impl;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Future;
 
@@ -31,7 +36,10 @@ import org.openscada.core.InvalidSessionException;
 import org.openscada.core.Variant;
 import org.openscada.core.data.SubscriptionState;
 import org.openscada.core.server.common.session.AbstractSessionImpl;
+import org.openscada.da.core.ItemChange;
+import org.openscada.da.core.server.BulkItemChangeListener;
 import org.openscada.da.core.server.ItemChangeListener;
+import org.openscada.da.core.server.SequencedItemChangeListener;
 import org.openscada.da.core.server.Session;
 import org.openscada.da.core.server.browser.FolderListener;
 import org.openscada.da.server.common.DataItem;
@@ -57,6 +65,27 @@ public class SessionCommon extends AbstractSessionImpl implements Session, DataI
 
     private final Collection<Future<?>> tasks = new ConcurrentLinkedQueue<Future<?>> ();
 
+    private final Object bulkLock = new Object ();
+
+    private int bulkDepth;
+
+    private final Set<String> bulkItems = new HashSet<String> ();
+
+    private List<BufferedChange> bulkChanges = new LinkedList<BufferedChange> ();
+
+    private static class BufferedChange
+    {
+        private final ItemChange change;
+
+        private final long sequence;
+
+        public BufferedChange ( final ItemChange change, final long sequence )
+        {
+            this.change = change;
+            this.sequence = sequence;
+        }
+    }
+
     public SessionCommon ( final HiveCommon hive, final UserInformation userInformation, final Map<String, String> properties )
     {
         super ( userInformation, properties );
@@ -109,15 +138,150 @@ public class SessionCommon extends AbstractSessionImpl implements Session, DataI
     }
 
     @Override
-    public void dataChanged ( final DataItem item, final Variant value, final Map<String, Variant> attributes, final boolean cache )
+    public void dataChanged ( final DataItem item, final Variant value, final Map<String, Variant> attributes, final boolean cache, final long sequence )
     {
         logger.debug ( "Data changed - itemId: {}, value: {}, attributes: {}, cache: {}", new Object[] { item.getInformation ().getName (), value, attributes, cache } );
 
+        synchronized ( this.bulkLock )
+        {
+            if ( this.bulkDepth > 0 && this.bulkItems.contains ( item.getInformation ().getName () ) )
+            {
+                // keep order with the initial values of the bulk transfer, the batch is sent without sequence numbers
+                this.bulkChanges.add ( new BufferedChange ( new ItemChange ( item.getInformation ().getName (), value, attributes, cache ), sequence ) );
+                return;
+            }
+        }
+
         final ItemChangeListener listener;
 
         if ( ( listener = this.listener ) != null )
         {
-            listener.dataChanged ( item.getInformation ().getName (), value, attributes, cache );
+            if ( listener instanceof SequencedItemChangeListener )
+            {
+                ( (SequencedItemChangeListener)listener ).dataChanged ( item.getInformation ().getName (), value, attributes, cache, sequence );
+            }
+            else
+            {
+                listener.dataChanged ( item.getInformation ().getName (), value, attributes, cache );
+            }
+        }
+    }
+
+    /**
+     * Start collecting the changes of the provided items
+     * <p>
+     * All changes of these items are held back until
+     * {@link #endBulkTransfer()} is called as often as this method.
+     * </p>
+     * 
+     * @param itemIds
+     *            the items to collect
+     * @since 1.1
+     */
+    public void beginBulkTransfer ( final Collection<String> itemIds )
+    {
+        synchronized ( this.bulkLock )
+        {
+            this.bulkDepth++;
+            this.bulkItems.addAll ( itemIds );
+        }
+    }
+
+    /**
+     * Add the initial state of items to the running bulk transfer
+     * <p>
+     * The snapshots are sent ahead of the changes collected so far. Collected
+     * changes which are already contained in a snapshot, according to their
+     * sequence number, are dropped.
+     * </p>
+     * 
+     * @param snapshots
+     *            the snapshots to add
+     * @since 1.1
+     */
+    public void addSnapshots ( final Collection<DataItemSnapshot> snapshots )
+    {
+        synchronized ( this.bulkLock )
+        {
+            if ( this.bulkDepth <= 0 )
+            {
+                logger.warn ( "Snapshots added outside of bulk transfer. Ignoring {} snapshots.", snapshots.size () );
+                return;
+            }
+
+            final Map<String, Long> sequences = new HashMap<String, Long> ( snapshots.size () );
+            final List<BufferedChange> changes = new LinkedList<BufferedChange> ();
+
+            for ( final DataItemSnapshot snapshot : snapshots )
+            {
+                changes.add ( new BufferedChange ( snapshot.toChange (), snapshot.getSequence () ) );
+                sequences.put ( snapshot.getItemId (), snapshot.getSequence () );
+            }
+
+            for ( final BufferedChange change : this.bulkChanges )
+            {
+                final Long sequence = sequences.get ( change.change.getItemId () );
+                if ( sequence == null || change.sequence > sequence )
+                {
+                    changes.add ( change );
+                }
+            }
+
+            this.bulkChanges = changes;
+        }
+    }
+
+    /**
+     * Finish a bulk transfer and send out all collected changes in one batch
+     * 
+     * @since 1.1
+     */
+    public void endBulkTransfer ()
+    {
+        synchronized ( this.bulkLock )
+        {
+            if ( this.bulkDepth <= 0 )
+            {
+                return;
+            }
+
+            this.bulkDepth--;
+            if ( this.bulkDepth > 0 )
+            {
+                return;
+            }
+
+            final List<ItemChange> changes = new ArrayList<ItemChange> ( this.bulkChanges.size () );
+            for ( final BufferedChange change : this.bulkChanges )
+            {
+                changes.add ( change.change );
+            }
+            this.bulkChanges = new LinkedList<BufferedChange> ();
+            this.bulkItems.clear ();
+
+            // still holding the lock, so that following changes of the items cannot overtake the batch
+            sendBulk ( changes );
+        }
+    }
+
+    private void sendBulk ( final List<ItemChange> changes )
+    {
+        final ItemChangeListener listener = this.listener;
+        if ( listener == null || changes.isEmpty () )
+        {
+            return;
+        }
+
+        if ( listener instanceof BulkItemChangeListener )
+        {
+            ( (BulkItemChangeListener)listener ).dataChanged ( changes );
+        }
+        else
+        {
+            for ( final ItemChange change : changes )
+            {
+                listener.dataChanged ( change.getItemId (), change.getValue (), change.getAttributes (), change.isCache () );
+            }
         }
     }
 
@@ -0,0 +1,187 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.da.server.common.impl.stats;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openscada.core.server.common.stats.ExponentialHistogram;
+import org.openscada.core.server.common.stats.ManagedConnection;
+import org.openscada.core.server.common.stats.TrafficStatistics;
+
+/**
+ * Samples the traffic statistics of all server connections of the process
+ * <p>
+ * On every {@link #tick()} the connections sending the most bytes and the
+ * connections with the most queued messages are reported as top lists. The
+ * request round trips of all connections are merged into one latency value.
+ * Connections are taken from {@link ManagedConnection#getConnections()}, so
+ * all protocols (GMPP and NGP) are covered.
+ * </p>
+ * 
+ * @since 1.1
+ */
+public class ConnectionTrafficTracker implements Tickable
+{
+    private static final Comparator<HotSpotTracker.Entry> ENTRY_COMPARATOR = new Comparator<HotSpotTracker.Entry> () {
+
+        @Override
+        public int compare ( final HotSpotTracker.Entry o1, final HotSpotTracker.Entry o2 )
+        {
+            final long c1 = o1.getCount ();
+            final long c2 = o2.getCount ();
+            return c1 < c2 ? 1 : c1 == c2 ? 0 : -1;
+        }
+    };
+
+    private final int size;
+
+    private HotSpotOutput bytesSentOutput;
+
+    private HotSpotOutput queuedMessagesOutput;
+
+    private LatencyOutput requestLatencyOutput;
+
+    private Map<ManagedConnection, Long> lastBytesSent = new HashMap<ManagedConnection, Long> ();
+
+    private Map<ManagedConnection, long[]> lastRoundTrips = new HashMap<ManagedConnection, long[]> ();
+
+    private long totalRoundTrips;
+
+    public ConnectionTrafficTracker ( final int size )
+    {
+        this.size = size;
+    }
+
+    public void setBytesSentOutput ( final HotSpotOutput bytesSentOutput )
+    {
+        this.bytesSentOutput = bytesSentOutput;
+    }
+
+    public void setQueuedMessagesOutput ( final HotSpotOutput queuedMessagesOutput )
+    {
+        this.queuedMessagesOutput = queuedMessagesOutput;
+    }
+
+    public void setRequestLatencyOutput ( final LatencyOutput requestLatencyOutput )
+    {
+        this.requestLatencyOutput = requestLatencyOutput;
+    }
+
+    @Override
+    public void tick ()
+    {
+        final Collection<ManagedConnection> connections = ManagedConnection.getConnections ();
+
+        final Map<ManagedConnection, Long> bytesSent = new HashMap<ManagedConnection, Long> ( connections.size () );
+        final Map<ManagedConnection, long[]> roundTrips = new HashMap<ManagedConnection, long[]> ( connections.size () );
+
+        final List<HotSpotTracker.Entry> bytesEntries = new ArrayList<HotSpotTracker.Entry> ( connections.size () );
+        final List<HotSpotTracker.Entry> queueEntries = new ArrayList<HotSpotTracker.Entry> ( connections.size () );
+        final long[] tickCounts = new long[ExponentialHistogram.BUCKETS];
+
+        for ( final ManagedConnection connection : connections )
+        {
+            final String key = makeKey ( connection );
+
+            final long queued = connection.getQueuedMessages ();
+            if ( queued > 0 )
+            {
+                queueEntries.add ( new HotSpotTracker.Entry ( key, queued ) );
+            }
+
+            final TrafficStatistics traffic = connection.getTrafficStatistics ();
+            if ( traffic == null )
+            {
+                continue;
+            }
+
+            // bytes sent since the last tick, new connections start from zero
+            final long sent = traffic.getBytesSent ();
+            bytesSent.put ( connection, sent );
+            final Long lastSent = this.lastBytesSent.get ( connection );
+            final long sentDelta = sent - ( lastSent == null ? 0 : lastSent );
+            if ( sentDelta > 0 )
+            {
+                bytesEntries.add ( new HotSpotTracker.Entry ( key, sentDelta ) );
+            }
+
+            // the histograms of the connections are cumulative, report the difference
+            final long[] counts = traffic.getRoundTrips ().getCounts ();
+            roundTrips.put ( connection, counts );
+            final long[] lastCounts = this.lastRoundTrips.get ( connection );
+            for ( int i = 0; i < counts.length; i++ )
+            {
+                tickCounts[i] += counts[i] - ( lastCounts == null ? 0 : lastCounts[i] );
+            }
+        }
+
+        // only keep the state of connections which are still present
+        this.lastBytesSent = bytesSent;
+        this.lastRoundTrips = roundTrips;
+
+        setTop ( this.bytesSentOutput, bytesEntries );
+        setTop ( this.queuedMessagesOutput, queueEntries );
+        setLatency ( tickCounts );
+    }
+
+    private void setTop ( final HotSpotOutput output, final List<HotSpotTracker.Entry> entries )
+    {
+        if ( output == null )
+        {
+            return;
+        }
+
+        Collections.sort ( entries, ENTRY_COMPARATOR );
+        output.setTop ( Collections.unmodifiableList ( new ArrayList<HotSpotTracker.Entry> ( entries.subList ( 0, Math.min ( this.size, entries.size () ) ) ) ) );
+    }
+
+    private void setLatency ( final long[] counts )
+    {
+        long count = 0;
+        long max = 0;
+        for ( int i = 0; i < counts.length; i++ )
+        {
+            if ( counts[i] > 0 )
+            {
+                count += counts[i];
+                max = ExponentialHistogram.upperBound ( i );
+            }
+        }
+        this.totalRoundTrips += count;
+
+        if ( this.requestLatencyOutput != null )
+        {
+            this.requestLatencyOutput.setTickValue ( count, this.totalRoundTrips, ExponentialHistogram.percentile ( counts, 0.5 ), ExponentialHistogram.percentile ( counts, 0.9 ), ExponentialHistogram.percentile ( counts, 0.99 ), max );
+        }
+    }
+
+    private static String makeKey ( final ManagedConnection connection )
+    {
+        final String remoteAddress = connection.getRemoteAddress ();
+        return remoteAddress != null ? remoteAddress : String.format ( "%08x", System.identityHashCode ( connection ) );
+    }
+}
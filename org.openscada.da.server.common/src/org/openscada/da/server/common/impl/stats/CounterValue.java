@@ -27,19 +27,18 @@ public class CounterValue implements Tickable
 
     private final static Logger logger = LoggerFactory.getLogger ( CounterValue.class );
 
-    private long total = 0;
+    private final StripedCounter total = new StripedCounter ();
 
-    private long lastTickValue = 0;
+    private final StripedCounter lastTickValue = new StripedCounter ();
 
     private long lastTimestamp = 0;
 
     private CounterOutput output;
 
-    public synchronized void add ( final long value )
+    public void add ( final long value )
     {
-        this.total += value;
-        this.lastTickValue = this.lastTickValue + Math.abs ( value );
-        logger.debug ( "Adding: {}, LastTickValue: {}", value, this.lastTickValue );
+        this.total.add ( value );
+        this.lastTickValue.add ( Math.abs ( value ) );
     }
 
     @Override
@@ -58,16 +57,13 @@ public class CounterValue implements Tickable
             diff = 1;
         }
 
-        // we need to do this here ... since otherwise the update call later will
-        // increment the counter and setting the tickValue to null will discard
-        // this information
-        final long lastTickValue = this.lastTickValue;
-        this.lastTickValue = 0;
+        // fetch and reset in one step, so that concurrent updates go to the next tick
+        final long lastTickValue = this.lastTickValue.sumThenReset ();
 
         // calculate the average
         final double avg = (double)lastTickValue / (double)diff;
         logger.debug ( "LastTickValue: {}, Diff: {}, Avg: {}", new Object[] { lastTickValue, diff, avg } );
-        this.output.setTickValue ( avg, this.total );
+        this.output.setTickValue ( avg, this.total.sum () );
     }
 
     public void setOutput ( final CounterOutput output )
@@ -0,0 +1,145 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+
+package org.openscada.da.server.common.impl.stats;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectInstance;
+import javax.management.ObjectName;
+
+import org.openscada.core.Variant;
+import org.openscada.da.server.browser.common.FolderCommon;
+import org.openscada.da.server.common.AttributeMode;
+import org.openscada.da.server.common.chain.DataItemInputChained;
+import org.openscada.da.server.common.impl.HiveCommon;
+import org.openscada.utils.concurrent.DirectExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Exports the top entries of a {@link HotSpotTracker} as data item and MX
+ * bean
+ * 
+ * @since 1.1
+ */
+public class DataItemHotSpotOutput implements HotSpotOutput
+{
+    private final static Logger logger = LoggerFactory.getLogger ( DataItemHotSpotOutput.class );
+
+    private final DataItemInputChained topItem;
+
+    private final MBeanServer mbs;
+
+    private final HotSpotOutputMXBeanImpl export;
+
+    private ObjectInstance exportInstance;
+
+    private final String itemId;
+
+    public DataItemHotSpotOutput ( final String itemId )
+    {
+        this.itemId = itemId;
+        this.topItem = new DataItemInputChained ( itemId + ".top", DirectExecutor.INSTANCE );
+
+        this.mbs = ManagementFactory.getPlatformMBeanServer ();
+
+        this.export = new HotSpotOutputMXBeanImpl ();
+    }
+
+    @Override
+    public void register ( final HiveCommon hive, final FolderCommon rootFolder, final String description )
+    {
+        final Map<String, Variant> attributes = new HashMap<String, Variant> ();
+
+        hive.registerItem ( this.topItem );
+        attributes.put ( "description", Variant.valueOf ( description + " - Top entries" ) );
+        rootFolder.add ( this.topItem.getInformation ().getName (), this.topItem, attributes );
+
+        try
+        {
+            this.exportInstance = this.mbs.registerMBean ( this.export, makeName ( hive.getHiveId () + ".stats", this.itemId ) );
+        }
+        catch ( final Exception e )
+        {
+            logger.warn ( "Failed to export statistics", e );
+        }
+    }
+
+    private ObjectName makeName ( final String domain, final String description ) throws MalformedObjectNameException, NullPointerException
+    {
+        final Hashtable<String, String> properties = new Hashtable<String, String> ( 1 );
+        properties.put ( "value", description );
+        return new ObjectName ( domain, properties );
+    }
+
+    @Override
+    public void unregister ( final HiveCommon hive, final FolderCommon rootFolder )
+    {
+        rootFolder.remove ( this.topItem );
+        hive.unregisterItem ( this.topItem );
+
+        if ( this.exportInstance != null )
+        {
+            try
+            {
+                this.mbs.unregisterMBean ( this.exportInstance.getObjectName () );
+            }
+            catch ( final Exception e )
+            {
+                logger.warn ( "Failed to unregister top entries", e );
+            }
+            this.exportInstance = null;
+        }
+    }
+
+    @Override
+    public void setTop ( final List<HotSpotTracker.Entry> entries )
+    {
+        final String[] data = new String[entries.size ()];
+        final Map<String, Variant> attributes = new HashMap<String, Variant> ( entries.size () );
+
+        int i = 0;
+        final StringBuilder sb = new StringBuilder ();
+        for ( final HotSpotTracker.Entry entry : entries )
+        {
+            data[i] = entry.toString ();
+            if ( i > 0 )
+            {
+                sb.append ( ", " );
+            }
+            sb.append ( data[i] );
+            i++;
+            attributes.put ( "top." + i, Variant.valueOf ( data[i - 1] ) );
+        }
+
+        // replace the attributes, so that the entries of a longer list are removed
+        this.topItem.updateData ( Variant.valueOf ( sb.toString () ), attributes, AttributeMode.SET );
+        this.export.setEntries ( data );
+    }
+
+}
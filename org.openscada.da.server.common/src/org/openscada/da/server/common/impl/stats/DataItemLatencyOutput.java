@@ -0,0 +1,158 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+
+package org.openscada.da.server.common.impl.stats;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectInstance;
+import javax.management.ObjectName;
+
+import org.openscada.core.Variant;
+import org.openscada.da.server.browser.common.FolderCommon;
+import org.openscada.da.server.common.chain.DataItemInputChained;
+import org.openscada.da.server.common.impl.HiveCommon;
+import org.openscada.utils.concurrent.DirectExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Exports the values of a {@link LatencyHistogram} as data items and MX bean
+ * 
+ * @since 1.1
+ */
+public class DataItemLatencyOutput implements LatencyOutput
+{
+    private final static Logger logger = LoggerFactory.getLogger ( DataItemLatencyOutput.class );
+
+    private final DataItemInputChained countItem;
+
+    private final DataItemInputChained p50Item;
+
+    private final DataItemInputChained p90Item;
+
+    private final DataItemInputChained p99Item;
+
+    private final DataItemInputChained maxItem;
+
+    private final MBeanServer mbs;
+
+    private final LatencyOutputMXBeanImpl export;
+
+    private ObjectInstance exportInstance;
+
+    private final String itemId;
+
+    public DataItemLatencyOutput ( final String itemId )
+    {
+        this.itemId = itemId;
+        this.countItem = new DataItemInputChained ( itemId + ".count", DirectExecutor.INSTANCE );
+        this.p50Item = new DataItemInputChained ( itemId + ".p50", DirectExecutor.INSTANCE );
+        this.p90Item = new DataItemInputChained ( itemId + ".p90", DirectExecutor.INSTANCE );
+        this.p99Item = new DataItemInputChained ( itemId + ".p99", DirectExecutor.INSTANCE );
+        this.maxItem = new DataItemInputChained ( itemId + ".max", DirectExecutor.INSTANCE );
+
+        this.mbs = ManagementFactory.getPlatformMBeanServer ();
+
+        this.export = new LatencyOutputMXBeanImpl ();
+    }
+
+    @Override
+    public void register ( final HiveCommon hive, final FolderCommon rootFolder, final String description )
+    {
+        registerItem ( hive, rootFolder, this.countItem, description + " - Number of operations" );
+        registerItem ( hive, rootFolder, this.p50Item, description + " - 50th percentile (us)" );
+        registerItem ( hive, rootFolder, this.p90Item, description + " - 90th percentile (us)" );
+        registerItem ( hive, rootFolder, this.p99Item, description + " - 99th percentile (us)" );
+        registerItem ( hive, rootFolder, this.maxItem, description + " - Maximum (us)" );
+
+        try
+        {
+            this.exportInstance = this.mbs.registerMBean ( this.export, makeName ( hive.getHiveId () + ".stats", this.itemId ) );
+        }
+        catch ( final Exception e )
+        {
+            logger.warn ( "Failed to export statistics", e );
+        }
+    }
+
+    private void registerItem ( final HiveCommon hive, final FolderCommon rootFolder, final DataItemInputChained item, final String description )
+    {
+        final Map<String, Variant> attributes = new HashMap<String, Variant> ( 1 );
+        attributes.put ( "description", Variant.valueOf ( description ) );
+
+        hive.registerItem ( item );
+        rootFolder.add ( item.getInformation ().getName (), item, attributes );
+    }
+
+    private void unregisterItem ( final HiveCommon hive, final FolderCommon rootFolder, final DataItemInputChained item )
+    {
+        rootFolder.remove ( item );
+        hive.unregisterItem ( item );
+    }
+
+    private ObjectName makeName ( final String domain, final String description ) throws MalformedObjectNameException, NullPointerException
+    {
+        final Hashtable<String, String> properties = new Hashtable<String, String> ( 1 );
+        properties.put ( "value", description );
+        return new ObjectName ( domain, properties );
+    }
+
+    @Override
+    public void unregister ( final HiveCommon hive, final FolderCommon rootFolder )
+    {
+        unregisterItem ( hive, rootFolder, this.countItem );
+        unregisterItem ( hive, rootFolder, this.p50Item );
+        unregisterItem ( hive, rootFolder, this.p90Item );
+        unregisterItem ( hive, rootFolder, this.p99Item );
+        unregisterItem ( hive, rootFolder, this.maxItem );
+
+        if ( this.exportInstance != null )
+        {
+            try
+            {
+                this.mbs.unregisterMBean ( this.exportInstance.getObjectName () );
+            }
+            catch ( final Exception e )
+            {
+                logger.warn ( "Failed to unregister latency", e );
+            }
+            this.exportInstance = null;
+        }
+    }
+
+    @Override
+    public void setTickValue ( final long count, final long total, final long p50, final long p90, final long p99, final long max )
+    {
+        this.countItem.updateData ( Variant.valueOf ( count ), null, null );
+        this.p50Item.updateData ( Variant.valueOf ( p50 ), null, null );
+        this.p90Item.updateData ( Variant.valueOf ( p90 ), null, null );
+        this.p99Item.updateData ( Variant.valueOf ( p99 ), null, null );
+        this.maxItem.updateData ( Variant.valueOf ( max ), null, null );
+        this.export.setValues ( count, total, p50, p90, p99, max );
+    }
+
+}
@@ -23,12 +23,20 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
+import org.openscada.core.Variant;
+import org.openscada.core.server.common.session.AbstractSessionImpl;
+import org.openscada.da.core.server.Session;
 import org.openscada.da.server.browser.common.FolderCommon;
+import org.openscada.da.server.common.DataItem;
 import org.openscada.da.server.common.impl.HiveCommon;
 import org.openscada.utils.concurrent.NamedThreadFactory;
 
 public class HiveCommonStatisticsGenerator extends HiveStatisticsGenerator
 {
+    private static final int TOP_SIZE = Integer.getInteger ( "org.openscada.da.server.common.stats.topSize", 10 );
+
+    private static final int SAMPLE_RATE = Integer.getInteger ( "org.openscada.da.server.common.stats.sampleRate", 16 );
+
     private HiveCommon hive;
 
     private final String itemPrefix;
@@ -49,6 +57,26 @@ public class HiveCommonStatisticsGenerator extends HiveStatisticsGenerator
 
     private DataItemCounterOutput valueEventsOutput;
 
+    private final HotSpotTracker itemEvents = new HotSpotTracker ( TOP_SIZE, SAMPLE_RATE );
+
+    private final HotSpotTracker sessionEvents = new HotSpotTracker ( TOP_SIZE, SAMPLE_RATE );
+
+    private final LatencyHistogram writeLatency = new LatencyHistogram ();
+
+    private final DataItemHotSpotOutput itemEventsOutput;
+
+    private final DataItemHotSpotOutput sessionEventsOutput;
+
+    private final DataItemLatencyOutput writeLatencyOutput;
+
+    private final ConnectionTrafficTracker connectionTraffic = new ConnectionTrafficTracker ( TOP_SIZE );
+
+    private final DataItemHotSpotOutput connectionBytesSentOutput;
+
+    private final DataItemHotSpotOutput connectionQueuedMessagesOutput;
+
+    private final DataItemLatencyOutput requestLatencyOutput;
+
     public HiveCommonStatisticsGenerator ( final String itemPrefix )
     {
         this.itemPrefix = itemPrefix;
@@ -58,6 +86,12 @@ public class HiveCommonStatisticsGenerator extends HiveStatisticsGenerator
         this.sessionsValue.setOutput ( this.sessionsOutput = new DataItemCounterOutput ( getId ( "sessions" ) ) );
         this.attributeEventsCounter.setOutput ( this.attributeEventsOutput = new DataItemCounterOutput ( getId ( "attributeEvents" ) ) );
         this.valueEventsCounter.setOutput ( this.valueEventsOutput = new DataItemCounterOutput ( getId ( "valueEvents" ) ) );
+        this.itemEvents.setOutput ( this.itemEventsOutput = new DataItemHotSpotOutput ( getId ( "itemEvents" ) ) );
+        this.sessionEvents.setOutput ( this.sessionEventsOutput = new DataItemHotSpotOutput ( getId ( "sessionEvents" ) ) );
+        this.writeLatency.setOutput ( this.writeLatencyOutput = new DataItemLatencyOutput ( getId ( "writeLatency" ) ) );
+        this.connectionTraffic.setBytesSentOutput ( this.connectionBytesSentOutput = new DataItemHotSpotOutput ( getId ( "connectionBytesSent" ) ) );
+        this.connectionTraffic.setQueuedMessagesOutput ( this.connectionQueuedMessagesOutput = new DataItemHotSpotOutput ( getId ( "connectionQueuedMessages" ) ) );
+        this.connectionTraffic.setRequestLatencyOutput ( this.requestLatencyOutput = new DataItemLatencyOutput ( getId ( "requestLatency" ) ) );
     }
 
     /**
@@ -76,6 +110,12 @@ public class HiveCommonStatisticsGenerator extends HiveStatisticsGenerator
         registerOutput ( "valueWrites", this.valuesWritesOutput, "Number of value write operations" );
         registerOutput ( "valueEvents", this.valueEventsOutput, "Number of value events" );
         registerOutput ( "attributeEvents", this.attributeEventsOutput, "Number of attribute events" );
+        this.itemEventsOutput.register ( hive, folder, "Items with the most events" );
+        this.sessionEventsOutput.register ( hive, folder, "Sessions receiving the most events" );
+        this.writeLatencyOutput.register ( hive, folder, "Latency of write operations" );
+        this.connectionBytesSentOutput.register ( hive, folder, "Connections sending the most bytes" );
+        this.connectionQueuedMessagesOutput.register ( hive, folder, "Connections with the most queued messages" );
+        this.requestLatencyOutput.register ( hive, folder, "Round trip time of requests" );
 
         this.timer = Executors.newSingleThreadScheduledExecutor ( new NamedThreadFactory ( "HiveStatsTimer" ) );
         this.timer.scheduleAtFixedRate ( new Runnable () {
@@ -112,6 +152,12 @@ public class HiveCommonStatisticsGenerator extends HiveStatisticsGenerator
             unregisterOutput ( "valueWrites", this.valuesWritesOutput );
             unregisterOutput ( "attributeEvents", this.attributeEventsOutput );
             unregisterOutput ( "valueEvents", this.valueEventsOutput );
+            this.itemEventsOutput.unregister ( this.hive, this.folder );
+            this.sessionEventsOutput.unregister ( this.hive, this.folder );
+            this.writeLatencyOutput.unregister ( this.hive, this.folder );
+            this.connectionBytesSentOutput.unregister ( this.hive, this.folder );
+            this.connectionQueuedMessagesOutput.unregister ( this.hive, this.folder );
+            this.requestLatencyOutput.unregister ( this.hive, this.folder );
             this.hive = null;
         }
         if ( this.folder != null )
@@ -125,6 +171,55 @@ public class HiveCommonStatisticsGenerator extends HiveStatisticsGenerator
         }
     }
 
+    @Override
+    public void valueChanged ( final DataItem item, final Variant variant, final boolean cache )
+    {
+        super.valueChanged ( item, variant, cache );
+        this.itemEvents.hit ( item.getInformation ().getName () );
+    }
+
+    @Override
+    public void attributesChanged ( final DataItem item, final int size )
+    {
+        super.attributesChanged ( item, size );
+        this.itemEvents.hit ( item.getInformation ().getName () );
+    }
+
+    @Override
+    public void sessionNotified ( final Session session, final DataItem item )
+    {
+        if ( this.sessionEvents.sample () )
+        {
+            this.sessionEvents.record ( makeSessionKey ( session ) );
+        }
+    }
+
+    @Override
+    public void writeCompleted ( final Session session, final String itemId, final long durationNanos )
+    {
+        this.writeLatency.record ( durationNanos, TimeUnit.NANOSECONDS );
+    }
+
+    private static String makeSessionKey ( final Session session )
+    {
+        String user = null;
+        if ( session instanceof AbstractSessionImpl )
+        {
+            user = ( (AbstractSessionImpl)session ).getProperties ().get ( "user" );
+        }
+        return String.format ( "%s@%08x", user == null ? "anonymous" : user, System.identityHashCode ( session ) );
+    }
+
+    @Override
+    public void tick ()
+    {
+        super.tick ();
+        this.itemEvents.tick ();
+        this.sessionEvents.tick ();
+        this.writeLatency.tick ();
+        this.connectionTraffic.tick ();
+    }
+
     protected String getId ( final String itemId )
     {
         return this.itemPrefix + "." + itemId;
@@ -43,4 +43,20 @@ public interface HiveEventListener
 
     public abstract void itemUnregistered ( DataItem item );
 
+    /**
+     * Called when a write operation of a session completed
+     * 
+     * @param durationNanos
+     *            the time between starting and completing the operation
+     * @since 1.1
+     */
+    public abstract void writeCompleted ( Session session, String itemId, long durationNanos );
+
+    /**
+     * Called when a session got notified about an item change
+     * 
+     * @since 1.1
+     */
+    public abstract void sessionNotified ( Session session, DataItem item );
+
 }
@@ -96,4 +96,14 @@ public class HiveStatisticsGenerator implements HiveEventListener, Tickable
     {
         this.itemsValue.add ( -1 );
     }
+
+    @Override
+    public void writeCompleted ( final Session session, final String itemId, final long durationNanos )
+    {
+    }
+
+    @Override
+    public void sessionNotified ( final Session session, final DataItem item )
+    {
+    }
 }
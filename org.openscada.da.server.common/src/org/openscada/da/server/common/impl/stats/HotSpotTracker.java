@@ -0,0 +1,228 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+
+package org.openscada.da.server.common.impl.stats;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks the most frequent keys of an event stream
+ * <p>
+ * Each event is recorded with a probability of one to the sample rate, so the
+ * cost on the hot path is one step of a thread local xorshift generator for
+ * most of the events. Sampling randomly instead of every n-th event avoids
+ * aliasing with cyclic event sources, like items polled in a fixed order on
+ * the single operation thread. The recorded counts are multiplied with the
+ * sample rate when the top entries are calculated on {@link #tick()}.
+ * </p>
+ * 
+ * @since 1.1
+ */
+public class HotSpotTracker implements Tickable
+{
+    private static final Comparator<Entry> ENTRY_COMPARATOR = new Comparator<Entry> () {
+
+        @Override
+        public int compare ( final Entry o1, final Entry o2 )
+        {
+            final long c1 = o1.getCount ();
+            final long c2 = o2.getCount ();
+            return c1 < c2 ? 1 : c1 == c2 ? 0 : -1;
+        }
+    };
+
+    /**
+     * One entry of the top list
+     */
+    public static class Entry
+    {
+        private final String key;
+
+        private final long count;
+
+        public Entry ( final String key, final long count )
+        {
+            this.key = key;
+            this.count = count;
+        }
+
+        public String getKey ()
+        {
+            return this.key;
+        }
+
+        /**
+         * @return the estimated number of events of this key during the last
+         *         period
+         */
+        public long getCount ()
+        {
+            return this.count;
+        }
+
+        @Override
+        public String toString ()
+        {
+            return this.key + "=" + this.count;
+        }
+    }
+
+    private final int sampleRate;
+
+    private final int size;
+
+    private final AtomicLong seeds;
+
+    private final ThreadLocal<long[]> random = new ThreadLocal<long[]> () {
+
+        @Override
+        protected long[] initialValue ()
+        {
+            final long seed = HotSpotTracker.this.seeds.addAndGet ( 0x9E3779B97F4A7C15L );
+            return new long[] { seed == 0 ? 1 : seed };
+        }
+    };
+
+    private volatile ConcurrentMap<String, AtomicLong> counts = new ConcurrentHashMap<String, AtomicLong> ();
+
+    private volatile List<Entry> top = Collections.emptyList ();
+
+    private HotSpotOutput output;
+
+    /**
+     * @param size
+     *            the number of top entries to keep
+     * @param sampleRate
+     *            record one of n events on average, <code>1</code> records
+     *            all events
+     */
+    public HotSpotTracker ( final int size, final int sampleRate )
+    {
+        this ( size, sampleRate, System.nanoTime () );
+    }
+
+    HotSpotTracker ( final int size, final int sampleRate, final long seed )
+    {
+        this.size = size;
+        this.sampleRate = Math.max ( 1, sampleRate );
+        this.seeds = new AtomicLong ( seed );
+    }
+
+    public void setOutput ( final HotSpotOutput output )
+    {
+        this.output = output;
+    }
+
+    /**
+     * Check if the current event should be recorded
+     * <p>
+     * Use this together with {@link #record(String)} if creating the key is
+     * expensive.
+     * </p>
+     */
+    public boolean sample ()
+    {
+        if ( this.sampleRate == 1 )
+        {
+            return true;
+        }
+
+        final long[] state = this.random.get ();
+
+        long x = state[0];
+        x ^= x << 13;
+        x ^= x >>> 7;
+        x ^= x << 17;
+        state[0] = x;
+
+        return ( x >>> 1 ) % this.sampleRate == 0;
+    }
+
+    /**
+     * Record a sampled event
+     */
+    public void record ( final String key )
+    {
+        final ConcurrentMap<String, AtomicLong> counts = this.counts;
+
+        AtomicLong counter = counts.get ( key );
+        if ( counter == null )
+        {
+            final AtomicLong newCounter = new AtomicLong ();
+            counter = counts.putIfAbsent ( key, newCounter );
+            if ( counter == null )
+            {
+                counter = newCounter;
+            }
+        }
+        counter.incrementAndGet ();
+    }
+
+    /**
+     * Sample and record an event
+     */
+    public void hit ( final String key )
+    {
+        if ( sample () )
+        {
+            record ( key );
+        }
+    }
+
+    /**
+     * Get the top entries of the last period
+     * 
+     * @return the top entries, ordered by count, never <code>null</code>
+     */
+    public List<Entry> getTop ()
+    {
+        return this.top;
+    }
+
+    @Override
+    public void tick ()
+    {
+        final Map<String, AtomicLong> counts = this.counts;
+        this.counts = new ConcurrentHashMap<String, AtomicLong> ();
+
+        final List<Entry> entries = new ArrayList<Entry> ( counts.size () );
+        for ( final Map.Entry<String, AtomicLong> entry : counts.entrySet () )
+        {
+            entries.add ( new Entry ( entry.getKey (), entry.getValue ().get () * this.sampleRate ) );
+        }
+        Collections.sort ( entries, ENTRY_COMPARATOR );
+
+        final List<Entry> top = Collections.unmodifiableList ( new ArrayList<Entry> ( entries.subList ( 0, Math.min ( this.size, entries.size () ) ) ) );
+        this.top = top;
+
+        if ( this.output != null )
+        {
+            this.output.setTop ( top );
+        }
+    }
+}
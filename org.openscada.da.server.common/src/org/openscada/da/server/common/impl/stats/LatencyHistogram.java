@@ -0,0 +1,76 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+
+package org.openscada.da.server.common.impl.stats;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openscada.core.server.common.stats.ExponentialHistogram;
+
+/**
+ * A histogram of operation latencies
+ * <p>
+ * The values are kept in an {@link ExponentialHistogram}, which is reset on
+ * every {@link #tick()}.
+ * </p>
+ * 
+ * @since 1.1
+ */
+public class LatencyHistogram implements Tickable
+{
+    private final ExponentialHistogram histogram = new ExponentialHistogram ();
+
+    private long total;
+
+    private LatencyOutput output;
+
+    public void setOutput ( final LatencyOutput output )
+    {
+        this.output = output;
+    }
+
+    /**
+     * Record one operation
+     * 
+     * @param duration
+     *            the duration of the operation
+     * @param unit
+     *            the time unit of the duration
+     */
+    public void record ( final long duration, final TimeUnit unit )
+    {
+        this.histogram.record ( duration, unit );
+    }
+
+    @Override
+    public synchronized void tick ()
+    {
+        final long[] counts = this.histogram.drainCounts ();
+        final long max = this.histogram.drainMax ();
+        final long count = ExponentialHistogram.count ( counts );
+        this.total += count;
+
+        if ( this.output != null )
+        {
+            this.output.setTickValue ( count, this.total, ExponentialHistogram.percentile ( counts, 0.5 ), ExponentialHistogram.percentile ( counts, 0.9 ), ExponentialHistogram.percentile ( counts, 0.99 ), max );
+        }
+    }
+}
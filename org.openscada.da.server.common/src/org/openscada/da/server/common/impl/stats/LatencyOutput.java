@@ -0,0 +1,40 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+
+package org.openscada.da.server.common.impl.stats;
+
+import org.openscada.da.server.browser.common.FolderCommon;
+import org.openscada.da.server.common.impl.HiveCommon;
+
+/**
+ * @since 1.1
+ */
+public interface LatencyOutput
+{
+    /**
+     * Set the values of the last period, all latencies are in microseconds
+     */
+    public abstract void setTickValue ( long count, long total, long p50, long p90, long p99, long max );
+
+    public abstract void register ( HiveCommon hive, FolderCommon folder, String description );
+
+    public abstract void unregister ( HiveCommon hive, FolderCommon folder );
+}
@@ -0,0 +1,86 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+
+package org.openscada.da.server.common.impl.stats;
+
+/**
+ * @since 1.1
+ */
+public class LatencyOutputMXBeanImpl implements LatencyOutputMXBean
+{
+    private long count;
+
+    private long total;
+
+    private long p50;
+
+    private long p90;
+
+    private long p99;
+
+    private long max;
+
+    @Override
+    public synchronized long getCount ()
+    {
+        return this.count;
+    }
+
+    @Override
+    public synchronized long getTotal ()
+    {
+        return this.total;
+    }
+
+    @Override
+    public synchronized long getP50 ()
+    {
+        return this.p50;
+    }
+
+    @Override
+    public synchronized long getP90 ()
+    {
+        return this.p90;
+    }
+
+    @Override
+    public synchronized long getP99 ()
+    {
+        return this.p99;
+    }
+
+    @Override
+    public synchronized long getMax ()
+    {
+        return this.max;
+    }
+
+    public synchronized void setValues ( final long count, final long total, final long p50, final long p90, final long p99, final long max )
+    {
+        this.count = count;
+        this.total = total;
+        this.p50 = p50;
+        this.p90 = p90;
+        this.p99 = p99;
+        this.max = max;
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+
+package org.openscada.da.server.common.impl.stats;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter which spreads concurrent updates over a number of cells
+ * <p>
+ * Each thread updates the cell selected by its thread id, so concurrent
+ * writers rarely touch the same cache line. Reading the counter sums up all
+ * cells and is more expensive than updating it.
+ * </p>
+ * 
+ * @since 1.1
+ */
+public class StripedCounter
+{
+    /**
+     * Distance between two used cells, keeps cells on different cache lines
+     */
+    private static final int PADDING = 8;
+
+    private static final int STRIPES;
+
+    static
+    {
+        int stripes = 1;
+        while ( stripes < Runtime.getRuntime ().availableProcessors () * 2 )
+        {
+            stripes <<= 1;
+        }
+        STRIPES = stripes;
+    }
+
+    private final AtomicLongArray cells = new AtomicLongArray ( STRIPES * PADDING );
+
+    public void add ( final long value )
+    {
+        final int index = (int) ( Thread.currentThread ().getId () & ( STRIPES - 1 ) ) * PADDING;
+        this.cells.addAndGet ( index, value );
+    }
+
+    public void increment ()
+    {
+        add ( 1 );
+    }
+
+    /**
+     * Get the current sum
+     * <p>
+     * The result is not an atomic snapshot if there are concurrent updates
+     * </p>
+     */
+    public long sum ()
+    {
+        long result = 0;
+        for ( int i = 0; i < STRIPES; i++ )
+        {
+            result += this.cells.get ( i * PADDING );
+        }
+        return result;
+    }
+
+    /**
+     * Get the current sum and reset all cells to zero
+     * <p>
+     * Updates happening concurrently are either counted by this call or stay
+     * in the counter, they are never lost.
+     * </p>
+     */
+    public long sumThenReset ()
+    {
+        long result = 0;
+        for ( int i = 0; i < STRIPES; i++ )
+        {
+            result += this.cells.getAndSet ( i * PADDING, 0 );
+        }
+        return result;
+    }
+}
@@ -117,7 +117,8 @@ public class FolderItemFactory extends HiveItemFactory
         {
             return;
         }
-        this.folder.add ( name, item.getInformation (), attributes );
+        // deferred while the hive collects registrations
+        this.hive.addToFolder ( this.folder, name, item.getInformation (), attributes );
     }
 
     public FolderCommon getFolder ()
@@ -0,0 +1,111 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+
+package org.openscada.da.server.browser.common.query;
+
+import java.util.Collection;
+import java.util.regex.Pattern;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openscada.core.Variant;
+import org.openscada.da.server.common.MemoryDataItem;
+import org.openscada.utils.collection.MapBuilder;
+
+public class ItemIndexTest
+{
+    private ItemIndex index;
+
+    @Before
+    public void init ()
+    {
+        this.index = new ItemIndex ( "type" );
+        add ( "site.area1.pump1.value", "pump" );
+        add ( "site.area1.valve1.value", "valve" );
+        add ( "site.area2.pump1.value", "pump" );
+        add ( "other.value", null );
+    }
+
+    private void add ( final String id, final String type )
+    {
+        final MapBuilder<String, Variant> builder = new MapBuilder<String, Variant> ();
+        if ( type != null )
+        {
+            builder.put ( "type", Variant.valueOf ( type ) );
+        }
+        this.index.add ( new ItemDescriptor ( new MemoryDataItem ( id ), builder.getMap () ) );
+    }
+
+    @Test
+    public void testPrefix ()
+    {
+        Assert.assertEquals ( 3, this.index.findByPrefix ( "site." ).size () );
+        Assert.assertEquals ( 2, this.index.findByPrefix ( "site.area1." ).size () );
+        Assert.assertEquals ( 0, this.index.findByPrefix ( "none" ).size () );
+        Assert.assertEquals ( 4, this.index.findByPrefix ( "" ).size () );
+    }
+
+    @Test
+    public void testAttribute ()
+    {
+        Assert.assertEquals ( 2, this.index.findByAttribute ( "type", Variant.valueOf ( "pump" ) ).size () );
+        Assert.assertNull ( this.index.findByAttribute ( "description", Variant.valueOf ( "pump" ) ) );
+
+        this.index.remove ( new ItemDescriptor ( new MemoryDataItem ( "site.area2.pump1.value" ), null ) );
+        Assert.assertEquals ( 1, this.index.findByAttribute ( "type", Variant.valueOf ( "pump" ) ).size () );
+    }
+
+    @Test
+    public void testPattern ()
+    {
+        final Collection<ItemDescriptor> result = this.index.findByPattern ( Pattern.compile ( Pattern.quote ( "site." ) + ".*\\.pump1\\.value" ) );
+        Assert.assertEquals ( 2, result.size () );
+    }
+
+    @Test
+    public void testPatternAlternation ()
+    {
+        Assert.assertEquals ( 2, this.index.findByPattern ( Pattern.compile ( "site\\.area2\\..*|other\\..*" ) ).size () );
+        Assert.assertEquals ( 3, this.index.findByPattern ( Pattern.compile ( "site\\.(area1|area2)\\.pump1.*|site.*valve.*" ) ).size () );
+    }
+
+    @Test
+    public void testPatternFlags ()
+    {
+        Assert.assertEquals ( 3, this.index.findByPattern ( Pattern.compile ( "SITE\\..*", Pattern.CASE_INSENSITIVE ) ).size () );
+    }
+
+    @Test
+    public void testLiteralPrefix ()
+    {
+        Assert.assertEquals ( "site.area", ItemIndex.literalPrefix ( "^\\Qsite.area\\E.*" ) );
+        Assert.assertEquals ( "site.area", ItemIndex.literalPrefix ( "site\\.area.*" ) );
+        Assert.assertEquals ( "site", ItemIndex.literalPrefix ( "site.*" ) );
+        Assert.assertEquals ( "sit", ItemIndex.literalPrefix ( "site?" ) );
+        Assert.assertEquals ( "", ItemIndex.literalPrefix ( ".*" ) );
+        Assert.assertEquals ( "", ItemIndex.literalPrefix ( "ab|cd" ) );
+        Assert.assertEquals ( "", ItemIndex.literalPrefix ( "a(b)|c" ) );
+        Assert.assertEquals ( "site.", ItemIndex.literalPrefix ( "site\\.(a|b)" ) );
+        Assert.assertEquals ( "site", ItemIndex.literalPrefix ( "site[|]" ) );
+        Assert.assertEquals ( "a|b", ItemIndex.literalPrefix ( "\\Qa|b\\E.*" ) );
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.da.server.common;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openscada.core.Variant;
+import org.openscada.da.server.common.chain.DataItemInputChained;
+import org.openscada.utils.concurrent.DirectExecutor;
+
+public class NotificationDispatcherTest
+{
+    /**
+     * Runs tasks only when asked to
+     */
+    private static class ManualExecutor implements Executor
+    {
+        private final LinkedList<Runnable> tasks = new LinkedList<Runnable> ();
+
+        @Override
+        public void execute ( final Runnable command )
+        {
+            this.tasks.add ( command );
+        }
+
+        public int runAll ()
+        {
+            int count = 0;
+            Runnable task;
+            while ( ( task = this.tasks.poll () ) != null )
+            {
+                task.run ();
+                count++;
+            }
+            return count;
+        }
+    }
+
+    private static class Notification
+    {
+        private final Variant value;
+
+        private final Map<String, Variant> attributes;
+
+        private final boolean cache;
+
+        public Notification ( final Variant value, final Map<String, Variant> attributes, final boolean cache )
+        {
+            this.value = value;
+            this.attributes = attributes == null ? null : new HashMap<String, Variant> ( attributes );
+            this.cache = cache;
+        }
+    }
+
+    private static class RecordingListener implements ItemListener
+    {
+        private final List<Notification> notifications = new LinkedList<Notification> ();
+
+        @Override
+        public void dataChanged ( final DataItem item, final Variant variant, final Map<String, Variant> attributes, final boolean cache )
+        {
+            this.notifications.add ( new Notification ( variant, attributes, cache ) );
+        }
+    }
+
+    private DataItemInputChained item;
+
+    private RecordingListener listener;
+
+    @Before
+    public void setup ()
+    {
+        this.item = new DataItemInputChained ( "test", DirectExecutor.INSTANCE );
+        this.listener = new RecordingListener ();
+        this.item.setListener ( this.listener );
+    }
+
+    private static Map<String, Variant> attributes ( final String name, final int value )
+    {
+        final Map<String, Variant> attributes = new HashMap<String, Variant> ();
+        attributes.put ( name, Variant.valueOf ( value ) );
+        return attributes;
+    }
+
+    @Test
+    public void testConflation ()
+    {
+        final ManualExecutor executor = new ManualExecutor ();
+        final NotificationDispatcher dispatcher = new NotificationDispatcher ( executor );
+        this.item.setNotificationDispatcher ( dispatcher );
+
+        this.item.notifyData ( Variant.valueOf ( 1 ), attributes ( "a", 1 ), false );
+        this.item.notifyData ( Variant.valueOf ( 2 ), attributes ( "b", 2 ), false );
+        this.item.notifyData ( null, attributes ( "a", 3 ), false );
+
+        Assert.assertTrue ( this.listener.notifications.isEmpty () );
+        Assert.assertEquals ( 1, executor.runAll () );
+
+        Assert.assertEquals ( 1, this.listener.notifications.size () );
+        final Notification notification = this.listener.notifications.get ( 0 );
+        Assert.assertEquals ( Variant.valueOf ( 2 ), notification.value );
+        Assert.assertEquals ( Variant.valueOf ( 3 ), notification.attributes.get ( "a" ) );
+        Assert.assertEquals ( Variant.valueOf ( 2 ), notification.attributes.get ( "b" ) );
+        Assert.assertFalse ( notification.cache );
+
+        Assert.assertEquals ( 1, dispatcher.getDispatchedCount () );
+        Assert.assertEquals ( 2, dispatcher.getConflatedCount () );
+    }
+
+    @Test
+    public void testCacheReplacesPending ()
+    {
+        final ManualExecutor executor = new ManualExecutor ();
+        this.item.setNotificationDispatcher ( new NotificationDispatcher ( executor ) );
+
+        this.item.notifyData ( Variant.valueOf ( 1 ), attributes ( "a", 1 ), false );
+        this.item.notifyData ( Variant.valueOf ( 2 ), attributes ( "b", 2 ), true );
+        executor.runAll ();
+
+        Assert.assertEquals ( 1, this.listener.notifications.size () );
+        final Notification notification = this.listener.notifications.get ( 0 );
+        Assert.assertEquals ( Variant.valueOf ( 2 ), notification.value );
+        Assert.assertEquals ( attributes ( "b", 2 ), notification.attributes );
+        Assert.assertTrue ( notification.cache );
+    }
+
+    @Test
+    public void testOrderDuringDelivery ()
+    {
+        final ManualExecutor executor = new ManualExecutor ();
+        this.item.setNotificationDispatcher ( new NotificationDispatcher ( executor ) );
+
+        // publish the next change while the first one is being delivered
+        this.item.setListener ( new ItemListener () {
+
+            @Override
+            public void dataChanged ( final DataItem item, final Variant variant, final Map<String, Variant> attributes, final boolean cache )
+            {
+                NotificationDispatcherTest.this.listener.dataChanged ( item, variant, attributes, cache );
+                if ( Variant.valueOf ( 1 ).equals ( variant ) )
+                {
+                    NotificationDispatcherTest.this.item.notifyData ( Variant.valueOf ( 2 ), null, false );
+                }
+            }
+        } );
+
+        this.item.notifyData ( Variant.valueOf ( 1 ), null, false );
+        executor.runAll ();
+
+        Assert.assertEquals ( 2, this.listener.notifications.size () );
+        Assert.assertEquals ( Variant.valueOf ( 1 ), this.listener.notifications.get ( 0 ).value );
+        Assert.assertEquals ( Variant.valueOf ( 2 ), this.listener.notifications.get ( 1 ).value );
+    }
+
+    @Test
+    public void testSwitchDispatcher ()
+    {
+        final ManualExecutor executor1 = new ManualExecutor ();
+        final ManualExecutor executor2 = new ManualExecutor ();
+        this.item.setNotificationDispatcher ( new NotificationDispatcher ( executor1 ) );
+
+        this.item.notifyData ( Variant.valueOf ( 1 ), null, false );
+        this.item.setNotificationDispatcher ( new NotificationDispatcher ( executor2 ) );
+        this.item.notifyData ( Variant.valueOf ( 2 ), null, false );
+
+        // the new dispatcher must wait for the old one
+        Assert.assertEquals ( 0, executor2.runAll () );
+        Assert.assertTrue ( this.listener.notifications.isEmpty () );
+
+        executor1.runAll ();
+        executor2.runAll ();
+
+        Assert.assertEquals ( 2, this.listener.notifications.size () );
+        Assert.assertEquals ( Variant.valueOf ( 1 ), this.listener.notifications.get ( 0 ).value );
+        Assert.assertEquals ( Variant.valueOf ( 2 ), this.listener.notifications.get ( 1 ).value );
+    }
+
+    @Test
+    public void testSwitchToSynchronous ()
+    {
+        final ManualExecutor executor = new ManualExecutor ();
+        this.item.setNotificationDispatcher ( new NotificationDispatcher ( executor ) );
+
+        this.item.notifyData ( Variant.valueOf ( 1 ), null, false );
+        this.item.setNotificationDispatcher ( null );
+        this.item.notifyData ( Variant.valueOf ( 2 ), null, false );
+
+        Assert.assertTrue ( this.listener.notifications.isEmpty () );
+
+        executor.runAll ();
+
+        Assert.assertEquals ( 2, this.listener.notifications.size () );
+        Assert.assertEquals ( Variant.valueOf ( 1 ), this.listener.notifications.get ( 0 ).value );
+        Assert.assertEquals ( Variant.valueOf ( 2 ), this.listener.notifications.get ( 1 ).value );
+
+        // delivered right away from now on
+        this.item.notifyData ( Variant.valueOf ( 3 ), null, false );
+        Assert.assertEquals ( 3, this.listener.notifications.size () );
+        Assert.assertEquals ( 0, executor.runAll () );
+    }
+}
@@ -20,6 +20,7 @@
 package org.openscada.da.server.common.chain.test;
 
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -42,9 +43,14 @@ public class ItemListenerTestImpl implements ItemListener
         logger.info ( String.format ( "Data changed: %s, %s", variant, size ) );
 
         // remove the timestamp attribute. It can never be used for comparing!
-        attributes.remove ( "timestamp" );
+        // the delivered attributes are immutable, so work on a copy
+        final Map<String, Variant> copy = attributes != null ? new HashMap<String, Variant> ( attributes ) : null;
+        if ( copy != null )
+        {
+            copy.remove ( "timestamp" );
+        }
 
-        this.events.add ( new EventEntry ( item, variant, attributes ) );
+        this.events.add ( new EventEntry ( item, variant, copy ) );
     }
 
     public void assertEquals ( final EventEntry[] events )
@@ -23,13 +23,16 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.log4j.BasicConfigurator;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.openscada.core.Variant;
 import org.openscada.da.server.common.chain.DataItemInputChained;
+import org.openscada.da.server.common.chain.ValueFilter;
 import org.openscada.utils.concurrent.DirectExecutor;
 
 public class TestInputChain
@@ -101,6 +104,25 @@ public class TestInputChain
         assertEvents ();
     }
 
+    @Test
+    public void testDeadband () throws Exception
+    {
+        final ValueFilter filter = new ValueFilter ( 0.5, 0, 0, TimeUnit.MILLISECONDS );
+        this.dataItem.setValueFilter ( filter );
+
+        this.dataItem.updateData ( new Variant ( 1.0 ), null, null );
+        addEvent ( new Variant ( 1.0 ), null );
+
+        this.dataItem.updateData ( new Variant ( 1.2 ), null, null );
+        this.dataItem.updateData ( new Variant ( 0.6 ), null, null );
+
+        this.dataItem.updateData ( new Variant ( 2.0 ), null, null );
+        addEvent ( new Variant ( 2.0 ), null );
+
+        assertEvents ();
+        Assert.assertEquals ( 2, filter.getDeadbandSuppressedCount () );
+    }
+
     protected void assertEvents ()
     {
         this._listener.assertEquals ( this.expectedEvents );
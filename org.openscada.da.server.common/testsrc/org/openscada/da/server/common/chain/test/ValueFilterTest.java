@@ -0,0 +1,257 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.da.server.common.chain.test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openscada.core.Variant;
+import org.openscada.da.server.common.chain.DataItemInputChained;
+import org.openscada.da.server.common.chain.ValueFilter;
+import org.openscada.utils.concurrent.DirectExecutor;
+
+public class ValueFilterTest
+{
+    private ItemListenerTestImpl listener;
+
+    private DataItemInputChained dataItem;
+
+    private final List<EventEntry> expectedEvents = new LinkedList<EventEntry> ();
+
+    /**
+     * The tasks scheduled by the filter, run by the test instead of a timer
+     */
+    private final List<Runnable> tasks = new LinkedList<Runnable> ();
+
+    private ScheduledExecutorService scheduler;
+
+    @Before
+    public void init ()
+    {
+        this.listener = new ItemListenerTestImpl ();
+        this.dataItem = new DataItemInputChained ( "test-id", DirectExecutor.INSTANCE );
+        this.dataItem.setListener ( this.listener );
+
+        this.scheduler = (ScheduledExecutorService)Proxy.newProxyInstance ( getClass ().getClassLoader (), new Class<?>[] { ScheduledExecutorService.class }, new InvocationHandler () {
+
+            @Override
+            public Object invoke ( final Object proxy, final Method method, final Object[] args ) throws Throwable
+            {
+                if ( method.getName ().equals ( "schedule" ) && args[0] instanceof Runnable )
+                {
+                    ValueFilterTest.this.tasks.add ( (Runnable)args[0] );
+                    return null;
+                }
+                throw new UnsupportedOperationException ( method.getName () );
+            }
+        } );
+    }
+
+    private void update ( final Variant value )
+    {
+        this.dataItem.updateData ( value, null, null );
+    }
+
+    private void addEvent ( final Variant value )
+    {
+        this.expectedEvents.add ( new EventEntry ( this.dataItem, new Variant ( value ), null ) );
+    }
+
+    private void assertEvents ()
+    {
+        this.listener.assertEquals ( this.expectedEvents );
+    }
+
+    /**
+     * Let the scheduler fire, like the timer does at the end of the interval
+     */
+    private void runTasks ()
+    {
+        final List<Runnable> tasks = new LinkedList<Runnable> ( this.tasks );
+        this.tasks.clear ();
+        for ( final Runnable task : tasks )
+        {
+            task.run ();
+        }
+    }
+
+    @Test
+    public void testRateLimit () throws Exception
+    {
+        final ValueFilter filter = new ValueFilter ( 0, 0, 1, TimeUnit.HOURS, this.scheduler );
+        this.dataItem.setValueFilter ( filter );
+
+        update ( new Variant ( 1 ) );
+        addEvent ( new Variant ( 1 ) );
+        Assert.assertTrue ( this.tasks.isEmpty () );
+
+        // held back until the interval passed, the second one replaces the first
+        update ( new Variant ( 2 ) );
+        update ( new Variant ( 3 ) );
+        assertEvents ();
+
+        Assert.assertEquals ( 1, this.tasks.size () );
+        Assert.assertEquals ( 1, filter.getRateSuppressedCount () );
+        Assert.assertEquals ( 0, filter.getDeferredCount () );
+    }
+
+    @Test
+    public void testTrailingEdge () throws Exception
+    {
+        final ValueFilter filter = new ValueFilter ( 0, 0, 1, TimeUnit.HOURS, this.scheduler );
+        this.dataItem.setValueFilter ( filter );
+
+        update ( new Variant ( 1 ) );
+        addEvent ( new Variant ( 1 ) );
+        update ( new Variant ( 2 ) );
+        update ( new Variant ( 3 ) );
+
+        // the latest value gets delivered at the end of the interval
+        runTasks ();
+        addEvent ( new Variant ( 3 ) );
+        assertEvents ();
+        Assert.assertEquals ( 1, filter.getDeferredCount () );
+
+        // the delivery starts a new interval
+        update ( new Variant ( 4 ) );
+        assertEvents ();
+        Assert.assertEquals ( 1, this.tasks.size () );
+
+        runTasks ();
+        addEvent ( new Variant ( 4 ) );
+        assertEvents ();
+        Assert.assertEquals ( 2, filter.getDeferredCount () );
+        Assert.assertEquals ( 1, filter.getRateSuppressedCount () );
+    }
+
+    @Test
+    public void testTrailingEdgeReturnToForwarded () throws Exception
+    {
+        final ValueFilter filter = new ValueFilter ( 0, 0, 1, TimeUnit.HOURS, this.scheduler );
+        this.dataItem.setValueFilter ( filter );
+
+        update ( new Variant ( 1 ) );
+        addEvent ( new Variant ( 1 ) );
+
+        // going back to the forwarded value drops the value held back
+        update ( new Variant ( 2 ) );
+        update ( new Variant ( 1 ) );
+
+        runTasks ();
+        assertEvents ();
+        Assert.assertEquals ( 0, filter.getDeferredCount () );
+        Assert.assertEquals ( 1, filter.getDeadbandSuppressedCount () );
+    }
+
+    @Test
+    public void testIntervalPassed () throws Exception
+    {
+        final ValueFilter filter = new ValueFilter ( 0, 0, 1, TimeUnit.MILLISECONDS, this.scheduler );
+        this.dataItem.setValueFilter ( filter );
+
+        update ( new Variant ( 1 ) );
+        addEvent ( new Variant ( 1 ) );
+
+        Thread.sleep ( 10 );
+
+        update ( new Variant ( 2 ) );
+        addEvent ( new Variant ( 2 ) );
+
+        assertEvents ();
+        Assert.assertTrue ( this.tasks.isEmpty () );
+        Assert.assertEquals ( 0, filter.getRateSuppressedCount () );
+    }
+
+    @Test
+    public void testRemoveFilter () throws Exception
+    {
+        final ValueFilter filter = new ValueFilter ( 0, 0, 1, TimeUnit.HOURS, this.scheduler );
+        this.dataItem.setValueFilter ( filter );
+
+        update ( new Variant ( 1 ) );
+        addEvent ( new Variant ( 1 ) );
+        update ( new Variant ( 2 ) );
+
+        // the value held back is dropped with the filter
+        this.dataItem.setValueFilter ( null );
+        runTasks ();
+        assertEvents ();
+
+        update ( new Variant ( 3 ) );
+        addEvent ( new Variant ( 3 ) );
+        assertEvents ();
+    }
+
+    @Test
+    public void testPercentDeadband () throws Exception
+    {
+        final ValueFilter filter = new ValueFilter ( 0, 10, 0, TimeUnit.MILLISECONDS );
+        this.dataItem.setValueFilter ( filter );
+
+        update ( new Variant ( 100.0 ) );
+        addEvent ( new Variant ( 100.0 ) );
+
+        update ( new Variant ( 95.0 ) );
+        update ( new Variant ( 110.0 ) );
+
+        // compared to the last forwarded value, not the last received one
+        update ( new Variant ( 111.0 ) );
+        addEvent ( new Variant ( 111.0 ) );
+
+        assertEvents ();
+        Assert.assertEquals ( 2, filter.getDeadbandSuppressedCount () );
+    }
+
+    @Test
+    public void testNonNumeric () throws Exception
+    {
+        final ValueFilter filter = new ValueFilter ( 0.5, 0, 0, TimeUnit.MILLISECONDS );
+        this.dataItem.setValueFilter ( filter );
+
+        update ( new Variant ( "a" ) );
+        addEvent ( new Variant ( "a" ) );
+
+        update ( new Variant ( "a" ) );
+
+        update ( new Variant ( "b" ) );
+        addEvent ( new Variant ( "b" ) );
+
+        assertEvents ();
+        Assert.assertEquals ( 1, filter.getDeadbandSuppressedCount () );
+    }
+
+    @Test ( expected = IllegalStateException.class )
+    public void testShared () throws Exception
+    {
+        final ValueFilter filter = new ValueFilter ( 0.5, 0, 0, TimeUnit.MILLISECONDS );
+        this.dataItem.setValueFilter ( filter );
+
+        new DataItemInputChained ( "other-id", DirectExecutor.INSTANCE ).setValueFilter ( filter );
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+
+package org.openscada.da.server.common.impl;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ChangeRingTest
+{
+    @Test
+    public void testChangedSince ()
+    {
+        final ChangeRing ring = new ChangeRing ( 4, 1000 );
+
+        Assert.assertEquals ( 1001, ring.record ( "a" ) );
+        Assert.assertEquals ( 1002, ring.record ( "b" ) );
+        Assert.assertEquals ( 1003, ring.record ( "a" ) );
+
+        Assert.assertEquals ( new HashSet<String> ( Arrays.asList ( "a", "b" ) ), ring.changedSince ( 1000 ) );
+        Assert.assertEquals ( new HashSet<String> ( Arrays.asList ( "a", "b" ) ), ring.changedSince ( 1001 ) );
+        Assert.assertEquals ( new HashSet<String> ( Arrays.asList ( "a" ) ), ring.changedSince ( 1002 ) );
+        Assert.assertTrue ( ring.changedSince ( 1003 ).isEmpty () );
+    }
+
+    @Test
+    public void testOverrun ()
+    {
+        final ChangeRing ring = new ChangeRing ( 4, 1000 );
+
+        for ( int i = 0; i < 10; i++ )
+        {
+            ring.record ( "item" + i );
+        }
+
+        // the last four changes are still known
+        final Set<String> changed = ring.changedSince ( 1006 );
+        Assert.assertEquals ( new HashSet<String> ( Arrays.asList ( "item6", "item7", "item8", "item9" ) ), changed );
+
+        // older ones are not
+        Assert.assertNull ( ring.changedSince ( 1005 ) );
+    }
+
+    @Test
+    public void testConcurrentRecord () throws InterruptedException
+    {
+        final ChangeRing ring = new ChangeRing ( 4000, 1000 );
+        final CountDownLatch start = new CountDownLatch ( 1 );
+
+        final Thread[] threads = new Thread[4];
+        for ( int i = 0; i < threads.length; i++ )
+        {
+            final String prefix = "t" + i + "/";
+            threads[i] = new Thread () {
+                @Override
+                public void run ()
+                {
+                    try
+                    {
+                        start.await ();
+                    }
+                    catch ( final InterruptedException e )
+                    {
+                        return;
+                    }
+                    for ( int j = 0; j < 1000; j++ )
+                    {
+                        ring.record ( prefix + j );
+                    }
+                }
+            };
+            threads[i].start ();
+        }
+
+        start.countDown ();
+        for ( final Thread thread : threads )
+        {
+            thread.join ();
+        }
+
+        Assert.assertEquals ( 5000, ring.getSequence () );
+
+        final Set<String> changed = ring.changedSince ( 1000 );
+        Assert.assertNotNull ( changed );
+        Assert.assertEquals ( 4000, changed.size () );
+    }
+
+    @Test
+    public void testForeignSequence ()
+    {
+        final ChangeRing ring = new ChangeRing ( 4, 1000 );
+        ring.record ( "a" );
+
+        // sequence numbers from a previous run or from the future
+        Assert.assertNull ( ring.changedSince ( 999 ) );
+        Assert.assertNull ( ring.changedSince ( 1002 ) );
+    }
+}
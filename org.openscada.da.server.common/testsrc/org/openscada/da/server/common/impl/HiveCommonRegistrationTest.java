@@ -0,0 +1,174 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+
+package org.openscada.da.server.common.impl;
+
+import java.util.List;
+import java.util.Set;
+import java.util.Stack;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openscada.da.core.browser.Entry;
+import org.openscada.da.server.browser.common.FolderCommon;
+import org.openscada.da.server.browser.common.FolderListener;
+import org.openscada.da.server.common.MemoryDataItem;
+import org.openscada.da.server.common.chain.DataItemInputChained;
+import org.openscada.da.server.common.item.factory.FolderItemFactory;
+
+/**
+ * Registers a large number of items the way a hive does during startup
+ */
+public class HiveCommonRegistrationTest
+{
+    private static final int ITEMS = Integer.getInteger ( "org.openscada.da.server.common.test.startupItems", 50000 );
+
+    private HiveCommon hive;
+
+    private FolderCommon rootFolder;
+
+    private final AtomicInteger folderNotifications = new AtomicInteger ();
+
+    private final FolderListener folderListener = new FolderListener () {
+
+        @Override
+        public void changed ( final Object tag, final List<Entry> added, final Set<String> removed, final boolean full )
+        {
+            if ( !full )
+            {
+                HiveCommonRegistrationTest.this.folderNotifications.incrementAndGet ();
+            }
+        }
+    };
+
+    private static class TestFactory extends FolderItemFactory
+    {
+        public TestFactory ( final HiveCommon hive, final FolderCommon parentFolder )
+        {
+            super ( hive, parentFolder, "factory", "factory" );
+        }
+
+        public DataItemInputChained createInput ( final String localId )
+        {
+            return constructInput ( localId );
+        }
+    }
+
+    @Before
+    public void setup () throws Exception
+    {
+        this.hive = new HiveCommon () {
+
+            @Override
+            public String getHiveId ()
+            {
+                return "org.openscada.da.server.common.test";
+            }
+        };
+        this.hive.setAutoEnableStats ( false );
+        this.hive.start ();
+
+        this.rootFolder = new FolderCommon ();
+        this.hive.setRootFolder ( this.rootFolder );
+    }
+
+    @After
+    public void dispose () throws Exception
+    {
+        this.hive.stop ();
+    }
+
+    @Test ( timeout = 60000 )
+    public void testBatch () throws Exception
+    {
+        this.rootFolder.subscribe ( new Stack<String> (), this.folderListener, this );
+        final long writes = this.hive.getItemMapWrites ();
+
+        this.hive.beginRegistration ();
+        for ( int i = 0; i < ITEMS; i++ )
+        {
+            final MemoryDataItem item = new MemoryDataItem ( "item." + i );
+            this.hive.registerItem ( item );
+            this.hive.addToFolder ( this.rootFolder, "item." + i, item.getInformation (), null );
+        }
+
+        // visible to lookups, but not yet added
+        Assert.assertNotNull ( this.hive.lookupItem ( "item.0" ) );
+        Assert.assertEquals ( writes, this.hive.getItemMapWrites () );
+        Assert.assertEquals ( 0, this.rootFolder.size () );
+        Assert.assertEquals ( 0, this.folderNotifications.get () );
+
+        this.hive.endRegistration ();
+
+        // one lock acquisition and one folder notification
+        Assert.assertEquals ( writes + 1, this.hive.getItemMapWrites () );
+        Assert.assertEquals ( 1, this.folderNotifications.get () );
+
+        Assert.assertEquals ( ITEMS, this.rootFolder.size () );
+        Assert.assertNotNull ( this.hive.lookupItem ( "item.0" ) );
+        Assert.assertNotNull ( this.hive.lookupItem ( "item." + ( ITEMS - 1 ) ) );
+        Assert.assertEquals ( "item.0", this.rootFolder.findEntry ( this.hive.lookupItem ( "item.0" ) ) );
+    }
+
+    @Test
+    public void testFactoryBatch () throws Exception
+    {
+        final TestFactory factory = new TestFactory ( this.hive, this.rootFolder );
+        factory.getFolder ().subscribe ( new Stack<String> (), this.folderListener, this );
+        final long writes = this.hive.getItemMapWrites ();
+
+        this.hive.beginRegistration ();
+        // nested batches only register at the end of the outermost one
+        this.hive.beginRegistration ();
+        for ( int i = 0; i < 100; i++ )
+        {
+            factory.createInput ( "input." + i );
+        }
+        this.hive.endRegistration ();
+        Assert.assertEquals ( writes, this.hive.getItemMapWrites () );
+        this.hive.endRegistration ();
+
+        Assert.assertEquals ( writes + 1, this.hive.getItemMapWrites () );
+        Assert.assertEquals ( 1, this.folderNotifications.get () );
+        Assert.assertEquals ( 100, factory.getFolder ().size () );
+        Assert.assertNotNull ( this.hive.lookupItem ( "factory.input.99" ) );
+    }
+
+    @Test
+    public void testWithoutBatch () throws Exception
+    {
+        final long writes = this.hive.getItemMapWrites ();
+
+        this.hive.registerItem ( new MemoryDataItem ( "item.a" ) );
+        this.hive.registerItem ( new MemoryDataItem ( "item.b" ) );
+
+        Assert.assertEquals ( writes + 2, this.hive.getItemMapWrites () );
+    }
+
+    @Test ( expected = IllegalStateException.class )
+    public void testUnbalancedEnd ()
+    {
+        this.hive.endRegistration ();
+    }
+}
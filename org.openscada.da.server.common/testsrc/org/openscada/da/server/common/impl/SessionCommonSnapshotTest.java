@@ -0,0 +1,114 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+
+package org.openscada.da.server.common.impl;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openscada.core.Variant;
+import org.openscada.core.data.SubscriptionState;
+import org.openscada.da.core.AttributeMap;
+import org.openscada.da.core.ItemChange;
+import org.openscada.da.core.server.BulkItemChangeListener;
+import org.openscada.da.server.common.DataItem;
+import org.openscada.da.server.common.MemoryDataItem;
+
+public class SessionCommonSnapshotTest
+{
+    private SessionCommon session;
+
+    private final List<List<ItemChange>> received = new LinkedList<List<ItemChange>> ();
+
+    private final DataItem itemA = new MemoryDataItem ( "a" );
+
+    private final DataItem itemB = new MemoryDataItem ( "b" );
+
+    @Before
+    public void setup ()
+    {
+        this.received.clear ();
+
+        this.session = new SessionCommon ( null, null, null );
+        this.session.setListener ( new BulkItemChangeListener () {
+
+            @Override
+            public void subscriptionChanged ( final String itemId, final SubscriptionState subscriptionState )
+            {
+            }
+
+            @Override
+            public void dataChanged ( final String itemId, final Variant value, final Map<String, Variant> attributes, final boolean cache )
+            {
+                SessionCommonSnapshotTest.this.received.add ( Arrays.asList ( new ItemChange ( itemId, value, attributes, cache ) ) );
+            }
+
+            @Override
+            public void dataChanged ( final List<ItemChange> changes )
+            {
+                SessionCommonSnapshotTest.this.received.add ( changes );
+            }
+        } );
+    }
+
+    @Test
+    public void testSnapshotOrder ()
+    {
+        this.session.beginBulkTransfer ( Arrays.asList ( "a", "b" ) );
+
+        // changes which arrive before the snapshot is handed to the session
+        this.session.dataChanged ( this.itemA, Variant.valueOf ( 1 ), null, false, 1 );
+        this.session.dataChanged ( this.itemA, Variant.valueOf ( 3 ), null, false, 3 );
+
+        this.session.addSnapshots ( Arrays.asList ( new DataItemSnapshot ( "a", Variant.valueOf ( 2 ), AttributeMap.EMPTY, 2 ), new DataItemSnapshot ( "b", null, AttributeMap.EMPTY, 0 ) ) );
+
+        Assert.assertTrue ( this.received.isEmpty () );
+
+        this.session.endBulkTransfer ();
+
+        // one batch: the snapshots first, then the changes newer than the snapshot
+        Assert.assertEquals ( 1, this.received.size () );
+        final List<ItemChange> changes = this.received.get ( 0 );
+        Assert.assertEquals ( 3, changes.size () );
+
+        Assert.assertEquals ( "a", changes.get ( 0 ).getItemId () );
+        Assert.assertEquals ( Variant.valueOf ( 2 ), changes.get ( 0 ).getValue () );
+        Assert.assertTrue ( changes.get ( 0 ).isCache () );
+
+        Assert.assertEquals ( "b", changes.get ( 1 ).getItemId () );
+        Assert.assertTrue ( changes.get ( 1 ).isCache () );
+
+        Assert.assertEquals ( "a", changes.get ( 2 ).getItemId () );
+        Assert.assertEquals ( Variant.valueOf ( 3 ), changes.get ( 2 ).getValue () );
+        Assert.assertFalse ( changes.get ( 2 ).isCache () );
+
+        // after the transfer changes are passed on directly
+        this.session.dataChanged ( this.itemB, Variant.valueOf ( 4 ), Collections.<String, Variant> emptyMap (), false, 1 );
+        Assert.assertEquals ( 2, this.received.size () );
+        Assert.assertEquals ( "b", this.received.get ( 1 ).get ( 0 ).getItemId () );
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+
+package org.openscada.da.server.common.impl.stats;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openscada.da.server.browser.common.FolderCommon;
+import org.openscada.da.server.common.impl.HiveCommon;
+
+public class LatencyHistogramTest
+{
+    private static class RecordingOutput implements LatencyOutput
+    {
+        private long count;
+
+        private long total;
+
+        private long p50;
+
+        private long p99;
+
+        private long max;
+
+        @Override
+        public void setTickValue ( final long count, final long total, final long p50, final long p90, final long p99, final long max )
+        {
+            this.count = count;
+            this.total = total;
+            this.p50 = p50;
+            this.p99 = p99;
+            this.max = max;
+        }
+
+        @Override
+        public void register ( final HiveCommon hive, final FolderCommon folder, final String description )
+        {
+        }
+
+        @Override
+        public void unregister ( final HiveCommon hive, final FolderCommon folder )
+        {
+        }
+    }
+
+    @Test
+    public void testPercentiles ()
+    {
+        final LatencyHistogram histogram = new LatencyHistogram ();
+        final RecordingOutput output = new RecordingOutput ();
+        histogram.setOutput ( output );
+
+        for ( int i = 0; i < 99; i++ )
+        {
+            histogram.record ( 10, TimeUnit.MICROSECONDS );
+        }
+        histogram.record ( 5, TimeUnit.MILLISECONDS );
+
+        histogram.tick ();
+
+        Assert.assertEquals ( 100, output.count );
+        Assert.assertEquals ( 100, output.total );
+        Assert.assertEquals ( 15, output.p50 );
+        Assert.assertEquals ( 15, output.p99 );
+        Assert.assertEquals ( 5000, output.max );
+
+        // histogram is reset by the tick, the total is not
+        histogram.tick ();
+        Assert.assertEquals ( 0, output.count );
+        Assert.assertEquals ( 100, output.total );
+        Assert.assertEquals ( 0, output.p50 );
+    }
+
+    @Test
+    public void testHotSpots ()
+    {
+        final HotSpotTracker tracker = new HotSpotTracker ( 2, 1 );
+        for ( int i = 0; i < 3; i++ )
+        {
+            tracker.hit ( "a" );
+        }
+        tracker.hit ( "b" );
+        for ( int i = 0; i < 5; i++ )
+        {
+            tracker.hit ( "c" );
+        }
+
+        tracker.tick ();
+
+        Assert.assertEquals ( 2, tracker.getTop ().size () );
+        Assert.assertEquals ( "c", tracker.getTop ().get ( 0 ).getKey () );
+        Assert.assertEquals ( 5, tracker.getTop ().get ( 0 ).getCount () );
+        Assert.assertEquals ( "a", tracker.getTop ().get ( 1 ).getKey () );
+    }
+
+    @Test
+    public void testSamplingCyclicEvents ()
+    {
+        // ten items polled in a fixed order, sampling every tenth event would only ever see one of them
+        final HotSpotTracker tracker = new HotSpotTracker ( 10, 10, 42 );
+        for ( int i = 0; i < 10000; i++ )
+        {
+            for ( int j = 0; j < 10; j++ )
+            {
+                tracker.hit ( "item" + j );
+            }
+        }
+
+        tracker.tick ();
+
+        Assert.assertEquals ( 10, tracker.getTop ().size () );
+        for ( final HotSpotTracker.Entry entry : tracker.getTop () )
+        {
+            Assert.assertTrue ( entry.toString (), entry.getCount () > 8000 && entry.getCount () < 12000 );
+        }
+    }
+}
@@ -21,6 +21,7 @@
 
 package org.openscada.da.server.net;
 
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -39,15 +40,20 @@ import org.openscada.core.server.Session.SessionListener;
 import org.openscada.core.server.net.AbstractServerConnectionHandler;
 import org.openscada.da.core.Location;
 import org.openscada.da.core.WriteAttributeResults;
+import org.openscada.da.core.ItemChange;
 import org.openscada.da.core.WriteResult;
 import org.openscada.da.core.browser.Entry;
+import org.openscada.da.core.server.BulkItemChangeListener;
+import org.openscada.da.core.server.DataChangeThrottle;
 import org.openscada.da.core.server.Hive;
 import org.openscada.da.core.server.InvalidItemException;
 import org.openscada.da.core.server.ItemChangeListener;
+import org.openscada.da.core.server.SequencedItemChangeListener;
 import org.openscada.da.core.server.Session;
 import org.openscada.da.core.server.browser.FolderListener;
 import org.openscada.da.core.server.browser.HiveBrowser;
 import org.openscada.da.core.server.browser.NoSuchFolderException;
+import org.openscada.da.net.handler.ItemHandleTable;
 import org.openscada.da.net.handler.ListBrowser;
 import org.openscada.da.net.handler.Messages;
 import org.openscada.da.net.handler.WriteAttributesOperation;
@@ -55,6 +61,7 @@ import org.openscada.net.base.MessageListener;
 import org.openscada.net.base.data.LongValue;
 import org.openscada.net.base.data.Message;
 import org.openscada.net.base.data.StringValue;
+import org.openscada.net.mina.WritePriority;
 import org.openscada.net.utils.MessageCreator;
 import org.openscada.sec.callback.PropertiesCredentialsCallback;
 import org.openscada.utils.concurrent.FutureListener;
@@ -67,7 +74,7 @@ import org.openscada.utils.lang.Holder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class ServerConnectionHandler extends AbstractServerConnectionHandler implements ItemChangeListener, FolderListener
+public class ServerConnectionHandler extends AbstractServerConnectionHandler implements BulkItemChangeListener, SequencedItemChangeListener, FolderListener
 {
 
     public final static String VERSION = "0.1.8";
@@ -82,12 +89,78 @@ public class ServerConnectionHandler extends AbstractServerConnectionHandler imp
 
     private final Set<Long> taskMap = new HashSet<Long> ();
 
+    private static final Object STATS_PENDING_ITEMS = new Object ();
+
+    private static final Object STATS_CONFLATED = new Object ();
+
+    private static final Object STATS_CONGESTIONS = new Object ();
+
+    private final DataChangeThrottle throttle;
+
+    private static final boolean ITEM_HANDLES = Boolean.parseBoolean ( System.getProperty ( "org.openscada.da.server.net.itemHandles", "true" ) );
+
+    /**
+     * The item handles of the session, <code>null</code> if the client did
+     * not request them
+     */
+    private volatile ItemHandleTable itemHandles;
+
     public ServerConnectionHandler ( final Hive hive, final IoSession ioSession, final ConnectionInformation connectionInformation )
     {
         super ( ioSession, connectionInformation );
 
         this.hive = hive;
 
+        setWritePriority ( Messages.CC_NOTIFY_DATA, WritePriority.DATA );
+        setWritePriority ( Messages.CC_NOTIFY_DATA_BULK, WritePriority.DATA );
+        setWritePriority ( Messages.CC_SUBSCRIPTION_CHANGE, WritePriority.DATA );
+        setWritePriority ( Messages.CC_BROWSER_EVENT, WritePriority.DATA );
+
+        getStatistics ().setLabel ( STATS_PENDING_ITEMS, "Items held back by congestion" );
+        getStatistics ().setLabel ( STATS_CONFLATED, "Data changes conflated" );
+        getStatistics ().setLabel ( STATS_CONGESTIONS, "Congestion events" );
+
+        this.throttle = new DataChangeThrottle ( new DataChangeThrottle.Channel () {
+
+            @Override
+            public long getQueuedBytes ()
+            {
+                return getScheduledWriteBytes ();
+            }
+
+            @Override
+            public long getQueuedMessages ()
+            {
+                return getScheduledWriteMessages ();
+            }
+
+            @Override
+            public void sendData ( final String itemId, final Variant value, final Map<String, Variant> attributes, final boolean cache, final long sequence )
+            {
+                sendData ( itemId, value, attributes, cache, sequence );
+            }
+
+            @Override
+            public void disconnect ( final String reason )
+            {
+                logger.warn ( "Closing slow connection: {}", reason );
+                final IoSession ioSession = ServerConnectionHandler.this.ioSession;
+                if ( ioSession != null )
+                {
+                    ioSession.close ( false );
+                }
+            }
+
+            @Override
+            public void statisticsChanged ( final DataChangeThrottle throttle )
+            {
+                getStatistics ().setCurrentValue ( STATS_PENDING_ITEMS, throttle.getPendingCount () );
+                getStatistics ().setCurrentValue ( STATS_CONFLATED, throttle.getConflatedCount () );
+                getStatistics ().setCurrentValue ( STATS_CONGESTIONS, throttle.getCongestionCount () );
+            }
+        }, DataChangeThrottle.Configuration.fromSystemProperties (), null );
+        this.throttle.start ();
+
         this.messenger.setHandler ( MessageHelper.CC_CREATE_SESSION, new MessageListener () {
 
             @Override
@@ -124,6 +197,24 @@ public class ServerConnectionHandler extends AbstractServerConnectionHandler imp
             }
         } );
 
+        this.messenger.setHandler ( Messages.CC_SUBSCRIBE_ITEMS, new MessageListener () {
+
+            @Override
+            public void messageReceived ( final Message message )
+            {
+                subscribeItems ( message );
+            }
+        } );
+
+        this.messenger.setHandler ( Messages.CC_UNSUBSCRIBE_ITEMS, new MessageListener () {
+
+            @Override
+            public void messageReceived ( final Message message )
+            {
+                unsubscribeItems ( message );
+            }
+        } );
+
         this.messenger.setHandler ( Messages.CC_WRITE_OPERATION, new MessageListener () {
 
             @Override
@@ -233,12 +324,28 @@ public class ServerConnectionHandler extends AbstractServerConnectionHandler imp
             return;
         }
 
+        if ( ITEM_HANDLES && Boolean.parseBoolean ( props.getProperty ( Messages.PROP_FEATURE_ITEM_HANDLES ) ) )
+        {
+            this.itemHandles = new ItemHandleTable ();
+        }
+
         // we have a working session .. so connect listeners
         this.session.setListener ( (ItemChangeListener)this );
         this.session.setListener ( (FolderListener)this );
 
-        // send success
-        replySessionCreated ( props, message, this.session.getProperties () );
+        // send success, announcing the protocol extensions we support
+        final Map<String, String> sessionProperties = new HashMap<String, String> ( this.session.getProperties () );
+        sessionProperties.put ( Messages.PROP_FEATURE_BULK_SUBSCRIBE, "true" );
+        final String epoch = this.session.getProperties ().get ( SequencedItemChangeListener.PROP_SEQUENCE_EPOCH );
+        if ( epoch != null )
+        {
+            sessionProperties.put ( Messages.PROP_FEATURE_RESYNC, epoch );
+        }
+        if ( this.itemHandles != null )
+        {
+            sessionProperties.put ( Messages.PROP_FEATURE_ITEM_HANDLES, "true" );
+        }
+        replySessionCreated ( props, message, sessionProperties );
 
         // hook up privs
         this.session.addSessionListener ( new SessionListener () {
@@ -347,9 +454,55 @@ public class ServerConnectionHandler extends AbstractServerConnectionHandler imp
         }
     }
 
+    private void subscribeItems ( final Message message )
+    {
+        if ( this.session == null )
+        {
+            this.messenger.sendMessage ( MessageCreator.createFailedMessage ( message, "No session" ) );
+            return;
+        }
+
+        final List<String> itemIds = Messages.parseItemList ( message );
+        final long since = Messages.parseSince ( message );
+
+        logger.debug ( "Subscribe to {} items since {}", itemIds.size (), since );
+
+        try
+        {
+            final Set<String> rejected = this.hive.subscribeItems ( this.session, itemIds, since );
+            for ( final String itemId : rejected )
+            {
+                this.messenger.sendMessage ( Messages.notifySubscriptionChange ( itemId, SubscriptionState.DISCONNECTED ) );
+            }
+        }
+        catch ( final InvalidSessionException e )
+        {
+            this.messenger.sendMessage ( MessageCreator.createFailedMessage ( message, "Invalid session" ) );
+        }
+    }
+
+    private void unsubscribeItems ( final Message message )
+    {
+        if ( this.session == null )
+        {
+            this.messenger.sendMessage ( MessageCreator.createFailedMessage ( message, "No session" ) );
+            return;
+        }
+
+        try
+        {
+            this.hive.unsubscribeItems ( this.session, Messages.parseItemList ( message ) );
+        }
+        catch ( final InvalidSessionException e )
+        {
+            this.messenger.sendMessage ( MessageCreator.createFailedMessage ( message, "Invalid session" ) );
+        }
+    }
+
     @Override
     protected void cleanUp ()
     {
+        this.throttle.dispose ();
         super.cleanUp ();
         disposeSession ();
     }
@@ -357,17 +510,102 @@ public class ServerConnectionHandler extends AbstractServerConnectionHandler imp
     @Override
     public void dataChanged ( final String itemId, final Variant value, final Map<String, Variant> attributes, final boolean cache )
     {
-        logger.debug ( "Data changed - itemId: {}, value: {}, attributes: {}, cache: {}", new Object[] { itemId, value, attributes, cache } );
+        dataChanged ( itemId, value, attributes, cache, 0 );
+    }
 
-        this.messenger.sendMessage ( Messages.notifyData ( itemId, value, attributes, cache ) );
+    @Override
+    public void dataChanged ( final String itemId, final Variant value, final Map<String, Variant> attributes, final boolean cache, final long sequence )
+    {
+        logger.debug ( "Data changed - itemId: {}, value: {}, attributes: {}, cache: {}, sequence: {}", new Object[] { itemId, value, attributes, cache, sequence } );
+
+        this.throttle.dataChanged ( itemId, value, attributes, cache, sequence );
+    }
+
+    @Override
+    public void dataChanged ( final List<ItemChange> changes )
+    {
+        logger.debug ( "Data changed - {} items", changes.size () );
+
+        if ( this.throttle.canSendDirect () )
+        {
+            final ItemHandleTable handles = this.itemHandles;
+            if ( handles == null )
+            {
+                this.messenger.sendMessage ( Messages.notifyDataBulk ( changes ) );
+            }
+            else
+            {
+                synchronized ( handles )
+                {
+                    this.messenger.sendMessage ( Messages.notifyDataBulk ( changes, handles ) );
+                }
+            }
+        }
+        else
+        {
+            // congested, let the throttle conflate the changes item by item
+            for ( final ItemChange change : changes )
+            {
+                this.throttle.dataChanged ( change.getItemId (), change.getValue (), change.getAttributes (), change.isCache () );
+            }
+        }
     }
 
     @Override
     public void subscriptionChanged ( final String item, final SubscriptionState subscriptionState )
     {
+        if ( subscriptionState == SubscriptionState.DISCONNECTED )
+        {
+            this.throttle.remove ( item );
+
+            final ItemHandleTable handles = this.itemHandles;
+            if ( handles != null )
+            {
+                synchronized ( handles )
+                {
+                    // the client drops the handle when it receives the state change
+                    handles.remove ( item );
+                    this.messenger.sendMessage ( Messages.notifySubscriptionChange ( item, subscriptionState ) );
+                }
+                return;
+            }
+        }
         this.messenger.sendMessage ( Messages.notifySubscriptionChange ( item, subscriptionState ) );
     }
 
+    /**
+     * Send a single data change, using the item handle if the client
+     * requested item handles
+     * <p>
+     * Sending happens while holding the lock of the handle table so that
+     * a notification defining a handle cannot be overtaken by one using it,
+     * and a notification using a handle cannot arrive after the handle got
+     * dropped.
+     * </p>
+     */
+    private void sendData ( final String itemId, final Variant value, final Map<String, Variant> attributes, final boolean cache, final long sequence )
+    {
+        final ItemHandleTable handles = this.itemHandles;
+        if ( handles == null )
+        {
+            this.messenger.sendMessage ( Messages.notifyData ( itemId, value, attributes, cache, sequence ) );
+            return;
+        }
+
+        synchronized ( handles )
+        {
+            final int handle = handles.getHandle ( itemId );
+            if ( handle == 0 )
+            {
+                this.messenger.sendMessage ( Messages.notifyData ( handles.assign ( itemId ), itemId, value, attributes, cache, sequence ) );
+            }
+            else
+            {
+                this.messenger.sendMessage ( Messages.notifyData ( handle, null, value, attributes, cache, sequence ) );
+            }
+        }
+    }
+
     private void performWrite ( final Message request )
     {
         final Holder<String> itemId = new Holder<String> ();
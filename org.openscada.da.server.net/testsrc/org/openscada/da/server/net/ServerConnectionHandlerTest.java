@@ -0,0 +1,260 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.da.server.net;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.mina.core.filterchain.IoFilterAdapter;
+import org.apache.mina.core.session.DummySession;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.core.write.WriteRequest;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openscada.core.ConnectionInformation;
+import org.openscada.core.InvalidSessionException;
+import org.openscada.core.Variant;
+import org.openscada.core.net.MessageHelper;
+import org.openscada.da.core.ItemChange;
+import org.openscada.da.core.server.Hive;
+import org.openscada.da.core.server.Session;
+import org.openscada.da.net.handler.Messages;
+import org.openscada.net.base.data.MapValue;
+import org.openscada.net.base.data.Message;
+import org.openscada.utils.concurrent.InstantFuture;
+
+public class ServerConnectionHandlerTest
+{
+    /**
+     * The messages sent by the handler, in order
+     */
+    private final List<Message> sent = new LinkedList<Message> ();
+
+    /**
+     * The subscription calls made to the hive, in order
+     */
+    private final List<String> calls = new LinkedList<String> ();
+
+    private Set<String> rejected = Collections.emptySet ();
+
+    private boolean invalidSession;
+
+    private ServerConnectionHandler handler;
+
+    @Before
+    public void setup ()
+    {
+        final Session session = (Session)Proxy.newProxyInstance ( getClass ().getClassLoader (), new Class<?>[] { Session.class }, new InvocationHandler () {
+
+            @Override
+            public Object invoke ( final Object proxy, final Method method, final Object[] args ) throws Throwable
+            {
+                if ( method.getName ().equals ( "getProperties" ) )
+                {
+                    return new HashMap<String, String> ();
+                }
+                return null;
+            }
+        } );
+
+        final Hive hive = (Hive)Proxy.newProxyInstance ( getClass ().getClassLoader (), new Class<?>[] { Hive.class }, new InvocationHandler () {
+
+            @Override
+            public Object invoke ( final Object proxy, final Method method, final Object[] args ) throws Throwable
+            {
+                final String name = method.getName ();
+                if ( name.equals ( "createSession" ) )
+                {
+                    return new InstantFuture<Session> ( session );
+                }
+                else if ( name.equals ( "subscribeItems" ) || name.equals ( "unsubscribeItems" ) )
+                {
+                    if ( ServerConnectionHandlerTest.this.invalidSession )
+                    {
+                        throw new InvalidSessionException ();
+                    }
+                    if ( name.equals ( "subscribeItems" ) )
+                    {
+                        ServerConnectionHandlerTest.this.calls.add ( name + " " + args[1] + " " + args[2] );
+                        return ServerConnectionHandlerTest.this.rejected;
+                    }
+                    ServerConnectionHandlerTest.this.calls.add ( name + " " + args[1] );
+                }
+                else if ( name.equals ( "subscribeItem" ) || name.equals ( "unsubscribeItem" ) )
+                {
+                    ServerConnectionHandlerTest.this.calls.add ( name + " " + args[1] );
+                }
+                return null;
+            }
+        } );
+
+        final DummySession ioSession = new DummySession ();
+        ioSession.getFilterChain ().addFirst ( "capture", new IoFilterAdapter () {
+
+            @Override
+            public void filterWrite ( final NextFilter nextFilter, final IoSession session, final WriteRequest writeRequest ) throws Exception
+            {
+                ServerConnectionHandlerTest.this.sent.add ( (Message)writeRequest.getMessage () );
+                nextFilter.filterWrite ( session, writeRequest );
+            }
+        } );
+
+        this.handler = new ServerConnectionHandler ( hive, ioSession, ConnectionInformation.fromURI ( "da:net://localhost:1202?priorityWrites=false" ) );
+    }
+
+    @After
+    public void dispose () throws Exception
+    {
+        this.handler.sessionClosed ();
+    }
+
+    /**
+     * Create the session like a client does
+     * 
+     * @return the reply of the handler
+     */
+    private Message createSession () throws Exception
+    {
+        final Properties properties = new Properties ();
+        properties.put ( "client-version", ServerConnectionHandler.VERSION );
+        this.handler.messageReceived ( MessageHelper.createSession ( properties ) );
+
+        final Message reply = this.sent.get ( 0 );
+        Assert.assertEquals ( Message.CC_ACK, reply.getCommandCode () );
+        this.sent.clear ();
+        return reply;
+    }
+
+    private List<Message> sent ( final int commandCode )
+    {
+        final List<Message> result = new LinkedList<Message> ();
+        for ( final Message message : this.sent )
+        {
+            if ( message.getCommandCode () == commandCode )
+            {
+                result.add ( message );
+            }
+        }
+        return result;
+    }
+
+    @Test
+    public void testAnnounceBulkSubscribe () throws Exception
+    {
+        final Message reply = createSession ();
+
+        final Properties sessionProperties = new Properties ();
+        MessageHelper.getProperties ( sessionProperties, reply.getValues ().get ( MessageHelper.FIELD_SESSION_PROPERTIES ) );
+        Assert.assertEquals ( "true", sessionProperties.getProperty ( Messages.PROP_FEATURE_BULK_SUBSCRIBE ) );
+    }
+
+    @Test
+    public void testSubscribeItems () throws Exception
+    {
+        createSession ();
+
+        this.handler.messageReceived ( Messages.subscribeItems ( Arrays.asList ( "a", "b" ) ) );
+        this.handler.messageReceived ( Messages.subscribeItems ( Arrays.asList ( "c" ), 42 ) );
+
+        Assert.assertEquals ( Arrays.asList ( "subscribeItems [a, b] 0", "subscribeItems [c] 42" ), this.calls );
+        Assert.assertTrue ( this.sent.isEmpty () );
+    }
+
+    @Test
+    public void testSubscribeItemsRejected () throws Exception
+    {
+        createSession ();
+
+        this.rejected = Collections.singleton ( "b" );
+        this.handler.messageReceived ( Messages.subscribeItems ( Arrays.asList ( "a", "b" ) ) );
+
+        // only the rejected item gets disconnected
+        final List<Message> changes = sent ( Messages.CC_SUBSCRIPTION_CHANGE );
+        Assert.assertEquals ( 1, changes.size () );
+        Assert.assertEquals ( "b", changes.get ( 0 ).getValues ().get ( "item-id" ).toString () );
+    }
+
+    @Test
+    public void testUnsubscribeItems () throws Exception
+    {
+        createSession ();
+
+        this.handler.messageReceived ( Messages.unsubscribeItems ( Arrays.asList ( "a", "b" ) ) );
+
+        Assert.assertEquals ( Arrays.asList ( "unsubscribeItems [a, b]" ), this.calls );
+    }
+
+    @Test
+    public void testNoSession () throws Exception
+    {
+        this.handler.messageReceived ( Messages.subscribeItems ( Arrays.asList ( "a" ) ) );
+        this.handler.messageReceived ( Messages.unsubscribeItems ( Arrays.asList ( "a" ) ) );
+
+        Assert.assertTrue ( this.calls.isEmpty () );
+
+        final List<Message> failed = sent ( Message.CC_FAILED );
+        Assert.assertEquals ( 2, failed.size () );
+        Assert.assertEquals ( "No session", failed.get ( 0 ).getValues ().get ( Message.FIELD_ERROR_INFO ).toString () );
+    }
+
+    @Test
+    public void testInvalidSession () throws Exception
+    {
+        createSession ();
+
+        this.invalidSession = true;
+        this.handler.messageReceived ( Messages.subscribeItems ( Arrays.asList ( "a" ) ) );
+        this.handler.messageReceived ( Messages.unsubscribeItems ( Arrays.asList ( "a" ) ) );
+
+        final List<Message> failed = sent ( Message.CC_FAILED );
+        Assert.assertEquals ( 2, failed.size () );
+        Assert.assertEquals ( "Invalid session", failed.get ( 1 ).getValues ().get ( Message.FIELD_ERROR_INFO ).toString () );
+    }
+
+    @Test
+    public void testNotifyDataBulk () throws Exception
+    {
+        createSession ();
+
+        this.handler.dataChanged ( Arrays.asList ( new ItemChange ( "a", Variant.valueOf ( 1 ), null, true ), new ItemChange ( "b", Variant.valueOf ( 2 ), null, false ) ) );
+
+        // one message for all changes
+        Assert.assertEquals ( 1, this.sent.size () );
+        Assert.assertEquals ( Messages.CC_NOTIFY_DATA_BULK, this.sent.get ( 0 ).getCommandCode () );
+
+        final List<MapValue> entries = Messages.parseNotifyDataBulk ( this.sent.get ( 0 ) );
+        Assert.assertEquals ( 2, entries.size () );
+        Assert.assertEquals ( "a", entries.get ( 0 ).get ( "item-id" ).toString () );
+        Assert.assertTrue ( entries.get ( 0 ).containsKey ( "cache-read" ) );
+        Assert.assertEquals ( "b", entries.get ( 1 ).get ( "item-id" ).toString () );
+        Assert.assertEquals ( Variant.valueOf ( 2 ), MessageHelper.valueToVariant ( entries.get ( 1 ).get ( "value" ), null ) );
+    }
+}
@@ -42,6 +42,7 @@ import org.openscada.da.core.WriteResult;
 import org.openscada.da.core.browser.DataItemEntry;
 import org.openscada.da.core.browser.Entry;
 import org.openscada.da.core.browser.FolderEntry;
+import org.openscada.da.core.server.DataChangeThrottle;
 import org.openscada.da.core.server.Hive;
 import org.openscada.da.core.server.ItemChangeListener;
 import org.openscada.da.core.server.Session;
@@ -62,6 +63,7 @@ import org.openscada.da.data.message.UnsubscibeItem;
 import org.openscada.da.data.message.UnsubscribeFolder;
 import org.openscada.da.data.message.WriteAttributesResult;
 import org.openscada.da.data.message.WriteValueResult;
+import org.openscada.net.mina.WritePriority;
 import org.openscada.sec.callback.CallbackHandler;
 import org.openscada.utils.ExceptionHelper;
 import org.openscada.utils.concurrent.FutureListener;
@@ -74,6 +76,14 @@ public class ServerConnectionImpl extends ServiceServerConnection<Session, Hive>
 
     private final static Logger logger = LoggerFactory.getLogger ( ServerConnectionImpl.class );
 
+    private static final Object STATS_PENDING_ITEMS = new Object ();
+
+    private static final Object STATS_CONFLATED = new Object ();
+
+    private static final Object STATS_CONGESTIONS = new Object ();
+
+    private final DataChangeThrottle throttle;
+
     private final ItemChangeListener itemChangeListener = new ItemChangeListener () {
 
         @Override
@@ -85,7 +95,7 @@ public class ServerConnectionImpl extends ServiceServerConnection<Session, Hive>
         @Override
         public void dataChanged ( final String itemId, final Variant value, final Map<String, Variant> attributes, final boolean cache )
         {
-            handleDataChanged ( itemId, value, attributes, cache );
+            ServerConnectionImpl.this.throttle.dataChanged ( itemId, value, attributes, cache );
         }
     };
 
@@ -102,6 +112,54 @@ public class ServerConnectionImpl extends ServiceServerConnection<Session, Hive>
     public ServerConnectionImpl ( final IoSession session, final Hive service )
     {
         super ( session, service );
+
+        this.statistics.setLabel ( STATS_PENDING_ITEMS, "Items held back by congestion" );
+        this.statistics.setLabel ( STATS_CONFLATED, "Data changes conflated" );
+        this.statistics.setLabel ( STATS_CONGESTIONS, "Congestion events" );
+
+        this.throttle = new DataChangeThrottle ( new DataChangeThrottle.Channel () {
+
+            @Override
+            public long getQueuedBytes ()
+            {
+                return getScheduledWriteBytes ();
+            }
+
+            @Override
+            public long getQueuedMessages ()
+            {
+                return getScheduledWriteMessages ();
+            }
+
+            @Override
+            public void sendData ( final String itemId, final Variant value, final Map<String, Variant> attributes, final boolean cache, final long sequence )
+            {
+                handleDataChanged ( itemId, value, attributes, cache );
+            }
+
+            @Override
+            public void disconnect ( final String reason )
+            {
+                logger.warn ( "Closing slow connection: {}", reason );
+                requestClose ( false );
+            }
+
+            @Override
+            public void statisticsChanged ( final DataChangeThrottle throttle )
+            {
+                ServerConnectionImpl.this.statistics.setCurrentValue ( STATS_PENDING_ITEMS, throttle.getPendingCount () );
+                ServerConnectionImpl.this.statistics.setCurrentValue ( STATS_CONFLATED, throttle.getConflatedCount () );
+                ServerConnectionImpl.this.statistics.setCurrentValue ( STATS_CONGESTIONS, throttle.getCongestionCount () );
+            }
+        }, DataChangeThrottle.Configuration.fromSystemProperties (), null );
+        this.throttle.start ();
+    }
+
+    @Override
+    public void dispose ()
+    {
+        this.throttle.dispose ();
+        super.dispose ();
     }
 
     private static List<BrowserEntry> convertEntries ( final Collection<Entry> added )
@@ -144,17 +202,21 @@ public class ServerConnectionImpl extends ServiceServerConnection<Session, Hive>
     protected void handleDataChanged ( final String itemId, final Variant value, final Map<String, Variant> attributes, final boolean cache )
     {
         final AttributesTransport transport = new AttributesTransport ( attributes );
-        sendMessage ( new ItemDataUpdate ( itemId, value, transport.getAddedOrUpdated (), transport.getRemoved (), cache ) );
+        sendMessage ( new ItemDataUpdate ( itemId, value, transport.getAddedOrUpdated (), transport.getRemoved (), cache ), WritePriority.DATA );
     }
 
     protected void handleSubscriptionChanged ( final String itemId, final SubscriptionState subscriptionState )
     {
-        sendMessage ( new ItemStateUpdate ( itemId, subscriptionState, null ) );
+        if ( subscriptionState == SubscriptionState.DISCONNECTED )
+        {
+            this.throttle.remove ( itemId );
+        }
+        sendMessage ( new ItemStateUpdate ( itemId, subscriptionState, null ), WritePriority.DATA );
     }
 
     protected void handleFolderChanged ( final Location location, final Collection<Entry> added, final Set<String> removed, final boolean full )
     {
-        sendMessage ( new FolderDataUpdate ( location.asList (), convertEntries ( added ), removed, full ) );
+        sendMessage ( new FolderDataUpdate ( location.asList (), convertEntries ( added ), removed, full ), WritePriority.DATA );
     }
 
     /**
@@ -372,7 +434,7 @@ public class ServerConnectionImpl extends ServiceServerConnection<Session, Hive>
         catch ( final Exception e )
         {
             logger.warn ( "Failed to unsubscribe", e );
-            sendMessage ( new ItemStateUpdate ( message.getItemId (), SubscriptionState.DISCONNECTED, new ErrorInformation ( 0x01L, e.getMessage (), ExceptionHelper.formatted ( e ) ) ) );
+            sendMessage ( new ItemStateUpdate ( message.getItemId (), SubscriptionState.DISCONNECTED, new ErrorInformation ( 0x01L, e.getMessage (), ExceptionHelper.formatted ( e ) ) ), WritePriority.DATA );
         }
     }
 
@@ -385,7 +447,7 @@ public class ServerConnectionImpl extends ServiceServerConnection<Session, Hive>
         catch ( final Exception e )
         {
             logger.warn ( "Failed to subscribe", e );
-            sendMessage ( new ItemStateUpdate ( message.getItemId (), SubscriptionState.DISCONNECTED, new ErrorInformation ( 0x01L, e.getMessage (), ExceptionHelper.formatted ( e ) ) ) );
+            sendMessage ( new ItemStateUpdate ( message.getItemId (), SubscriptionState.DISCONNECTED, new ErrorInformation ( 0x01L, e.getMessage (), ExceptionHelper.formatted ( e ) ) ), WritePriority.DATA );
         }
     }
 
@@ -182,7 +182,7 @@ public class ConnectionImpl extends ConnectionBaseImpl implements Connection
     }
 
     @Override
-    protected synchronized void handleMessage ( final Object message )
+    protected void handleMessage ( final Object message )
     {
         if ( message instanceof UpdateQueryState )
         {
@@ -54,6 +54,7 @@ import org.openscada.net.base.data.LongValue;
 import org.openscada.net.base.data.Message;
 import org.openscada.net.base.data.StringValue;
 import org.openscada.net.base.data.VoidValue;
+import org.openscada.net.mina.WritePriority;
 import org.openscada.net.utils.MessageCreator;
 import org.openscada.sec.callback.PropertiesCredentialsCallback;
 import org.openscada.utils.concurrent.FutureListener;
@@ -87,6 +88,12 @@ public class ServerConnectionHandler extends AbstractServerConnectionHandler imp
 
         this.service = service;
 
+        setWritePriority ( Messages.CC_HD_LIST_UPDATE, WritePriority.DATA );
+        // query data, parameters and state share one lane, so they keep their order
+        setWritePriority ( Messages.CC_HD_UPDATE_QUERY_DATA, WritePriority.BULK );
+        setWritePriority ( Messages.CC_HD_UPDATE_QUERY_PARAMETERS, WritePriority.BULK );
+        setWritePriority ( Messages.CC_HD_UPDATE_QUERY_STATUS, WritePriority.BULK );
+
         this.messenger.setHandler ( MessageHelper.CC_CREATE_SESSION, new MessageListener () {
 
             @Override
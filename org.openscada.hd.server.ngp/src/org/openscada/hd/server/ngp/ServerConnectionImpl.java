@@ -52,6 +52,7 @@ import org.openscada.hd.data.message.UpdateQueryParameters;
 import org.openscada.hd.data.message.UpdateQueryState;
 import org.openscada.hd.server.Service;
 import org.openscada.hd.server.Session;
+import org.openscada.net.mina.WritePriority;
 import org.openscada.utils.concurrent.NamedThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -139,7 +140,7 @@ public class ServerConnectionImpl extends ServiceServerConnection<Session, Servi
     {
         logger.debug ( "List changed - addedOrModified: {}, removed: {}, full: {}", new Object[] { addedOrModified, removed, full } );
 
-        sendMessage ( new ListUpdate ( addedOrModified, removed, full ) );
+        sendMessage ( new ListUpdate ( addedOrModified, removed, full ), WritePriority.DATA );
     }
 
     // query stuff
@@ -321,7 +322,7 @@ public class ServerConnectionImpl extends ServiceServerConnection<Session, Servi
             data.add ( new ValueEntry ( entry.getKey (), entry.getValue () ) );
         }
 
-        sendMessage ( new UpdateQueryData ( queryId, index, valueInformation, data ) );
+        sendMessage ( new UpdateQueryData ( queryId, index, valueInformation, data ), WritePriority.BULK );
     }
 
     public synchronized void sendQueryParameters ( final long queryId, final QueryParameters parameters, final Set<String> valueTypes )
@@ -333,7 +334,7 @@ public class ServerConnectionImpl extends ServiceServerConnection<Session, Servi
             return;
         }
 
-        sendMessage ( new UpdateQueryParameters ( queryId, parameters, valueTypes ) );
+        sendMessage ( new UpdateQueryParameters ( queryId, parameters, valueTypes ), WritePriority.BULK );
     }
 
     public synchronized void sendQueryState ( final long queryId, final QueryState state )
@@ -347,7 +348,7 @@ public class ServerConnectionImpl extends ServiceServerConnection<Session, Servi
                 logger.info ( "Query not found {}", queryId );
                 return;
             }
-            sendMessage ( new UpdateQueryState ( queryId, state.name () ) );
+            sendMessage ( new UpdateQueryState ( queryId, state.name () ), WritePriority.BULK );
         }
     }
 
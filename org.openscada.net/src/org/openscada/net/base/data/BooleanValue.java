@@ -49,6 +49,12 @@ public class BooleanValue extends Value
         return String.valueOf ( this.value );
     }
 
+    @Override
+    public int getValueType ()
+    {
+        return TYPE_BOOLEAN;
+    }
+
     @Override
     public int hashCode ()
     {
@@ -40,6 +40,12 @@ public class DoubleValue extends Value
         return String.valueOf ( this.value );
     }
 
+    @Override
+    public int getValueType ()
+    {
+        return TYPE_DOUBLE;
+    }
+
     @Override
     public int hashCode ()
     {
@@ -64,6 +64,12 @@ public class IntegerValue extends Value
         return String.valueOf ( this.value );
     }
 
+    @Override
+    public int getValueType ()
+    {
+        return TYPE_INTEGER;
+    }
+
     @Override
     public int hashCode ()
     {
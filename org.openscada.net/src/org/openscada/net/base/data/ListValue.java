@@ -70,6 +70,12 @@ public class ListValue extends Value
         return this.values.size ();
     }
 
+    @Override
+    public int getValueType ()
+    {
+        return TYPE_LIST;
+    }
+
     @Override
     public int hashCode ()
     {
@@ -64,6 +64,12 @@ public class LongValue extends Value
         return String.valueOf ( this.value );
     }
 
+    @Override
+    public int getValueType ()
+    {
+        return TYPE_LONG;
+    }
+
     @Override
     public int hashCode ()
     {
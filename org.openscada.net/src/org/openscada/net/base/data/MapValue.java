@@ -71,6 +71,12 @@ public class MapValue extends Value
         return this.values.size ();
     }
 
+    @Override
+    public int getValueType ()
+    {
+        return TYPE_MAP;
+    }
+
     @Override
     public int hashCode ()
     {
@@ -43,6 +43,8 @@ public class Message
 
     private MapValue values = null;
 
+    private Object payload;
+
     // ctors
 
     public Message ()
@@ -124,6 +126,29 @@ public class Message
         this.values.remove ( name );
     }
 
+    /**
+     * Get the payload of the message
+     * <p>
+     * The payload is set by the decoder if the message body was consumed by a
+     * visitor instead of being decoded into the values of the message.
+     * </p>
+     * 
+     * @return the payload or <code>null</code> if there is none
+     * @since 1.1
+     */
+    public Object getPayload ()
+    {
+        return this.payload;
+    }
+
+    /**
+     * @since 1.1
+     */
+    public void setPayload ( final Object payload )
+    {
+        this.payload = payload;
+    }
+
     public long getTimestamp ()
     {
         return this.timestamp;
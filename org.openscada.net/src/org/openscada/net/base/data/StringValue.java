@@ -51,6 +51,12 @@ public class StringValue extends Value
         }
     }
 
+    @Override
+    public int getValueType ()
+    {
+        return TYPE_STRING;
+    }
+
     @Override
     public int hashCode ()
     {
@@ -21,6 +21,58 @@ package org.openscada.net.base.data;
 
 public abstract class Value
 {
+    /**
+     * @since 1.1
+     */
+    public final static int TYPE_STRING = 0x01;
+
+    /**
+     * @since 1.1
+     */
+    public final static int TYPE_LONG = 0x02;
+
+    /**
+     * @since 1.1
+     */
+    public final static int TYPE_DOUBLE = 0x03;
+
+    /**
+     * @since 1.1
+     */
+    public final static int TYPE_VOID = 0x04;
+
+    /**
+     * @since 1.1
+     */
+    public final static int TYPE_INTEGER = 0x05;
+
+    /**
+     * @since 1.1
+     */
+    public final static int TYPE_LIST = 0x06;
+
+    /**
+     * @since 1.1
+     */
+    public final static int TYPE_MAP = 0x07;
+
+    /**
+     * @since 1.1
+     */
+    public final static int TYPE_BOOLEAN = 0x08;
+
+    /**
+     * Get the type of the value
+     * <p>
+     * The type is used by the codecs to dispatch on the value without checking
+     * the class of the value.
+     * </p>
+     * 
+     * @return one of the <code>TYPE_*</code> constants
+     * @since 1.1
+     */
+    public abstract int getValueType ();
+
     @Override
     public abstract int hashCode ();
 
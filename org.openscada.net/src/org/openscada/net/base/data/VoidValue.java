@@ -37,6 +37,12 @@ public class VoidValue extends Value
     {
     }
 
+    @Override
+    public int getValueType ()
+    {
+        return TYPE_VOID;
+    }
+
     @Override
     public int hashCode ()
     {
@@ -0,0 +1,401 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+
+package org.openscada.net.mina;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mina.core.service.IoAcceptor;
+import org.apache.mina.core.session.IoSessionConfig;
+import org.apache.mina.filter.executor.ExecutorFilter;
+import org.apache.mina.filter.executor.IoEventQueueThrottle;
+import org.apache.mina.transport.socket.SocketAcceptor;
+import org.apache.mina.transport.socket.SocketSessionConfig;
+import org.apache.mina.transport.socket.nio.NioSocketAcceptor;
+import org.openscada.utils.concurrent.NamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Transport settings of a server side acceptor
+ * <p>
+ * The configuration is used by the GMPP and the NGP exporters. Each value
+ * defaults to the system property
+ * <code>org.openscada.net.acceptor.&lt;name&gt;</code> and can be overridden
+ * per exporter by the connection property <code>acceptor.&lt;name&gt;</code>,
+ * e.g. <code>acceptor.tcpNoDelay=false</code>.
+ * </p>
+ * <table>
+ * <tr>
+ * <th>Name</th>
+ * <th>Default</th>
+ * <th>Description</th>
+ * </tr>
+ * <tr>
+ * <td>processors</td>
+ * <td>CPUs + 1</td>
+ * <td>Number of NIO processors (selector threads)</td>
+ * </tr>
+ * <tr>
+ * <td>backlog</td>
+ * <td>50</td>
+ * <td>Accept backlog of the server socket</td>
+ * </tr>
+ * <tr>
+ * <td>tcpNoDelay</td>
+ * <td>true</td>
+ * <td>Disable Nagle's algorithm</td>
+ * </tr>
+ * <tr>
+ * <td>receiveBufferSize, sendBufferSize</td>
+ * <td>0</td>
+ * <td>Socket buffer sizes in bytes, <code>0</code> keeps the OS default</td>
+ * </tr>
+ * <tr>
+ * <td>readBufferSize, minReadBufferSize, maxReadBufferSize</td>
+ * <td>2048, 64, 65536</td>
+ * <td>Initial size and limits of the automatically sized read buffer</td>
+ * </tr>
+ * <tr>
+ * <td>readerIdleTime</td>
+ * <td>0</td>
+ * <td>Seconds without input until the handler is notified, <code>0</code>
+ * disables the notification. Handlers which manage their own idle time
+ * override this.</td>
+ * </tr>
+ * <tr>
+ * <td>executorThreads</td>
+ * <td>0</td>
+ * <td>Threads of the ordered executor handling session events,
+ * <code>0</code> handles them in the NIO processor threads</td>
+ * </tr>
+ * <tr>
+ * <td>executorQueueBytes</td>
+ * <td>0</td>
+ * <td>Bytes of received messages which may wait for the executor before
+ * reading is paused, <code>0</code> for unlimited</td>
+ * </tr>
+ * </table>
+ * 
+ * @since 1.1
+ */
+public class AcceptorConfiguration
+{
+    private final static Logger logger = LoggerFactory.getLogger ( AcceptorConfiguration.class );
+
+    private static final String SYSTEM_PREFIX = "org.openscada.net.acceptor.";
+
+    private static final String PROPERTY_PREFIX = "acceptor.";
+
+    private int processors = Runtime.getRuntime ().availableProcessors () + 1;
+
+    private int backlog = 50;
+
+    private boolean tcpNoDelay = true;
+
+    private int receiveBufferSize;
+
+    private int sendBufferSize;
+
+    private int readBufferSize = 2048;
+
+    private int minReadBufferSize = 64;
+
+    private int maxReadBufferSize = 65536;
+
+    private int readerIdleTime;
+
+    private int executorThreads;
+
+    private int executorQueueBytes;
+
+    /**
+     * Create the configuration from the system properties
+     * <code>org.openscada.net.acceptor.*</code>
+     */
+    public static AcceptorConfiguration fromSystemProperties ()
+    {
+        return fromProperties ( null );
+    }
+
+    /**
+     * Create the configuration from connection properties
+     * 
+     * @param properties
+     *            the connection properties, may be <code>null</code>. Values
+     *            which are not set fall back to the system properties.
+     */
+    public static AcceptorConfiguration fromProperties ( final Map<String, String> properties )
+    {
+        final AcceptorConfiguration configuration = new AcceptorConfiguration ();
+
+        configuration.setProcessors ( getInteger ( properties, "processors", configuration.getProcessors () ) );
+        configuration.setBacklog ( getInteger ( properties, "backlog", configuration.getBacklog () ) );
+        configuration.setTcpNoDelay ( getBoolean ( properties, "tcpNoDelay", configuration.isTcpNoDelay () ) );
+        configuration.setReceiveBufferSize ( getInteger ( properties, "receiveBufferSize", configuration.getReceiveBufferSize () ) );
+        configuration.setSendBufferSize ( getInteger ( properties, "sendBufferSize", configuration.getSendBufferSize () ) );
+        configuration.setReadBufferSize ( getInteger ( properties, "readBufferSize", configuration.getReadBufferSize () ) );
+        configuration.setMinReadBufferSize ( getInteger ( properties, "minReadBufferSize", configuration.getMinReadBufferSize () ) );
+        configuration.setMaxReadBufferSize ( getInteger ( properties, "maxReadBufferSize", configuration.getMaxReadBufferSize () ) );
+        configuration.setReaderIdleTime ( getInteger ( properties, "readerIdleTime", configuration.getReaderIdleTime () ) );
+        configuration.setExecutorThreads ( getInteger ( properties, "executorThreads", configuration.getExecutorThreads () ) );
+        configuration.setExecutorQueueBytes ( getInteger ( properties, "executorQueueBytes", configuration.getExecutorQueueBytes () ) );
+
+        return configuration;
+    }
+
+    private static String getValue ( final Map<String, String> properties, final String name )
+    {
+        if ( properties != null )
+        {
+            final String value = properties.get ( PROPERTY_PREFIX + name );
+            if ( value != null )
+            {
+                return value;
+            }
+        }
+        return System.getProperty ( SYSTEM_PREFIX + name );
+    }
+
+    private static int getInteger ( final Map<String, String> properties, final String name, final int defaultValue )
+    {
+        final String value = getValue ( properties, name );
+        if ( value == null || value.length () == 0 )
+        {
+            return defaultValue;
+        }
+
+        try
+        {
+            return Integer.parseInt ( value );
+        }
+        catch ( final NumberFormatException e )
+        {
+            logger.warn ( "Invalid value for acceptor setting '{}': {}", name, value );
+            return defaultValue;
+        }
+    }
+
+    private static boolean getBoolean ( final Map<String, String> properties, final String name, final boolean defaultValue )
+    {
+        final String value = getValue ( properties, name );
+        if ( value == null || value.length () == 0 )
+        {
+            return defaultValue;
+        }
+        return Boolean.parseBoolean ( value );
+    }
+
+    /**
+     * Create a NIO acceptor using this configuration
+     */
+    public NioSocketAcceptor createNioAcceptor ()
+    {
+        final NioSocketAcceptor acceptor = new NioSocketAcceptor ( Math.max ( 1, this.processors ) );
+        configure ( acceptor );
+        return acceptor;
+    }
+
+    /**
+     * Apply the configuration to an acceptor which is not yet bound
+     * <p>
+     * Socket settings are only applied to socket acceptors.
+     * </p>
+     */
+    public void configure ( final IoAcceptor acceptor )
+    {
+        final IoSessionConfig config = acceptor.getSessionConfig ();
+
+        config.setReaderIdleTime ( this.readerIdleTime );
+
+        // the initial read buffer size must lie between the limits
+        config.setMaxReadBufferSize ( Math.max ( this.minReadBufferSize, this.maxReadBufferSize ) );
+        config.setMinReadBufferSize ( this.minReadBufferSize );
+        config.setReadBufferSize ( Math.max ( this.minReadBufferSize, Math.min ( this.maxReadBufferSize, this.readBufferSize ) ) );
+
+        if ( acceptor instanceof SocketAcceptor )
+        {
+            ( (SocketAcceptor)acceptor ).setReuseAddress ( true );
+            ( (SocketAcceptor)acceptor ).setBacklog ( this.backlog );
+        }
+
+        if ( config instanceof SocketSessionConfig )
+        {
+            final SocketSessionConfig socketConfig = (SocketSessionConfig)config;
+            socketConfig.setTcpNoDelay ( this.tcpNoDelay );
+            if ( this.receiveBufferSize > 0 )
+            {
+                socketConfig.setReceiveBufferSize ( this.receiveBufferSize );
+            }
+            if ( this.sendBufferSize > 0 )
+            {
+                socketConfig.setSendBufferSize ( this.sendBufferSize );
+            }
+        }
+    }
+
+    /**
+     * Create the executor filter for handling session events outside the NIO
+     * processor threads
+     * <p>
+     * The filter uses an ordered thread pool, so the events of one session
+     * are still handled one after the other. The caller owns the filter and
+     * must call {@link ExecutorFilter#destroy()} when the acceptor got
+     * disposed.
+     * </p>
+     * 
+     * @return the filter or <code>null</code> if no executor is configured
+     */
+    public ExecutorFilter createExecutorFilter ()
+    {
+        if ( this.executorThreads <= 0 )
+        {
+            return null;
+        }
+
+        final NamedThreadFactory threadFactory = new NamedThreadFactory ( "AcceptorExecutor", true );
+        if ( this.executorQueueBytes > 0 )
+        {
+            return new ExecutorFilter ( this.executorThreads, this.executorThreads, 60, TimeUnit.SECONDS, threadFactory, new IoEventQueueThrottle ( this.executorQueueBytes ) );
+        }
+        else
+        {
+            return new ExecutorFilter ( this.executorThreads, this.executorThreads, 60, TimeUnit.SECONDS, threadFactory );
+        }
+    }
+
+    public int getProcessors ()
+    {
+        return this.processors;
+    }
+
+    public void setProcessors ( final int processors )
+    {
+        this.processors = processors;
+    }
+
+    public int getBacklog ()
+    {
+        return this.backlog;
+    }
+
+    public void setBacklog ( final int backlog )
+    {
+        this.backlog = backlog;
+    }
+
+    public boolean isTcpNoDelay ()
+    {
+        return this.tcpNoDelay;
+    }
+
+    public void setTcpNoDelay ( final boolean tcpNoDelay )
+    {
+        this.tcpNoDelay = tcpNoDelay;
+    }
+
+    public int getReceiveBufferSize ()
+    {
+        return this.receiveBufferSize;
+    }
+
+    public void setReceiveBufferSize ( final int receiveBufferSize )
+    {
+        this.receiveBufferSize = receiveBufferSize;
+    }
+
+    public int getSendBufferSize ()
+    {
+        return this.sendBufferSize;
+    }
+
+    public void setSendBufferSize ( final int sendBufferSize )
+    {
+        this.sendBufferSize = sendBufferSize;
+    }
+
+    public int getReadBufferSize ()
+    {
+        return this.readBufferSize;
+    }
+
+    public void setReadBufferSize ( final int readBufferSize )
+    {
+        this.readBufferSize = readBufferSize;
+    }
+
+    public int getMinReadBufferSize ()
+    {
+        return this.minReadBufferSize;
+    }
+
+    public void setMinReadBufferSize ( final int minReadBufferSize )
+    {
+        this.minReadBufferSize = minReadBufferSize;
+    }
+
+    public int getMaxReadBufferSize ()
+    {
+        return this.maxReadBufferSize;
+    }
+
+    public void setMaxReadBufferSize ( final int maxReadBufferSize )
+    {
+        this.maxReadBufferSize = maxReadBufferSize;
+    }
+
+    public int getReaderIdleTime ()
+    {
+        return this.readerIdleTime;
+    }
+
+    public void setReaderIdleTime ( final int readerIdleTime )
+    {
+        this.readerIdleTime = readerIdleTime;
+    }
+
+    public int getExecutorThreads ()
+    {
+        return this.executorThreads;
+    }
+
+    public void setExecutorThreads ( final int executorThreads )
+    {
+        this.executorThreads = executorThreads;
+    }
+
+    public int getExecutorQueueBytes ()
+    {
+        return this.executorQueueBytes;
+    }
+
+    public void setExecutorQueueBytes ( final int executorQueueBytes )
+    {
+        this.executorQueueBytes = executorQueueBytes;
+    }
+
+    @Override
+    public String toString ()
+    {
+        return String.format ( "[processors=%s, backlog=%s, tcpNoDelay=%s, receiveBufferSize=%s, sendBufferSize=%s, readBuffer=%s/%s/%s, readerIdleTime=%s, executorThreads=%s, executorQueueBytes=%s]", this.processors, this.backlog, this.tcpNoDelay, this.receiveBufferSize, this.sendBufferSize, this.minReadBufferSize, this.readBufferSize, this.maxReadBufferSize, this.readerIdleTime, this.executorThreads, this.executorQueueBytes );
+    }
+}
@@ -19,24 +19,26 @@
 
 package org.openscada.net.mina;
 
+import org.openscada.net.base.data.Value;
+
 public interface GMPPProtocol
 {
 
-    public final static int VT_STRING = 0x000000001;
+    public final static int VT_STRING = Value.TYPE_STRING;
 
-    public final static int VT_LONG = 0x000000002;
+    public final static int VT_LONG = Value.TYPE_LONG;
 
-    public final static int VT_DOUBLE = 0x000000003;
+    public final static int VT_DOUBLE = Value.TYPE_DOUBLE;
 
-    public final static int VT_VOID = 0x000000004;
+    public final static int VT_VOID = Value.TYPE_VOID;
 
-    public final static int VT_INTEGER = 0x000000005;
+    public final static int VT_INTEGER = Value.TYPE_INTEGER;
 
-    public final static int VT_LIST = 0x000000006;
+    public final static int VT_LIST = Value.TYPE_LIST;
 
-    public final static int VT_MAP = 0x000000007;
+    public final static int VT_MAP = Value.TYPE_MAP;
 
-    public final static int VT_BOOLEAN = 0x000000008;
+    public final static int VT_BOOLEAN = Value.TYPE_BOOLEAN;
 
     public final int HEADER_SIZE = 4 + 8 + 8 + 8 + 4;
 
@@ -19,8 +19,6 @@
 
 package org.openscada.net.mina;
 
-import java.nio.ByteBuffer;
-import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
@@ -42,36 +40,130 @@ import org.openscada.net.base.data.VoidValue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Decodes GMPP messages
+ * <p>
+ * Strings are decoded directly from the input buffer. Short strings (like
+ * item ids and attribute names) are de-duplicated through a bounded cache
+ * instead of {@link String#intern()}. The size of the cache can be set using
+ * the system property
+ * <code>org.openscada.net.mina.GMPPProtocolDecoder.internCacheSize</code>
+ * (default 4096).
+ * </p>
+ * <p>
+ * If the session has a {@link MessageVisitorFactory} set as attribute
+ * {@link #ATTR_MESSAGE_VISITOR_FACTORY}, the body of a message can be
+ * consumed by a {@link MessageVisitor} instead of being decoded into values.
+ * </p>
+ */
 public class GMPPProtocolDecoder extends CumulativeProtocolDecoder implements GMPPProtocol
 {
     private final static Logger logger = LoggerFactory.getLogger ( GMPPProtocolDecoder.class );
 
-    private final ThreadLocal<Charset> decoderLocal = new ThreadLocal<Charset> () {
+    /**
+     * The session attribute holding the {@link MessageVisitorFactory}
+     * 
+     * @since 1.1
+     */
+    public static final String ATTR_MESSAGE_VISITOR_FACTORY = GMPPProtocolDecoder.class.getName () + ".messageVisitorFactory";
+
+    private final static boolean disableIntern = Boolean.getBoolean ( "org.openscada.net.mina.GMPPProtocolDecoder.disableIntern" );
+
+    private final static int INTERN_MAX_LENGTH = 128;
+
+    private final static StringInterner interner = new StringInterner ( Integer.getInteger ( "org.openscada.net.mina.GMPPProtocolDecoder.internCacheSize", 4096 ), INTERN_MAX_LENGTH );
+
+    /**
+     * The largest buffer which is kept between two strings
+     */
+    private final static int MAX_RETAINED_CHARS = 16 * 1024;
+
+    private static class CharArrayHolder
+    {
+        private char[] chars = new char[INTERN_MAX_LENGTH];
+
+        public char[] get ( final int size )
+        {
+            if ( this.chars.length >= size )
+            {
+                return this.chars;
+            }
+            if ( size > MAX_RETAINED_CHARS )
+            {
+                // only used for this string, the thread keeps the smaller buffer
+                return new char[size];
+            }
+            this.chars = new char[size];
+            return this.chars;
+        }
+    }
+
+    /**
+     * The decoder instance may be shared between sessions, so the buffer is
+     * kept per thread. Buffers for strings larger than
+     * {@link #MAX_RETAINED_CHARS} are not kept, so that a single large string
+     * does not occupy memory in every I/O thread for the rest of its life.
+     */
+    private final ThreadLocal<CharArrayHolder> charsLocal = new ThreadLocal<CharArrayHolder> () {
         @Override
-        protected Charset initialValue ()
+        protected CharArrayHolder initialValue ()
         {
-            return Charset.forName ( "utf-8" );
+            return new CharArrayHolder ();
         }
     };
 
-    private final static boolean disableIntern = Boolean.getBoolean ( "org.openscada.net.mina.GMPPProtocolDecoder.disableIntern" );
-
     private String decodeStringFromStream ( final IoBuffer buffer, final int size )
     {
-        final ByteBuffer data = buffer.buf ().slice ();
-        data.limit ( size );
+        // UTF-8 never has more characters than bytes
+        final char[] chars = this.charsLocal.get ().get ( size );
+        int len = 0;
+
+        final int end = buffer.position () + size;
+        while ( buffer.position () < end )
+        {
+            final int b = buffer.get () & 0xFF;
 
-        final String result = this.decoderLocal.get ().decode ( data ).toString ();
+            if ( b < 0x80 )
+            {
+                chars[len++] = (char)b;
+            }
+            else if ( b >= 0xC2 && b < 0xE0 && buffer.position () < end )
+            {
+                chars[len++] = (char) ( ( b & 0x1F ) << 6 | buffer.get () & 0x3F );
+            }
+            else if ( b >= 0xE0 && b < 0xF0 && buffer.position () + 1 < end )
+            {
+                chars[len++] = (char) ( ( b & 0x0F ) << 12 | ( buffer.get () & 0x3F ) << 6 | buffer.get () & 0x3F );
+            }
+            else if ( b >= 0xF0 && b < 0xF5 && buffer.position () + 2 < end )
+            {
+                final int cp = ( b & 0x07 ) << 18 | ( buffer.get () & 0x3F ) << 12 | ( buffer.get () & 0x3F ) << 6 | buffer.get () & 0x3F;
+                if ( cp >= Character.MIN_SUPPLEMENTARY_CODE_POINT && cp <= Character.MAX_CODE_POINT )
+                {
+                    len += Character.toChars ( cp, chars, len );
+                }
+                else
+                {
+                    chars[len++] = '\uFFFD';
+                }
+            }
+            else
+            {
+                // malformed input, same as the replacement of the charset decoder
+                chars[len++] = '\uFFFD';
+            }
+        }
 
-        buffer.skip ( size );
+        // never read into the next value, even on malformed input
+        buffer.position ( end );
 
         if ( disableIntern )
         {
-            return result;
+            return new String ( chars, 0, len );
         }
         else
         {
-            return result.intern ();
+            return interner.intern ( chars, len );
         }
     }
 
@@ -145,7 +237,87 @@ public class GMPPProtocolDecoder extends CumulativeProtocolDecoder implements GM
         return new MapValue ( values );
     }
 
-    private Message decodeMessageFromStream ( final IoBuffer inputBuffer )
+    /**
+     * Visit the value at the current position, the position must be after the
+     * type and length field. The position is left at the end of the value.
+     */
+    private void visitValueFromStream ( final IoBuffer buffer, final int type, final int len, final String key, final ValueVisitor visitor )
+    {
+        final int end = buffer.position () + len;
+
+        switch ( type )
+        {
+        case VT_LONG:
+            visitor.visitLong ( key, buffer.getLong () );
+            break;
+        case VT_INTEGER:
+            visitor.visitInteger ( key, buffer.getInt () );
+            break;
+        case VT_STRING:
+            visitor.visitString ( key, decodeStringFromStream ( buffer, len ) );
+            break;
+        case VT_DOUBLE:
+            visitor.visitDouble ( key, Double.longBitsToDouble ( buffer.getLong () ) );
+            break;
+        case VT_BOOLEAN:
+            visitor.visitBoolean ( key, buffer.get () != 0 );
+            break;
+        case VT_VOID:
+            visitor.visitVoid ( key );
+            break;
+        case VT_LIST:
+        {
+            final int items = buffer.getInt ();
+            final ValueVisitor listVisitor = visitor.visitList ( key, items );
+            if ( listVisitor != null )
+            {
+                for ( int i = 0; i < items; i++ )
+                {
+                    final int entryType = buffer.getInt ();
+                    visitValueFromStream ( buffer, entryType, buffer.getInt (), null, listVisitor );
+                }
+            }
+            break;
+        }
+        case VT_MAP:
+        {
+            final int items = buffer.getInt ();
+            final ValueVisitor mapVisitor = visitor.visitMap ( key, items );
+            if ( mapVisitor != null )
+            {
+                visitMapEntriesFromStream ( buffer, items, mapVisitor );
+            }
+            break;
+        }
+        default:
+            // unknown type: only consume data
+            break;
+        }
+
+        buffer.position ( end );
+    }
+
+    private void visitMapEntriesFromStream ( final IoBuffer buffer, final int items, final ValueVisitor visitor )
+    {
+        for ( int i = 0; i < items; i++ )
+        {
+            final int type = buffer.getInt ();
+            final int len = buffer.getInt ();
+            final int valuePos = buffer.position ();
+
+            // the name follows the value, read it first so that the visitor gets it with the value
+            buffer.position ( valuePos + len );
+            final String key = decodeStringFromStream ( buffer, buffer.getInt () );
+            final int endPos = buffer.position ();
+
+            buffer.position ( valuePos );
+            visitValueFromStream ( buffer, type, len, key, visitor );
+
+            buffer.position ( endPos );
+        }
+    }
+
+    private Message decodeMessageFromStream ( final IoSession session, final IoBuffer inputBuffer )
     {
         // read the packet
         final Message message = new Message ();
@@ -154,7 +326,21 @@ public class GMPPProtocolDecoder extends CumulativeProtocolDecoder implements GM
         message.setSequence ( inputBuffer.getLong () );
         message.setReplySequence ( inputBuffer.getLong () );
 
-        inputBuffer.getInt (); // re-read to remove from buffer
+        final int bodySize = inputBuffer.getInt (); // re-read to remove from buffer
+
+        final MessageVisitor visitor = createVisitor ( session, message.getCommandCode () );
+        if ( visitor != null && bodySize >= 4 + 4 + 4 && inputBuffer.getInt ( inputBuffer.position () ) == VT_MAP )
+        {
+            inputBuffer.getInt (); // type
+            final int len = inputBuffer.getInt ();
+            final int end = inputBuffer.position () + len;
+
+            visitMapEntriesFromStream ( inputBuffer, inputBuffer.getInt (), visitor );
+            inputBuffer.position ( end );
+
+            message.setPayload ( visitor.getResult () );
+            return message;
+        }
 
         final Value value = decodeValueFromStream ( inputBuffer );
         if ( value instanceof MapValue )
@@ -165,6 +351,21 @@ public class GMPPProtocolDecoder extends CumulativeProtocolDecoder implements GM
         return message;
     }
 
+    private MessageVisitor createVisitor ( final IoSession session, final int commandCode )
+    {
+        if ( session == null )
+        {
+            return null;
+        }
+
+        final Object factory = session.getAttribute ( ATTR_MESSAGE_VISITOR_FACTORY );
+        if ( factory instanceof MessageVisitorFactory )
+        {
+            return ( (MessageVisitorFactory)factory ).createVisitor ( commandCode );
+        }
+        return null;
+    }
+
     @Override
     protected boolean doDecode ( final IoSession session, final IoBuffer inputBuffer, final ProtocolDecoderOutput out ) throws Exception
     {
@@ -179,7 +380,7 @@ public class GMPPProtocolDecoder extends CumulativeProtocolDecoder implements GM
                 return false;
             }
 
-            final Message message = decodeMessageFromStream ( inputBuffer );
+            final Message message = decodeMessageFromStream ( session, inputBuffer );
 
             if ( message != null )
             {
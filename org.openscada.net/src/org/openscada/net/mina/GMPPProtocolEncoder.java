@@ -19,10 +19,10 @@
 
 package org.openscada.net.mina;
 
-import java.nio.charset.CharacterCodingException;
-import java.nio.charset.Charset;
-import java.nio.charset.CharsetEncoder;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.mina.core.buffer.IoBuffer;
 import org.apache.mina.core.session.IoSession;
@@ -37,18 +37,31 @@ import org.openscada.net.base.data.MapValue;
 import org.openscada.net.base.data.Message;
 import org.openscada.net.base.data.StringValue;
 import org.openscada.net.base.data.Value;
-import org.openscada.net.base.data.VoidValue;
 import org.openscada.net.codec.InvalidValueTypeException;
 
+/**
+ * Encodes GMPP messages
+ * <p>
+ * The encoder first calculates the exact size of the message and then writes
+ * the message into a buffer of exactly that size, so that the buffer never
+ * has to be expanded. The buffer is allocated using the {@link IoBuffer#allocate(int)} so that the
+ * allocator configured for MINA (e.g. a pooling one) is used.
+ * </p>
+ * <p>
+ * Strings are encoded to UTF-8 directly. The encoded form of short strings,
+ * like item ids and attribute names, is cached. The size of the cache can be
+ * configured using the system property
+ * <code>org.openscada.net.gmpp.stringCache.size</code> (default 10000,
+ * <code>0</code> disables the cache).
+ * </p>
+ */
 public class GMPPProtocolEncoder implements ProtocolEncoder, GMPPProtocol
 {
-    private final ThreadLocal<CharsetEncoder> encoderLocal = new ThreadLocal<CharsetEncoder> () {
-        @Override
-        protected CharsetEncoder initialValue ()
-        {
-            return Charset.forName ( "utf-8" ).newEncoder ();
-        }
-    };
+    private static final int STRING_CACHE_SIZE = Integer.getInteger ( "org.openscada.net.gmpp.stringCache.size", 10000 );
+
+    private static final int STRING_CACHE_MAX_LENGTH = 128;
+
+    private static final ConcurrentMap<String, byte[]> stringCache = new ConcurrentHashMap<String, byte[]> ();
 
     @Override
     public void dispose ( final IoSession session ) throws Exception
@@ -74,171 +87,293 @@ public class GMPPProtocolEncoder implements ProtocolEncoder, GMPPProtocol
         }
     }
 
-    private void encodeToStream ( final IoBuffer buffer, final String data )
+    /**
+     * Get the cached UTF-8 form of a string
+     * 
+     * @return the encoded string or <code>null</code> if the string is not
+     *         cacheable
+     */
+    private static byte[] cachedString ( final String data )
     {
-        buffer.putInt ( 0 );
-        final int pos = buffer.position ();
-
-        try
+        if ( STRING_CACHE_SIZE <= 0 || data.length () > STRING_CACHE_MAX_LENGTH )
         {
-            buffer.putString ( data, this.encoderLocal.get () );
-            final int afterPos = buffer.position ();
-            final int len = afterPos - pos;
-            buffer.putInt ( pos - 4, len );
+            return null;
         }
-        catch ( final CharacterCodingException e )
+
+        byte[] result = stringCache.get ( data );
+        if ( result != null )
         {
-            throw new RuntimeException ( "Failed to encode", e );
+            return result;
         }
-    }
 
-    private void encodeToStream ( final IoBuffer buffer, final IntegerValue value )
-    {
-        buffer.putInt ( VT_INTEGER );
-        buffer.putInt ( 4 );
-        buffer.putInt ( value.value );
-    }
+        result = new byte[utf8Length ( data )];
+        writeUtf8 ( result, data );
 
-    private void encodeToStream ( final IoBuffer buffer, final LongValue value )
-    {
-        buffer.putInt ( VT_LONG );
-        buffer.putInt ( 8 );
-        buffer.putLong ( value.getValue () );
-    }
+        if ( stringCache.size () >= STRING_CACHE_SIZE )
+        {
+            // start over, frequently used strings will be back soon
+            stringCache.clear ();
+        }
+        stringCache.put ( data, result );
 
-    private void encodeToStream ( final IoBuffer buffer, final DoubleValue value )
-    {
-        buffer.putInt ( VT_DOUBLE );
-        buffer.putInt ( 8 );
-        buffer.putLong ( Double.doubleToRawLongBits ( value.getValue () ) );
+        return result;
     }
 
-    private void encodeToStream ( final IoBuffer buffer, final VoidValue value )
+    private static int utf8Length ( final String data )
     {
-        buffer.putInt ( VT_VOID );
-        buffer.putInt ( 0 );
-    }
+        final int len = data.length ();
+        int result = 0;
 
-    private void encodeToStream ( final IoBuffer buffer, final BooleanValue value )
-    {
-        buffer.putInt ( VT_BOOLEAN );
-        buffer.putInt ( 1 );
-        buffer.put ( value.getValue () ? (byte)0xFF : (byte)0x00 );
-    }
+        for ( int i = 0; i < len; i++ )
+        {
+            final char c = data.charAt ( i );
+            if ( c < 0x80 )
+            {
+                result += 1;
+            }
+            else if ( c < 0x800 )
+            {
+                result += 2;
+            }
+            else if ( Character.isHighSurrogate ( c ) && i + 1 < len && Character.isLowSurrogate ( data.charAt ( i + 1 ) ) )
+            {
+                result += 4;
+                i++;
+            }
+            else if ( Character.isHighSurrogate ( c ) || Character.isLowSurrogate ( c ) )
+            {
+                throw new RuntimeException ( String.format ( "Failed to encode: malformed surrogate at position %s", i ) );
+            }
+            else
+            {
+                result += 3;
+            }
+        }
 
-    private void encodeToStream ( final IoBuffer buffer, final StringValue value )
-    {
-        buffer.putInt ( VT_STRING );
-        encodeToStream ( buffer, value.getValue () );
+        return result;
     }
 
-    private void encodeToStream ( final IoBuffer buffer, final ListValue value ) throws InvalidValueTypeException
+    private static void writeUtf8 ( final byte[] target, final String data )
     {
-        buffer.putInt ( VT_LIST );
-        final int position = buffer.position (); // remember position
-        buffer.putInt ( 0 ); // dummy size length
+        final int len = data.length ();
+        int pos = 0;
 
-        final int startPos = buffer.position ();
-        buffer.putInt ( value.getValues ().size () );
-
-        for ( final Value valueEntry : value.getValues () )
+        for ( int i = 0; i < len; i++ )
         {
-            codeValue ( buffer, valueEntry );
+            final char c = data.charAt ( i );
+            if ( c < 0x80 )
+            {
+                target[pos++] = (byte)c;
+            }
+            else if ( c < 0x800 )
+            {
+                target[pos++] = (byte) ( 0xC0 | c >> 6 );
+                target[pos++] = (byte) ( 0x80 | c & 0x3F );
+            }
+            else if ( Character.isHighSurrogate ( c ) )
+            {
+                final int cp = Character.toCodePoint ( c, data.charAt ( ++i ) );
+                target[pos++] = (byte) ( 0xF0 | cp >> 18 );
+                target[pos++] = (byte) ( 0x80 | cp >> 12 & 0x3F );
+                target[pos++] = (byte) ( 0x80 | cp >> 6 & 0x3F );
+                target[pos++] = (byte) ( 0x80 | cp & 0x3F );
+            }
+            else
+            {
+                target[pos++] = (byte) ( 0xE0 | c >> 12 );
+                target[pos++] = (byte) ( 0x80 | c >> 6 & 0x3F );
+                target[pos++] = (byte) ( 0x80 | c & 0x3F );
+            }
         }
-        final int size = buffer.position () - startPos;
-
-        buffer.putInt ( position, size ); // set value size
     }
 
-    private void encodeToStream ( final IoBuffer buffer, final MapValue value ) throws InvalidValueTypeException
+    private static void writeUtf8 ( final IoBuffer buffer, final String data )
     {
-        buffer.putInt ( VT_MAP );
-        final int position = buffer.position (); // remember position
-        buffer.putInt ( 0 ); // dummy size length
-
-        final int startPos = buffer.position ();
-        buffer.putInt ( value.getValues ().size () );
+        final int len = data.length ();
 
-        for ( final Map.Entry<String, Value> valueEntry : value.getValues ().entrySet () )
+        for ( int i = 0; i < len; i++ )
         {
-            codeValue ( buffer, valueEntry.getKey (), valueEntry.getValue () );
+            final char c = data.charAt ( i );
+            if ( c < 0x80 )
+            {
+                buffer.put ( (byte)c );
+            }
+            else if ( c < 0x800 )
+            {
+                buffer.put ( (byte) ( 0xC0 | c >> 6 ) );
+                buffer.put ( (byte) ( 0x80 | c & 0x3F ) );
+            }
+            else if ( Character.isHighSurrogate ( c ) )
+            {
+                final int cp = Character.toCodePoint ( c, data.charAt ( ++i ) );
+                buffer.put ( (byte) ( 0xF0 | cp >> 18 ) );
+                buffer.put ( (byte) ( 0x80 | cp >> 12 & 0x3F ) );
+                buffer.put ( (byte) ( 0x80 | cp >> 6 & 0x3F ) );
+                buffer.put ( (byte) ( 0x80 | cp & 0x3F ) );
+            }
+            else
+            {
+                buffer.put ( (byte) ( 0xE0 | c >> 12 ) );
+                buffer.put ( (byte) ( 0x80 | c >> 6 & 0x3F ) );
+                buffer.put ( (byte) ( 0x80 | c & 0x3F ) );
+            }
         }
-        final int size = buffer.position () - startPos;
+    }
+
+    /**
+     * Size of an encoded string, including the length field
+     */
+    private static int sizeOf ( final String data )
+    {
+        final byte[] cached = cachedString ( data );
+        return 4 + ( cached != null ? cached.length : utf8Length ( data ) );
+    }
 
-        buffer.putInt ( position, size ); // set value size
+    /**
+     * Size of an encoded value, including the type and length field
+     */
+    private static int sizeOf ( final Value value ) throws InvalidValueTypeException
+    {
+        return 4 + 4 + sizeOfBody ( value );
     }
 
-    private void codeValue ( final IoBuffer buffer, final Value value ) throws InvalidValueTypeException
+    private static int sizeOfBody ( final Value value ) throws InvalidValueTypeException
     {
         if ( value == null )
         {
             // at least provide some more information
             throw new NullPointerException ( "Trying to encode a 'null' value. Use VoidValue instead!" );
         }
-        final Class<?> clazz = value.getClass ();
 
-        if ( clazz == StringValue.class )
-        {
-            encodeToStream ( buffer, (StringValue)value );
-        }
-        else if ( clazz == BooleanValue.class )
-        {
-            encodeToStream ( buffer, (BooleanValue)value );
-        }
-        else if ( clazz == IntegerValue.class )
+        switch ( value.getValueType () )
         {
-            encodeToStream ( buffer, (IntegerValue)value );
+            case VT_STRING:
+                return sizeOf ( ( (StringValue)value ).getValue () ) - 4;
+            case VT_BOOLEAN:
+                return 1;
+            case VT_INTEGER:
+                return 4;
+            case VT_LONG:
+                return 8;
+            case VT_DOUBLE:
+                return 8;
+            case VT_VOID:
+                return 0;
+            case VT_LIST:
+            {
+                int size = 4;
+                for ( final Value entry : ( (ListValue)value ).getValues () )
+                {
+                    size += sizeOf ( entry );
+                }
+                return size;
+            }
+            case VT_MAP:
+            {
+                int size = 4;
+                for ( final Map.Entry<String, Value> entry : ( (MapValue)value ).getValues ().entrySet () )
+                {
+                    size += sizeOf ( entry.getValue () );
+                    size += sizeOf ( entry.getKey () );
+                }
+                return size;
+            }
+            default:
+                throw new InvalidValueTypeException ( String.format ( "The type '%s' is unknown", value.getClass ().getName () ) );
         }
-        else if ( clazz == LongValue.class )
-        {
-            encodeToStream ( buffer, (LongValue)value );
-        }
-        else if ( clazz == DoubleValue.class )
-        {
-            encodeToStream ( buffer, (DoubleValue)value );
-        }
-        else if ( clazz == VoidValue.class )
-        {
-            encodeToStream ( buffer, (VoidValue)value );
-        }
-        else if ( clazz == ListValue.class )
-        {
-            encodeToStream ( buffer, (ListValue)value );
-        }
-        else if ( clazz == MapValue.class )
+    }
+
+    private static void encodeToStream ( final IoBuffer buffer, final String data )
+    {
+        final byte[] cached = cachedString ( data );
+        if ( cached != null )
         {
-            encodeToStream ( buffer, (MapValue)value );
+            buffer.putInt ( cached.length );
+            buffer.put ( cached );
         }
         else
         {
-            throw new InvalidValueTypeException ( String.format ( "The type '%s' is unknown", value.getClass ().getName () ) );
+            buffer.putInt ( utf8Length ( data ) );
+            writeUtf8 ( buffer, data );
         }
     }
 
-    private void codeValue ( final IoBuffer buffer, final String name, final Value value ) throws InvalidValueTypeException
+    private static void codeValue ( final IoBuffer buffer, final Value value ) throws InvalidValueTypeException
     {
-        codeValue ( buffer, value );
-        encodeToStream ( buffer, name );
+        final int type = value.getValueType ();
+        buffer.putInt ( type );
+
+        switch ( type )
+        {
+            case VT_STRING:
+                encodeToStream ( buffer, ( (StringValue)value ).getValue () );
+                break;
+            case VT_BOOLEAN:
+                buffer.putInt ( 1 );
+                buffer.put ( ( (BooleanValue)value ).getValue () ? (byte)0xFF : (byte)0x00 );
+                break;
+            case VT_INTEGER:
+                buffer.putInt ( 4 );
+                buffer.putInt ( ( (IntegerValue)value ).value );
+                break;
+            case VT_LONG:
+                buffer.putInt ( 8 );
+                buffer.putLong ( ( (LongValue)value ).getValue () );
+                break;
+            case VT_DOUBLE:
+                buffer.putInt ( 8 );
+                buffer.putLong ( Double.doubleToRawLongBits ( ( (DoubleValue)value ).getValue () ) );
+                break;
+            case VT_VOID:
+                buffer.putInt ( 0 );
+                break;
+            case VT_LIST:
+            {
+                final List<Value> values = ( (ListValue)value ).getValues ();
+                // the buffer has the exact size, so patching the size later is cheap
+                final int sizePos = buffer.position ();
+                buffer.putInt ( 0 );
+                buffer.putInt ( values.size () );
+                for ( final Value entry : values )
+                {
+                    codeValue ( buffer, entry );
+                }
+                buffer.putInt ( sizePos, buffer.position () - sizePos - 4 );
+                break;
+            }
+            case VT_MAP:
+            {
+                final Map<String, Value> values = ( (MapValue)value ).getValues ();
+                // the buffer has the exact size, so patching the size later is cheap
+                final int sizePos = buffer.position ();
+                buffer.putInt ( 0 );
+                buffer.putInt ( values.size () );
+                for ( final Map.Entry<String, Value> entry : values.entrySet () )
+                {
+                    codeValue ( buffer, entry.getValue () );
+                    encodeToStream ( buffer, entry.getKey () );
+                }
+                buffer.putInt ( sizePos, buffer.position () - sizePos - 4 );
+                break;
+            }
+            default:
+                throw new InvalidValueTypeException ( String.format ( "The type '%s' is unknown", value.getClass ().getName () ) );
+        }
     }
 
     public IoBuffer code ( final Message message ) throws InvalidValueTypeException
     {
-        final IoBuffer outputBuffer = IoBuffer.allocate ( HEADER_SIZE );
+        final int bodySize = sizeOf ( message.getValues () );
 
-        outputBuffer.setAutoExpand ( true );
-        outputBuffer.clear ();
+        final IoBuffer outputBuffer = IoBuffer.allocate ( HEADER_SIZE + bodySize );
 
         outputBuffer.putInt ( message.getCommandCode () );
         outputBuffer.putLong ( message.getTimestamp () );
         outputBuffer.putLong ( message.getSequence () );
         outputBuffer.putLong ( message.getReplySequence () );
-        final int sizePos = outputBuffer.position ();
-        outputBuffer.putInt ( 0 ); // dummy body size
+        outputBuffer.putInt ( bodySize );
 
-        final int startPos = outputBuffer.position ();
         codeValue ( outputBuffer, message.getValues () );
-        final int bodySize = outputBuffer.position () - startPos;
-        outputBuffer.putInt ( sizePos, bodySize );
 
         outputBuffer.flip ();
 
@@ -19,6 +19,9 @@
 
 package org.openscada.net.mina;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 import org.apache.mina.core.future.WriteFuture;
 import org.apache.mina.core.session.IoSession;
 import org.openscada.core.info.StatisticsImpl;
@@ -42,13 +45,53 @@ public class IoSessionSender implements MessageSender
 
     private final static Logger logger = LoggerFactory.getLogger ( IoSessionSender.class );
 
+    private final PrioritizedWriter writer;
+
+    private final Map<Integer, WritePriority> priorities = new ConcurrentHashMap<Integer, WritePriority> ();
+
     public IoSessionSender ( final IoSession session, final StatisticsImpl statistics )
+    {
+        this ( session, statistics, null );
+    }
+
+    /**
+     * Create a new sender
+     * 
+     * @param writer
+     *            the writer to send messages through, <code>null</code> to
+     *            write to the session directly
+     * @since 1.1
+     */
+    public IoSessionSender ( final IoSession session, final StatisticsImpl statistics, final PrioritizedWriter writer )
     {
         this.session = session;
         this.statistics = statistics;
+        this.writer = writer;
         statistics.setLabel ( STATS_QUEUED_BYTES, "Scheduled write bytes" );
     }
 
+    /**
+     * Set the outbound lane of messages with the provided command code
+     * <p>
+     * Messages without an explicit priority are sent as
+     * {@link WritePriority#CONTROL}. Has no effect if the sender has no
+     * writer.
+     * </p>
+     * 
+     * @since 1.1
+     */
+    public void setPriority ( final int commandCode, final WritePriority priority )
+    {
+        if ( priority == null )
+        {
+            this.priorities.remove ( commandCode );
+        }
+        else
+        {
+            this.priorities.put ( commandCode, priority );
+        }
+    }
+
     @Override
     public synchronized WriteFuture sendMessage ( final Message message, final PrepareSendHandler handler )
     {
@@ -60,7 +103,17 @@ public class IoSessionSender implements MessageSender
             handler.prepareSend ( message );
         }
 
-        final WriteFuture future = this.session.write ( message );
+        // only one thread may write at a time, otherwise MINA's filters may get corrupted
+        // also see https://issues.apache.org/jira/browse/DIRMINA-653
+        final WriteFuture future;
+        if ( this.writer != null )
+        {
+            future = this.writer.write ( message, this.priorities.get ( message.getCommandCode () ) );
+        }
+        else
+        {
+            future = this.session.write ( message );
+        }
 
         logger.trace ( "Scheduled write bytes: {}", this.session.getScheduledWriteBytes () );
         this.statistics.setCurrentValue ( STATS_QUEUED_BYTES, this.session.getScheduledWriteBytes () );
@@ -0,0 +1,44 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+
+package org.openscada.net.mina;
+
+/**
+ * Provides message visitors to the {@link GMPPProtocolDecoder}
+ * <p>
+ * The factory is looked up from the session attribute
+ * {@link GMPPProtocolDecoder#ATTR_MESSAGE_VISITOR_FACTORY}.
+ * </p>
+ * 
+ * @since 1.1
+ */
+public interface MessageVisitorFactory
+{
+    /**
+     * Create a visitor for a message
+     * 
+     * @param commandCode
+     *            the command code of the message
+     * @return the visitor or <code>null</code> if the message should be
+     *         decoded as usual
+     */
+    public MessageVisitor createVisitor ( int commandCode );
+}
@@ -20,14 +20,10 @@
 package org.openscada.net.mina;
 
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.LinkedList;
-import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.mina.core.future.WriteFuture;
@@ -36,7 +32,6 @@ import org.openscada.net.base.MessageListener;
 import org.openscada.net.base.MessageStateListener;
 import org.openscada.net.base.data.Message;
 import org.openscada.net.utils.MessageCreator;
-import org.openscada.utils.concurrent.NamedThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -48,17 +43,15 @@ public class Messenger implements MessageListener
 
     private final static Logger logger = LoggerFactory.getLogger ( Messenger.class );
 
-    private ScheduledFuture<?> timeoutJob;
+    private TimeoutWheel.Timeout sessionTimeoutJob;
 
     private static class MessageTag
     {
         private MessageStateListener listener;
 
-        private long timestamp = 0;
-
         private long timeout = 0;
 
-        private boolean canceled = false;
+        private volatile TimeoutWheel.Timeout timeoutJob;
 
         public MessageStateListener getListener ()
         {
@@ -70,58 +63,69 @@ public class Messenger implements MessageListener
             this.listener = listener;
         }
 
-        public void setTimestamp ( final long timestamp )
-        {
-            this.timestamp = timestamp;
-        }
-
         public void setTimeout ( final long timeout )
         {
             this.timeout = timeout;
         }
 
-        public synchronized boolean isTimedOut ()
+        public long getTimeout ()
         {
-            if ( this.timeout <= 0 )
-            {
-                return this.canceled;
-            }
-
-            if ( this.canceled )
-            {
-                return true;
-            }
-
-            return System.currentTimeMillis () - this.timestamp >= this.timeout;
+            return this.timeout;
         }
 
-        public synchronized void cancel ()
+        public void setTimeoutJob ( final TimeoutWheel.Timeout timeoutJob )
         {
-            this.canceled = true;
+            this.timeoutJob = timeoutJob;
         }
 
-        public boolean isCanceled ()
+        /**
+         * Cancel the timeout job of the tag, does not lock
+         */
+        public void cancelTimeout ()
         {
-            return this.canceled;
+            final TimeoutWheel.Timeout timeoutJob = this.timeoutJob;
+            if ( timeoutJob != null )
+            {
+                timeoutJob.cancel ();
+            }
         }
     }
 
-    private final Map<Long, MessageTag> tagList = new HashMap<Long, MessageTag> ();
+    /**
+     * The open requests, a tag is owned by whoever removes it from the map
+     */
+    private final ConcurrentMap<Long, MessageTag> tagList = new ConcurrentHashMap<Long, MessageTag> ();
 
     private MessageSender connection;
 
-    private ScheduledExecutorService timer;
+    private final TimeoutWheel timeoutWheel;
 
     private final long sessionTimeout;
 
-    private final long timeoutJobPeriod;
-
     private final StatisticsImpl statistics;
 
+    private boolean idleDriven;
+
     public Messenger ( final long timeout, final StatisticsImpl statistics )
+    {
+        this ( timeout, statistics, TimeoutWheel.getDefault () );
+    }
+
+    /**
+     * Create a new messenger
+     * 
+     * @param timeout
+     *            the session timeout in milliseconds
+     * @param statistics
+     *            the statistics to update
+     * @param timeoutWheel
+     *            the timer wheel handling the session and message timeouts
+     * @since 1.1
+     */
+    public Messenger ( final long timeout, final StatisticsImpl statistics, final TimeoutWheel timeoutWheel )
     {
         this.sessionTimeout = timeout;
-        this.timeoutJobPeriod = 1000;
+        this.timeoutWheel = timeoutWheel;
         this.statistics = statistics;
 
         statistics.setLabel ( STATS_RECEIVED_MSGS, "Received messages" );
@@ -133,15 +137,56 @@ public class Messenger implements MessageListener
         return this.sessionTimeout;
     }
 
-    @Override
-    protected void finalize () throws Throwable
+    /**
+     * Let the owner of the messenger drive the session timeout check
+     * <p>
+     * If enabled the messenger does not schedule a session timeout job for
+     * the connection. Instead the owner has to call {@link #sessionIdle()}
+     * whenever the underlying session was idle for reading. The setting
+     * takes effect with the next call to {@link #connected(MessageSender)}.
+     * </p>
+     * 
+     * @param idleDriven
+     *            <code>true</code> if the session timeout is checked on idle
+     *            events only
+     * @since 1.1
+     */
+    public synchronized void setIdleDriven ( final boolean idleDriven )
     {
-        logger.debug ( "Finalized" );
-        if ( this.timer != null )
+        this.idleDriven = idleDriven;
+    }
+
+    /**
+     * Handle a reader idle event of the underlying session
+     * <p>
+     * Closes the connection if nothing was received within the session
+     * timeout.
+     * </p>
+     * 
+     * @return <code>true</code> if the connection is still alive and a
+     *         keep-alive message should be sent, <code>false</code>
+     *         otherwise
+     * @since 1.1
+     */
+    public boolean sessionIdle ()
+    {
+        final long timeDiff = System.currentTimeMillis () - this.lastMessge;
+
+        final Collection<MessageTag> tags;
+        synchronized ( this )
         {
-            this.timer.shutdown ();
+            if ( this.connection == null )
+            {
+                return false;
+            }
+            if ( timeDiff <= this.sessionTimeout )
+            {
+                return true;
+            }
+            tags = closeOnTimeout ( timeDiff );
         }
-        super.finalize ();
+        fireTimeouts ( tags );
+        return false;
     }
 
     public void connected ( final MessageSender connection )
@@ -159,23 +204,11 @@ public class Messenger implements MessageListener
                 this.connection = connection;
                 tags = cleanTagList ();
 
-                this.timer = Executors.newSingleThreadScheduledExecutor ( new NamedThreadFactory ( "MessengerTimer/" + connection, true ) );
-                final Runnable runnable = new Runnable () {
-
-                    @Override
-                    public void run ()
-                    {
-                        Messenger.this.processTimeOuts ();
-                    }
-
-                    @Override
-                    protected void finalize () throws Throwable
-                    {
-                        logger.debug ( "Finalized timeout job" );
-                        super.finalize ();
-                    }
-                };
-                this.timeoutJob = this.timer.scheduleWithFixedDelay ( runnable, this.sessionTimeout, this.timeoutJobPeriod, TimeUnit.MILLISECONDS );
+                this.lastMessge = System.currentTimeMillis ();
+                if ( !this.idleDriven )
+                {
+                    scheduleSessionTimeout ( this.sessionTimeout );
+                }
             }
         }
 
@@ -197,15 +230,10 @@ public class Messenger implements MessageListener
             this.connection = null;
             logger.info ( "Disconnected" );
             final Collection<MessageTag> tags = cleanTagList ();
-            if ( this.timeoutJob != null )
-            {
-                this.timeoutJob.cancel ( false );
-                this.timeoutJob = null;
-            }
-            if ( this.timer != null )
+            if ( this.sessionTimeoutJob != null )
             {
-                this.timer.shutdown ();
-                this.timer = null;
+                this.sessionTimeoutJob.cancel ();
+                this.sessionTimeoutJob = null;
             }
             return tags;
         }
@@ -240,7 +268,7 @@ public class Messenger implements MessageListener
         }
     }
 
-    private final Map<Integer, MessageListener> listeners = new HashMap<Integer, MessageListener> ();
+    private final Map<Integer, MessageListener> listeners = new ConcurrentHashMap<Integer, MessageListener> ();
 
     private volatile long lastMessge;
 
@@ -258,24 +286,14 @@ public class Messenger implements MessageListener
     {
         final Collection<MessageTag> tags = new LinkedList<MessageTag> ();
 
-        synchronized ( this.tagList )
+        for ( final Map.Entry<Long, MessageTag> entry : this.tagList.entrySet () )
         {
-            for ( final Map.Entry<Long, MessageTag> tag : this.tagList.entrySet () )
+            final MessageTag tag = entry.getValue ();
+            if ( this.tagList.remove ( entry.getKey (), tag ) )
             {
-                try
-                {
-                    if ( !tag.getValue ().isCanceled () )
-                    {
-                        tag.getValue ().cancel ();
-                        tags.add ( tag.getValue () );
-                    }
-                }
-                catch ( final Throwable e )
-                {
-                    logger.warn ( "Failed to handle message timeout", e );
-                }
+                tag.cancelTimeout ();
+                tags.add ( tag );
             }
-            this.tagList.clear ();
         }
         return tags;
     }
@@ -324,31 +342,14 @@ public class Messenger implements MessageListener
     {
         final Long seq = Long.valueOf ( message.getReplySequence () );
 
-        MessageTag tag = null;
-        synchronized ( this.tagList )
-        {
-            if ( this.tagList.containsKey ( seq ) )
-            {
-                tag = this.tagList.get ( seq );
-
-                // if the tag is timed out then we don't process it here and let processTimeOuts () do the job
-                if ( !tag.isTimedOut () )
-                {
-                    this.tagList.remove ( seq );
-                }
-                else
-                {
-                    logger.info ( "Found tag for message {} but it is timed out", seq );
-                    tag = null;
-                    return true;
-                }
-            }
-        }
+        // whoever removes the tag from the list (reply or timeout) owns it
+        final MessageTag tag = this.tagList.remove ( seq );
 
         try
         {
             if ( tag != null )
             {
+                tag.cancelTimeout ();
                 logger.debug ( "Processing message listener for message {}", seq );
                 tag.getListener ().messageReply ( message );
             }
@@ -360,40 +361,40 @@ public class Messenger implements MessageListener
         return tag != null;
     }
 
-    private void processTimeOuts ()
+    private void processTimeOut ( final long sequence, final MessageTag tag )
     {
-        final List<MessageTag> removeBag = new LinkedList<MessageTag> ();
-
-        // check for session timeout
-        checkSessionTimeout ();
-
-        // check for message timeouts
-        synchronized ( this.tagList )
+        if ( !this.tagList.remove ( Long.valueOf ( sequence ), tag ) )
         {
-            for ( final Iterator<Map.Entry<Long, MessageTag>> i = this.tagList.entrySet ().iterator (); i.hasNext (); )
-            {
-                final MessageTag tag = i.next ().getValue ();
-
-                if ( tag.isTimedOut () )
-                {
-                    removeBag.add ( tag );
-                    i.remove ();
-                }
-            }
+            // already replied or cleaned up
+            return;
         }
 
-        // now send out time outs
-        for ( final MessageTag tag : removeBag )
+        try
         {
-            try
-            {
-                tag.getListener ().messageTimedOut ();
-            }
-            catch ( final Throwable e )
+            tag.getListener ().messageTimedOut ();
+        }
+        catch ( final Throwable e )
+        {
+            logger.info ( "Failed to handle messageTimedOut", e );
+        }
+    }
+
+    /**
+     * Schedule the next session timeout check
+     * <p>
+     * Must be called while holding the lock on <code>this</code>
+     * </p>
+     */
+    private void scheduleSessionTimeout ( final long delay )
+    {
+        this.sessionTimeoutJob = this.timeoutWheel.schedule ( new Runnable () {
+
+            @Override
+            public void run ()
             {
-                logger.info ( "Failed to handle messageTimedOut", e );
+                checkSessionTimeout ();
             }
-        }
+        }, delay, TimeUnit.MILLISECONDS );
     }
 
     private void checkSessionTimeout ()
@@ -406,7 +407,19 @@ public class Messenger implements MessageListener
             logger.warn ( "Called without a connection" );
         }
 
-        if ( timeDiff > this.sessionTimeout )
+        if ( timeDiff <= this.sessionTimeout )
+        {
+            synchronized ( this )
+            {
+                // only re-schedule if we are the current job and were not replaced by a reconnect
+                if ( this.connection != null && this.sessionTimeoutJob != null && this.sessionTimeoutJob.isExpired () )
+                {
+                    // check again when the last message would time out
+                    scheduleSessionTimeout ( Math.max ( 1, this.sessionTimeout - timeDiff ) );
+                }
+            }
+        }
+        else
         {
             final Collection<MessageTag> tags;
             synchronized ( this )
@@ -415,17 +428,29 @@ public class Messenger implements MessageListener
                 {
                     return;
                 }
-
-                logger.warn ( "Closing connection due to receive timeout: {} (timeout: {})", timeDiff, this.sessionTimeout );
-                // we close the connection and wait for "disconnected" to get called from outside
-                this.connection.close ();
-
-                tags = performDisconnect ();
+                tags = closeOnTimeout ( timeDiff );
             }
             fireTimeouts ( tags );
         }
     }
 
+    /**
+     * Close the connection after a receive timeout
+     * <p>
+     * Must be called while holding the lock on <code>this</code>
+     * </p>
+     * 
+     * @return the message tags which have to be timed out
+     */
+    private Collection<MessageTag> closeOnTimeout ( final long timeDiff )
+    {
+        logger.warn ( "Closing connection due to receive timeout: {} (timeout: {})", timeDiff, this.sessionTimeout );
+        // we close the connection and wait for "disconnected" to get called from outside
+        this.connection.close ();
+
+        return performDisconnect ();
+    }
+
     public WriteFuture sendMessage ( final Message message )
     {
         return sendMessage ( message, null );
@@ -443,9 +468,18 @@ public class Messenger implements MessageListener
             return;
         }
 
-        synchronized ( this.tagList )
+        this.tagList.put ( sequence, messageTag );
+
+        if ( messageTag.getTimeout () > 0 )
         {
-            this.tagList.put ( sequence, messageTag );
+            messageTag.setTimeoutJob ( this.timeoutWheel.schedule ( new Runnable () {
+
+                @Override
+                public void run ()
+                {
+                    processTimeOut ( sequence, messageTag );
+                }
+            }, messageTag.getTimeout (), TimeUnit.MILLISECONDS ) );
         }
     }
 
@@ -473,7 +507,6 @@ public class Messenger implements MessageListener
             final MessageTag tag = new MessageTag ();
 
             tag.setListener ( listener );
-            tag.setTimestamp ( System.currentTimeMillis () );
             tag.setTimeout ( timeout < 0 ? 0 : timeout );
 
             future = connection.sendMessage ( message, new PrepareSendHandler () {
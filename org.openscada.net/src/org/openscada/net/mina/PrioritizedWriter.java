@@ -0,0 +1,388 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.net.mina;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.future.DefaultWriteFuture;
+import org.apache.mina.core.future.IoFutureListener;
+import org.apache.mina.core.future.WriteFuture;
+import org.apache.mina.core.session.IoSession;
+
+/**
+ * Writes the messages of one session through prioritized outbound lanes
+ * <p>
+ * Only a small number of messages is handed over to the write queue of the
+ * session at a time. All other messages wait in the lane of their
+ * {@link WritePriority}. Whenever a write completes, the next message is
+ * taken from the lane with the highest priority. So a reply to a request
+ * waits for the few messages already handed over, and not for all data
+ * updates queued before it. The order of messages within a lane is
+ * preserved.
+ * </p>
+ * <p>
+ * The writer is the only one writing to the session, so it also serializes
+ * the writes to the filter chain (see DIRMINA-653). Only one thread at a time
+ * hands over messages to the session, and it does so without holding the
+ * lock of the writer, since a write may complete or fail synchronously.
+ * </p>
+ * <p>
+ * Writers are used by the server connections unless the system property
+ * <code>org.openscada.net.mina.priorityWrites</code> is set to
+ * <code>false</code>. The number of messages handed over to the session is
+ * set by <code>org.openscada.net.mina.priorityWrites.maxInFlight</code>
+ * (defaults to 16).
+ * </p>
+ * 
+ * @since 1.1
+ */
+public class PrioritizedWriter
+{
+    private final IoSession session;
+
+    private final int maxInFlight;
+
+    private final List<LinkedList<Entry>> lanes;
+
+    private int queued;
+
+    /**
+     * The size of the buffers waiting in the lanes
+     */
+    private long queuedBufferBytes;
+
+    /**
+     * The number of messages waiting in the lanes which are not buffers yet
+     */
+    private int queuedObjects;
+
+    private int inFlight;
+
+    private boolean draining;
+
+    private boolean disposed;
+
+    private final AtomicLong overtaken = new AtomicLong ();
+
+    private static class Entry
+    {
+        private final Object message;
+
+        private final DefaultWriteFuture future;
+
+        /**
+         * The size of the message if it already is a buffer, -1 otherwise
+         */
+        private final int size;
+
+        public Entry ( final Object message, final DefaultWriteFuture future )
+        {
+            this.message = message;
+            this.future = future;
+            this.size = message instanceof IoBuffer ? ( (IoBuffer)message ).remaining () : -1;
+        }
+    }
+
+    public PrioritizedWriter ( final IoSession session )
+    {
+        this ( session, Integer.getInteger ( "org.openscada.net.mina.priorityWrites.maxInFlight", 16 ) );
+    }
+
+    public PrioritizedWriter ( final IoSession session, final int maxInFlight )
+    {
+        this.session = session;
+        this.maxInFlight = Math.max ( 1, maxInFlight );
+
+        this.lanes = new ArrayList<LinkedList<Entry>> ( WritePriority.values ().length );
+        for ( int i = 0; i < WritePriority.values ().length; i++ )
+        {
+            this.lanes.add ( new LinkedList<Entry> () );
+        }
+    }
+
+    public static boolean isEnabled ()
+    {
+        return Boolean.parseBoolean ( System.getProperty ( "org.openscada.net.mina.priorityWrites", "true" ) );
+    }
+
+    /**
+     * Queue a message for writing
+     * 
+     * @param message
+     *            the message to write
+     * @param priority
+     *            the lane of the message, <code>null</code> for
+     *            {@link WritePriority#CONTROL}
+     * @return the future which completes once the message was written by the
+     *         session
+     */
+    public WriteFuture write ( final Object message, final WritePriority priority )
+    {
+        final DefaultWriteFuture future = new DefaultWriteFuture ( this.session );
+
+        synchronized ( this )
+        {
+            if ( this.disposed )
+            {
+                future.setException ( new IllegalStateException ( "Writer is disposed" ) );
+                return future;
+            }
+
+            final int lane = priority == null ? 0 : priority.ordinal ();
+            for ( int i = lane + 1; i < this.lanes.size (); i++ )
+            {
+                if ( !this.lanes.get ( i ).isEmpty () )
+                {
+                    this.overtaken.incrementAndGet ();
+                    break;
+                }
+            }
+
+            final Entry entry = new Entry ( message, future );
+            this.lanes.get ( lane ).add ( entry );
+            this.queued++;
+            if ( entry.size < 0 )
+            {
+                this.queuedObjects++;
+            }
+            else
+            {
+                this.queuedBufferBytes += entry.size;
+            }
+        }
+
+        drain ();
+
+        return future;
+    }
+
+    /**
+     * Hand over messages to the session until the in-flight limit is reached
+     * <p>
+     * Must be called without holding the lock on <code>this</code>
+     * </p>
+     */
+    private void drain ()
+    {
+        synchronized ( this )
+        {
+            if ( this.draining )
+            {
+                // another thread is handing over, it will pick up our messages as well
+                return;
+            }
+            this.draining = true;
+        }
+
+        boolean done = false;
+        try
+        {
+            while ( true )
+            {
+                final List<Entry> entries;
+                synchronized ( this )
+                {
+                    entries = pollAvailable ();
+                    if ( entries.isEmpty () )
+                    {
+                        this.draining = false;
+                        done = true;
+                        return;
+                    }
+                }
+
+                // the writes may complete and call back into the writer right away
+                for ( final Entry entry : entries )
+                {
+                    this.session.write ( entry.message ).addListener ( new IoFutureListener<WriteFuture> () {
+
+                        @Override
+                        public void operationComplete ( final WriteFuture future )
+                        {
+                            handleWritten ( entry, future );
+                        }
+                    } );
+                }
+            }
+        }
+        finally
+        {
+            if ( !done )
+            {
+                synchronized ( this )
+                {
+                    this.draining = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Take the messages which may be handed over to the session now
+     * <p>
+     * Must be called while holding the lock on <code>this</code>
+     * </p>
+     */
+    private List<Entry> pollAvailable ()
+    {
+        final List<Entry> result = new LinkedList<Entry> ();
+
+        while ( this.inFlight < this.maxInFlight )
+        {
+            final Entry entry = poll ();
+            if ( entry == null )
+            {
+                break;
+            }
+            this.inFlight++;
+            result.add ( entry );
+        }
+
+        return result;
+    }
+
+    private Entry poll ()
+    {
+        for ( final LinkedList<Entry> lane : this.lanes )
+        {
+            final Entry entry = lane.poll ();
+            if ( entry != null )
+            {
+                this.queued--;
+                if ( entry.size < 0 )
+                {
+                    this.queuedObjects--;
+                }
+                else
+                {
+                    this.queuedBufferBytes -= entry.size;
+                }
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private void handleWritten ( final Entry entry, final WriteFuture future )
+    {
+        synchronized ( this )
+        {
+            this.inFlight--;
+        }
+
+        drain ();
+
+        if ( future.isWritten () )
+        {
+            entry.future.setWritten ();
+        }
+        else
+        {
+            entry.future.setException ( future.getException () );
+        }
+    }
+
+    /**
+     * Dispose the writer
+     * <p>
+     * Messages still waiting in the lanes are failed
+     * </p>
+     */
+    public void dispose ()
+    {
+        final List<Entry> entries = new LinkedList<Entry> ();
+
+        synchronized ( this )
+        {
+            this.disposed = true;
+
+            for ( final LinkedList<Entry> lane : this.lanes )
+            {
+                entries.addAll ( lane );
+                lane.clear ();
+            }
+            this.queued = 0;
+            this.queuedBufferBytes = 0;
+            this.queuedObjects = 0;
+        }
+
+        for ( final Entry entry : entries )
+        {
+            entry.future.setException ( new IllegalStateException ( "Writer is disposed" ) );
+        }
+    }
+
+    /**
+     * @return the number of messages waiting in the lanes, not counting the
+     *         messages already handed over to the session
+     */
+    public synchronized int getQueuedMessages ()
+    {
+        return this.queued;
+    }
+
+    /**
+     * Get the number of bytes waiting in the lanes
+     * <p>
+     * Messages which are not encoded yet are estimated by the average size of
+     * the messages the session has written so far.
+     * </p>
+     * 
+     * @return the number of bytes waiting in the lanes, not counting the
+     *         messages already handed over to the session
+     */
+    public long getQueuedBytes ()
+    {
+        final long bufferBytes;
+        final int objects;
+        synchronized ( this )
+        {
+            bufferBytes = this.queuedBufferBytes;
+            objects = this.queuedObjects;
+        }
+
+        if ( objects == 0 )
+        {
+            return bufferBytes;
+        }
+
+        final long writtenMessages = this.session.getWrittenMessages ();
+        if ( writtenMessages <= 0 )
+        {
+            return bufferBytes;
+        }
+
+        return bufferBytes + objects * ( this.session.getWrittenBytes () / writtenMessages );
+    }
+
+    /**
+     * @return the number of messages which were queued in front of messages
+     *         of lower priority
+     */
+    public long getOvertakenCount ()
+    {
+        return this.overtaken.get ();
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.net.mina;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mina.core.service.IoProcessor;
+import org.apache.mina.core.service.SimpleIoProcessorPool;
+import org.apache.mina.transport.socket.nio.NioProcessor;
+import org.apache.mina.transport.socket.nio.NioSession;
+import org.openscada.utils.concurrent.NamedThreadFactory;
+
+/**
+ * Process wide resources shared by all client connections
+ * <p>
+ * Instead of each connection running its own I/O processor threads and its
+ * own lookup thread, all connections share a bounded pool of NIO processors
+ * and a bounded executor for resolving host names. So the number of threads
+ * scales with the number of CPUs and not with the number of configured
+ * connections.
+ * </p>
+ * <p>
+ * The pool sizes can be set with the system properties
+ * <code>org.openscada.net.mina.sharedProcessors</code> (defaults to the
+ * number of CPUs plus one) and
+ * <code>org.openscada.net.mina.lookupThreads</code> (defaults to 4).
+ * </p>
+ * 
+ * @since 1.1
+ */
+public final class SharedConnectorResources
+{
+    private static IoProcessor<NioSession> nioProcessor;
+
+    private static ExecutorService lookupExecutor;
+
+    private SharedConnectorResources ()
+    {
+    }
+
+    /**
+     * Get the shared NIO processor pool
+     * <p>
+     * The pool is never disposed. A
+     * {@link org.apache.mina.transport.socket.nio.NioSocketConnector} does not
+     * dispose a processor which was passed to its constructor.
+     * </p>
+     * 
+     * @return the shared processor pool
+     */
+    public static synchronized IoProcessor<NioSession> getNioProcessor ()
+    {
+        if ( nioProcessor == null )
+        {
+            final int size = Integer.getInteger ( "org.openscada.net.mina.sharedProcessors", Runtime.getRuntime ().availableProcessors () + 1 );
+            nioProcessor = new SimpleIoProcessorPool<NioSession> ( NioProcessor.class, Math.max ( 1, size ) );
+        }
+        return nioProcessor;
+    }
+
+    /**
+     * Get the shared executor for host name lookups
+     * <p>
+     * Lookups may block for a long time, so tasks must not expect to be
+     * executed immediately. Idle threads are terminated after one minute.
+     * </p>
+     * 
+     * @return the shared lookup executor
+     */
+    public static synchronized ExecutorService getLookupExecutor ()
+    {
+        if ( lookupExecutor == null )
+        {
+            final int threads = Math.max ( 1, Integer.getInteger ( "org.openscada.net.mina.lookupThreads", 4 ) );
+            final ThreadPoolExecutor executor = new ThreadPoolExecutor ( threads, threads, 1, TimeUnit.MINUTES, new LinkedBlockingQueue<Runnable> (), new NamedThreadFactory ( "SharedLookupExecutor", true ) );
+            executor.allowCoreThreadTimeOut ( true );
+            lookupExecutor = executor;
+        }
+        return lookupExecutor;
+    }
+}
@@ -86,6 +86,12 @@ public enum SocketImpl
             return new NioSocketConnector ();
         }
 
+        @Override
+        public IoConnector createSharedConnector ()
+        {
+            return new NioSocketConnector ( SharedConnectorResources.getNioProcessor () );
+        }
+
         @Override
         public IoAcceptor createAcceptor ()
         {
@@ -93,6 +99,12 @@ public enum SocketImpl
             acceptor.setReuseAddress ( true );
             return acceptor;
         }
+
+        @Override
+        public IoAcceptor createAcceptor ( final AcceptorConfiguration configuration )
+        {
+            return configuration.createNioAcceptor ();
+        }
     },
     VMPIPE
     {
@@ -155,5 +167,37 @@ public enum SocketImpl
 
     public abstract IoConnector createConnector ();
 
+    /**
+     * Create a connector which uses the I/O processors shared by all client
+     * connections
+     * <p>
+     * The default implementation falls back to {@link #createConnector()}
+     * for implementations that cannot share their processors.
+     * </p>
+     * 
+     * @see SharedConnectorResources
+     * @since 1.1
+     */
+    public IoConnector createSharedConnector ()
+    {
+        return createConnector ();
+    }
+
     public abstract IoAcceptor createAcceptor ();
+
+    /**
+     * Create an acceptor using the provided transport settings
+     * <p>
+     * The default implementation applies the settings to the acceptor
+     * created by {@link #createAcceptor()}.
+     * </p>
+     * 
+     * @since 1.1
+     */
+    public IoAcceptor createAcceptor ( final AcceptorConfiguration configuration )
+    {
+        final IoAcceptor acceptor = createAcceptor ();
+        configuration.configure ( acceptor );
+        return acceptor;
+    }
 }
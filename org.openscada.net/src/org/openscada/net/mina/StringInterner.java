@@ -0,0 +1,103 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+
+package org.openscada.net.mina;
+
+/**
+ * A bounded, lossy string cache
+ * <p>
+ * Strings are looked up by their characters, so a hit does not create a new
+ * string. Each hash slot holds one string, a collision replaces the older
+ * string. Reads and writes of the slots are not synchronized, which is safe
+ * since strings are immutable; a race only costs a cache miss.
+ * </p>
+ */
+final class StringInterner
+{
+    private final String[] table;
+
+    private final int mask;
+
+    private final int maxLength;
+
+    /**
+     * @param size
+     *            the number of slots, rounded up to the next power of two
+     * @param maxLength
+     *            strings longer than this are not cached
+     */
+    public StringInterner ( final int size, final int maxLength )
+    {
+        int tableSize = 1;
+        while ( tableSize < size )
+        {
+            tableSize <<= 1;
+        }
+
+        this.table = new String[tableSize];
+        this.mask = tableSize - 1;
+        this.maxLength = maxLength;
+    }
+
+    public String intern ( final char[] chars, final int length )
+    {
+        if ( length > this.maxLength )
+        {
+            return new String ( chars, 0, length );
+        }
+
+        int hash = 0;
+        for ( int i = 0; i < length; i++ )
+        {
+            hash = 31 * hash + chars[i];
+        }
+        hash ^= hash >>> 16;
+
+        final int index = hash & this.mask;
+
+        final String candidate = this.table[index];
+        if ( candidate != null && matches ( candidate, chars, length ) )
+        {
+            return candidate;
+        }
+
+        final String result = new String ( chars, 0, length );
+        this.table[index] = result;
+        return result;
+    }
+
+    private static boolean matches ( final String candidate, final char[] chars, final int length )
+    {
+        if ( candidate.length () != length )
+        {
+            return false;
+        }
+
+        for ( int i = 0; i < length; i++ )
+        {
+            if ( candidate.charAt ( i ) != chars[i] )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,414 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+
+package org.openscada.net.mina;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openscada.utils.concurrent.NamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A hashed timer wheel for timeouts of many connections
+ * <p>
+ * All timeouts are handled by one thread. Scheduling and canceling a timeout
+ * is O(1) and does not lock. The precision of the timeouts is one tick.
+ * </p>
+ * <p>
+ * The thread of the wheel only hands expired tasks over to an executor, so
+ * a slow task does not delay the expiration of other timeouts.
+ * </p>
+ * 
+ * @since 1.1
+ */
+public class TimeoutWheel
+{
+    private final static Logger logger = LoggerFactory.getLogger ( TimeoutWheel.class );
+
+    private static TimeoutWheel defaultInstance;
+
+    /**
+     * A scheduled timeout
+     */
+    public interface Timeout
+    {
+        /**
+         * Cancel the timeout
+         * 
+         * @return <code>true</code> if the timeout was canceled,
+         *         <code>false</code> if it already expired or was already
+         *         canceled
+         */
+        public boolean cancel ();
+
+        public boolean isExpired ();
+
+        public boolean isCanceled ();
+    }
+
+    private static final int STATE_PENDING = 0;
+
+    private static final int STATE_CANCELED = 1;
+
+    private static final int STATE_EXPIRED = 2;
+
+    private static class Entry implements Timeout
+    {
+        private final Runnable task;
+
+        private final long deadline;
+
+        private long remainingRounds;
+
+        private final AtomicInteger state = new AtomicInteger ( STATE_PENDING );
+
+        public Entry ( final Runnable task, final long deadline )
+        {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public boolean cancel ()
+        {
+            // the entry is removed from its bucket when the wheel passes by
+            return this.state.compareAndSet ( STATE_PENDING, STATE_CANCELED );
+        }
+
+        @Override
+        public boolean isCanceled ()
+        {
+            return this.state.get () == STATE_CANCELED;
+        }
+
+        @Override
+        public boolean isExpired ()
+        {
+            return this.state.get () == STATE_EXPIRED;
+        }
+
+        boolean expire ()
+        {
+            return this.state.compareAndSet ( STATE_PENDING, STATE_EXPIRED );
+        }
+    }
+
+    private final String name;
+
+    private final long tickDuration;
+
+    private final LinkedList<Entry>[] wheel;
+
+    private final int mask;
+
+    private final Queue<Entry> newEntries = new ConcurrentLinkedQueue<Entry> ();
+
+    private final AtomicBoolean started = new AtomicBoolean ();
+
+    private volatile boolean stopped;
+
+    private volatile long startTime;
+
+    private long tick;
+
+    private Thread worker;
+
+    private final Executor executor;
+
+    private final ExecutorService ownedExecutor;
+
+    /**
+     * Create a new timer wheel with its own pool for running expired tasks
+     * <p>
+     * The number of threads of the pool can be set using the system property
+     * <code>org.openscada.net.timeoutWheel.threads</code> (default: number of
+     * processors, at least two).
+     * </p>
+     * 
+     * @param name
+     *            the name of the thread
+     * @param tickDuration
+     *            the duration of one tick
+     * @param unit
+     *            the unit of the tick duration
+     * @param ticksPerWheel
+     *            the number of buckets, rounded up to the next power of two
+     */
+    public TimeoutWheel ( final String name, final long tickDuration, final TimeUnit unit, final int ticksPerWheel )
+    {
+        this ( name, tickDuration, unit, ticksPerWheel, null );
+    }
+
+    /**
+     * Create a new timer wheel
+     * 
+     * @param name
+     *            the name of the thread
+     * @param tickDuration
+     *            the duration of one tick
+     * @param unit
+     *            the unit of the tick duration
+     * @param ticksPerWheel
+     *            the number of buckets, rounded up to the next power of two
+     * @param executor
+     *            the executor running the expired tasks, if
+     *            <code>null</code> the wheel creates its own pool
+     */
+    @SuppressWarnings ( "unchecked" )
+    public TimeoutWheel ( final String name, final long tickDuration, final TimeUnit unit, final int ticksPerWheel, final Executor executor )
+    {
+        this.name = name;
+
+        if ( executor != null )
+        {
+            this.executor = executor;
+            this.ownedExecutor = null;
+        }
+        else
+        {
+            final int threads = Integer.getInteger ( "org.openscada.net.timeoutWheel.threads", Math.max ( 2, Runtime.getRuntime ().availableProcessors () ) );
+            this.ownedExecutor = Executors.newFixedThreadPool ( Math.max ( 1, threads ), new NamedThreadFactory ( name + "/Expired", true ) );
+            this.executor = this.ownedExecutor;
+        }
+        this.tickDuration = Math.max ( 1, unit.toNanos ( tickDuration ) );
+
+        int size = 1;
+        while ( size < ticksPerWheel )
+        {
+            size <<= 1;
+        }
+
+        this.wheel = new LinkedList[size];
+        for ( int i = 0; i < size; i++ )
+        {
+            this.wheel[i] = new LinkedList<Entry> ();
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * Get the process wide timer wheel
+     * <p>
+     * The tick duration can be set in milliseconds using the system property
+     * <code>org.openscada.net.timeoutWheel.tick</code> (default 100) and the
+     * number of buckets using <code>org.openscada.net.timeoutWheel.size</code>
+     * (default 512).
+     * </p>
+     */
+    public static synchronized TimeoutWheel getDefault ()
+    {
+        if ( defaultInstance == null )
+        {
+            defaultInstance = new TimeoutWheel ( "GMPPTimeoutWheel", Integer.getInteger ( "org.openscada.net.timeoutWheel.tick", 100 ), TimeUnit.MILLISECONDS, Integer.getInteger ( "org.openscada.net.timeoutWheel.size", 512 ) );
+        }
+        return defaultInstance;
+    }
+
+    /**
+     * Schedule a task
+     * 
+     * @param task
+     *            the task to run when the timeout expires
+     * @param delay
+     *            the delay
+     * @param unit
+     *            the unit of the delay
+     * @return the timeout, which can be used to cancel the task
+     */
+    public Timeout schedule ( final Runnable task, final long delay, final TimeUnit unit )
+    {
+        start ();
+
+        final Entry entry = new Entry ( task, System.nanoTime () + unit.toNanos ( Math.max ( 0, delay ) ) );
+        this.newEntries.add ( entry );
+        return entry;
+    }
+
+    private void start ()
+    {
+        if ( this.started.get () || !this.started.compareAndSet ( false, true ) )
+        {
+            return;
+        }
+
+        this.startTime = System.nanoTime ();
+
+        final Thread worker = new NamedThreadFactory ( this.name, true ).newThread ( new Runnable () {
+
+            @Override
+            public void run ()
+            {
+                TimeoutWheel.this.run ();
+            }
+        } );
+        worker.start ();
+
+        this.worker = worker;
+    }
+
+    /**
+     * Stop the wheel
+     * <p>
+     * Pending timeouts will not expire.
+     * </p>
+     */
+    public void stop ()
+    {
+        this.stopped = true;
+
+        if ( this.ownedExecutor != null )
+        {
+            this.ownedExecutor.shutdown ();
+        }
+
+        final Thread worker = this.worker;
+        if ( worker != null )
+        {
+            worker.interrupt ();
+        }
+    }
+
+    private void run ()
+    {
+        logger.info ( "Starting timer wheel: {}", this.name );
+
+        while ( !this.stopped )
+        {
+            if ( !waitForNextTick () )
+            {
+                break;
+            }
+
+            transferNewEntries ();
+            expire ( this.wheel[(int) ( this.tick & this.mask )] );
+            this.tick++;
+        }
+
+        logger.info ( "Timer wheel stopped: {}", this.name );
+    }
+
+    private boolean waitForNextTick ()
+    {
+        final long deadline = this.startTime + ( this.tick + 1 ) * this.tickDuration;
+
+        while ( true )
+        {
+            final long sleep = deadline - System.nanoTime ();
+            if ( sleep <= 0 )
+            {
+                return true;
+            }
+
+            try
+            {
+                Thread.sleep ( TimeUnit.NANOSECONDS.toMillis ( sleep ), (int) ( sleep % 1000000L ) );
+            }
+            catch ( final InterruptedException e )
+            {
+                if ( this.stopped )
+                {
+                    return false;
+                }
+            }
+        }
+    }
+
+    private void transferNewEntries ()
+    {
+        Entry entry;
+        while ( ( entry = this.newEntries.poll () ) != null )
+        {
+            if ( entry.isCanceled () )
+            {
+                continue;
+            }
+
+            final long calculated = ( entry.deadline - this.startTime ) / this.tickDuration;
+            entry.remainingRounds = Math.max ( 0, calculated - this.tick ) / this.wheel.length;
+
+            // entries which are already due go into the current bucket
+            final long ticks = Math.max ( calculated, this.tick );
+            this.wheel[(int) ( ticks & this.mask )].add ( entry );
+        }
+    }
+
+    private void expire ( final LinkedList<Entry> bucket )
+    {
+        for ( final Iterator<Entry> i = bucket.iterator (); i.hasNext (); )
+        {
+            final Entry entry = i.next ();
+
+            if ( entry.isCanceled () )
+            {
+                i.remove ();
+            }
+            else if ( entry.remainingRounds <= 0 )
+            {
+                i.remove ();
+                if ( entry.expire () )
+                {
+                    execute ( entry.task );
+                }
+            }
+            else
+            {
+                entry.remainingRounds--;
+            }
+        }
+    }
+
+    private void execute ( final Runnable task )
+    {
+        try
+        {
+            this.executor.execute ( new Runnable () {
+
+                @Override
+                public void run ()
+                {
+                    try
+                    {
+                        task.run ();
+                    }
+                    catch ( final Throwable e )
+                    {
+                        logger.warn ( "Failed to run timeout task", e );
+                    }
+                }
+            } );
+        }
+        catch ( final RejectedExecutionException e )
+        {
+            logger.warn ( "Failed to hand over timeout task", e );
+        }
+    }
+}
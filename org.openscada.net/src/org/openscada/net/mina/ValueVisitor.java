@@ -0,0 +1,62 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+
+package org.openscada.net.mina;
+
+/**
+ * Visits values while they are decoded from a GMPP stream
+ * <p>
+ * The key is the name of the entry when visiting a map, and
+ * <code>null</code> when visiting a list.
+ * </p>
+ * 
+ * @since 1.1
+ */
+public interface ValueVisitor
+{
+    public void visitString ( String key, String value );
+
+    public void visitLong ( String key, long value );
+
+    public void visitInteger ( String key, int value );
+
+    public void visitDouble ( String key, double value );
+
+    public void visitBoolean ( String key, boolean value );
+
+    public void visitVoid ( String key );
+
+    /**
+     * Visit a map
+     * 
+     * @return the visitor for the entries of the map or <code>null</code> to
+     *         skip the map
+     */
+    public ValueVisitor visitMap ( String key, int size );
+
+    /**
+     * Visit a list
+     * 
+     * @return the visitor for the entries of the list or <code>null</code> to
+     *         skip the list
+     */
+    public ValueVisitor visitList ( String key, int size );
+}
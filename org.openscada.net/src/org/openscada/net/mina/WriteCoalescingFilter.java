@@ -0,0 +1,305 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+
+package org.openscada.net.mina;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.filterchain.IoFilterAdapter;
+import org.apache.mina.core.filterchain.IoFilterChain;
+import org.apache.mina.core.filterchain.IoFilterChain.Entry;
+import org.apache.mina.core.future.DefaultWriteFuture;
+import org.apache.mina.core.future.IoFutureListener;
+import org.apache.mina.core.future.WriteFuture;
+import org.apache.mina.core.session.AttributeKey;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.core.write.DefaultWriteRequest;
+import org.apache.mina.core.write.WriteRequest;
+import org.apache.mina.core.write.WriteToClosedSessionException;
+import org.apache.mina.filter.codec.ProtocolCodecFilter;
+
+/**
+ * Coalesces small encoded messages into a single write
+ * <p>
+ * The filter is placed directly below the protocol codec. While a write of
+ * the session is still being processed by the I/O processor, following
+ * messages are collected and handed on as one buffer once the previous write
+ * completed, or once the collected messages reach the batch size. So an idle
+ * session sends each message right away, while a busy session sends one
+ * buffer per I/O processor round instead of one per message.
+ * </p>
+ * <p>
+ * A message never waits longer than it would have waited in the write queue
+ * of the session anyway, so replies to requests are not delayed by the
+ * filter. Messages larger than the batch size are passed on without being
+ * copied.
+ * </p>
+ * <p>
+ * The filter is enabled by the system property
+ * <code>org.openscada.net.mina.coalesceWrites</code> (defaults to
+ * <code>true</code>), the batch size is set by
+ * <code>org.openscada.net.mina.coalesceWrites.maxBatchBytes</code> (defaults
+ * to 64 KiB).
+ * </p>
+ * 
+ * @since 1.1
+ */
+public class WriteCoalescingFilter extends IoFilterAdapter
+{
+    public static final String FILTER_NAME = "coalesceWrites";
+
+    private static final AttributeKey STATE = new AttributeKey ( WriteCoalescingFilter.class, "state" );
+
+    private final int maxBatchBytes;
+
+    private final AtomicLong messages = new AtomicLong ();
+
+    private final AtomicLong batches = new AtomicLong ();
+
+    private static class State
+    {
+        /**
+         * Number of batches handed on and not yet sent
+         */
+        private int inFlight;
+
+        private final List<WriteRequest> pending = new ArrayList<WriteRequest> ();
+
+        private int pendingBytes;
+    }
+
+    private static class Batch extends DefaultWriteRequest
+    {
+        private final List<WriteRequest> requests;
+
+        public Batch ( final IoSession session, final IoBuffer buffer, final List<WriteRequest> requests )
+        {
+            super ( buffer, new DefaultWriteFuture ( session ) );
+            this.requests = requests;
+        }
+    }
+
+    public WriteCoalescingFilter ()
+    {
+        this ( Integer.getInteger ( "org.openscada.net.mina.coalesceWrites.maxBatchBytes", 64 * 1024 ) );
+    }
+
+    public WriteCoalescingFilter ( final int maxBatchBytes )
+    {
+        this.maxBatchBytes = Math.max ( 1, maxBatchBytes );
+    }
+
+    public static boolean isEnabled ()
+    {
+        return Boolean.parseBoolean ( System.getProperty ( "org.openscada.net.mina.coalesceWrites", "true" ) );
+    }
+
+    /**
+     * Add the filter directly below the protocol codec of a filter chain
+     * 
+     * @return <code>true</code> if the filter was added,
+     *         <code>false</code> if the chain has no protocol codec
+     */
+    public static boolean install ( final IoFilterChain chain, final WriteCoalescingFilter filter )
+    {
+        for ( final Entry entry : chain.getAll () )
+        {
+            if ( entry.getFilter () instanceof ProtocolCodecFilter )
+            {
+                chain.addBefore ( entry.getName (), FILTER_NAME, filter );
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of messages passed through the filter
+     */
+    public long getMessageCount ()
+    {
+        return this.messages.get ();
+    }
+
+    /**
+     * @return the number of writes handed on by the filter
+     */
+    public long getBatchCount ()
+    {
+        return this.batches.get ();
+    }
+
+    private State getState ( final IoSession session )
+    {
+        State state = (State)session.getAttribute ( STATE );
+        if ( state == null )
+        {
+            state = new State ();
+            final State oldState = (State)session.setAttributeIfAbsent ( STATE, state );
+            if ( oldState != null )
+            {
+                return oldState;
+            }
+        }
+        return state;
+    }
+
+    @Override
+    public void filterWrite ( final NextFilter nextFilter, final IoSession session, final WriteRequest writeRequest ) throws Exception
+    {
+        final State state = getState ( session );
+
+        final Object message = writeRequest.getMessage ();
+
+        synchronized ( state )
+        {
+            if ( ! ( message instanceof IoBuffer ) )
+            {
+                // e.g. a file region, keep the order
+                flush ( nextFilter, session, state );
+                nextFilter.filterWrite ( session, writeRequest );
+                return;
+            }
+
+            final int size = ( (IoBuffer)message ).remaining ();
+            if ( size >= this.maxBatchBytes )
+            {
+                // don't copy large messages
+                flush ( nextFilter, session, state );
+            }
+
+            state.pending.add ( writeRequest );
+            state.pendingBytes += size;
+
+            if ( state.inFlight == 0 || state.pendingBytes >= this.maxBatchBytes )
+            {
+                flush ( nextFilter, session, state );
+            }
+        }
+    }
+
+    private void flush ( final NextFilter nextFilter, final IoSession session, final State state )
+    {
+        if ( state.pending.isEmpty () )
+        {
+            return;
+        }
+
+        final List<WriteRequest> requests = new ArrayList<WriteRequest> ( state.pending );
+
+        final IoBuffer buffer;
+        if ( requests.size () == 1 )
+        {
+            buffer = (IoBuffer)requests.get ( 0 ).getMessage ();
+        }
+        else
+        {
+            buffer = IoBuffer.allocate ( state.pendingBytes );
+            for ( final WriteRequest request : requests )
+            {
+                buffer.put ( ( (IoBuffer)request.getMessage () ).duplicate () );
+            }
+            buffer.flip ();
+        }
+
+        state.pending.clear ();
+        state.pendingBytes = 0;
+        state.inFlight++;
+
+        this.messages.addAndGet ( requests.size () );
+        this.batches.incrementAndGet ();
+
+        final Batch batch = new Batch ( session, buffer, requests );
+        batch.getFuture ().addListener ( new IoFutureListener<WriteFuture> () {
+
+            @Override
+            public void operationComplete ( final WriteFuture future )
+            {
+                if ( !future.isWritten () )
+                {
+                    for ( final WriteRequest request : requests )
+                    {
+                        request.getFuture ().setException ( future.getException () );
+                    }
+                }
+            }
+        } );
+
+        nextFilter.filterWrite ( session, batch );
+    }
+
+    @Override
+    public void messageSent ( final NextFilter nextFilter, final IoSession session, final WriteRequest writeRequest ) throws Exception
+    {
+        if ( ! ( writeRequest instanceof Batch ) )
+        {
+            nextFilter.messageSent ( session, writeRequest );
+            return;
+        }
+
+        final State state = getState ( session );
+        synchronized ( state )
+        {
+            state.inFlight = Math.max ( 0, state.inFlight - 1 );
+            if ( state.inFlight == 0 )
+            {
+                // the previous write is done, hand on what was collected meanwhile
+                flush ( nextFilter, session, state );
+            }
+        }
+
+        for ( final WriteRequest request : ( (Batch)writeRequest ).requests )
+        {
+            request.getFuture ().setWritten ();
+            // the filter chain does not report encoded requests to the upper filters either
+            if ( !request.isEncoded () )
+            {
+                nextFilter.messageSent ( session, request );
+            }
+        }
+    }
+
+    @Override
+    public void sessionClosed ( final NextFilter nextFilter, final IoSession session ) throws Exception
+    {
+        final State state = (State)session.getAttribute ( STATE );
+        if ( state != null )
+        {
+            final List<WriteRequest> requests;
+            synchronized ( state )
+            {
+                requests = new ArrayList<WriteRequest> ( state.pending );
+                state.pending.clear ();
+                state.pendingBytes = 0;
+            }
+
+            for ( final WriteRequest request : requests )
+            {
+                request.getFuture ().setException ( new WriteToClosedSessionException ( request ) );
+            }
+        }
+
+        nextFilter.sessionClosed ( session );
+    }
+}
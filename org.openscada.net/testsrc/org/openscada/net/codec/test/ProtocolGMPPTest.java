@@ -141,6 +141,40 @@ public class ProtocolGMPPTest
         performAllTests ( packets, messages );
     }
 
+    @Test
+    public void testPacketUtf8 () throws Exception
+    {
+        log.info ( "Running test UTF-8" );
+
+        final List<BytePacketTestImpl> packets = new ArrayList<BytePacketTestImpl> ();
+        packets.add ( new BytePacketTestImpl ( " 00 00 00 01" + // command code
+        " 00 00 00 00 00 00 00 00" + // timestamp
+        " 00 00 00 00 00 00 00 02" + // sequence
+        " 00 00 00 00 00 00 00 03" + // reply sequence
+        " 00 00 00 22" + // body size
+        " 00 00 00 07" + // VT_MAP
+        " 00 00 00 1A" + // VT_MAP - size
+        " 00 00 00 01" + // VT_MAP - item count
+        " 00 00 00 01" + // VT_STRING
+        " 00 00 00 09" + // string length
+        " C3 A4 E2 82 AC F0 9D 84 9E" + // two, three and four byte sequences
+        " 00 00 00 01" + // name length
+        " 75" + // name
+        "" ) );
+
+        final List<Message> messages = new ArrayList<Message> ();
+
+        final Message message = new Message ();
+        message.setCommandCode ( 1 );
+        message.setSequence ( 2 );
+        message.setReplySequence ( 3 );
+        message.getValues ().put ( "u", new StringValue ( "\u00E4\u20AC\uD834\uDD1E" ) );
+
+        messages.add ( message );
+
+        performAllTests ( packets, messages );
+    }
+
     public void testPacket2 () throws Exception
     {
         log.info ( "Running test2" );
@@ -327,6 +361,39 @@ public class ProtocolGMPPTest
         performCode ( message, packet );
     }
 
+    @Test
+    public void testEncodeUtf8 () throws Exception
+    {
+        log.info ( "Running encode UTF-8" );
+
+        final Message message = new Message ();
+        message.setTimestamp ( 0 );
+        message.setCommandCode ( 1 );
+        message.setSequence ( 2 );
+        message.setReplySequence ( 3 );
+        // two, three and four byte sequences
+        message.getValues ().put ( "u", new StringValue ( "\u00E4\u20AC\uD834\uDD1E" ) );
+
+        final BytePacketTestImpl packet = new BytePacketTestImpl ( " 00 00 00 01" + // command code
+        " 00 00 00 00 00 00 00 00" + // timestamp
+        " 00 00 00 00 00 00 00 02" + // sequence
+        " 00 00 00 00 00 00 00 03" + // reply sequence
+        " 00 00 00 22" + // body size
+        " 00 00 00 07" + // VT_MAP
+        " 00 00 00 1A" + // VT_MAP - size
+        " 00 00 00 01" + // VT_MAP - item count
+        " 00 00 00 01" + // VT_STRING
+        " 00 00 00 09" + // string length
+        " C3 A4 E2 82 AC F0 9D 84 9E" + // test string
+        " 00 00 00 01" + // name length
+        " 75" + // test name
+        "" );
+
+        // twice, the second run uses the string cache
+        performCode ( message, packet );
+        performCode ( message, packet );
+    }
+
     public void testPerformance () throws Exception
     {
         final Message message = new Message ();
@@ -0,0 +1,174 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+
+package org.openscada.net.mina.test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.future.ConnectFuture;
+import org.apache.mina.core.service.IoHandlerAdapter;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.filter.executor.ExecutorFilter;
+import org.apache.mina.transport.socket.nio.NioSocketAcceptor;
+import org.apache.mina.transport.socket.nio.NioSocketConnector;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openscada.net.mina.AcceptorConfiguration;
+
+public class AcceptorConfigurationTest
+{
+    private static Logger log = Logger.getLogger ( AcceptorConfigurationTest.class );
+
+    private static final int MESSAGE_SIZE = 1024;
+
+    private static final int MESSAGES = 20000;
+
+    private static final long MAX_QUEUED_BYTES = 1024 * 1024;
+
+    @Test
+    public void testFromProperties ()
+    {
+        final Map<String, String> properties = new HashMap<String, String> ();
+        properties.put ( "acceptor.tcpNoDelay", "false" );
+        properties.put ( "acceptor.executorThreads", "2" );
+        properties.put ( "acceptor.backlog", "invalid" );
+
+        final AcceptorConfiguration configuration = AcceptorConfiguration.fromProperties ( properties );
+
+        Assert.assertFalse ( configuration.isTcpNoDelay () );
+        Assert.assertEquals ( 2, configuration.getExecutorThreads () );
+        // invalid values fall back to the default
+        Assert.assertEquals ( 50, configuration.getBacklog () );
+    }
+
+    @Test
+    public void testThroughputDefault () throws Exception
+    {
+        measure ( "default", new AcceptorConfiguration () );
+    }
+
+    @Test
+    public void testThroughputNagle () throws Exception
+    {
+        final AcceptorConfiguration configuration = new AcceptorConfiguration ();
+        configuration.setTcpNoDelay ( false );
+        measure ( "nagle", configuration );
+    }
+
+    @Test
+    public void testThroughputSmallBuffers () throws Exception
+    {
+        final AcceptorConfiguration configuration = new AcceptorConfiguration ();
+        configuration.setReceiveBufferSize ( 8 * 1024 );
+        configuration.setSendBufferSize ( 8 * 1024 );
+        configuration.setMaxReadBufferSize ( 4 * 1024 );
+        measure ( "small buffers", configuration );
+    }
+
+    @Test
+    public void testThroughputExecutor () throws Exception
+    {
+        final AcceptorConfiguration configuration = new AcceptorConfiguration ();
+        configuration.setProcessors ( 1 );
+        configuration.setExecutorThreads ( 2 );
+        configuration.setExecutorQueueBytes ( 256 * 1024 );
+        measure ( "executor", configuration );
+    }
+
+    /**
+     * Send a fixed amount of data over loopback to an acceptor using the
+     * configuration and check that everything arrives
+     */
+    private void measure ( final String name, final AcceptorConfiguration configuration ) throws Exception
+    {
+        final long total = (long)MESSAGE_SIZE * MESSAGES;
+        final AtomicLong received = new AtomicLong ();
+        final CountDownLatch done = new CountDownLatch ( 1 );
+
+        final NioSocketAcceptor acceptor = configuration.createNioAcceptor ();
+        final ExecutorFilter executorFilter = configuration.createExecutorFilter ();
+        if ( executorFilter != null )
+        {
+            acceptor.getFilterChain ().addLast ( "executor", executorFilter );
+        }
+        acceptor.setHandler ( new IoHandlerAdapter () {
+
+            @Override
+            public void messageReceived ( final IoSession session, final Object message ) throws Exception
+            {
+                if ( received.addAndGet ( ( (IoBuffer)message ).remaining () ) >= total )
+                {
+                    done.countDown ();
+                }
+            }
+        } );
+
+        final NioSocketConnector connector = new NioSocketConnector ();
+        connector.setHandler ( new IoHandlerAdapter () );
+
+        try
+        {
+            acceptor.bind ( new InetSocketAddress ( InetAddress.getByName ( "127.0.0.1" ), 0 ) );
+
+            final ConnectFuture future = connector.connect ( acceptor.getLocalAddress () );
+            Assert.assertTrue ( "Failed to connect", future.awaitUninterruptibly ( 10 * 1000 ) );
+            final IoSession session = future.getSession ();
+
+            final byte[] data = new byte[MESSAGE_SIZE];
+
+            final long start = System.nanoTime ();
+            for ( int i = 0; i < MESSAGES; i++ )
+            {
+                while ( session.getScheduledWriteBytes () > MAX_QUEUED_BYTES )
+                {
+                    Thread.sleep ( 1 );
+                }
+                session.write ( IoBuffer.wrap ( data ) );
+            }
+
+            Assert.assertTrue ( "Timed out", done.await ( 30, TimeUnit.SECONDS ) );
+            final long duration = System.nanoTime () - start;
+
+            Assert.assertEquals ( total, received.get () );
+
+            log.info ( String.format ( "%s - %s: %.1f MB/s", name, configuration, total / ( 1024.0 * 1024.0 ) / ( duration / 1000000000.0 ) ) );
+
+            session.close ( true ).awaitUninterruptibly ();
+        }
+        finally
+        {
+            connector.dispose ();
+            acceptor.dispose ();
+            if ( executorFilter != null )
+            {
+                executorFilter.destroy ();
+            }
+        }
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+
+package org.openscada.net.mina.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.apache.mina.core.future.DefaultWriteFuture;
+import org.apache.mina.core.future.WriteFuture;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openscada.core.info.StatisticsImpl;
+import org.openscada.net.base.MessageStateListener;
+import org.openscada.net.base.data.Message;
+import org.openscada.net.mina.MessageSender;
+import org.openscada.net.mina.Messenger;
+import org.openscada.net.mina.PrepareSendHandler;
+import org.openscada.net.mina.TimeoutWheel;
+
+public class MessengerTest
+{
+    private static Logger log = Logger.getLogger ( MessengerTest.class );
+
+    private TimeoutWheel wheel;
+
+    private Messenger messenger;
+
+    /**
+     * A sender which answers every message directly from the sending thread
+     */
+    private class LoopbackSender implements MessageSender
+    {
+        private final AtomicLong sequence = new AtomicLong ();
+
+        private final boolean reply;
+
+        private final AtomicBoolean closed = new AtomicBoolean ();
+
+        public LoopbackSender ( final boolean reply )
+        {
+            this.reply = reply;
+        }
+
+        @Override
+        public WriteFuture sendMessage ( final Message message, final PrepareSendHandler prepareSendHandler )
+        {
+            message.setSequence ( this.sequence.incrementAndGet () );
+            if ( prepareSendHandler != null )
+            {
+                prepareSendHandler.prepareSend ( message );
+            }
+
+            if ( this.reply )
+            {
+                MessengerTest.this.messenger.messageReceived ( new Message ( Message.CC_ACK, message.getSequence () ) );
+            }
+
+            return DefaultWriteFuture.newWrittenFuture ( null );
+        }
+
+        @Override
+        public void close ()
+        {
+            this.closed.set ( true );
+        }
+    }
+
+    private static class CountingListener implements MessageStateListener
+    {
+        private final AtomicInteger replies = new AtomicInteger ();
+
+        private final AtomicInteger timeouts = new AtomicInteger ();
+
+        private final CountDownLatch latch;
+
+        public CountingListener ( final int count )
+        {
+            this.latch = new CountDownLatch ( count );
+        }
+
+        @Override
+        public void messageReply ( final Message message )
+        {
+            this.replies.incrementAndGet ();
+            this.latch.countDown ();
+        }
+
+        @Override
+        public void messageTimedOut ()
+        {
+            this.timeouts.incrementAndGet ();
+            this.latch.countDown ();
+        }
+    }
+
+    @Before
+    public void setup ()
+    {
+        this.wheel = new TimeoutWheel ( "MessengerTest", 10, TimeUnit.MILLISECONDS, 64 );
+        this.messenger = new Messenger ( 60 * 1000, new StatisticsImpl (), this.wheel );
+    }
+
+    @After
+    public void dispose ()
+    {
+        this.messenger.disconnected ();
+        this.wheel.stop ();
+    }
+
+    @Test
+    public void testTimeout () throws Exception
+    {
+        this.messenger.connected ( new LoopbackSender ( false ) );
+
+        final CountingListener listener = new CountingListener ( 1 );
+        this.messenger.sendMessage ( new Message ( 0x100 ), listener, 50 );
+
+        Assert.assertTrue ( listener.latch.await ( 5, TimeUnit.SECONDS ) );
+        Thread.sleep ( 50 );
+
+        Assert.assertEquals ( 0, listener.replies.get () );
+        Assert.assertEquals ( 1, listener.timeouts.get () );
+    }
+
+    @Test
+    public void testDisconnect () throws Exception
+    {
+        this.messenger.connected ( new LoopbackSender ( false ) );
+
+        final CountingListener listener = new CountingListener ( 10 );
+        for ( int i = 0; i < 10; i++ )
+        {
+            this.messenger.sendMessage ( new Message ( 0x100 ), listener, 0 );
+        }
+
+        this.messenger.disconnected ();
+
+        Assert.assertTrue ( listener.latch.await ( 5, TimeUnit.SECONDS ) );
+        Assert.assertEquals ( 10, listener.timeouts.get () );
+    }
+
+    /**
+     * Many threads sending requests over one connection, every request must
+     * be completed exactly once
+     */
+    @Test
+    public void testConcurrentRequests () throws Exception
+    {
+        this.messenger.connected ( new LoopbackSender ( true ) );
+
+        final int threads = 16;
+        final int requests = 10000;
+
+        final CountingListener listener = new CountingListener ( threads * requests );
+        final List<Thread> workers = new ArrayList<Thread> ( threads );
+
+        for ( int i = 0; i < threads; i++ )
+        {
+            workers.add ( new Thread ( new Runnable () {
+
+                @Override
+                public void run ()
+                {
+                    for ( int j = 0; j < requests; j++ )
+                    {
+                        MessengerTest.this.messenger.sendMessage ( new Message ( 0x100 ), listener, 10000 );
+                    }
+                }
+            } ) );
+        }
+
+        final long start = System.currentTimeMillis ();
+
+        for ( final Thread worker : workers )
+        {
+            worker.start ();
+        }
+        for ( final Thread worker : workers )
+        {
+            worker.join ();
+        }
+
+        Assert.assertTrue ( listener.latch.await ( 10, TimeUnit.SECONDS ) );
+
+        log.info ( String.format ( "%s requests from %s threads took: %s ms", threads * requests, threads, System.currentTimeMillis () - start ) );
+
+        Assert.assertEquals ( threads * requests, listener.replies.get () );
+        Assert.assertEquals ( 0, listener.timeouts.get () );
+    }
+
+    /**
+     * The session timeout is only checked on idle events, a received message
+     * keeps the session alive
+     */
+    @Test
+    public void testIdleDrivenTimeout () throws Exception
+    {
+        final Messenger messenger = new Messenger ( 100, new StatisticsImpl (), this.wheel );
+        messenger.setIdleDriven ( true );
+
+        final LoopbackSender sender = new LoopbackSender ( false );
+        messenger.connected ( sender );
+
+        final CountingListener listener = new CountingListener ( 1 );
+        messenger.sendMessage ( new Message ( 0x100 ), listener, 0 );
+
+        Assert.assertTrue ( messenger.sessionIdle () );
+
+        Thread.sleep ( 150 );
+        messenger.messageReceived ( new Message ( Message.CC_ACK ) );
+
+        // no timeout job of its own, the session stays open until the next idle event
+        Thread.sleep ( 150 );
+        Assert.assertFalse ( sender.closed.get () );
+        Assert.assertEquals ( 0, listener.timeouts.get () );
+
+        Assert.assertFalse ( messenger.sessionIdle () );
+        Assert.assertTrue ( sender.closed.get () );
+        Assert.assertEquals ( 1, listener.timeouts.get () );
+
+        Assert.assertFalse ( messenger.sessionIdle () );
+    }
+}
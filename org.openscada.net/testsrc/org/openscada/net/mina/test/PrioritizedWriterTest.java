@@ -0,0 +1,193 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+
+package org.openscada.net.mina.test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.log4j.Logger;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.future.ConnectFuture;
+import org.apache.mina.core.service.IoHandlerAdapter;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.transport.socket.nio.NioSocketAcceptor;
+import org.apache.mina.transport.socket.nio.NioSocketConnector;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openscada.net.mina.PrioritizedWriter;
+import org.openscada.net.mina.WritePriority;
+
+public class PrioritizedWriterTest
+{
+    private static Logger log = Logger.getLogger ( PrioritizedWriterTest.class );
+
+    private static final int MESSAGE_SIZE = 1024;
+
+    /**
+     * Enough data to fill the socket buffers of a loopback connection
+     */
+    private static final int DATA_MESSAGES = 20000;
+
+    private static final byte DATA = 1;
+
+    private static final byte CONTROL = 2;
+
+    @Test
+    public void testPlain () throws Exception
+    {
+        final long position = measure ( "plain", false );
+        // without lanes the control message queues behind all data
+        Assert.assertEquals ( (long)MESSAGE_SIZE * DATA_MESSAGES, position );
+    }
+
+    @Test
+    public void testPrioritized () throws Exception
+    {
+        final long position = measure ( "prioritized", true );
+        Assert.assertTrue ( "Control message did not overtake the data", position < (long)MESSAGE_SIZE * DATA_MESSAGES / 2 );
+    }
+
+    private static IoBuffer makeMessage ( final byte type )
+    {
+        final byte[] data = new byte[MESSAGE_SIZE];
+        Arrays.fill ( data, type );
+        return IoBuffer.wrap ( data );
+    }
+
+    /**
+     * Queue a burst of data messages followed by one control message while
+     * the peer does not read, then let the peer read
+     * 
+     * @return the number of bytes the peer received before the control
+     *         message
+     */
+    private long measure ( final String name, final boolean prioritized ) throws Exception
+    {
+        final long total = (long)MESSAGE_SIZE * ( DATA_MESSAGES + 1 );
+        final AtomicLong received = new AtomicLong ();
+        final AtomicLong controlPosition = new AtomicLong ( -1 );
+        final AtomicLong controlReceived = new AtomicLong ();
+        final AtomicReference<IoSession> peer = new AtomicReference<IoSession> ();
+        final CountDownLatch opened = new CountDownLatch ( 1 );
+        final CountDownLatch controlDone = new CountDownLatch ( 1 );
+        final CountDownLatch done = new CountDownLatch ( 1 );
+
+        final NioSocketAcceptor acceptor = new NioSocketAcceptor ();
+        acceptor.setHandler ( new IoHandlerAdapter () {
+
+            @Override
+            public void sessionOpened ( final IoSession session ) throws Exception
+            {
+                // let the data pile up in the sender
+                session.suspendRead ();
+                peer.set ( session );
+                opened.countDown ();
+            }
+
+            @Override
+            public void messageReceived ( final IoSession session, final Object message ) throws Exception
+            {
+                final IoBuffer buffer = (IoBuffer)message;
+                while ( buffer.hasRemaining () )
+                {
+                    final long position = received.getAndIncrement ();
+                    if ( buffer.get () == CONTROL && controlPosition.compareAndSet ( -1, position ) )
+                    {
+                        controlReceived.set ( System.nanoTime () );
+                        controlDone.countDown ();
+                    }
+                }
+                if ( received.get () >= total )
+                {
+                    done.countDown ();
+                }
+            }
+        } );
+
+        final NioSocketConnector connector = new NioSocketConnector ();
+        connector.setHandler ( new IoHandlerAdapter () );
+
+        try
+        {
+            acceptor.bind ( new InetSocketAddress ( InetAddress.getByName ( "127.0.0.1" ), 0 ) );
+
+            final ConnectFuture future = connector.connect ( acceptor.getLocalAddress () );
+            Assert.assertTrue ( "Failed to connect", future.awaitUninterruptibly ( 10 * 1000 ) );
+            final IoSession session = future.getSession ();
+            Assert.assertTrue ( "Session not opened", opened.await ( 10, TimeUnit.SECONDS ) );
+
+            final PrioritizedWriter writer = prioritized ? new PrioritizedWriter ( session ) : null;
+
+            for ( int i = 0; i < DATA_MESSAGES; i++ )
+            {
+                if ( writer != null )
+                {
+                    writer.write ( makeMessage ( DATA ), WritePriority.DATA );
+                }
+                else
+                {
+                    session.write ( makeMessage ( DATA ) );
+                }
+            }
+
+            final long start = System.nanoTime ();
+            if ( writer != null )
+            {
+                writer.write ( makeMessage ( CONTROL ), WritePriority.CONTROL );
+            }
+            else
+            {
+                session.write ( makeMessage ( CONTROL ) );
+            }
+
+            peer.get ().resumeRead ();
+
+            Assert.assertTrue ( "Control message timed out", controlDone.await ( 60, TimeUnit.SECONDS ) );
+            Assert.assertTrue ( "Timed out", done.await ( 60, TimeUnit.SECONDS ) );
+            final long duration = System.nanoTime () - start;
+
+            Assert.assertEquals ( total, received.get () );
+
+            log.info ( String.format ( "%s: control message after %d of %d bytes, latency %.1f ms, all data after %.1f ms", name, controlPosition.get (), total - MESSAGE_SIZE, ( controlReceived.get () - start ) / 1000000.0, duration / 1000000.0 ) );
+
+            if ( writer != null )
+            {
+                Assert.assertEquals ( 0, writer.getQueuedMessages () );
+                writer.dispose ();
+            }
+
+            session.close ( true ).awaitUninterruptibly ();
+
+            return controlPosition.get ();
+        }
+        finally
+        {
+            connector.dispose ();
+            acceptor.dispose ();
+        }
+    }
+}
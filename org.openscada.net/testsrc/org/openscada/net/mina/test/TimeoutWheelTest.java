@@ -0,0 +1,190 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+
+package org.openscada.net.mina.test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openscada.net.mina.TimeoutWheel;
+
+public class TimeoutWheelTest
+{
+    private TimeoutWheel wheel;
+
+    @Before
+    public void setup ()
+    {
+        this.wheel = new TimeoutWheel ( "TimeoutWheelTest", 10, TimeUnit.MILLISECONDS, 8 );
+    }
+
+    @After
+    public void dispose ()
+    {
+        this.wheel.stop ();
+    }
+
+    @Test
+    public void testExpire () throws Exception
+    {
+        final CountDownLatch latch = new CountDownLatch ( 1 );
+        final long start = System.nanoTime ();
+
+        final TimeoutWheel.Timeout timeout = this.wheel.schedule ( new Runnable () {
+
+            @Override
+            public void run ()
+            {
+                latch.countDown ();
+            }
+        }, 50, TimeUnit.MILLISECONDS );
+
+        Assert.assertTrue ( latch.await ( 5, TimeUnit.SECONDS ) );
+        Assert.assertTrue ( TimeUnit.NANOSECONDS.toMillis ( System.nanoTime () - start ) >= 40 );
+        Assert.assertTrue ( timeout.isExpired () );
+        Assert.assertFalse ( timeout.cancel () );
+    }
+
+    @Test
+    public void testCancel () throws Exception
+    {
+        final AtomicInteger counter = new AtomicInteger ();
+        final Runnable task = new Runnable () {
+
+            @Override
+            public void run ()
+            {
+                counter.incrementAndGet ();
+            }
+        };
+
+        final TimeoutWheel.Timeout timeout = this.wheel.schedule ( task, 30, TimeUnit.MILLISECONDS );
+        Assert.assertTrue ( timeout.cancel () );
+        Assert.assertTrue ( timeout.isCanceled () );
+
+        Thread.sleep ( 100 );
+
+        Assert.assertEquals ( 0, counter.get () );
+        Assert.assertFalse ( timeout.isExpired () );
+    }
+
+    /**
+     * Delays longer than one revolution of the wheel must not expire early
+     */
+    @Test
+    public void testMultipleRounds () throws Exception
+    {
+        final CountDownLatch latch = new CountDownLatch ( 1 );
+        final long start = System.nanoTime ();
+
+        // 8 buckets at 10ms make 80ms per round
+        this.wheel.schedule ( new Runnable () {
+
+            @Override
+            public void run ()
+            {
+                latch.countDown ();
+            }
+        }, 250, TimeUnit.MILLISECONDS );
+
+        Assert.assertTrue ( latch.await ( 5, TimeUnit.SECONDS ) );
+        Assert.assertTrue ( TimeUnit.NANOSECONDS.toMillis ( System.nanoTime () - start ) >= 240 );
+    }
+
+    /**
+     * A blocking task must not delay other timeouts
+     */
+    @Test
+    public void testBlockingTask () throws Exception
+    {
+        final CountDownLatch release = new CountDownLatch ( 1 );
+        final CountDownLatch latch = new CountDownLatch ( 1 );
+
+        this.wheel.schedule ( new Runnable () {
+
+            @Override
+            public void run ()
+            {
+                try
+                {
+                    release.await ();
+                }
+                catch ( final InterruptedException e )
+                {
+                }
+            }
+        }, 10, TimeUnit.MILLISECONDS );
+
+        this.wheel.schedule ( new Runnable () {
+
+            @Override
+            public void run ()
+            {
+                latch.countDown ();
+            }
+        }, 50, TimeUnit.MILLISECONDS );
+
+        try
+        {
+            Assert.assertTrue ( latch.await ( 5, TimeUnit.SECONDS ) );
+        }
+        finally
+        {
+            release.countDown ();
+        }
+    }
+
+    @Test
+    public void testMany () throws Exception
+    {
+        final int count = 10000;
+        final CountDownLatch latch = new CountDownLatch ( count / 2 );
+        final AtomicInteger counter = new AtomicInteger ();
+
+        final Runnable task = new Runnable () {
+
+            @Override
+            public void run ()
+            {
+                counter.incrementAndGet ();
+                latch.countDown ();
+            }
+        };
+
+        for ( int i = 0; i < count; i++ )
+        {
+            final TimeoutWheel.Timeout timeout = this.wheel.schedule ( task, i % 200, TimeUnit.MILLISECONDS );
+            if ( i % 2 == 1 )
+            {
+                timeout.cancel ();
+            }
+        }
+
+        Assert.assertTrue ( latch.await ( 5, TimeUnit.SECONDS ) );
+        Thread.sleep ( 50 );
+        Assert.assertEquals ( count / 2, counter.get () );
+    }
+}
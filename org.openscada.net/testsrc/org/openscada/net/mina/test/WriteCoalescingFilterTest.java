@@ -0,0 +1,168 @@
+/*
+ * This file is part of the openSCADA project
+ *
+ * Copyright (C) 2013 Jens Reimann (ctron@dentrassi.de)
+ *
+ * openSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * openSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with openSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+
+package org.openscada.net.mina.test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.filterchain.IoFilterAdapter;
+import org.apache.mina.core.future.ConnectFuture;
+import org.apache.mina.core.future.WriteFuture;
+import org.apache.mina.core.service.IoHandlerAdapter;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.core.write.WriteRequest;
+import org.apache.mina.transport.socket.nio.NioSocketAcceptor;
+import org.apache.mina.transport.socket.nio.NioSocketConnector;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openscada.net.mina.WriteCoalescingFilter;
+
+public class WriteCoalescingFilterTest
+{
+    private static Logger log = Logger.getLogger ( WriteCoalescingFilterTest.class );
+
+    private static final int MESSAGE_SIZE = 64;
+
+    private static final int MESSAGES = 100000;
+
+    /**
+     * Counts the write requests reaching the socket
+     */
+    private static class WriteCounter extends IoFilterAdapter
+    {
+        private final AtomicLong writes = new AtomicLong ();
+
+        @Override
+        public void filterWrite ( final NextFilter nextFilter, final IoSession session, final WriteRequest writeRequest ) throws Exception
+        {
+            this.writes.incrementAndGet ();
+            super.filterWrite ( nextFilter, session, writeRequest );
+        }
+    }
+
+    @Test
+    public void testPlain () throws Exception
+    {
+        final long writes = measure ( "plain", null );
+        Assert.assertEquals ( MESSAGES, writes );
+    }
+
+    @Test
+    public void testCoalesced () throws Exception
+    {
+        final WriteCoalescingFilter filter = new WriteCoalescingFilter ();
+        final long writes = measure ( "coalesced", filter );
+
+        Assert.assertEquals ( MESSAGES, filter.getMessageCount () );
+        Assert.assertEquals ( filter.getBatchCount (), writes );
+        Assert.assertTrue ( "Messages were not coalesced", writes < MESSAGES );
+    }
+
+    /**
+     * Send small numbered messages over loopback and check that they arrive
+     * complete and in order
+     * 
+     * @return the number of writes which reached the socket
+     */
+    private long measure ( final String name, final WriteCoalescingFilter filter ) throws Exception
+    {
+        final long total = (long)MESSAGE_SIZE * MESSAGES;
+        final AtomicLong received = new AtomicLong ();
+        final AtomicLong errors = new AtomicLong ();
+        final CountDownLatch done = new CountDownLatch ( 1 );
+
+        final NioSocketAcceptor acceptor = new NioSocketAcceptor ();
+        acceptor.setHandler ( new IoHandlerAdapter () {
+
+            @Override
+            public void messageReceived ( final IoSession session, final Object message ) throws Exception
+            {
+                final IoBuffer buffer = (IoBuffer)message;
+                while ( buffer.hasRemaining () )
+                {
+                    // each message is filled with the low byte of its number
+                    final long position = received.getAndIncrement ();
+                    if ( buffer.get () != (byte) ( position / MESSAGE_SIZE ) )
+                    {
+                        errors.incrementAndGet ();
+                    }
+                }
+                if ( received.get () >= total )
+                {
+                    done.countDown ();
+                }
+            }
+        } );
+
+        final WriteCounter counter = new WriteCounter ();
+        final NioSocketConnector connector = new NioSocketConnector ();
+        connector.getFilterChain ().addFirst ( "counter", counter );
+        if ( filter != null )
+        {
+            connector.getFilterChain ().addLast ( WriteCoalescingFilter.FILTER_NAME, filter );
+        }
+        connector.setHandler ( new IoHandlerAdapter () );
+
+        try
+        {
+            acceptor.bind ( new InetSocketAddress ( InetAddress.getByName ( "127.0.0.1" ), 0 ) );
+
+            final ConnectFuture future = connector.connect ( acceptor.getLocalAddress () );
+            Assert.assertTrue ( "Failed to connect", future.awaitUninterruptibly ( 10 * 1000 ) );
+            final IoSession session = future.getSession ();
+
+            final long start = System.nanoTime ();
+            WriteFuture lastWrite = null;
+            for ( int i = 0; i < MESSAGES; i++ )
+            {
+                final byte[] data = new byte[MESSAGE_SIZE];
+                Arrays.fill ( data, (byte)i );
+                lastWrite = session.write ( IoBuffer.wrap ( data ) );
+            }
+
+            Assert.assertTrue ( "Timed out", done.await ( 60, TimeUnit.SECONDS ) );
+            final long duration = System.nanoTime () - start;
+
+            Assert.assertTrue ( "Last message not reported as written", lastWrite.awaitUninterruptibly ( 10 * 1000 ) && lastWrite.isWritten () );
+            Assert.assertEquals ( total, received.get () );
+            Assert.assertEquals ( 0, errors.get () );
+
+            final long writes = counter.writes.get ();
+            log.info ( String.format ( "%s: %d messages, %d writes (%.3f writes per message), %.1f MB/s", name, MESSAGES, writes, (double)writes / MESSAGES, total / ( 1024.0 * 1024.0 ) / ( duration / 1000000000.0 ) ) );
+
+            session.close ( true ).awaitUninterruptibly ();
+
+            return writes;
+        }
+        finally
+        {
+            connector.dispose ();
+            acceptor.dispose ();
+        }
+    }
+}